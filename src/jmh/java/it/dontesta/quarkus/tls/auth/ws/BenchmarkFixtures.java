@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.Properties;
+
+/**
+ * The certificates and the configuration shared by the benchmarks, loaded from the same
+ * resources used by the application ({@code src/main/resources}) and by the tests
+ * ({@code src/test/resources}).
+ *
+ * @author Antonio Musarra
+ */
+public final class BenchmarkFixtures {
+
+  /**
+   * Loads a certificate in PEM format from the classpath, e.g. {@code certs/server_cert.pem}.
+   *
+   * @param resource the classpath resource of the certificate
+   * @return the certificate
+   */
+  public static X509Certificate loadPemCertificate(String resource) {
+    try (InputStream inputStream = open(resource)) {
+      return (X509Certificate) CertificateFactory.getInstance("X.509")
+          .generateCertificate(inputStream);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Failed to load the certificate %s".formatted(resource), e);
+    }
+  }
+
+  /**
+   * Loads the client certificate of a PKCS#12 key store of the tests, e.g.
+   * {@code certs/client_multi_roles_cert.p12}, whose password is read from the property of the
+   * test {@code application.properties}. The client certificates carry the custom role and
+   * DeviceId extensions.
+   *
+   * @param resource         the classpath resource of the key store
+   * @param passwordProperty the name of the property of the key store password
+   * @return the client certificate
+   */
+  public static X509Certificate loadClientCertificate(String resource, String passwordProperty) {
+    try (InputStream inputStream = open(resource)) {
+      KeyStore keyStore = KeyStore.getInstance("PKCS12");
+      keyStore.load(inputStream, property(passwordProperty).toCharArray());
+
+      String alias = keyStore.aliases().nextElement();
+      return (X509Certificate) keyStore.getCertificate(alias);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Failed to load the key store %s".formatted(resource), e);
+    }
+  }
+
+  /**
+   * Returns the value of a property of the {@code application.properties} files on the
+   * classpath (the test one comes before the main one).
+   *
+   * @param name the name of the property, including the profile if any
+   * @return the value of the property
+   */
+  public static String property(String name) {
+    try {
+      for (URL url : Collections.list(
+          BenchmarkFixtures.class.getClassLoader().getResources("application.properties"))) {
+        Properties properties = new Properties();
+
+        try (InputStream inputStream = url.openStream()) {
+          properties.load(inputStream);
+        }
+
+        if (properties.containsKey(name)) {
+          return properties.getProperty(name);
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    throw new IllegalStateException("Property not found: %s".formatted(name));
+  }
+
+  private static InputStream open(String resource) throws IOException {
+    InputStream inputStream = BenchmarkFixtures.class.getClassLoader().getResourceAsStream(resource);
+
+    if (inputStream == null) {
+      throw new IOException("Resource not found: %s".formatted(resource));
+    }
+
+    return inputStream;
+  }
+
+  private BenchmarkFixtures() {
+    throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+  }
+}
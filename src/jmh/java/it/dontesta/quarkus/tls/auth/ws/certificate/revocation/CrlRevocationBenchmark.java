@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.certificate.revocation;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLEntry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the revocation check of a serial number against a CRL of 100,000 entries, indexed
+ * by {@link RevokedSerials} and as an {@link X509CRL} of the JDK, and the parsing of the CRL by
+ * the streaming {@link CrlParser} and by the {@link CertificateFactory} of the JDK.
+ *
+ * <p>Run it with
+ * {@code mvn -Pjmh test-compile exec:exec@jmh -Djmh.includes=CrlRevocationBenchmark}; the GC
+ * profiler reports the bytes allocated per lookup and per parsing ({@code gc.alloc.rate.norm}).
+ *
+ * @author Antonio Musarra
+ * @see CrlParser
+ * @see RevokedSerials
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CrlRevocationBenchmark {
+
+  @Setup
+  public void setUp() throws Exception {
+    Random random = new Random(42);
+    List<BigInteger> serials = new ArrayList<>();
+
+    // Random serial numbers of 16 octets, as issued by most CAs, and sequential ones
+    for (int i = 0; i < CRL_ENTRIES; i++) {
+      serials.add(i % 4 == 0 ? BigInteger.valueOf(1_000_000L + i) : new BigInteger(127, random));
+    }
+
+    KeyPair issuerKeys = CrlParserTest.keyPair("RSA");
+    crl = CrlParserTest.signedCrl(issuerKeys.getPrivate(), "SHA256withRSA",
+        "1.2.840.113549.1.1.11", serials, null);
+    revokedSerials = CrlParserTest.parse(crl, issuerKeys.getPublic());
+    jdkCrl = (X509CRL) CertificateFactory.getInstance("X.509")
+        .generateCRL(new ByteArrayInputStream(crl));
+    revokedSerial = serials.get(CRL_ENTRIES / 2 + 1);
+    validSerial = new BigInteger(127, random);
+    this.issuerKeys = issuerKeys;
+  }
+
+  @Benchmark
+  public boolean containsRevoked() {
+    return revokedSerials.contains(revokedSerial);
+  }
+
+  @Benchmark
+  public boolean containsValid() {
+    return revokedSerials.contains(validSerial);
+  }
+
+  @Benchmark
+  public X509CRLEntry jdkCrlRevoked() {
+    return jdkCrl.getRevokedCertificate(revokedSerial);
+  }
+
+  @Benchmark
+  public X509CRLEntry jdkCrlValid() {
+    return jdkCrl.getRevokedCertificate(validSerial);
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public RevokedSerials parseStreaming() throws Exception {
+    return CrlParserTest.parse(crl, issuerKeys.getPublic());
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public X509CRL parseJdk() throws Exception {
+    X509CRL parsedCrl = (X509CRL) CertificateFactory.getInstance("X.509")
+        .generateCRL(new ByteArrayInputStream(crl));
+    parsedCrl.verify(issuerKeys.getPublic());
+    // The entries are decoded when the CRL is parsed, the revocation check needs their map
+    parsedCrl.getRevokedCertificate(validSerial);
+    return parsedCrl;
+  }
+
+  private static final int CRL_ENTRIES = 100_000;
+
+  private byte[] crl;
+
+  private KeyPair issuerKeys;
+
+  private RevokedSerials revokedSerials;
+
+  private X509CRL jdkCrl;
+
+  private BigInteger revokedSerial;
+
+  private BigInteger validSerial;
+}
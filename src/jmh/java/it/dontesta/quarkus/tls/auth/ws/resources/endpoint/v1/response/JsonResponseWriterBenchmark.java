@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.resources.endpoint.v1.response;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.vertx.core.MultiMap;
+import it.dontesta.quarkus.tls.auth.ws.BenchmarkFixtures;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.cert.CertificateParsingException;
+import java.security.cert.X509Certificate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the serialization of the response of the connection-info endpoint, with the
+ * certificate blocks already computed (as they are after the first request of a TLS session):
+ * the graph of maps, with the copy of the request headers, serialized by the Jackson
+ * ObjectMapper ({@code mapGraph}), against the {@link ConnectionInfo} record written by the
+ * {@link JsonResponseWriter} ({@code streaming}), and the projection of the fields needed by
+ * the lightweight callers, computing the client block on each request
+ * ({@code streamingProjected}).
+ *
+ * <p>Run it with
+ * {@code mvn -Pjmh test-compile exec:exec@jmh -Djmh.includes=JsonResponseWriterBenchmark}.
+ *
+ * @author Antonio Musarra
+ * @see JsonResponseWriter
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonResponseWriterBenchmark {
+
+  @Setup
+  public void setUp() throws CertificateParsingException {
+    X509Certificate serverCertificate =
+        BenchmarkFixtures.loadPemCertificate("certs/server_cert.pem");
+    X509Certificate clientCertificate = BenchmarkFixtures.loadClientCertificate(
+        "certs/client_multi_roles_cert.p12",
+        "%test.client.tls.https.key-store-client-2.p12.password");
+    Map<String, String> customExtensions =
+        Map.of("role", "User,Administrator,HorseManager", "deviceId", "MTcyNjQ4MDM1NzM1MDM4");
+
+    serverInfo = CertificateInfo.of(serverCertificate, Map::of, FieldProjection.ALL);
+    clientInfo = CertificateInfo.of(clientCertificate, () -> customExtensions,
+        FieldProjection.ALL);
+    this.clientCertificate = clientCertificate;
+    serverInfoMap = toMap(serverInfo);
+    clientInfoMap = toMap(clientInfo);
+
+    headers = MultiMap.caseInsensitiveMultiMap()
+        .add("Host", "localhost:8443")
+        .add("User-Agent", "curl/8.7.1")
+        .add("Accept", "*/*")
+        .add("Accept-Encoding", "gzip, deflate, br")
+        .add("Accept-Language", "it-IT,it;q=0.9,en-US;q=0.8,en;q=0.7")
+        .add("Connection", "keep-alive")
+        .add("Cache-Control", "no-cache")
+        .add("X-Request-Id", "2f1c0d8e-3a5b-4c7d-9e0f-1a2b3c4d5e6f");
+  }
+
+  @Benchmark
+  public byte[] mapGraph() throws IOException {
+    Map<String, Object> connectionInfo = new HashMap<>();
+    connectionInfo.put("isSecure", true);
+    connectionInfo.put("httpProtocol", "HTTP_2");
+    connectionInfo.put("userAgent", headers.get("User-Agent"));
+
+    Map<String, String> requestHeaders = new HashMap<>();
+    headers.forEach(header -> requestHeaders.put(header.getKey(), header.getValue()));
+    connectionInfo.put("httpRequestHeaders", requestHeaders);
+
+    connectionInfo.put("protocol", "TLSv1.3");
+    connectionInfo.put("cipherSuite", "TLS_AES_256_GCM_SHA384");
+    connectionInfo.put("server", serverInfoMap);
+    connectionInfo.put("client", clientInfoMap);
+    connectionInfo.put("clientAddress", "127.0.0.1:52044");
+    connectionInfo.put("clientPort", 52044);
+
+    return OBJECT_MAPPER.writeValueAsBytes(connectionInfo);
+  }
+
+  @Benchmark
+  public int streaming() throws IOException {
+    return write(new ConnectionInfo(true, "HTTP_2", headers.get("User-Agent"), headers,
+        "TLSv1.3", "TLS_AES_256_GCM_SHA384", projection -> serverInfo, projection -> clientInfo,
+        "127.0.0.1:52044", 52044, FieldProjection.ALL));
+  }
+
+  @Benchmark
+  public int streamingProjected() throws IOException {
+    // The client block limited to the common name is computed for every request
+    return write(new ConnectionInfo(true, "HTTP_2", headers.get("User-Agent"), headers,
+        "TLSv1.3", "TLS_AES_256_GCM_SHA384", projection -> serverInfo,
+        projection -> clientBlock(projection), "127.0.0.1:52044", 52044,
+        FieldProjection.parse(PROJECTED_FIELDS)));
+  }
+
+  private int write(ConnectionInfo connectionInfo) throws IOException {
+    // The output stream stands for the pooled buffer of the Vert.x response
+    outputStream.reset();
+    WRITER.writeTo(connectionInfo, ConnectionInfo.class, ConnectionInfo.class, null, null, null,
+        outputStream);
+    return outputStream.size();
+  }
+
+  private CertificateInfo clientBlock(FieldProjection projection) {
+    try {
+      return CertificateInfo.of(clientCertificate, Map::of, projection);
+    } catch (CertificateParsingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static Map<String, Object> toMap(CertificateInfo certificateInfo) {
+    Map<String, Object> certInfo = new HashMap<>();
+    certInfo.put("certSubject", certificateInfo.certSubject());
+    certInfo.put("certCommonName", certificateInfo.certCommonName());
+    certInfo.put("certIssuer", certificateInfo.certIssuer());
+    certInfo.put("certSerialNumber", certificateInfo.certSerialNumber());
+    certInfo.put("notBefore", certificateInfo.notBefore());
+    certInfo.put("notAfter", certificateInfo.notAfter());
+    certInfo.put("keyAlgorithm", certificateInfo.keyAlgorithm());
+    certInfo.put("keySize", certificateInfo.keySize());
+    certInfo.put("subjectAlternativeNames", certificateInfo.subjectAlternativeNames());
+    certInfo.put("certPEM", certificateInfo.certPem());
+    certInfo.put("customExtensions", certificateInfo.customExtensions());
+    return certInfo;
+  }
+
+  private static final String PROJECTED_FIELDS = "protocol,cipherSuite,client.certCommonName";
+
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+  private static final JsonResponseWriter WRITER = new JsonResponseWriter();
+
+  private final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(8192);
+
+  private X509Certificate clientCertificate;
+
+  private CertificateInfo serverInfo;
+
+  private CertificateInfo clientInfo;
+
+  private Map<String, Object> serverInfoMap;
+
+  private Map<String, Object> clientInfoMap;
+
+  private MultiMap headers;
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.security.access;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the lookup of the keys of a client certificate in a deny list of one million
+ * entries, indexed by {@link DeviceAccessList} and by a {@link HashSet} of the boxed keys.
+ *
+ * <p>Run it with
+ * {@code mvn -Pjmh test-compile exec:exec@jmh -Djmh.includes=DeviceAccessListBenchmark}; the GC
+ * profiler reports the bytes allocated per lookup ({@code gc.alloc.rate.norm}).
+ *
+ * @author Antonio Musarra
+ * @see DeviceAccessList
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeviceAccessListBenchmark {
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(42);
+    DeviceAccessList.Builder builder = new DeviceAccessList.Builder();
+    hashSet = new HashSet<>();
+
+    for (int i = 0; i < LIST_ENTRIES; i++) {
+      DeviceAccessKey key = new DeviceAccessKey(random.nextLong(), random.nextLong());
+      builder.add(key);
+      hashSet.add(key);
+    }
+
+    list = builder.build();
+    listedKeys = new DeviceAccessKeys(null, hashSet.iterator().next());
+    unlistedKeys = new DeviceAccessKeys(new DeviceAccessKey(random.nextLong(), random.nextLong()),
+        DeviceAccessKey.ofDeviceId("unlisted-device"));
+  }
+
+  @Benchmark
+  public boolean containsListed() {
+    return listedKeys.isIn(list);
+  }
+
+  @Benchmark
+  public boolean containsUnlisted() {
+    return unlistedKeys.isIn(list);
+  }
+
+  @Benchmark
+  public boolean hashSetUnlisted() {
+    return hashSet.contains(unlistedKeys.certificate())
+        || hashSet.contains(unlistedKeys.deviceId());
+  }
+
+  private static final int LIST_ENTRIES = 1_000_000;
+
+  private DeviceAccessList list;
+
+  private Set<DeviceAccessKey> hashSet;
+
+  private DeviceAccessKeys listedKeys;
+
+  private DeviceAccessKeys unlistedKeys;
+}
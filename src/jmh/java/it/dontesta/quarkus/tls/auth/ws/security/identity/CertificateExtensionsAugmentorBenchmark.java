@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.security.identity;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.quarkus.security.credential.CertificateCredential;
+import io.quarkus.security.identity.SecurityIdentity;
+import io.quarkus.security.runtime.QuarkusSecurityIdentity;
+import it.dontesta.quarkus.tls.auth.ws.BenchmarkFixtures;
+import it.dontesta.quarkus.tls.auth.ws.certificate.etsi.gov.TslTrustManager;
+import it.dontesta.quarkus.tls.auth.ws.certificate.revocation.CrlRevocationIndex;
+import it.dontesta.quarkus.tls.auth.ws.security.access.DeviceAccessIndex;
+import it.dontesta.quarkus.tls.auth.ws.security.identity.CertificateExtensionsConfig.ExtensionMapping;
+import it.dontesta.quarkus.tls.auth.ws.security.identity.CertificateExtensionsConfig.MappingType;
+import it.dontesta.quarkus.tls.auth.ws.security.policy.CertificateRolesPolicy;
+import it.dontesta.quarkus.tls.auth.ws.utils.DeviceIdUtil;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import org.jboss.logging.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the augmentation of the SecurityIdentity with the roles and the attributes of a
+ * client certificate, with the mappings of {@code application.properties}: the whole chain with
+ * the identity cache warm ({@code augment}), the same on a TLS session keeping the decoded
+ * extensions of a previous request ({@code augmentInSession}), the rejection of a certificate
+ * whose DeviceId doesn't verify, mapped on each request ({@code mapRejected}) and answered by
+ * the negative cache ({@code augmentRejected}), the decoding and validation of the extensions
+ * done on a cache miss ({@code mapExtensions}) and the check of the roles allowed, as a mask
+ * test of the {@link CertificateRolesPolicy} ({@code checkRolesByMask}) and by name
+ * ({@code checkRolesByName}).
+ *
+ * <p>Run it with
+ * {@code mvn -Pjmh test-compile exec:exec@jmh -Djmh.includes=CertificateExtensionsAugmentorBenchmark}.
+ *
+ * @author Antonio Musarra
+ * @see CertificateExtensionsAugmentor
+ * @see CertificateExtensionMapper
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CertificateExtensionsAugmentorBenchmark {
+
+  @Setup
+  public void setUp() throws NoSuchAlgorithmException {
+    X509Certificate certificate = BenchmarkFixtures.loadClientCertificate(
+        "certs/client_multi_roles_cert.p12",
+        "%test.client.tls.https.key-store-client-2.p12.password");
+    DeviceIdUtil deviceIdUtil =
+        new DeviceIdUtil(BenchmarkFixtures.property("client.cert.device.id.secret-key"));
+    Logger log = Logger.getLogger(CertificateExtensionsAugmentorBenchmark.class);
+    RoleRegistry roleRegistry = new RoleRegistry();
+    policy = new CertificateRolesPolicy(List.of("User", "Administrator"), roleRegistry);
+
+    Map<String, ExtensionMapping> mappings = Map.of(
+        "role", new Mapping("1.3.6.1.4.1.99999.1", MappingType.ROLES, "Role=",
+            "^Role=([A-Za-z]+(?:,[A-Za-z]+)*+)$", null, false),
+        "deviceId", new Mapping("1.3.6.1.4.1.99999.2", MappingType.ATTRIBUTE, "DeviceId=",
+            null, DeviceIdExtensionValidator.NAME, true));
+
+    mapper = new CertificateExtensionMapper(() -> mappings,
+        List.of(new DeviceIdExtensionValidator(deviceIdUtil)), roleRegistry, log);
+    augmentor = new CertificateExtensionsAugmentor(log, mapper,
+        new CertificateIdentityCache(10_000, Duration.ofMinutes(10), 10_000,
+            Duration.ofSeconds(30), new SimpleMeterRegistry(), log),
+        new TslTrustManager(List.of("certs/ca_cert.pem"), Optional.empty(), log), new CrlRevocationIndex(),
+        new DeviceAccessIndex(), "deviceId", true);
+    // The DeviceId of the certificate doesn't verify with another secret key
+    rejectingMapper = new CertificateExtensionMapper(() -> mappings,
+        List.of(new DeviceIdExtensionValidator(new DeviceIdUtil("another-secret-key"))),
+        roleRegistry, log);
+    rejectingAugmentor = new CertificateExtensionsAugmentor(log, rejectingMapper,
+        new CertificateIdentityCache(10_000, Duration.ofMinutes(10), 10_000,
+            Duration.ofSeconds(30), new SimpleMeterRegistry(), log),
+        new TslTrustManager(List.of("certs/ca_cert.pem"), Optional.empty(), log), new CrlRevocationIndex(),
+        new DeviceAccessIndex(), "deviceId", true);
+    identity = QuarkusSecurityIdentity.builder()
+        .setPrincipal(certificate.getSubjectX500Principal())
+        .addCredential(new CertificateCredential(certificate))
+        .build();
+    clientCertificate = certificate;
+    // A session of the JDK, standing for the one of the connection of the requests
+    sslSession = SSLContext.getDefault().createSSLEngine().getSession();
+    augmentedIdentity = augment();
+    rolesAllowedByName = Set.of("User", "Administrator");
+    rolesByName = new HashSet<>(augmentedIdentity.getRoles());
+  }
+
+  @Benchmark
+  public SecurityIdentity augment() {
+    return augmentor.augment(identity, null).await().indefinitely();
+  }
+
+  @Benchmark
+  public SecurityIdentity augmentInSession() {
+    return augmentor.augmentInSession(identity, sslSession).await().indefinitely();
+  }
+
+  @Benchmark
+  public CertificateExtensions mapExtensions() {
+    return mapper.map(clientCertificate);
+  }
+
+  @Benchmark
+  public SecurityException mapRejected() {
+    try {
+      rejectingMapper.map(clientCertificate);
+      throw new IllegalStateException("The certificate was not rejected");
+    } catch (SecurityException e) {
+      return e;
+    }
+  }
+
+  @Benchmark
+  public SecurityException augmentRejected() {
+    try {
+      rejectingAugmentor.augment(identity, null);
+      throw new IllegalStateException("The certificate was not rejected");
+    } catch (SecurityException e) {
+      return e;
+    }
+  }
+
+  @Benchmark
+  public boolean checkRolesByMask() {
+    return policy.isPermitted(augmentedIdentity);
+  }
+
+  @Benchmark
+  public boolean checkRolesByName() {
+    // The check of the roles-allowed policy of Quarkus over the roles copied by its builder
+    for (String role : rolesAllowedByName) {
+      if (rolesByName.contains(role)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * A mapping of {@link CertificateExtensionsConfig} declared in code.
+   */
+  private record Mapping(String oid, MappingType type, String prefixValue, String patternValue,
+                         String validatorValue, boolean required) implements ExtensionMapping {
+
+    @Override
+    public Optional<String> prefix() {
+      return Optional.ofNullable(prefixValue);
+    }
+
+    @Override
+    public Optional<String> pattern() {
+      return Optional.ofNullable(patternValue);
+    }
+
+    @Override
+    public String separator() {
+      return ",";
+    }
+
+    @Override
+    public Optional<String> attributeName() {
+      return Optional.empty();
+    }
+
+    @Override
+    public Optional<String> validator() {
+      return Optional.ofNullable(validatorValue);
+    }
+  }
+
+  private CertificateExtensionMapper mapper;
+
+  private CertificateExtensionsAugmentor augmentor;
+
+  private CertificateExtensionMapper rejectingMapper;
+
+  private CertificateExtensionsAugmentor rejectingAugmentor;
+
+  private SecurityIdentity identity;
+
+  private X509Certificate clientCertificate;
+
+  private SSLSession sslSession;
+
+  private CertificateRolesPolicy policy;
+
+  private SecurityIdentity augmentedIdentity;
+
+  private Set<String> rolesAllowedByName;
+
+  private Set<String> rolesByName;
+}
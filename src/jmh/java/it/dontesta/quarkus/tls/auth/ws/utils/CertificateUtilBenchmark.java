@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.utils;
+
+import it.dontesta.quarkus.tls.auth.ws.BenchmarkFixtures;
+import java.io.IOException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERUTF8String;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the methods of {@link CertificateUtil} called for every request on the server
+ * certificate of the application ({@code certs/server_cert.pem}) and on the extensions of a test
+ * client certificate. The decoding of the extensions is compared with the BouncyCastle one
+ * ({@code decodeExtensionValueWithBouncyCastle}), the extraction of the Common Name, cached
+ * ({@code getCommonName}) and not cached ({@code readCommonName}), with the previous split of the
+ * string form of the subject ({@code getCommonNameFromSplitName}).
+ *
+ * <p>Run it with {@code mvn -Pjmh test-compile exec:exec@jmh -Djmh.includes=CertificateUtilBenchmark}.
+ *
+ * @author Antonio Musarra
+ * @see CertificateUtil
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CertificateUtilBenchmark {
+
+  @Setup
+  public void setUp() throws IOException {
+    serverCertificate = BenchmarkFixtures.loadPemCertificate("certs/server_cert.pem");
+    clientCertificate = BenchmarkFixtures.loadClientCertificate(
+        "certs/client_multi_roles_cert.p12",
+        "%test.client.tls.https.key-store-client-2.p12.password");
+
+    byte[] roleExtension = clientCertificate.getExtensionValue(ROLES_OID);
+    rolesExtensionValue = roleExtension != null ? roleExtension
+        : new DEROctetString(new DERUTF8String("Role=Admin,User").getEncoded()).getEncoded();
+  }
+
+  @Benchmark
+  public String decodeExtensionValue() {
+    return CertificateUtil.decodeExtensionValue(rolesExtensionValue);
+  }
+
+  @Benchmark
+  public String decodeExtensionValueWithBouncyCastle() {
+    return CertificateUtil.decodeExtensionValueWithBouncyCastle(rolesExtensionValue);
+  }
+
+  @Benchmark
+  public String getCommonName() {
+    return CertificateUtil.getCommonName(clientCertificate);
+  }
+
+  @Benchmark
+  public Optional<String> readCommonName() {
+    return CertificateUtil.readCommonName(clientCertificate);
+  }
+
+  @Benchmark
+  public String getCommonNameFromSplitName() {
+    return getCommonNameFromSplitName(clientCertificate);
+  }
+
+  @Benchmark
+  public String convertToPem() {
+    return CertificateUtil.convertToPem(serverCertificate);
+  }
+
+  @Benchmark
+  public int getKeySize() {
+    return CertificateUtil.getKeySize(serverCertificate);
+  }
+
+  /**
+   * The previous implementation of {@link CertificateUtil#getCommonName(X509Certificate)},
+   * splitting the string form of the subject on the commas.
+   */
+  private static String getCommonNameFromSplitName(X509Certificate cert) {
+    return Arrays.stream(cert.getSubjectX500Principal().getName().split(","))
+        .map(String::trim)
+        .filter(part -> part.startsWith("CN=") || part.startsWith("cn="))
+        .map(part -> part.substring(3))
+        .findFirst()
+        .orElse(null);
+  }
+
+  private static final String ROLES_OID = "1.3.6.1.4.1.99999.1";
+
+  private X509Certificate serverCertificate;
+
+  private X509Certificate clientCertificate;
+
+  private byte[] rolesExtensionValue;
+}
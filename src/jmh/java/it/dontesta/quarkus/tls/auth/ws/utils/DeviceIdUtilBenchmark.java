@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.utils;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the generation of the Device ID and compares its verification by
+ * {@link DeviceIdUtil} with the previous implementation ({@link LegacyDeviceIdVerifier}).
+ *
+ * <p>Run it with {@code mvn -Pjmh test-compile exec:exec@jmh -Djmh.includes=DeviceIdUtilBenchmark};
+ * the GC profiler reports the bytes allocated per verification ({@code gc.alloc.rate.norm}).
+ *
+ * @author Antonio Musarra
+ * @see DeviceIdUtil#verifyDeviceId(String)
+ * @see DeviceIdUtil#generateDeviceId()
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeviceIdUtilBenchmark {
+
+  @Setup
+  public void setUp() {
+    deviceIdUtil = new DeviceIdUtil(SECRET_KEY);
+    legacyVerifier = new LegacyDeviceIdVerifier(SECRET_KEY);
+    deviceId = deviceIdUtil.generateDeviceId();
+  }
+
+  @Benchmark
+  public boolean verifyDeviceId() {
+    return deviceIdUtil.verifyDeviceId(deviceId);
+  }
+
+  @Benchmark
+  public boolean verifyDeviceIdLegacy() {
+    return legacyVerifier.verifyDeviceId(deviceId);
+  }
+
+  @Benchmark
+  public String generateDeviceId() {
+    return deviceIdUtil.generateDeviceId();
+  }
+
+  private static final String SECRET_KEY = "my_secret_key_for_generate_device_id";
+
+  private DeviceIdUtil deviceIdUtil;
+
+  private LegacyDeviceIdVerifier legacyVerifier;
+
+  private String deviceId;
+}
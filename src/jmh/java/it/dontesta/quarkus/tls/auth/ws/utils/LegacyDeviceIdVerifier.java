@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.util.Base64;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * The Device ID verification as it was implemented before {@link DeviceIdUtil} became a bean,
+ * kept only as the baseline of {@link DeviceIdUtilBenchmark}.
+ *
+ * @author Antonio Musarra
+ * @see DeviceIdUtilBenchmark
+ */
+final class LegacyDeviceIdVerifier {
+
+  LegacyDeviceIdVerifier(String secretKey) {
+    this.secretKey = secretKey;
+  }
+
+  boolean verifyDeviceId(String encodedDeviceId) {
+    if (encodedDeviceId == null) {
+      return false;
+    }
+
+    String deviceIdToVerify;
+
+    try {
+      deviceIdToVerify =
+          new String(Base64.getUrlDecoder().decode(encodedDeviceId), StandardCharsets.UTF_8);
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+
+    String[] parts = deviceIdToVerify.split("#");
+    if (parts.length != 4) {
+      return false;
+    }
+
+    String combinedString = String.join("#", parts[0], parts[1], parts[2]);
+    String hmacProvided = parts[3];
+
+    String hmacCalculated = generateHmacSha256(combinedString, secretKey);
+
+    return hmacProvided.equalsIgnoreCase(hmacCalculated);
+  }
+
+  private static String generateHmacSha256(String data, String key) {
+    try {
+      Mac mac = Mac.getInstance("HmacSHA256");
+      Key secretKey = new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+      mac.init(secretKey);
+      byte[] hmacBytes = mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+
+      StringBuilder hexString = new StringBuilder();
+      for (byte b : hmacBytes) {
+        hexString.append(String.format("%02x", b));
+      }
+      return hexString.toString();
+    } catch (Exception e) {
+      throw new RuntimeException("Failed to generate HMAC", e);
+    }
+  }
+
+  private final String secretKey;
+}
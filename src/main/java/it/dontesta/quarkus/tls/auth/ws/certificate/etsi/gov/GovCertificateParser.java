@@ -6,12 +6,12 @@
 package it.dontesta.quarkus.tls.auth.ws.certificate.etsi.gov;
 
 import io.smallrye.common.constraint.NotNull;
+import jakarta.annotation.PreDestroy;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.math.BigInteger;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -22,13 +22,27 @@ import java.security.cert.CertificateExpiredException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.CertificateNotYetValidException;
 import java.security.cert.X509Certificate;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collection;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
 import java.util.stream.IntStream;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathFactory;
@@ -62,20 +76,42 @@ public class GovCertificateParser {
   @ConfigProperty(name = "gov.trust.certs.pem.bundle.file.name")
   String outputPemBundleFileName;
 
+  @ConfigProperty(name = "gov.trust.certs.snapshots.keep", defaultValue = "3")
+  int snapshotsToKeep;
+
+  @ConfigProperty(name = "gov.trust.certs.trust-manager.in-memory.enabled", defaultValue = "true")
+  boolean inMemoryTrustManagerEnabled;
+
+  @ConfigProperty(name = "gov.trust.certs.pem.export.enabled", defaultValue = "false")
+  boolean pemExportEnabled;
+
+  @ConfigProperty(name = "gov.trust.certs.tsl.ingest.parallelism", defaultValue = "0")
+  int ingestParallelism;
+
   /**
-   * Init the outputPath for the PEM files. The outputPath is created as a temporary directory.
+   * Init the outputPath for the PEM files. The outputPath contains the versioned snapshots of the
+   * certificates (see {@link TrustSnapshotStore}): it is the configured snapshots path, kept
+   * across the restarts for the warm start of the {@link TslTrustManager}, or else a temporary
+   * directory.
    *
-   * @param log the logger.
+   * @param snapshotsPath the directory of the trust snapshots kept across the restarts.
+   * @param log           the logger.
    */
   @Inject
-  public GovCertificateParser(Logger log) {
+  public GovCertificateParser(
+      @ConfigProperty(name = "gov.trust.certs.snapshots.path") Optional<String> snapshotsPath,
+      Logger log) {
     this.log = log;
+    this.snapshotsPathConfigured = snapshotsPath.isPresent();
     try {
-      outputPath = Files.createTempDirectory("gov-trust-certs").toAbsolutePath();
+      outputPath = snapshotsPath.isPresent()
+          ? Files.createDirectories(Path.of(snapshotsPath.get())).toAbsolutePath().normalize()
+          : Files.createTempDirectory("gov-trust-certs").toAbsolutePath();
       log.info("Gov Trust Certificates will be saved to: %s".formatted(outputPath.toString()));
     } catch (IOException e) {
-      log.error("Could not create temp directory for certificates", e);
+      log.error("Could not create the directory for certificates", e);
     }
+    snapshotStore = new TrustSnapshotStore(outputPath, log);
   }
 
   /**
@@ -99,32 +135,65 @@ public class GovCertificateParser {
   }
 
   /**
-   * Get the output path for the certificates.
+   * Get the output path for the certificates: the symbolic link to the last published snapshot.
    *
    * @return the output path for the certificates.
    * @see #outputPath
+   * @see TrustSnapshotStore#current()
    */
   public String getOutputPath() {
-    return outputPath.toString();
+    return snapshotStore.current().toString();
+  }
+
+  /**
+   * Whether the certificates are exported as PEM files and bundle. The export is always enabled
+   * when the in-memory trust manager is disabled, because the TLS registry reads the bundle.
+   *
+   * @return true if the certificates are exported as PEM files.
+   * @see TslTrustManager
+   */
+  public boolean isPemExportEnabled() {
+    return pemExportEnabled || !inMemoryTrustManagerEnabled;
+  }
+
+  /**
+   * Whether the certificates are written into the versioned snapshots: when the PEM export is
+   * enabled or the snapshots path is configured, for the warm start of the
+   * {@link TslTrustManager}.
+   *
+   * @return true if the certificates are written into the snapshots.
+   * @see #isPemExportEnabled()
+   */
+  public boolean isSnapshotEnabled() {
+    return isPemExportEnabled() || snapshotsPathConfigured;
+  }
+
+  /**
+   * Get the valid certificates of the last TSL parsed, decoded and ready to be trusted.
+   *
+   * @return the certificates of the last TSL parsed.
+   * @see TslTrustManager#update(Collection)
+   */
+  public Collection<X509Certificate> getTrustedCertificates() {
+    return trustedCertificates.values();
   }
 
   /**
    * Parse the XML content and save the certificates as PEM files.
    * The certificates are extracted from the XML content and saved as PEM files
-   * in the output path specified in the configuration (@see #outputPath).
+   * in a new snapshot under the output path (@see #outputPath), which is published only if the
+   * whole content is parsed.
    *
    * @param xmlContent the XML content containing the certificates in Base64 format.
+   * @return true if the certificates were saved and published, false otherwise.
    */
-  public void parseAndSaveCerts(@NotNull String xmlContent) {
-    try {
+  public boolean parseAndSaveCerts(@NotNull String xmlContent) {
+    return saveSnapshot(certificateConsumer -> {
       // Check if the XML content is null or empty
       if (xmlContent == null || xmlContent.isBlank() || xmlContent.isEmpty()) {
         throw new IllegalArgumentException("TSL XML content is null or empty");
       }
 
-      // Clean the output path before parsing and saving the certificates
-      cleanOutputPath();
-
       DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
       factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
 
@@ -144,7 +213,8 @@ public class GovCertificateParser {
       // The value http://uri.etsi.org/TrstSvc/TrustedList/Svcstatus/recognisedatnationallevel means
       // that the service is recognized at the national level.
       String expression =
-          "//ServiceInformation[ServiceTypeIdentifier='http://uri.etsi.org/TrstSvc/Svctype/IdV' and ServiceStatus='http://uri.etsi.org/TrstSvc/TrustedList/Svcstatus/recognisedatnationallevel']";
+          "//ServiceInformation[ServiceTypeIdentifier='%s' and ServiceStatus='%s']".formatted(
+              SERVICE_TYPE_IDV, SERVICE_STATUS_RECOGNISED_AT_NATIONAL_LEVEL);
 
       NodeList serviceTypeNodes =
           (NodeList) xPath.evaluate(expression, doc, XPathConstants.NODESET);
@@ -156,10 +226,100 @@ public class GovCertificateParser {
           .map(serviceInfoElement -> serviceInfoElement.getElementsByTagName("X509Certificate")
               .item(0))
           .filter(certNode -> certNode != null && certNode.getNodeType() == Node.ELEMENT_NODE)
-          .forEach(certNode -> saveCertificateAsPem(certNode.getTextContent().trim(),
-              outputPath.toString()));
-    } catch (Exception e) {
-      log.error("Error parsing XML", e);
+          .forEach(certNode -> certificateConsumer.accept(certNode.getTextContent().trim()));
+    });
+  }
+
+  /**
+   * Parse the XML stream and save the certificates as PEM files.
+   *
+   * <p>Unlike {@link #parseAndSaveCerts(String)}, the XML is read with a StAX streaming reader
+   * directly from the given stream, without building the DOM of the whole document. The
+   * ServiceTypeIdentifier and the ServiceStatus of every ServiceInformation element are matched
+   * while the element is read, and each matching certificate is saved as soon as it is known to
+   * match; at most one certificate is kept in memory at a time.
+   *
+   * @param xmlStream the stream of the XML content containing the certificates in Base64 format.
+   * @return true if the certificates were saved and published, false otherwise.
+   * @see #parseCertificates(InputStream, Consumer)
+   */
+  public boolean parseAndSaveCerts(@NotNull InputStream xmlStream) {
+    return saveSnapshot(certificateConsumer -> {
+      // Check if the XML stream is null
+      if (xmlStream == null) {
+        throw new IllegalArgumentException("TSL XML stream is null");
+      }
+
+      parseCertificates(xmlStream, certificateConsumer);
+    });
+  }
+
+  /**
+   * Parse the XML stream and pass to the consumer the certificate (in Base64 format) of every
+   * ServiceInformation element with the ServiceTypeIdentifier {@value #SERVICE_TYPE_IDV} and the
+   * ServiceStatus {@value #SERVICE_STATUS_RECOGNISED_AT_NATIONAL_LEVEL}.
+   *
+   * <p>As in the DOM parsing, only the first X509Certificate of a ServiceInformation element is
+   * considered. Because the ETSI TS 119 612 schema puts the ServiceStatus after the
+   * ServiceDigitalIdentity, the certificate is buffered until the status of its service is read,
+   * and it is discarded as soon as the service is known not to match.
+   *
+   * @param xmlStream           the stream of the XML content.
+   * @param certificateConsumer the consumer of the matching certificates in Base64 format.
+   * @throws XMLStreamException if the XML content is not well-formed.
+   */
+  void parseCertificates(InputStream xmlStream, Consumer<String> certificateConsumer)
+      throws XMLStreamException {
+    XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(xmlStream);
+
+    try {
+      ServiceInformation service = null;
+      int depth = 0;
+
+      while (reader.hasNext()) {
+        int event = reader.next();
+
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          depth++;
+          String name = reader.getLocalName();
+
+          if (service == null) {
+            if (SERVICE_INFORMATION.equals(name)) {
+              service = new ServiceInformation(depth);
+            }
+            continue;
+          }
+
+          boolean child = depth == service.depth + 1;
+
+          if (child && SERVICE_TYPE_IDENTIFIER.equals(name)) {
+            service.type = reader.getElementText().trim();
+            depth--;
+          } else if (child && SERVICE_STATUS.equals(name)) {
+            service.status = reader.getElementText().trim();
+            depth--;
+          } else if (X509_CERTIFICATE.equals(name) && !service.certificateRead) {
+            String certificate = reader.getElementText().trim();
+            service.certificate = service.mayMatch() ? certificate : null;
+            service.certificateRead = true;
+            depth--;
+          }
+
+          if (!service.mayMatch()) {
+            service.certificate = null;
+          } else if (service.matches() && service.certificate != null) {
+            certificateConsumer.accept(service.certificate);
+            service.certificate = null;
+          }
+        } else if (event == XMLStreamConstants.END_ELEMENT) {
+          if (service != null && depth == service.depth) {
+            service = null;
+          }
+          depth--;
+        }
+      }
+    } finally {
+      reader.close();
     }
   }
 
@@ -183,12 +343,15 @@ public class GovCertificateParser {
 
       Path certPath = outputPath.resolve(getOutputPemBundleFileName());
 
-      try (PemWriter pemWriter = new PemWriter(Files.newBufferedWriter(certPath))) {
-        for (PemObject pemObject : pemObjects) {
-          pemWriter.writeObject(pemObject);
+      // Replace the bundle atomically, so the TLS registry never reads a half-written file
+      TrustSnapshotStore.writeAtomically(certPath, writer -> {
+        try (PemWriter pemWriter = new PemWriter(writer)) {
+          for (PemObject pemObject : pemObjects) {
+            pemWriter.writeObject(pemObject);
+          }
         }
-        log.info("Saved certificate bundle to {%s}".formatted(certPath));
-      }
+      });
+      log.info("Saved certificate bundle to {%s}".formatted(certPath));
 
     } catch (IOException e) {
       log.error("Error saving certificate bundle as PEM", e);
@@ -196,51 +359,154 @@ public class GovCertificateParser {
   }
 
   /**
-   * Clean the output path.
+   * Clean the output path, deleting all the snapshots.
    */
   public void cleanOutputPath() {
-    try (DirectoryStream<Path> stream = Files.newDirectoryStream(outputPath)) {
-      for (Path entry : stream) {
-        Files.delete(entry);
+    snapshotStore.clear();
+  }
+
+  /**
+   * Build a new snapshot with the certificates passed by the parser to the consumer and publish
+   * it. If the parser fails, the snapshot is discarded and the published one is left untouched.
+   *
+   * <p>The certificates are decoded, validated and written in parallel by a bounded pool of
+   * {@code gov.trust.certs.tsl.ingest.parallelism} threads (by default one per core), while the
+   * parser keeps reading the TSL. At most two certificates per thread wait to be ingested. The
+   * pool is owned by the bean and reused across the refreshes.
+   *
+   * <p>The decoded certificates are kept in memory for the {@link TslTrustManager}; the PEM files
+   * are written only if the snapshots are enabled (see {@link #isSnapshotEnabled()}).
+   *
+   * @param parser the parser of the TSL.
+   * @return true if the snapshot was published, false otherwise.
+   */
+  private boolean saveSnapshot(SnapshotParser parser) {
+    TrustSnapshotStore.Snapshot snapshot = null;
+
+    try {
+      TrustSnapshotStore.Snapshot target = isSnapshotEnabled() ? snapshotStore.begin() : null;
+      Map<String, X509Certificate> certificates = new ConcurrentHashMap<>();
+      snapshot = target;
+
+      int parallelism =
+          ingestParallelism > 0 ? ingestParallelism : Runtime.getRuntime().availableProcessors();
+      int maxPending = parallelism * 2;
+      Semaphore pending = new Semaphore(maxPending);
+      ExecutorService pool = ingestPool(parallelism);
+
+      try {
+        parser.parse(certBase64 -> {
+          pending.acquireUninterruptibly();
+          try {
+            pool.execute(() -> {
+              try {
+                addCertificate(certBase64, certificates, target);
+              } finally {
+                pending.release();
+              }
+            });
+          } catch (RejectedExecutionException e) {
+            // The pool was shut down or replaced: the task will never release its permit
+            pending.release();
+            throw e;
+          }
+        });
+      } finally {
+        // Wait for the certificates still being ingested
+        pending.acquireUninterruptibly(maxPending);
       }
-    } catch (IOException e) {
-      log.error("Error cleaning output path", e);
+
+      if (snapshot != null) {
+        snapshotStore.publish(snapshot, snapshotsToKeep);
+      }
+      trustedCertificates = Map.copyOf(certificates);
+      return true;
+    } catch (Exception e) {
+      log.error("Error parsing XML", e);
+
+      if (snapshot != null) {
+        snapshotStore.discard(snapshot);
+      }
+      return false;
     }
   }
 
   /**
-   * Save the certificate as PEM file.
+   * Returns the pool of threads that ingest the certificates, creating it on first use. The pool
+   * lives as long as the bean, so that its threads keep their {@link MessageDigest} and
+   * {@link CertificateFactory} across the refreshes; it is recreated only if the parallelism
+   * changes.
    *
-   * @param certBase64        the certificate in Base64 format.
-   * @param outputPemFilePath the output path for the PEM file.
+   * @param parallelism the number of threads of the pool.
+   * @return the pool of threads that ingest the certificates.
    */
-  private void saveCertificateAsPem(@NotNull String certBase64, @NotNull String outputPemFilePath) {
+  private synchronized ExecutorService ingestPool(int parallelism) {
+    if (ingestPool == null || ingestPoolSize != parallelism) {
+      if (ingestPool != null) {
+        ingestPool.shutdown();
+      }
+      ingestPool = Executors.newFixedThreadPool(parallelism,
+          Thread.ofPlatform().name("tsl-ingest-", 0).daemon().factory());
+      ingestPoolSize = parallelism;
+    }
+    return ingestPool;
+  }
+
+  /**
+   * Shut down the pool of threads that ingest the certificates.
+   */
+  @PreDestroy
+  synchronized void close() {
+    if (ingestPool != null) {
+      ingestPool.shutdownNow();
+      ingestPool = null;
+    }
+  }
+
+  /**
+   * Add the certificate to the certificates of the TSL being parsed and, if the snapshot is not
+   * null, save it as PEM file in the snapshot. A certificate already present in the last TSL
+   * parsed is reused (and its file carried over) without being parsed and written again.
+   *
+   * <p>The certificate is decoded from Base64 once, and the DER bytes are used for the hash, the
+   * parsing and the PEM file. The {@link MessageDigest} and the {@link CertificateFactory} are
+   * reused by every thread of the ingestion pool.
+   *
+   * @param certBase64   the certificate in Base64 format.
+   * @param certificates the certificates of the TSL being parsed, by hash.
+   * @param snapshot     the snapshot being built, or null if the snapshots are disabled.
+   */
+  private void addCertificate(@NotNull String certBase64,
+                              Map<String, X509Certificate> certificates,
+                              TrustSnapshotStore.Snapshot snapshot) {
+    X509Certificate certificate = null;
+    byte[] digest = null;
+
     try {
       if (certBase64 == null || certBase64.isBlank() || certBase64.isEmpty()) {
         throw new IllegalArgumentException("Certificate in Base64 format is null or empty");
       }
 
-      if (!Path.of(outputPemFilePath).toFile().isDirectory()) {
-        throw new IllegalArgumentException("Output path is not a directory");
-      }
-
       byte[] decodedCert = Base64.getDecoder().decode(certBase64);
-      PemObject pemObject = new PemObject("CERTIFICATE", decodedCert);
+      digest = SHA_256.get().digest(decodedCert);
+      String hash = HexFormat.of().formatHex(digest);
 
-      // Verify the certificate is not expired or not yet valid
-      CertificateFactory certFactory = CertificateFactory.getInstance("X.509");
-      X509Certificate certificate =
-          (X509Certificate) certFactory.generateCertificate(new ByteArrayInputStream(decodedCert));
+      certificate = trustedCertificates.get(hash);
+
+      if (certificate == null) {
+        certificate = (X509Certificate) CERTIFICATE_FACTORY.get().generateCertificate(
+            new ByteArrayInputStream(decodedCert));
+      }
 
       // Throws CertificateExpiredException if the certificate is expired
       certificate.checkValidity();
 
-      String hash = String.format("%064x",
-          new BigInteger(1, MessageDigest.getInstance("SHA-256").digest(certBase64.getBytes())));
+      if (certificates.putIfAbsent(hash, certificate) != null
+          || snapshot == null || snapshot.carryOver(hash, Instant.now())) {
+        return;
+      }
 
-      Path certPath = Optional.of(outputPemFilePath)
-          .map(pemFilePath -> Path.of(pemFilePath).resolve(hash + ".pem"))
-          .orElseGet(() -> outputPath.resolve(hash + ".pem"));
+      Path certPath = snapshot.directory().resolve(hash + TrustSnapshotStore.PEM_EXTENSION);
 
       // Normalize the path to prevent path traversal
       certPath = certPath.normalize();
@@ -251,44 +517,77 @@ public class GovCertificateParser {
       }
 
       try (PemWriter pemWriter = new PemWriter(Files.newBufferedWriter(certPath))) {
-        pemWriter.writeObject(pemObject);
+        pemWriter.writeObject(new PemObject("CERTIFICATE", decodedCert));
+      }
+      TrustSnapshotStore.fsync(certPath, false);
+      snapshot.added(hash, certificate.getNotAfter().toInstant());
 
-        if (log.isDebugEnabled()) {
-          log.debug("Saved certificate to {%s}".formatted(certPath));
-        }
+      if (log.isDebugEnabled()) {
+        log.debug("Saved certificate to {%s}".formatted(certPath));
       }
 
     } catch (CertificateExpiredException | CertificateNotYetValidException e) {
-      try {
-        byte[] decodedCert = Base64.getDecoder().decode(certBase64);
-        CertificateFactory certFactory = CertificateFactory.getInstance("X.509");
-        X509Certificate certificate = (X509Certificate) certFactory.generateCertificate(
-            new ByteArrayInputStream(decodedCert));
+      log.warn(
+          "Certificate is expired or not yet valid. Subject: {%s}, Fingerprint: {%s}".formatted(
+              certificate.getSubjectX500Principal().getName(),
+              HexFormat.ofDelimiter(":").withUpperCase().formatHex(digest)));
+    } catch (IOException | CertificateException | IllegalArgumentException e) {
+      log.error("Error saving certificate as PEM", e);
+    }
+  }
 
-        // Extract subject
-        String subject = certificate.getSubjectX500Principal().getName();
+  /**
+   * A parser of the TSL passing the certificates in Base64 format to the consumer.
+   */
+  @FunctionalInterface
+  private interface SnapshotParser {
 
-        // Calculate fingerprint
-        MessageDigest md = MessageDigest.getInstance("SHA-256");
-        byte[] certBytes = certificate.getEncoded();
-        byte[] fingerprintBytes = md.digest(certBytes);
-        StringBuilder fingerprint = new StringBuilder();
-        for (byte b : fingerprintBytes) {
-          fingerprint.append(String.format("%02X:", b));
-        }
-        if (!fingerprint.isEmpty()) {
-          fingerprint.setLength(fingerprint.length() - 1); // Remove trailing colon
-        }
+    void parse(Consumer<String> certificateConsumer) throws Exception;
+  }
 
-        log.warn(
-            "Certificate is expired or not yet valid. Subject: {%s}, Fingerprint: {%s}".formatted(
-                subject, fingerprint.toString()));
-      } catch (CertificateException | NoSuchAlgorithmException ex) {
-        log.error("Error processing expired certificate", ex);
-      }
-    } catch (IOException | NoSuchAlgorithmException | CertificateException e) {
-      log.error("Error saving certificate as PEM", e);
+  /**
+   * The state of the ServiceInformation element being read by the streaming parser.
+   */
+  private static final class ServiceInformation {
+
+    ServiceInformation(int depth) {
+      this.depth = depth;
+    }
+
+    /**
+     * Whether the service can still match, that is the values read so far are the expected ones.
+     */
+    boolean mayMatch() {
+      return (type == null || SERVICE_TYPE_IDV.equals(type))
+          && (status == null || SERVICE_STATUS_RECOGNISED_AT_NATIONAL_LEVEL.equals(status));
     }
+
+    /**
+     * Whether the service matches, that is both the type and the status are the expected ones.
+     */
+    boolean matches() {
+      return SERVICE_TYPE_IDV.equals(type)
+          && SERVICE_STATUS_RECOGNISED_AT_NATIONAL_LEVEL.equals(status);
+    }
+
+    private final int depth;
+    private String type;
+    private String status;
+    private String certificate;
+    private boolean certificateRead;
+  }
+
+  /**
+   * Create the StAX factory used by the streaming parser, with the DTD and the external entities
+   * disabled.
+   *
+   * @return the StAX factory.
+   */
+  private static XMLInputFactory newXmlInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    return factory;
   }
 
   /**
@@ -301,6 +600,46 @@ public class GovCertificateParser {
     return (Element) node;
   }
 
+  /**
+   * The ServiceTypeIdentifier of the eIDAS IdV (Identity Validation Service) service.
+   */
+  static final String SERVICE_TYPE_IDV = "http://uri.etsi.org/TrstSvc/Svctype/IdV";
+
+  /**
+   * The ServiceStatus of a service recognized at the national level.
+   */
+  static final String SERVICE_STATUS_RECOGNISED_AT_NATIONAL_LEVEL =
+      "http://uri.etsi.org/TrstSvc/TrustedList/Svcstatus/recognisedatnationallevel";
+
+  private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  });
+
+  private static final ThreadLocal<CertificateFactory> CERTIFICATE_FACTORY =
+      ThreadLocal.withInitial(() -> {
+        try {
+          return CertificateFactory.getInstance("X.509");
+        } catch (CertificateException e) {
+          throw new IllegalStateException("X.509 certificate factory is not available", e);
+        }
+      });
+
+  private static final String SERVICE_INFORMATION = "ServiceInformation";
+  private static final String SERVICE_TYPE_IDENTIFIER = "ServiceTypeIdentifier";
+  private static final String SERVICE_STATUS = "ServiceStatus";
+  private static final String X509_CERTIFICATE = "X509Certificate";
+
+  private final XMLInputFactory xmlInputFactory = newXmlInputFactory();
+
   private final Logger log;
+  private final TrustSnapshotStore snapshotStore;
+  private final boolean snapshotsPathConfigured;
+  private volatile Map<String, X509Certificate> trustedCertificates = Map.of();
+  private ExecutorService ingestPool;
+  private int ingestPoolSize;
   private Path outputPath;
 }
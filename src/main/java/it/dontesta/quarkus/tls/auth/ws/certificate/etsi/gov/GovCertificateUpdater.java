@@ -5,15 +5,36 @@
 
 package it.dontesta.quarkus.tls.auth.ws.certificate.etsi.gov;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.quarkus.scheduler.Scheduled;
+import io.smallrye.common.annotation.RunOnVirtualThread;
+import it.dontesta.quarkus.tls.auth.ws.utils.DeadlineInputStream;
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.jboss.logging.Logger;
 
@@ -22,6 +43,23 @@ import org.jboss.logging.Logger;
  * The certificates are used to validate the identity of a person or organization.
  * The certificates are recognized at the national level.
  *
+ * <p>The TSL changes a few times a month, so the download is conditional: the ETag and the
+ * Last-Modified of the last applied TSL are sent back as If-None-Match and If-Modified-Since.
+ * When the server answers 304 (Not Modified), or it sends a body whose SHA-256 digest is the one
+ * of the last applied TSL, the parsing, the PEM files and the bundle are left untouched.
+ *
+ * <p>A single {@link HttpClient} is shared by all the refreshes: it negotiates HTTP/2, asks
+ * for a gzip or deflate compressed body (decompressed while it is streamed), and applies the
+ * timeouts and the retries with exponential backoff of {@link TslHttpClientConfig}. The body of
+ * every attempt is read through a {@link DeadlineInputStream}, so a server stalling while it sends
+ * the body fails the refresh once the download timeout is elapsed. The refresh runs on a virtual
+ * thread, so a slow server doesn't hold a scheduler thread, and a refresh still running when the
+ * next one is due makes the next one to be skipped.
+ *
+ * <p>The outcome of every refresh is counted by the Micrometer counter
+ * {@value #REFRESH_METRIC_NAME} with the tag {@code outcome} ({@code applied},
+ * {@code not-modified}, {@code unchanged} or {@code failed}).
+ *
  * @author Antonio Musarra
  */
 @ApplicationScoped
@@ -30,51 +68,326 @@ public class GovCertificateUpdater {
   @ConfigProperty(name = "gov.trust.certs.url")
   String certsUrl;
 
+  @ConfigProperty(name = "gov.trust.certs.tsl.parser.streaming.enabled", defaultValue = "true")
+  boolean streamingParserEnabled;
+
   @Inject
-  public GovCertificateUpdater(GovCertificateParser certParser, Logger log) {
+  public GovCertificateUpdater(GovCertificateParser certParser, TslTrustManager trustManager,
+                               TslHttpClientConfig httpClientConfig, MeterRegistry meterRegistry,
+                               Logger log) {
     this.certParser = certParser;
+    this.trustManager = trustManager;
+    this.httpClientConfig = httpClientConfig;
     this.log = log;
+    this.httpClient = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_2)
+        .connectTimeout(httpClientConfig.connectTimeout())
+        .followRedirects(HttpClient.Redirect.NORMAL)
+        .executor(Executors.newVirtualThreadPerTaskExecutor())
+        .build();
+
+    for (RefreshOutcome outcome : RefreshOutcome.values()) {
+      refreshCounters.put(outcome, Counter.builder(REFRESH_METRIC_NAME)
+          .description("The refreshes of the TSL certificates by outcome")
+          .tag("outcome", outcome.tag)
+          .register(meterRegistry));
+    }
   }
 
   /**
    * This scheduled method downloads the certificates from the URL
    * <a href="https://eidas.agid.gov.it/TL/TSL-IT.xml">TSL-IT.xml</a> and uses the
-   * {@link GovCertificateParser} to parse and save the certificates (single PEM files)
-   * and save them as a PEM bundle.
+   * {@link GovCertificateParser} to parse the certificates, which are then trusted by the
+   * {@link TslTrustManager} and, if the export is enabled, saved as single PEM files and as a
+   * PEM bundle.
    *
+   * <p>The response body is spooled to a temporary file while its digest is computed, so an
+   * unchanged TSL is detected before it is parsed. If the streaming parser is enabled (default),
+   * the file is parsed with the streaming parser, otherwise it is read as a whole and parsed as
+   * a DOM.
+   *
+   * @see GovCertificateParser#parseAndSaveCerts(InputStream)
    * @see GovCertificateParser#parseAndSaveCerts(String)
    * @see GovCertificateParser#saveCertificatesAsPem(Path, Path)
    */
-  @Scheduled(every = "{gov.trust.certs.tsl.update.period}", delayed = "{gov.trust.certs.tsl.update.initial.delay}")
+  @Scheduled(every = "{gov.trust.certs.tsl.update.period}", delayed = "{gov.trust.certs.tsl.update.initial.delay}",
+      concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+  @RunOnVirtualThread
   public void updateCertificates() {
-    HttpClient client = HttpClient.newHttpClient();
-    HttpRequest request = HttpRequest.newBuilder()
-        .uri(URI.create(certsUrl))
-        .build();
-
-    HttpResponse<String> response;
+    TslVersion appliedVersion = lastAppliedVersion;
+    Path tslFile = null;
 
     try {
-      response = client.send(request, HttpResponse.BodyHandlers.ofString());
-      if (response != null && response.statusCode() == 200) {
-        // Parse and save the certificates
-        String xmlTsl = response.body();
-        certParser.parseAndSaveCerts(xmlTsl);
+      HttpResponse<InputStream> response = send(newRequest(appliedVersion));
+      TslVersion version;
+
+      try (InputStream body = decompress(response)) {
+        if (response.statusCode() == 304) {
+          skip(RefreshOutcome.NOT_MODIFIED);
+          return;
+        }
+
+        if (response.statusCode() != 200) {
+          log.warn("Failed to update certificates from the URL: %s".formatted(certsUrl));
+          refreshCounters.get(RefreshOutcome.FAILED).increment();
+          return;
+        }
+
+        tslFile = Files.createTempFile("gov-trust-tsl", ".xml");
+        version = new TslVersion(response.headers().firstValue("ETag").orElse(null),
+            response.headers().firstValue("Last-Modified").orElse(null),
+            download(body, tslFile));
+      }
 
-        // Save the parsed certificates as a PEM bundle
+      if (appliedVersion != null && appliedVersion.digest().equals(version.digest())) {
+        // Same content with new validators: remember them for the next conditional request
+        lastAppliedVersion = version;
+        skip(RefreshOutcome.UNCHANGED);
+        return;
+      }
+
+      // Parse and save the certificates, leaving the published snapshot untouched on failure
+      if (!parseAndSaveCerts(tslFile)) {
+        log.warn("Failed to parse the certificates from the URL: %s".formatted(certsUrl));
+        refreshCounters.get(RefreshOutcome.FAILED).increment();
+        return;
+      }
+
+      // Trust the parsed certificates, swapping the in-memory trust manager
+      trustManager.update(certParser.getTrustedCertificates());
+
+      // Export the parsed certificates as a PEM bundle
+      if (certParser.isPemExportEnabled()) {
         certParser.saveCertificatesAsPem(Path.of(certParser.getOutputPath()),
             Path.of(certParser.getOutputPathPemBundle()));
-      } else {
-        log.warn("Failed to update certificates from the URL: %s".formatted(certsUrl));
       }
-    } catch (IOException | InterruptedException e) {
+
+      lastAppliedVersion = version;
+      refreshCounters.get(RefreshOutcome.APPLIED).increment();
+      log.info("Applied the TSL certificates from the URL: %s (digest %s)".formatted(certsUrl,
+          version.digest()));
+    } catch (IOException e) {
+      log.error("Error updating certificates from the URL: %s (%s)".formatted(certsUrl, e));
+      refreshCounters.get(RefreshOutcome.FAILED).increment();
+    } catch (InterruptedException e) {
       log.error("Error updating certificates from the URL: %s".formatted(certsUrl));
+      refreshCounters.get(RefreshOutcome.FAILED).increment();
 
       Thread.currentThread().interrupt();
+    } finally {
+      deleteTslFile(tslFile);
+    }
+  }
+
+  /**
+   * Close the HTTP client, aborting the download in progress if any.
+   */
+  @PreDestroy
+  void close() {
+    httpClient.shutdownNow();
+  }
+
+  /**
+   * Build the request of the TSL, conditional on the version last applied if any.
+   *
+   * @param appliedVersion the version of the TSL last applied, or null.
+   * @return the request of the TSL.
+   */
+  private HttpRequest newRequest(TslVersion appliedVersion) {
+    HttpRequest.Builder builder = HttpRequest.newBuilder().uri(URI.create(certsUrl))
+        .timeout(httpClientConfig.requestTimeout())
+        .header("Accept-Encoding", "gzip, deflate");
+
+    if (appliedVersion != null) {
+      if (appliedVersion.etag() != null) {
+        builder.header("If-None-Match", appliedVersion.etag());
+      }
+      if (appliedVersion.lastModified() != null) {
+        builder.header("If-Modified-Since", appliedVersion.lastModified());
+      }
     }
+
+    return builder.build();
   }
 
+  /**
+   * Send the request, retrying with exponential backoff when it fails with an I/O error, a 429
+   * (Too Many Requests) or a 5xx status code. The body of the response must be read within the
+   * download timeout of the attempt, otherwise its reads fail with an
+   * {@link java.net.http.HttpTimeoutException}.
+   *
+   * @param request the request of the TSL.
+   * @return the response of the last attempt.
+   * @throws IOException          if the last attempt fails with an I/O error.
+   * @throws InterruptedException if the thread is interrupted.
+   */
+  private HttpResponse<InputStream> send(HttpRequest request)
+      throws IOException, InterruptedException {
+    Duration backoff = httpClientConfig.retryBackoff();
+
+    for (int attempt = 0; ; attempt++) {
+      String failure;
+
+      try {
+        Instant deadline = Instant.now().plus(httpClientConfig.downloadTimeout());
+        HttpResponse<InputStream> response = httpClient.send(request,
+            responseInfo -> HttpResponse.BodySubscribers.mapping(
+                HttpResponse.BodySubscribers.ofInputStream(),
+                body -> new DeadlineInputStream(body, deadline)));
+        int statusCode = response.statusCode();
+
+        if ((statusCode != 429 && statusCode < 500) || attempt >= httpClientConfig.maxRetries()) {
+          return response;
+        }
+
+        response.body().close();
+        failure = "status code %d".formatted(statusCode);
+      } catch (IOException e) {
+        if (attempt >= httpClientConfig.maxRetries()) {
+          throw e;
+        }
+
+        failure = e.toString();
+      }
+
+      log.warn("Failed to download the TSL from the URL: %s (%s), retrying in %s".formatted(
+          certsUrl, failure, backoff));
+
+      Thread.sleep(backoff.toMillis());
+      backoff = backoff.multipliedBy(2);
+    }
+  }
+
+  /**
+   * Return the response body, decompressed while it is read if the server compressed it.
+   *
+   * @param response the response of the TSL.
+   * @return the decompressed response body.
+   * @throws IOException if the gzip header can't be read.
+   */
+  private static InputStream decompress(HttpResponse<InputStream> response) throws IOException {
+    if (response.statusCode() != 200) {
+      return response.body();
+    }
+
+    String contentEncoding = response.headers().firstValue("Content-Encoding").orElse("")
+        .trim().toLowerCase(Locale.ROOT);
+
+    try {
+      return switch (contentEncoding) {
+        case "gzip", "x-gzip" -> new GZIPInputStream(response.body(), BUFFER_SIZE);
+        case "deflate" -> new InflaterInputStream(response.body());
+        default -> response.body();
+      };
+    } catch (IOException e) {
+      response.body().close();
+      throw e;
+    }
+  }
+
+  /**
+   * Copy the response body to the file, computing its SHA-256 digest.
+   *
+   * @param body    the response body.
+   * @param tslFile the file receiving the body.
+   * @return the hex encoded SHA-256 digest of the body.
+   * @throws IOException if an I/O error occurs.
+   */
+  private static String download(InputStream body, Path tslFile) throws IOException {
+    MessageDigest messageDigest;
+
+    try {
+      messageDigest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+
+    try (DigestInputStream digestStream = new DigestInputStream(body, messageDigest);
+         OutputStream output = Files.newOutputStream(tslFile)) {
+      digestStream.transferTo(output);
+    }
+
+    return HexFormat.of().formatHex(messageDigest.digest());
+  }
+
+  /**
+   * Parse the downloaded TSL with the configured parser.
+   *
+   * @param tslFile the file containing the TSL.
+   * @return true if the certificates were saved and published, false otherwise.
+   * @throws IOException if an I/O error occurs.
+   */
+  private boolean parseAndSaveCerts(Path tslFile) throws IOException {
+    if (streamingParserEnabled) {
+      try (InputStream xmlTsl = Files.newInputStream(tslFile)) {
+        return certParser.parseAndSaveCerts(xmlTsl);
+      }
+    }
+
+    return certParser.parseAndSaveCerts(Files.readString(tslFile, StandardCharsets.UTF_8));
+  }
+
+  private void skip(RefreshOutcome outcome) {
+    refreshCounters.get(outcome).increment();
+
+    if (log.isDebugEnabled()) {
+      log.debug("Skipped the update of the TSL certificates from the URL: %s (%s)".formatted(
+          certsUrl, outcome.tag));
+    }
+  }
+
+  private void deleteTslFile(Path tslFile) {
+    if (tslFile == null) {
+      return;
+    }
+
+    try {
+      Files.deleteIfExists(tslFile);
+    } catch (IOException e) {
+      log.warn("Could not delete the temporary TSL file: %s".formatted(tslFile), e);
+    }
+  }
+
+  /**
+   * The outcome of a refresh of the TSL certificates.
+   */
+  enum RefreshOutcome {
+    APPLIED("applied"),
+    NOT_MODIFIED("not-modified"),
+    UNCHANGED("unchanged"),
+    FAILED("failed");
+
+    RefreshOutcome(String tag) {
+      this.tag = tag;
+    }
+
+    private final String tag;
+  }
+
+  /**
+   * The version of a TSL: the validators sent by the server and the digest of the body.
+   */
+  private record TslVersion(String etag, String lastModified, String digest) {
+  }
+
+  /**
+   * Name of the counter of the refreshes of the TSL certificates.
+   */
+  public static final String REFRESH_METRIC_NAME = "gov.trust.certs.tsl.refresh";
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private final Map<RefreshOutcome, Counter> refreshCounters = new EnumMap<>(RefreshOutcome.class);
+
+  private volatile TslVersion lastAppliedVersion;
+
   private final Logger log;
 
   private final GovCertificateParser certParser;
+
+  private final TslHttpClientConfig httpClientConfig;
+
+  private final HttpClient httpClient;
+
+  private final TslTrustManager trustManager;
 }
@@ -0,0 +1,329 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.certificate.etsi.gov;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import org.jboss.logging.Logger;
+
+/**
+ * Versioned snapshots of the certificates extracted from the TSL.
+ *
+ * <p>Every refresh is written into a new snapshot directory ({@code snapshot-<time>-<seq>})
+ * under the base directory, never touching the published one. When the snapshot is complete,
+ * its files and directory are flushed to disk and the {@value #CURRENT} symbolic link is
+ * atomically swapped to point to it, so a reader sees either the previous or the new snapshot,
+ * never an empty or half-written one. The last snapshots are kept for rollback.
+ *
+ * <p>The certificates already present in the published snapshot are carried over to the new
+ * one by content hash, with a hard link (or a copy if links are not supported), without being
+ * decoded and written again.
+ *
+ * @author Antonio Musarra
+ * @see GovCertificateParser
+ */
+final class TrustSnapshotStore {
+
+  /**
+   * Creates the store.
+   *
+   * @param baseDirectory the directory containing the snapshots
+   * @param log           the logger
+   */
+  TrustSnapshotStore(Path baseDirectory, Logger log) {
+    this.baseDirectory = baseDirectory;
+    this.log = log;
+  }
+
+  /**
+   * Returns the path of the published snapshot. The path is a symbolic link that always points
+   * to a complete snapshot.
+   *
+   * @return the path of the published snapshot
+   */
+  Path current() {
+    return baseDirectory.resolve(CURRENT);
+  }
+
+  /**
+   * Returns the base directory containing the snapshots.
+   *
+   * @return the base directory
+   */
+  Path baseDirectory() {
+    return baseDirectory;
+  }
+
+  /**
+   * Creates a new, empty and unpublished snapshot.
+   *
+   * @return the new snapshot
+   * @throws IOException if the snapshot directory cannot be created
+   */
+  Snapshot begin() throws IOException {
+    Path directory = baseDirectory.resolve("%s%013d-%06d".formatted(SNAPSHOT_PREFIX,
+        System.currentTimeMillis(), sequence.incrementAndGet()));
+
+    return new Snapshot(Files.createDirectories(directory), published);
+  }
+
+  /**
+   * Flushes the snapshot to disk, publishes it swapping the {@value #CURRENT} link and deletes
+   * the oldest snapshots exceeding the number to keep.
+   *
+   * @param snapshot        the complete snapshot
+   * @param snapshotsToKeep the number of snapshots to keep, including the published one
+   * @throws IOException if the snapshot cannot be published
+   */
+  void publish(Snapshot snapshot, int snapshotsToKeep) throws IOException {
+    fsync(snapshot.directory(), true);
+
+    Path link = baseDirectory.resolve(CURRENT + ".tmp");
+    Files.deleteIfExists(link);
+    Files.createSymbolicLink(link, snapshot.directory().getFileName());
+    moveAtomically(link, current());
+    fsync(baseDirectory, true);
+
+    published = snapshot;
+    log.info("Published the trust snapshot %s with %d certificates (%d carried over)".formatted(
+        snapshot.directory().getFileName(), snapshot.certificates.size(), snapshot.carriedOver.get()));
+
+    prune(Math.max(snapshotsToKeep, 1));
+  }
+
+  /**
+   * Deletes an unpublished snapshot, e.g. after a failed refresh.
+   *
+   * @param snapshot the snapshot to delete
+   */
+  void discard(Snapshot snapshot) {
+    if (snapshot != published) {
+      deleteRecursively(snapshot.directory());
+    }
+  }
+
+  /**
+   * Deletes all the snapshots and the {@value #CURRENT} link.
+   */
+  void clear() {
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(baseDirectory)) {
+      for (Path entry : stream) {
+        deleteRecursively(entry);
+      }
+      published = null;
+    } catch (IOException e) {
+      log.error("Error cleaning output path", e);
+    }
+  }
+
+  /**
+   * Writes a file atomically: the content is written to a temporary file in the same directory,
+   * flushed to disk and then moved over the target.
+   *
+   * @param target  the file to write
+   * @param content the writer of the content
+   * @throws IOException if the file cannot be written
+   */
+  static void writeAtomically(Path target, ContentWriter content) throws IOException {
+    Path temporary = Files.createTempFile(target.toAbsolutePath().getParent(),
+        "." + target.getFileName(), ".tmp");
+
+    try {
+      try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+        content.write(writer);
+      }
+      fsync(temporary, false);
+      moveAtomically(temporary, target);
+      fsync(target.toAbsolutePath().getParent(), true);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  /**
+   * Flushes a file or a directory to disk. Flushing a directory is not supported on every
+   * platform, in that case it is silently skipped.
+   *
+   * @param path      the file or directory
+   * @param directory whether the path is a directory
+   * @throws IOException if the file cannot be flushed
+   */
+  static void fsync(Path path, boolean directory) throws IOException {
+    try (FileChannel channel = FileChannel.open(path,
+        directory ? StandardOpenOption.READ : StandardOpenOption.WRITE)) {
+      channel.force(true);
+    } catch (IOException e) {
+      if (!directory) {
+        throw e;
+      }
+    }
+  }
+
+  private static void moveAtomically(Path source, Path target) throws IOException {
+    try {
+      Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private void prune(int snapshotsToKeep) {
+    List<Path> snapshots = new ArrayList<>();
+
+    try (DirectoryStream<Path> stream =
+             Files.newDirectoryStream(baseDirectory, SNAPSHOT_PREFIX + "*")) {
+      stream.forEach(snapshots::add);
+    } catch (IOException e) {
+      log.warn("Could not list the trust snapshots", e);
+      return;
+    }
+
+    Collections.sort(snapshots);
+
+    for (Path snapshot : snapshots.subList(0, Math.max(snapshots.size() - snapshotsToKeep, 0))) {
+      if (published == null || !snapshot.equals(published.directory())) {
+        deleteRecursively(snapshot);
+      }
+    }
+  }
+
+  private void deleteRecursively(Path path) {
+    try (Stream<Path> paths = Files.walk(path)) {
+      for (Path entry : paths.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(entry);
+      }
+    } catch (IOException e) {
+      log.warn("Could not delete %s".formatted(path), e);
+    }
+  }
+
+  /**
+   * Writer of the content of a file.
+   */
+  @FunctionalInterface
+  interface ContentWriter {
+
+    void write(Writer writer) throws IOException;
+  }
+
+  /**
+   * A snapshot being built. The certificates can be added concurrently.
+   */
+  final class Snapshot {
+
+    private Snapshot(Path directory, Snapshot previous) {
+      this.directory = directory;
+      this.previous = previous;
+    }
+
+    /**
+     * Returns the directory of the snapshot.
+     *
+     * @return the directory of the snapshot
+     */
+    Path directory() {
+      return directory;
+    }
+
+    /**
+     * Returns whether the certificate with the given hash is already in the snapshot.
+     *
+     * @param hash the hash of the certificate
+     * @return true if the certificate is already in the snapshot
+     */
+    boolean contains(String hash) {
+      return certificates.containsKey(hash);
+    }
+
+    /**
+     * Carries over the certificate with the given hash from the published snapshot, if it is
+     * there and it is not expired.
+     *
+     * @param hash the hash of the certificate
+     * @param now  the current time
+     * @return true if the certificate was carried over, false if it must be added
+     */
+    boolean carryOver(String hash, Instant now) {
+      Instant notAfter = previous != null ? previous.certificates.get(hash) : null;
+
+      if (notAfter == null || now.isAfter(notAfter)) {
+        return false;
+      }
+
+      String fileName = hash + PEM_EXTENSION;
+      Path source = previous.directory.resolve(fileName);
+      Path target = directory.resolve(fileName);
+
+      try {
+        Files.createLink(target, source);
+      } catch (IOException | UnsupportedOperationException e) {
+        try {
+          Files.copy(source, target);
+        } catch (IOException copyException) {
+          log.warn("Could not carry over the certificate %s".formatted(fileName), copyException);
+          return false;
+        }
+      }
+
+      certificates.put(hash, notAfter);
+      carriedOver.incrementAndGet();
+      return true;
+    }
+
+    /**
+     * Records a certificate written into the snapshot.
+     *
+     * @param hash     the hash of the certificate
+     * @param notAfter the end of the validity of the certificate
+     */
+    void added(String hash, Instant notAfter) {
+      certificates.put(hash, notAfter);
+    }
+
+    private final Path directory;
+    private final Snapshot previous;
+    private final Map<String, Instant> certificates = new ConcurrentHashMap<>();
+    private final AtomicInteger carriedOver = new AtomicInteger();
+  }
+
+  /**
+   * The extension of the certificate files.
+   */
+  static final String PEM_EXTENSION = ".pem";
+
+  /**
+   * The name of the symbolic link to the published snapshot.
+   */
+  static final String CURRENT = "current";
+
+  private static final String SNAPSHOT_PREFIX = "snapshot-";
+
+  private final AtomicLong sequence = new AtomicLong();
+
+  private final Path baseDirectory;
+
+  private final Logger log;
+
+  private volatile Snapshot published;
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.certificate.etsi.gov;
+
+import io.smallrye.config.ConfigMapping;
+import io.smallrye.config.WithDefault;
+import java.time.Duration;
+
+/**
+ * Configuration of the HTTP client downloading the TSL, declared in the
+ * {@code application.properties} file under the {@code gov.trust.certs.tsl.http} prefix.
+ *
+ * @author Antonio Musarra
+ * @see GovCertificateUpdater
+ */
+@ConfigMapping(prefix = "gov.trust.certs.tsl.http")
+public interface TslHttpClientConfig {
+
+  /**
+   * The timeout to establish the connection to the TSL server.
+   *
+   * @return the connect timeout
+   */
+  @WithDefault("10s")
+  Duration connectTimeout();
+
+  /**
+   * The timeout to receive the response headers of the TSL server.
+   *
+   * @return the request timeout
+   */
+  @WithDefault("30s")
+  Duration requestTimeout();
+
+  /**
+   * The timeout of the whole download of the TSL, from the request to the last byte of the
+   * response body, for each attempt. The request timeout doesn't bound the read of the body.
+   *
+   * @return the download timeout
+   */
+  @WithDefault("5m")
+  Duration downloadTimeout();
+
+  /**
+   * The number of retries of a download failed with an I/O error, a 429 (Too Many Requests) or a
+   * 5xx status code. Zero disables the retries.
+   *
+   * @return the maximum number of retries
+   */
+  @WithDefault("3")
+  int maxRetries();
+
+  /**
+   * The delay before the first retry, doubled at every following retry.
+   *
+   * @return the initial backoff of the retries
+   */
+  @WithDefault("2s")
+  Duration retryBackoff();
+}
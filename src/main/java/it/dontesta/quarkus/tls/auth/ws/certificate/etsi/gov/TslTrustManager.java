@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.certificate.etsi.gov;
+
+import it.dontesta.quarkus.tls.auth.ws.utils.CertificateFingerprint;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509ExtendedTrustManager;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+/**
+ * Trust manager of the client certificates, fed directly with the certificates parsed from the
+ * TSL and swapped atomically when the TSL changes.
+ *
+ * <p>The trusted certificates are the base certificates (e.g. the CA of the application),
+ * configured by {@code gov.trust.certs.trust-manager.base-certs}, plus the certificates of the
+ * last TSL parsed. Every {@link #update(Collection)} builds a new {@link KeyStore} and
+ * {@link X509ExtendedTrustManager} and replaces the previous ones with a single volatile write,
+ * so the handshakes in progress complete with the old snapshot and the next ones use the new
+ * snapshot, without any file round trip or reload period.
+ *
+ * <p>If {@code gov.trust.certs.snapshots.path} is configured, the trust manager starts with the
+ * certificates of the last snapshot published there ({@link TrustSnapshotStore#current()}) by
+ * the previous run, skipping the expired ones, so the certificates of the TSL are trusted as
+ * soon as the server accepts connections instead of after the first refresh.
+ *
+ * <p>The bean is a {@link Singleton}, not proxied, because it is called by the TLS engine on
+ * every handshake.
+ *
+ * @author Antonio Musarra
+ * @see TslTrustStoreProvider
+ * @see GovCertificateParser#getTrustedCertificates()
+ */
+@Singleton
+public class TslTrustManager extends X509ExtendedTrustManager {
+
+  /**
+   * Creates the trust manager trusting the base certificates and the certificates of the last
+   * published trust snapshot, if any.
+   *
+   * @param baseCertificates the paths (file system or classpath) of the base certificates in PEM
+   *                         format
+   * @param snapshotsPath    the directory of the trust snapshots kept across the restarts
+   * @param log              the logger
+   */
+  @Inject
+  public TslTrustManager(
+      @ConfigProperty(name = "gov.trust.certs.trust-manager.base-certs",
+          defaultValue = "certs/ca_cert.pem") List<String> baseCertificates,
+      @ConfigProperty(name = "gov.trust.certs.snapshots.path") Optional<String> snapshotsPath,
+      Logger log) {
+    this.log = log;
+    this.baseCertificates = loadCertificates(baseCertificates);
+    this.snapshot = newSnapshot(snapshotsPath.map(path -> loadSnapshot(Path.of(path)))
+        .orElse(List.of()));
+  }
+
+  /**
+   * Replaces the trusted certificates of the TSL.
+   *
+   * @param tslCertificates the certificates of the TSL
+   */
+  public void update(Collection<X509Certificate> tslCertificates) {
+    snapshot = newSnapshot(tslCertificates);
+
+    log.info("Updated the trust manager with %d certificates of the TSL".formatted(
+        tslCertificates.size()));
+  }
+
+  /**
+   * Returns the version of the trusted certificates: the SHA-256 digest, in lower case
+   * hexadecimal, of the sorted SHA-256 fingerprints of the base and TSL certificates, which
+   * changes only when the trusted certificates change. It is used to build the entity tags of
+   * the responses that depend on the trust configuration.
+   *
+   * @return the version of the trusted certificates
+   */
+  public String version() {
+    return snapshot.version();
+  }
+
+  /**
+   * Returns the trust store of the current snapshot.
+   *
+   * @return the trust store
+   */
+  public KeyStore getTrustStore() {
+    return snapshot.trustStore();
+  }
+
+  @Override
+  public void checkClientTrusted(X509Certificate[] chain, String authType)
+      throws CertificateException {
+    delegate().checkClientTrusted(chain, authType);
+  }
+
+  @Override
+  public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket)
+      throws CertificateException {
+    delegate().checkClientTrusted(chain, authType, socket);
+  }
+
+  @Override
+  public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine)
+      throws CertificateException {
+    delegate().checkClientTrusted(chain, authType, engine);
+  }
+
+  @Override
+  public void checkServerTrusted(X509Certificate[] chain, String authType)
+      throws CertificateException {
+    delegate().checkServerTrusted(chain, authType);
+  }
+
+  @Override
+  public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket)
+      throws CertificateException {
+    delegate().checkServerTrusted(chain, authType, socket);
+  }
+
+  @Override
+  public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine)
+      throws CertificateException {
+    delegate().checkServerTrusted(chain, authType, engine);
+  }
+
+  @Override
+  public X509Certificate[] getAcceptedIssuers() {
+    X509ExtendedTrustManager trustManager = snapshot.trustManager();
+    return trustManager != null ? trustManager.getAcceptedIssuers() : new X509Certificate[0];
+  }
+
+  private X509ExtendedTrustManager delegate() throws CertificateException {
+    X509ExtendedTrustManager trustManager = snapshot.trustManager();
+
+    if (trustManager == null) {
+      throw new CertificateException("No trusted certificates");
+    }
+
+    return trustManager;
+  }
+
+  private Snapshot newSnapshot(Collection<X509Certificate> tslCertificates) {
+    try {
+      KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+      trustStore.load(null, null);
+
+      // Sorted, the fingerprints don't depend on the order of the certificates
+      SortedSet<String> fingerprints = new TreeSet<>();
+
+      int index = 0;
+      for (X509Certificate certificate : baseCertificates) {
+        trustStore.setCertificateEntry("base-%d".formatted(index++), certificate);
+        fingerprints.add(CertificateFingerprint.of(certificate).toHex());
+      }
+
+      index = 0;
+      for (X509Certificate certificate : tslCertificates) {
+        trustStore.setCertificateEntry("tsl-%d".formatted(index++), certificate);
+        fingerprints.add(CertificateFingerprint.of(certificate).toHex());
+      }
+
+      String version = version(fingerprints);
+
+      // The PKIX trust manager doesn't accept an empty trust store
+      if (trustStore.size() == 0) {
+        return new Snapshot(trustStore, null, version);
+      }
+
+      TrustManagerFactory trustManagerFactory =
+          TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+      trustManagerFactory.init(trustStore);
+
+      for (TrustManager trustManager : trustManagerFactory.getTrustManagers()) {
+        if (trustManager instanceof X509ExtendedTrustManager x509TrustManager) {
+          return new Snapshot(trustStore, x509TrustManager, version);
+        }
+      }
+
+      throw new IllegalStateException("No X509ExtendedTrustManager available");
+    } catch (GeneralSecurityException | IOException e) {
+      throw new IllegalStateException("Failed to build the trust manager", e);
+    }
+  }
+
+  /**
+   * Loads the valid certificates of the published trust snapshot in the given directory.
+   *
+   * @param snapshotsPath the directory of the trust snapshots
+   * @return the certificates, empty if no snapshot was published or it can't be read
+   */
+  private List<X509Certificate> loadSnapshot(Path snapshotsPath) {
+    Path current = snapshotsPath.resolve(TrustSnapshotStore.CURRENT);
+
+    if (!Files.isDirectory(current)) {
+      log.info("No trust snapshot in %s: the TSL is trusted once parsed".formatted(
+          snapshotsPath));
+      return List.of();
+    }
+
+    List<X509Certificate> certificates = new ArrayList<>();
+
+    try (DirectoryStream<Path> stream =
+             Files.newDirectoryStream(current, "*" + TrustSnapshotStore.PEM_EXTENSION)) {
+      CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509");
+
+      for (Path file : stream) {
+        try (InputStream inputStream = Files.newInputStream(file)) {
+          X509Certificate certificate =
+              (X509Certificate) certificateFactory.generateCertificate(inputStream);
+          certificate.checkValidity();
+          certificates.add(certificate);
+        } catch (CertificateException | IOException e) {
+          log.warn("Skipped the certificate %s of the trust snapshot (%s)".formatted(
+              file.getFileName(), e));
+        }
+      }
+    } catch (CertificateException | IOException e) {
+      log.warn("Could not read the trust snapshot %s: the TSL is trusted once parsed".formatted(
+          current), e);
+      return List.of();
+    }
+
+    log.info("Loaded %d certificates of the TSL from the trust snapshot %s".formatted(
+        certificates.size(), current));
+    return certificates;
+  }
+
+  private static String version(SortedSet<String> fingerprints)
+      throws NoSuchAlgorithmException {
+    MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+    for (String fingerprint : fingerprints) {
+      digest.update(HexFormat.of().parseHex(fingerprint));
+    }
+
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  private static List<X509Certificate> loadCertificates(List<String> paths) {
+    List<X509Certificate> certificates = new ArrayList<>();
+
+    try {
+      CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509");
+
+      for (String path : paths) {
+        try (InputStream inputStream = openCertificates(path)) {
+          for (Certificate certificate : certificateFactory.generateCertificates(inputStream)) {
+            certificates.add((X509Certificate) certificate);
+          }
+        }
+      }
+    } catch (CertificateException | IOException e) {
+      throw new IllegalStateException("Failed to load the base certificates %s".formatted(paths),
+          e);
+    }
+
+    return List.copyOf(certificates);
+  }
+
+  private static InputStream openCertificates(String path) throws IOException {
+    Path file = Path.of(path);
+
+    if (Files.isRegularFile(file)) {
+      return Files.newInputStream(file);
+    }
+
+    InputStream resource = Thread.currentThread().getContextClassLoader().getResourceAsStream(path);
+
+    if (resource == null) {
+      throw new IOException("Certificates not found: %s".formatted(path));
+    }
+
+    return resource;
+  }
+
+  /**
+   * The trust store and the trust manager built from the same certificates, with the version of
+   * the certificates. The trust manager is null if the trust store is empty.
+   */
+  private record Snapshot(KeyStore trustStore, X509ExtendedTrustManager trustManager,
+                          String version) {
+  }
+
+  private final List<X509Certificate> baseCertificates;
+
+  private final Logger log;
+
+  private volatile Snapshot snapshot;
+}
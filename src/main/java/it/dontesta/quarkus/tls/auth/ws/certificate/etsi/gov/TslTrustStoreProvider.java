@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.certificate.etsi.gov;
+
+import io.quarkus.arc.properties.IfBuildProperty;
+import io.quarkus.tls.runtime.TrustStoreAndTrustOptions;
+import io.quarkus.tls.runtime.TrustStoreProvider;
+import io.smallrye.common.annotation.Identifier;
+import io.vertx.core.Vertx;
+import io.vertx.core.net.TrustOptions;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Provide the trust store of the {@value #TLS_CONFIGURATION_NAME} TLS configuration of the TLS
+ * registry, backed by the {@link TslTrustManager}.
+ *
+ * <p>The TLS registry always gets the same {@link TslTrustManager}, which swaps its certificates
+ * when the TSL changes, so the new certificates are trusted as soon as they are parsed.
+ *
+ * <p>The provider is enabled by the build property
+ * {@code gov.trust.certs.trust-manager.in-memory.enabled} (default true). A provider can't be
+ * combined with a configured trust store, so {@code quarkus.tls.https.trust-store.*} must not be
+ * set while it is enabled; when it is disabled, the trust store must be configured with the PEM
+ * bundle exported by {@link GovCertificateParser}.
+ *
+ * @author Antonio Musarra
+ * @see <a href="https://quarkus.io/guides/tls-registry-reference">TLS registry reference</a>
+ */
+@ApplicationScoped
+@Identifier(TslTrustStoreProvider.TLS_CONFIGURATION_NAME)
+@IfBuildProperty(name = "gov.trust.certs.trust-manager.in-memory.enabled", stringValue = "true",
+    enableIfMissing = true)
+public class TslTrustStoreProvider implements TrustStoreProvider {
+
+  @Inject
+  public TslTrustStoreProvider(TslTrustManager trustManager) {
+    this.trustManager = trustManager;
+  }
+
+  @Override
+  public TrustStoreAndTrustOptions getTrustStore(Vertx vertx) {
+    return new TrustStoreAndTrustOptions(trustManager.getTrustStore(),
+        TrustOptions.wrap(trustManager));
+  }
+
+  /**
+   * The name of the TLS configuration used by the HTTP server.
+   */
+  public static final String TLS_CONFIGURATION_NAME = "https";
+
+  private final TslTrustManager trustManager;
+}
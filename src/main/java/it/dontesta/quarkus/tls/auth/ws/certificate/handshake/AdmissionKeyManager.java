@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.certificate.handshake;
+
+import java.net.Socket;
+import java.security.Principal;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.X509ExtendedKeyManager;
+import javax.net.ssl.X509KeyManager;
+
+/**
+ * Key manager of the server admitting the full handshakes through the
+ * {@link HandshakeAdmissionController} when the server certificate is selected.
+ *
+ * <p>The JSSE selects the server certificate only for the full handshakes, before the key
+ * exchange and the signature: a handshake shed here fails with no suitable certificate, which
+ * costs less than the handshake itself. Everything else is delegated to the key manager of the
+ * key store.
+ *
+ * @author Antonio Musarra
+ * @see HandshakeAdmissionController
+ */
+class AdmissionKeyManager extends X509ExtendedKeyManager {
+
+  /**
+   * Creates the key manager.
+   *
+   * @param delegate  the key manager of the key store
+   * @param admission the admission control of the handshakes
+   */
+  AdmissionKeyManager(X509KeyManager delegate, HandshakeAdmissionController admission) {
+    this.delegate = delegate;
+    this.admission = admission;
+  }
+
+  @Override
+  public String chooseEngineServerAlias(String keyType, Principal[] issuers, SSLEngine engine) {
+    // Like the JSSE, a key manager not aware of the engines selects the alias without socket
+    String alias = delegate instanceof X509ExtendedKeyManager extended
+        ? extended.chooseEngineServerAlias(keyType, issuers, engine)
+        : delegate.chooseServerAlias(keyType, issuers, null);
+
+    // The admission is decided only once a certificate matches the handshake
+    return alias != null && (engine == null || admission.admit(engine)) ? alias : null;
+  }
+
+  @Override
+  public String chooseEngineClientAlias(String[] keyType, Principal[] issuers, SSLEngine engine) {
+    return delegate instanceof X509ExtendedKeyManager extended
+        ? extended.chooseEngineClientAlias(keyType, issuers, engine)
+        : delegate.chooseClientAlias(keyType, issuers, null);
+  }
+
+  @Override
+  public String[] getClientAliases(String keyType, Principal[] issuers) {
+    return delegate.getClientAliases(keyType, issuers);
+  }
+
+  @Override
+  public String chooseClientAlias(String[] keyType, Principal[] issuers, Socket socket) {
+    return delegate.chooseClientAlias(keyType, issuers, socket);
+  }
+
+  @Override
+  public String[] getServerAliases(String keyType, Principal[] issuers) {
+    return delegate.getServerAliases(keyType, issuers);
+  }
+
+  @Override
+  public String chooseServerAlias(String keyType, Principal[] issuers, Socket socket) {
+    return delegate.chooseServerAlias(keyType, issuers, socket);
+  }
+
+  @Override
+  public X509Certificate[] getCertificateChain(String alias) {
+    return delegate.getCertificateChain(alias);
+  }
+
+  @Override
+  public PrivateKey getPrivateKey(String alias) {
+    return delegate.getPrivateKey(alias);
+  }
+
+  private final X509KeyManager delegate;
+
+  private final HandshakeAdmissionController admission;
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.certificate.handshake;
+
+import io.vertx.core.net.OpenSSLEngineOptions;
+import io.vertx.core.spi.tls.SslContextFactory;
+
+/**
+ * OpenSSL engine options of the HTTPS server creating the SSL contexts through an
+ * {@link AdmissionSslContextFactory}, the counterpart of {@link AdmissionSSLEngineOptions} when
+ * the server runs the OpenSSL engine (e.g. for the OCSP stapling).
+ *
+ * <p>The contexts are created by the factory of the wrapped options, so a factory of a subclass
+ * of {@link OpenSSLEngineOptions} (e.g. stapling the OCSP response) is kept.
+ *
+ * @author Antonio Musarra
+ * @see HandshakeAdmissionCustomizer
+ */
+public class AdmissionOpenSSLEngineOptions extends OpenSSLEngineOptions {
+
+  /**
+   * Creates the options, copying the given OpenSSL engine options.
+   *
+   * @param options   the OpenSSL engine options to copy, creating the SSL contexts
+   * @param admission the admission control of the handshakes
+   */
+  public AdmissionOpenSSLEngineOptions(OpenSSLEngineOptions options,
+                                       HandshakeAdmissionController admission) {
+    super(options);
+    // A copy keeps the options creating the contexts instead of wrapping them again
+    this.delegate = options instanceof AdmissionOpenSSLEngineOptions admissionOptions
+        ? admissionOptions.delegate : options;
+    this.admission = admission;
+  }
+
+  @Override
+  public AdmissionOpenSSLEngineOptions copy() {
+    return new AdmissionOpenSSLEngineOptions(this, admission);
+  }
+
+  @Override
+  public SslContextFactory sslContextFactory() {
+    return new AdmissionSslContextFactory(delegate.sslContextFactory(), admission);
+  }
+
+  private final OpenSSLEngineOptions delegate;
+
+  private final HandshakeAdmissionController admission;
+}
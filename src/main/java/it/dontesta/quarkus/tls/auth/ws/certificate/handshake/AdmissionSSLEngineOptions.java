@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.certificate.handshake;
+
+import io.vertx.core.net.JdkSSLEngineOptions;
+import io.vertx.core.spi.tls.SslContextFactory;
+
+/**
+ * JDK SSL engine options of the HTTPS server creating the SSL contexts through an
+ * {@link AdmissionSslContextFactory}, so the key managers and the trust managers of the server
+ * take part in the admission of the full handshakes, whatever provides the key store and the
+ * trust store of the TLS configuration.
+ *
+ * <p>Vert.x keeps the engine options of a server for its lifetime and creates a new SSL context
+ * with them when the TLS configuration is reloaded, so the admission survives the reloads.
+ *
+ * @author Antonio Musarra
+ * @see HandshakeAdmissionCustomizer
+ */
+public class AdmissionSSLEngineOptions extends JdkSSLEngineOptions {
+
+  /**
+   * Creates the options, copying the given JDK engine options.
+   *
+   * @param options   the JDK engine options to copy
+   * @param admission the admission control of the handshakes
+   */
+  public AdmissionSSLEngineOptions(JdkSSLEngineOptions options,
+                                   HandshakeAdmissionController admission) {
+    super(options);
+    this.admission = admission;
+  }
+
+  @Override
+  public AdmissionSSLEngineOptions copy() {
+    return new AdmissionSSLEngineOptions(this, admission);
+  }
+
+  @Override
+  public SslContextFactory sslContextFactory() {
+    return new AdmissionSslContextFactory(super.sslContextFactory(), admission);
+  }
+
+  private final HandshakeAdmissionController admission;
+}
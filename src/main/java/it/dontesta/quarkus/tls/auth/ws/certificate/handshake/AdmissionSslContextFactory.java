@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.certificate.handshake;
+
+import io.netty.handler.ssl.ClientAuth;
+import io.netty.handler.ssl.SslContext;
+import io.vertx.core.spi.tls.SslContextFactory;
+import java.security.KeyStore;
+import java.util.List;
+import java.util.Set;
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.KeyManagerFactorySpi;
+import javax.net.ssl.ManagerFactoryParameters;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.TrustManagerFactorySpi;
+import javax.net.ssl.X509ExtendedTrustManager;
+import javax.net.ssl.X509KeyManager;
+
+/**
+ * Factory of the server SSL contexts wrapping the key managers in {@link AdmissionKeyManager}
+ * and the trust managers in {@link HandshakeReleasingTrustManager} before delegating to the
+ * factory of the engine.
+ *
+ * <p>A trust manager not extending {@link X509ExtendedTrustManager} (e.g. the one checking the
+ * CRLs of the TLS options) doesn't get the engine of the handshake and is left as it is: the
+ * admissions of its handshakes are reclaimed by the scheduled sweep of the
+ * {@link HandshakeAdmissionController}. The contexts of the clients are not wrapped.
+ *
+ * @author Antonio Musarra
+ * @see AdmissionSSLEngineOptions
+ */
+class AdmissionSslContextFactory implements SslContextFactory {
+
+  /**
+   * Creates the factory.
+   *
+   * @param delegate  the factory of the engine
+   * @param admission the admission control of the handshakes
+   */
+  AdmissionSslContextFactory(SslContextFactory delegate, HandshakeAdmissionController admission) {
+    this.delegate = delegate;
+    this.admission = admission;
+  }
+
+  @Override
+  public SslContextFactory useAlpn(boolean useAlpn) {
+    delegate.useAlpn(useAlpn);
+    return this;
+  }
+
+  @Override
+  public SslContextFactory clientAuth(ClientAuth clientAuth) {
+    delegate.clientAuth(clientAuth);
+    return this;
+  }
+
+  @Override
+  public SslContextFactory forClient(boolean forClient) {
+    delegate.forClient(forClient);
+    this.forClient = forClient;
+    return this;
+  }
+
+  @Override
+  public SslContextFactory keyMananagerFactory(KeyManagerFactory keyManagerFactory) {
+    this.keyManagerFactory = keyManagerFactory;
+    return this;
+  }
+
+  @Override
+  public SslContextFactory trustManagerFactory(TrustManagerFactory trustManagerFactory) {
+    this.trustManagerFactory = trustManagerFactory;
+    return this;
+  }
+
+  @Override
+  public SslContextFactory enabledCipherSuites(Set<String> cipherSuites) {
+    delegate.enabledCipherSuites(cipherSuites);
+    return this;
+  }
+
+  @Override
+  public SslContextFactory applicationProtocols(List<String> applicationProtocols) {
+    delegate.applicationProtocols(applicationProtocols);
+    return this;
+  }
+
+  @Override
+  public SslContextFactory serverName(String serverName) {
+    delegate.serverName(serverName);
+    return this;
+  }
+
+  @Override
+  public SslContext create() throws SSLException {
+    // The managers are wrapped here, as Vert.x doesn't tell whether the context is for a client
+    // before or after setting them
+    if (keyManagerFactory != null) {
+      delegate.keyMananagerFactory(forClient ? keyManagerFactory : wrap(keyManagerFactory));
+    }
+    if (trustManagerFactory != null) {
+      delegate.trustManagerFactory(forClient ? trustManagerFactory : wrap(trustManagerFactory));
+    }
+
+    return delegate.create();
+  }
+
+  private KeyManagerFactory wrap(KeyManagerFactory factory) {
+    KeyManager[] keyManagers = factory.getKeyManagers().clone();
+
+    for (int i = 0; i < keyManagers.length; i++) {
+      if (keyManagers[i] instanceof X509KeyManager keyManager) {
+        keyManagers[i] = new AdmissionKeyManager(keyManager, admission);
+      }
+    }
+
+    return new KeyManagerFactory(new KeyManagersSpi(keyManagers), factory.getProvider(),
+        factory.getAlgorithm()) {
+    };
+  }
+
+  private TrustManagerFactory wrap(TrustManagerFactory factory) {
+    TrustManager[] trustManagers = factory.getTrustManagers().clone();
+
+    for (int i = 0; i < trustManagers.length; i++) {
+      if (trustManagers[i] instanceof X509ExtendedTrustManager trustManager) {
+        trustManagers[i] = new HandshakeReleasingTrustManager(trustManager, admission);
+      }
+    }
+
+    return new TrustManagerFactory(new TrustManagersSpi(trustManagers), factory.getProvider(),
+        factory.getAlgorithm()) {
+    };
+  }
+
+  /**
+   * The factory of key managers already initialized.
+   */
+  private static final class KeyManagersSpi extends KeyManagerFactorySpi {
+
+    KeyManagersSpi(KeyManager[] keyManagers) {
+      this.keyManagers = keyManagers;
+    }
+
+    @Override
+    protected void engineInit(KeyStore keyStore, char[] password) {
+      throw new UnsupportedOperationException("The key managers are already initialized");
+    }
+
+    @Override
+    protected void engineInit(ManagerFactoryParameters parameters) {
+      throw new UnsupportedOperationException("The key managers are already initialized");
+    }
+
+    @Override
+    protected KeyManager[] engineGetKeyManagers() {
+      return keyManagers.clone();
+    }
+
+    private final KeyManager[] keyManagers;
+  }
+
+  /**
+   * The factory of trust managers already initialized.
+   */
+  private static final class TrustManagersSpi extends TrustManagerFactorySpi {
+
+    TrustManagersSpi(TrustManager[] trustManagers) {
+      this.trustManagers = trustManagers;
+    }
+
+    @Override
+    protected void engineInit(KeyStore keyStore) {
+      throw new UnsupportedOperationException("The trust managers are already initialized");
+    }
+
+    @Override
+    protected void engineInit(ManagerFactoryParameters parameters) {
+      throw new UnsupportedOperationException("The trust managers are already initialized");
+    }
+
+    @Override
+    protected TrustManager[] engineGetTrustManagers() {
+      return trustManagers.clone();
+    }
+
+    private final TrustManager[] trustManagers;
+  }
+
+  private final SslContextFactory delegate;
+
+  private final HandshakeAdmissionController admission;
+
+  private KeyManagerFactory keyManagerFactory;
+
+  private TrustManagerFactory trustManagerFactory;
+
+  private boolean forClient;
+}
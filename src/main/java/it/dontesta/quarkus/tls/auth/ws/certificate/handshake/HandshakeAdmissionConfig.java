@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.certificate.handshake;
+
+import io.smallrye.config.ConfigMapping;
+import io.smallrye.config.WithDefault;
+import java.time.Duration;
+
+/**
+ * Configuration of the admission control of the full TLS handshakes of the HTTP server.
+ *
+ * @author Antonio Musarra
+ * @see HandshakeAdmissionController
+ */
+@ConfigMapping(prefix = "server.tls.handshake.admission")
+public interface HandshakeAdmissionConfig {
+
+  /**
+   * Whether the full handshakes are admitted by the limits; when disabled (the default) every
+   * handshake is admitted.
+   *
+   * @return true if the admission control is enabled
+   */
+  @WithDefault("false")
+  boolean enabled();
+
+  /**
+   * The maximum number of full handshakes in flight on the whole server.
+   *
+   * @return the global limit
+   */
+  @WithDefault("128")
+  int maxInFlight();
+
+  /**
+   * The maximum number of full handshakes in flight on each event loop, when the handshakes run
+   * on the event loops (see {@link #workerOffload()}).
+   *
+   * @return the limit of each event loop
+   */
+  @WithDefault("16")
+  int maxInFlightPerEventLoop();
+
+  /**
+   * Whether the handshake tasks (key exchange, signature, certificate verification) run on the
+   * internal worker pool of Vert.x instead of the event loops, which then keep serving the
+   * established connections. Only the handshakes run off the event loops can be queued; when
+   * disabled (the default), the handshakes beyond the limits are shed at once.
+   *
+   * @return true if the handshake tasks are offloaded to the worker pool
+   */
+  @WithDefault("false")
+  boolean workerOffload();
+
+  /**
+   * The maximum number of full handshakes waiting for admission; the handshakes beyond it are
+   * shed. A queued handshake holds a thread of the internal worker pool of Vert.x
+   * ({@code quarkus.vertx.internal-blocking-pool-size}), so the queue is capped to half of the
+   * pool, keeping the other half for the resumed handshakes; a warning is logged at startup when
+   * the cap reduces the configured length.
+   *
+   * @return the length of the queue
+   */
+  @WithDefault("8")
+  int maxQueued();
+
+  /**
+   * The maximum time a full handshake waits for admission before being shed.
+   *
+   * @return the queue timeout
+   */
+  @WithDefault("1s")
+  Duration queueTimeout();
+
+  /**
+   * The time after which the admission of a handshake not completed is reclaimed, e.g. because
+   * the client went away.
+   *
+   * @return the handshake timeout
+   */
+  @WithDefault("10s")
+  Duration handshakeTimeout();
+
+  /**
+   * The period of the check reclaiming the admissions of the handshakes failed, aborted or
+   * timed out.
+   *
+   * @return the reclaim period
+   */
+  @WithDefault("1s")
+  Duration reclaimPeriod();
+}
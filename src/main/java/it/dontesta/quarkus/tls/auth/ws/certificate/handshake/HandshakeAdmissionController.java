@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.certificate.handshake;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.quarkus.scheduler.Scheduled;
+import io.vertx.core.Context;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+/**
+ * Admission control of the full TLS handshakes of the HTTP server, so a reconnect storm doesn't
+ * take all the CPU from the established connections.
+ *
+ * <p>A full handshake (key exchange, signature of the server and verification of the client
+ * certificate) costs far more than a resumed one and than the requests that follow. The
+ * handshakes are admitted by the {@link AdmissionKeyManager} when the JSSE selects the server
+ * certificate, i.e. before the expensive part of a full handshake; a resumed handshake doesn't
+ * select the certificate.
+ *
+ * <p>A handshake is admitted within {@code server.tls.handshake.admission.max-in-flight}
+ * handshakes in flight on the whole server and, when it runs on an event loop,
+ * {@code max-in-flight-per-event-loop} on its event loop. A handshake run on the worker pool
+ * ({@code worker-offload}, the default) waits for up to {@code queue-timeout} in a queue of
+ * {@code max-queued} handshakes; a handshake run on an event loop is shed at once when it
+ * exceeds a limit, as waiting would block the other connections of the event loop. A shed
+ * handshake fails with a {@code handshake_failure} alert before any expensive work.
+ *
+ * <p>The resumed handshakes are prioritised over the full ones, so the returning clients get
+ * through a storm of new ones: they are never queued nor shed, and as a queued handshake holds
+ * a thread of the internal worker pool, the queue is capped to half of the pool
+ * ({@code quarkus.vertx.internal-blocking-pool-size}) and the tasks of the resumed handshakes
+ * always find a thread while the full ones wait.
+ *
+ * <p>The admission of a handshake is released when the client certificate has been verified
+ * (see {@link HandshakeReleasingTrustManager}, installed on the trust managers of the server by
+ * the {@link AdmissionSSLEngineOptions} whatever provides the trust store); the admissions of
+ * the handshakes failed or aborted before are reclaimed every {@code reclaim-period}, and the
+ * ones older than {@code handshake-timeout} in any case.
+ *
+ * <p>The decisions are counted by the Micrometer counter {@value #ADMISSION_METRIC_NAME} with
+ * the tag {@code outcome}, the time the admitted handshakes waited is recorded by the timer
+ * {@value #QUEUE_TIME_METRIC_NAME} and the handshakes in flight are published by the gauge
+ * {@value #IN_FLIGHT_METRIC_NAME}.
+ *
+ * @author Antonio Musarra
+ * @see AdmissionKeyManager
+ * @see HandshakeAdmissionConfig
+ */
+@ApplicationScoped
+public class HandshakeAdmissionController {
+
+  /**
+   * Creates the controller.
+   *
+   * @param config         the configuration of the limits
+   * @param workerPoolSize the size of the internal worker pool of Vert.x
+   * @param meterRegistry  the registry of the metrics
+   * @param log            the logger
+   */
+  @Inject
+  public HandshakeAdmissionController(HandshakeAdmissionConfig config,
+                                      @ConfigProperty(
+                                          name = "quarkus.vertx.internal-blocking-pool-size",
+                                          defaultValue = "20")
+                                      int workerPoolSize,
+                                      MeterRegistry meterRegistry, Logger log) {
+    this.enabled = config.enabled();
+    this.maxInFlight = config.maxInFlight();
+    this.maxInFlightPerEventLoop = config.maxInFlightPerEventLoop();
+    this.maxQueued = Math.min(config.maxQueued(), workerPoolSize / 2);
+
+    if (enabled && config.workerOffload() && maxQueued < config.maxQueued()) {
+      log.warn(("The queue of the TLS handshakes is capped to %d instead of max-queued %d: "
+          + "half of quarkus.vertx.internal-blocking-pool-size (%d)").formatted(maxQueued,
+          config.maxQueued(), workerPoolSize));
+    }
+    this.queueTimeoutNanos = config.queueTimeout().toNanos();
+    this.handshakeTimeoutNanos = config.handshakeTimeout().toNanos();
+    this.globalPermits = new Semaphore(maxInFlight, true);
+
+    for (Outcome outcome : Outcome.values()) {
+      admissionCounters.put(outcome, Counter.builder(ADMISSION_METRIC_NAME)
+          .description("The admission decisions of the full TLS handshakes by outcome")
+          .tag("outcome", outcome.tag)
+          .register(meterRegistry));
+    }
+    this.queueTimer = Timer.builder(QUEUE_TIME_METRIC_NAME)
+        .description("The time the admitted full TLS handshakes waited for admission")
+        .register(meterRegistry);
+    Gauge.builder(IN_FLIGHT_METRIC_NAME, this, HandshakeAdmissionController::inFlight)
+        .description("The full TLS handshakes in flight")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Admits the full handshake of an engine. The JSSE may select the server certificate more
+   * than once in a handshake, so the decision is taken once per engine and repeated.
+   *
+   * @param engine the engine of the handshake
+   * @return true if the handshake goes on, false if it is shed
+   */
+  public boolean admit(SSLEngine engine) {
+    if (!enabled) {
+      return true;
+    }
+
+    Admission admission = admissions.get(engine);
+    if (admission != null) {
+      return admission.admitted();
+    }
+
+    long start = System.nanoTime();
+    AtomicInteger eventLoopInFlight =
+        Context.isOnEventLoopThread() ? EVENT_LOOP_IN_FLIGHT.get() : null;
+    Outcome outcome;
+
+    if (eventLoopInFlight != null
+        && eventLoopInFlight.incrementAndGet() > maxInFlightPerEventLoop) {
+      outcome = Outcome.EVENT_LOOP_LIMIT;
+    } else {
+      outcome = acquire(eventLoopInFlight != null);
+    }
+
+    if (outcome != Outcome.ADMITTED && eventLoopInFlight != null) {
+      eventLoopInFlight.decrementAndGet();
+    }
+
+    admission = new Admission(engine, outcome == Outcome.ADMITTED, start, eventLoopInFlight);
+    admissions.put(engine, admission);
+    admissionCounters.get(outcome).increment();
+
+    if (admission.admitted()) {
+      queueTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+    return admission.admitted();
+  }
+
+  /**
+   * Releases the admission of the handshake of an engine, once its expensive part is done. A
+   * handshake released more than once, or not admitted, is ignored.
+   *
+   * @param engine the engine of the handshake
+   */
+  public void release(SSLEngine engine) {
+    Admission admission = admissions.remove(engine);
+
+    if (admission != null) {
+      admission.release(globalPermits);
+    }
+  }
+
+  /**
+   * This scheduled method reclaims the admissions of the handshakes completed without the
+   * verification of the client certificate, failed, aborted or older than the handshake
+   * timeout, and forgets the shed ones.
+   */
+  @Scheduled(every = "{server.tls.handshake.admission.reclaim-period}",
+      concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+  void reclaimAdmissions() {
+    long now = System.nanoTime();
+
+    for (Admission admission : admissions.values()) {
+      SSLEngine engine = admission.engine();
+      // A connection closed by either side, as Netty closes both directions of the engine
+      boolean done = now - admission.startNanos() > handshakeTimeoutNanos
+          || engine.isInboundDone()
+          || engine.isOutboundDone()
+          || engine.getHandshakeStatus() == HandshakeStatus.NOT_HANDSHAKING;
+
+      // Removed first, so an admission released at the same time is not released twice
+      if (done && admissions.remove(engine, admission)) {
+        admission.release(globalPermits);
+      }
+    }
+  }
+
+  /**
+   * Returns the number of full handshakes in flight.
+   *
+   * @return the admitted handshakes not released yet
+   */
+  public int inFlight() {
+    return maxInFlight - globalPermits.availablePermits();
+  }
+
+  /**
+   * Takes a global permit: at once on an event loop, waiting in the queue otherwise. The
+   * permits are fair, so the queued handshakes are admitted in order.
+   */
+  private Outcome acquire(boolean onEventLoop) {
+    boolean queue = !onEventLoop && queueTimeoutNanos > 0;
+
+    if (queue && queued.incrementAndGet() > maxQueued) {
+      queued.decrementAndGet();
+      return Outcome.QUEUE_FULL;
+    }
+
+    try {
+      if (globalPermits.tryAcquire(queue ? queueTimeoutNanos : 0, TimeUnit.NANOSECONDS)) {
+        return Outcome.ADMITTED;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      if (queue) {
+        queued.decrementAndGet();
+      }
+    }
+
+    return queue ? Outcome.QUEUE_TIMEOUT : Outcome.GLOBAL_LIMIT;
+  }
+
+  /**
+   * The admission decision of the handshake of an engine.
+   *
+   * @param engine            the engine of the handshake
+   * @param admitted          whether the handshake was admitted
+   * @param startNanos        the {@link System#nanoTime()} of the decision
+   * @param eventLoopInFlight the handshakes in flight of the event loop of the handshake, null
+   *                          if the handshake is not counted by an event loop
+   */
+  private record Admission(SSLEngine engine, boolean admitted, long startNanos,
+                           AtomicInteger eventLoopInFlight) {
+
+    void release(Semaphore globalPermits) {
+      if (admitted) {
+        if (eventLoopInFlight != null) {
+          eventLoopInFlight.decrementAndGet();
+        }
+        globalPermits.release();
+      }
+    }
+  }
+
+  /**
+   * The outcome of the admission of a handshake.
+   */
+  enum Outcome {
+    ADMITTED("admitted"),
+    EVENT_LOOP_LIMIT("event-loop-limit"),
+    GLOBAL_LIMIT("global-limit"),
+    QUEUE_FULL("queue-full"),
+    QUEUE_TIMEOUT("queue-timeout");
+
+    Outcome(String tag) {
+      this.tag = tag;
+    }
+
+    private final String tag;
+  }
+
+  /**
+   * Name of the counter of the admission decisions.
+   */
+  public static final String ADMISSION_METRIC_NAME = "server.tls.handshake.admission";
+
+  /**
+   * Name of the timer of the time waited for admission.
+   */
+  public static final String QUEUE_TIME_METRIC_NAME = "server.tls.handshake.queue.time";
+
+  /**
+   * Name of the gauge of the handshakes in flight.
+   */
+  public static final String IN_FLIGHT_METRIC_NAME = "server.tls.handshake.in.flight";
+
+  /**
+   * The handshakes in flight of each event loop, counted by the event loop thread running them.
+   */
+  private static final ThreadLocal<AtomicInteger> EVENT_LOOP_IN_FLIGHT =
+      ThreadLocal.withInitial(AtomicInteger::new);
+
+  private final Map<Outcome, Counter> admissionCounters = new EnumMap<>(Outcome.class);
+
+  private final Map<SSLEngine, Admission> admissions = new ConcurrentHashMap<>();
+
+  private final AtomicInteger queued = new AtomicInteger();
+
+  private final Semaphore globalPermits;
+
+  private final Timer queueTimer;
+
+  private final boolean enabled;
+
+  private final int maxInFlight;
+
+  private final int maxInFlightPerEventLoop;
+
+  private final int maxQueued;
+
+  private final long queueTimeoutNanos;
+
+  private final long handshakeTimeoutNanos;
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.certificate.handshake;
+
+import io.quarkus.vertx.http.HttpServerOptionsCustomizer;
+import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.net.JdkSSLEngineOptions;
+import io.vertx.core.net.OpenSSLEngineOptions;
+import io.vertx.core.net.SSLEngineOptions;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Installs the admission control of the full handshakes on the HTTPS server.
+ *
+ * <p>When {@code server.tls.handshake.admission.enabled} is true, the SSL engine options of the
+ * server are replaced with {@link AdmissionSSLEngineOptions} (or
+ * {@link AdmissionOpenSSLEngineOptions} if the server runs the OpenSSL engine), keeping the
+ * settings of the options configured before, so the key store and the trust store of the TLS
+ * configuration keep being configured as usual. When {@code server.tls.handshake.admission.worker-offload} is
+ * true, the tasks of the TLS handshakes (key exchange, signature and certificate verification)
+ * run on the internal worker pool of Vert.x, so the event loops keep serving the established
+ * connections during a storm of handshakes and the {@link HandshakeAdmissionController} can
+ * queue the handshakes instead of shedding them.
+ *
+ * @author Antonio Musarra
+ * @see HandshakeAdmissionConfig
+ */
+@ApplicationScoped
+public class HandshakeAdmissionCustomizer implements HttpServerOptionsCustomizer {
+
+  /**
+   * Creates the customizer.
+   *
+   * @param config    the configuration of the admission control
+   * @param admission the admission control of the handshakes
+   */
+  @Inject
+  public HandshakeAdmissionCustomizer(HandshakeAdmissionConfig config,
+                                      HandshakeAdmissionController admission) {
+    this.enabled = config.enabled();
+    this.workerOffload = config.workerOffload();
+    this.admission = admission;
+  }
+
+  @Override
+  public void customizeHttpsServer(HttpServerOptions options) {
+    if (!enabled && !workerOffload) {
+      return;
+    }
+
+    SSLEngineOptions engineOptions;
+
+    if (options.getSslEngineOptions() instanceof OpenSSLEngineOptions openSslOptions) {
+      // The OpenSSL engine is installed by the OCSP stapling, if enabled
+      engineOptions = enabled
+          ? new AdmissionOpenSSLEngineOptions(openSslOptions, admission) : openSslOptions;
+    } else {
+      // Quarkus configures the JDK engine (e.g. the pooling of the heap buffers), if any
+      JdkSSLEngineOptions jdkOptions =
+          options.getSslEngineOptions() instanceof JdkSSLEngineOptions configuredOptions
+              ? configuredOptions : new JdkSSLEngineOptions();
+      engineOptions = enabled ? new AdmissionSSLEngineOptions(jdkOptions, admission) : jdkOptions;
+    }
+    engineOptions.setUseWorkerThread(workerOffload);
+
+    options.setSslEngineOptions(engineOptions);
+  }
+
+  private final boolean enabled;
+
+  private final boolean workerOffload;
+
+  private final HandshakeAdmissionController admission;
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.certificate.handshake;
+
+import java.net.Socket;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.X509ExtendedTrustManager;
+
+/**
+ * Trust manager of the server releasing the admission of a full handshake (see
+ * {@link HandshakeAdmissionController}) once the client certificate has been verified, the last
+ * expensive step of the handshake, whatever the outcome of the verification.
+ *
+ * @author Antonio Musarra
+ * @see HandshakeAdmissionController
+ */
+class HandshakeReleasingTrustManager extends X509ExtendedTrustManager {
+
+  /**
+   * Creates the trust manager.
+   *
+   * @param delegate  the trust manager verifying the certificates
+   * @param admission the admission control of the handshakes
+   */
+  HandshakeReleasingTrustManager(X509ExtendedTrustManager delegate,
+                                 HandshakeAdmissionController admission) {
+    this.delegate = delegate;
+    this.admission = admission;
+  }
+
+  @Override
+  public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine)
+      throws CertificateException {
+    try {
+      delegate.checkClientTrusted(chain, authType, engine);
+    } finally {
+      if (engine != null) {
+        admission.release(engine);
+      }
+    }
+  }
+
+  @Override
+  public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket)
+      throws CertificateException {
+    delegate.checkClientTrusted(chain, authType, socket);
+  }
+
+  @Override
+  public void checkClientTrusted(X509Certificate[] chain, String authType)
+      throws CertificateException {
+    delegate.checkClientTrusted(chain, authType);
+  }
+
+  @Override
+  public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine)
+      throws CertificateException {
+    delegate.checkServerTrusted(chain, authType, engine);
+  }
+
+  @Override
+  public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket)
+      throws CertificateException {
+    delegate.checkServerTrusted(chain, authType, socket);
+  }
+
+  @Override
+  public void checkServerTrusted(X509Certificate[] chain, String authType)
+      throws CertificateException {
+    delegate.checkServerTrusted(chain, authType);
+  }
+
+  @Override
+  public X509Certificate[] getAcceptedIssuers() {
+    return delegate.getAcceptedIssuers();
+  }
+
+  private final X509ExtendedTrustManager delegate;
+
+  private final HandshakeAdmissionController admission;
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.certificate.ocsp;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.ocsp.BasicOCSPResponse;
+import org.bouncycastle.asn1.ocsp.CertID;
+import org.bouncycastle.asn1.ocsp.OCSPObjectIdentifiers;
+import org.bouncycastle.asn1.ocsp.OCSPRequest;
+import org.bouncycastle.asn1.ocsp.OCSPResponse;
+import org.bouncycastle.asn1.ocsp.OCSPResponseStatus;
+import org.bouncycastle.asn1.ocsp.Request;
+import org.bouncycastle.asn1.ocsp.ResponseBytes;
+import org.bouncycastle.asn1.ocsp.ResponseData;
+import org.bouncycastle.asn1.ocsp.SingleResponse;
+import org.bouncycastle.asn1.ocsp.TBSRequest;
+import org.bouncycastle.asn1.x509.AccessDescription;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.AuthorityInformationAccess;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.asn1.x509.X509ObjectIdentifiers;
+
+/**
+ * Builds the OCSP requests (RFC 6960) of a certificate and verifies the responses, with the ASN.1
+ * structures of BouncyCastle and the signature verification of the JCA.
+ *
+ * <p>The certificate is identified by a SHA-1 {@link CertID}, the one used by the OCSP stapling
+ * of the JDK to look up the response in its cache. A response is accepted only if it is
+ * successful, it is signed by the issuer of the certificate or by a responder certificate
+ * issued by it for the OCSP signing, it reports the certificate as good and it is currently
+ * valid.
+ *
+ * @author Antonio Musarra
+ * @see OcspStaplingManager
+ */
+final class OcspResponses {
+
+  private OcspResponses() {
+  }
+
+  /**
+   * Returns the identifier of the certificate in the OCSP requests and responses.
+   *
+   * @param certificate the certificate
+   * @param issuer      the issuer of the certificate
+   * @return the SHA-1 CertID of the certificate
+   */
+  static CertID certId(X509Certificate certificate, X509Certificate issuer)
+      throws GeneralSecurityException {
+    MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+    byte[] issuerNameHash = sha1.digest(issuer.getSubjectX500Principal().getEncoded());
+    byte[] issuerKeyHash = sha1.digest(SubjectPublicKeyInfo.getInstance(
+        issuer.getPublicKey().getEncoded()).getPublicKeyData().getBytes());
+
+    return new CertID(new AlgorithmIdentifier(X509ObjectIdentifiers.id_SHA1, DERNull.INSTANCE),
+        new DEROctetString(issuerNameHash), new DEROctetString(issuerKeyHash),
+        new ASN1Integer(certificate.getSerialNumber()));
+  }
+
+  /**
+   * Returns the OCSP request of a certificate, without nonce so the response can be cached.
+   *
+   * @param certId the identifier of the certificate
+   * @return the DER encoding of the request
+   */
+  static byte[] newRequest(CertID certId) throws IOException {
+    TBSRequest tbsRequest = new TBSRequest(null, new DERSequence(new Request(certId, null)),
+        (Extensions) null);
+
+    return new OCSPRequest(tbsRequest, null).getEncoded(ASN1Encoding.DER);
+  }
+
+  /**
+   * Returns the URL of the OCSP responder of the Authority Information Access extension.
+   *
+   * @param certificate the certificate
+   * @return the URL of the OCSP responder, if any
+   */
+  static Optional<String> responderUrl(X509Certificate certificate) {
+    byte[] extensionValue =
+        certificate.getExtensionValue(Extension.authorityInfoAccess.getId());
+
+    if (extensionValue == null) {
+      return Optional.empty();
+    }
+
+    try {
+      AuthorityInformationAccess authorityInformationAccess = AuthorityInformationAccess
+          .getInstance(ASN1OctetString.getInstance(extensionValue).getOctets());
+
+      for (AccessDescription description : authorityInformationAccess.getAccessDescriptions()) {
+        GeneralName location = description.getAccessLocation();
+
+        if (description.getAccessMethod().equals(AccessDescription.id_ad_ocsp)
+            && location.getTagNo() == GeneralName.uniformResourceIdentifier) {
+          return Optional.of(location.getName().toString());
+        }
+      }
+    } catch (RuntimeException e) {
+      // A malformed extension has no usable responder
+    }
+
+    return Optional.empty();
+  }
+
+  /**
+   * Verifies an OCSP response of a certificate.
+   *
+   * @param encoded the DER encoding of the response
+   * @param certId  the identifier of the certificate
+   * @param issuer  the issuer of the certificate
+   * @param now     the current time
+   * @param maxAge  the validity of a response without nextUpdate
+   * @return the verified response
+   * @throws CertificateException if the response is malformed, not trusted, not valid or it
+   *                              doesn't report the certificate as good
+   */
+  static StapledResponse verify(byte[] encoded, CertID certId, X509Certificate issuer,
+                                Instant now, Duration maxAge) throws CertificateException {
+    try {
+      OCSPResponse response = OCSPResponse.getInstance(ASN1Primitive.fromByteArray(encoded));
+      int status = response.getResponseStatus().getIntValue();
+
+      if (status != OCSPResponseStatus.SUCCESSFUL) {
+        throw new CertificateException("OCSP response status %d".formatted(status));
+      }
+
+      ResponseBytes responseBytes = response.getResponseBytes();
+      if (responseBytes == null
+          || !responseBytes.getResponseType().equals(OCSPObjectIdentifiers.id_pkix_ocsp_basic)) {
+        throw new CertificateException("Not a basic OCSP response");
+      }
+
+      BasicOCSPResponse basicResponse =
+          BasicOCSPResponse.getInstance(responseBytes.getResponse().getOctets());
+      ResponseData responseData = basicResponse.getTbsResponseData();
+
+      verifySignature(basicResponse, issuer, now);
+
+      for (ASN1Encodable element : responseData.getResponses()) {
+        SingleResponse singleResponse = SingleResponse.getInstance(element);
+
+        if (isSameCertificate(singleResponse.getCertID(), certId)) {
+          return verifySingleResponse(encoded, singleResponse, now, maxAge);
+        }
+      }
+
+      throw new CertificateException("No OCSP response for the certificate");
+    } catch (CertificateException e) {
+      throw e;
+    } catch (IOException | GeneralSecurityException | ParseException | RuntimeException e) {
+      throw new CertificateException("Malformed OCSP response", e);
+    }
+  }
+
+  /**
+   * Compares two CertIDs ignoring the encoding of the parameters of the hash algorithm, which
+   * some responders omit instead of encoding them as NULL.
+   */
+  private static boolean isSameCertificate(CertID certId, CertID otherCertId) {
+    return certId.getHashAlgorithm().getAlgorithm()
+        .equals(otherCertId.getHashAlgorithm().getAlgorithm())
+        && certId.getIssuerNameHash().equals(otherCertId.getIssuerNameHash())
+        && certId.getIssuerKeyHash().equals(otherCertId.getIssuerKeyHash())
+        && certId.getSerialNumber().equals(otherCertId.getSerialNumber());
+  }
+
+  private static StapledResponse verifySingleResponse(byte[] encoded,
+                                                      SingleResponse singleResponse,
+                                                      Instant now, Duration maxAge)
+      throws CertificateException, ParseException {
+    int certStatus = singleResponse.getCertStatus().getTagNo();
+
+    if (certStatus != GOOD) {
+      throw new CertificateException("The OCSP status of the certificate is %s".formatted(
+          certStatus == REVOKED ? "revoked" : "unknown"));
+    }
+
+    Instant thisUpdate = singleResponse.getThisUpdate().getDate().toInstant();
+    Instant nextUpdate = singleResponse.getNextUpdate() != null
+        ? singleResponse.getNextUpdate().getDate().toInstant() : thisUpdate.plus(maxAge);
+    StapledResponse stapledResponse = new StapledResponse(encoded, thisUpdate, nextUpdate);
+
+    if (thisUpdate.isAfter(now.plus(CLOCK_SKEW)) || !stapledResponse.isValidAt(now)) {
+      throw new CertificateException("OCSP response not valid at %s (%s - %s)".formatted(now,
+          thisUpdate, nextUpdate));
+    }
+
+    return stapledResponse;
+  }
+
+  /**
+   * Verifies the signature of the response with the key of the issuer or of a responder
+   * certificate issued by it for the OCSP signing.
+   */
+  private static void verifySignature(BasicOCSPResponse basicResponse, X509Certificate issuer,
+                                      Instant now)
+      throws IOException, GeneralSecurityException {
+    List<PublicKey> signerKeys = new ArrayList<>();
+    signerKeys.add(issuer.getPublicKey());
+
+    if (basicResponse.getCerts() != null) {
+      CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509");
+
+      for (ASN1Encodable element : basicResponse.getCerts()) {
+        X509Certificate responder = (X509Certificate) certificateFactory.generateCertificate(
+            new ByteArrayInputStream(element.toASN1Primitive().getEncoded(ASN1Encoding.DER)));
+
+        if (isDelegatedResponder(responder, issuer, now)) {
+          signerKeys.add(responder.getPublicKey());
+        }
+      }
+    }
+
+    byte[] tbsResponseData =
+        basicResponse.getTbsResponseData().getEncoded(ASN1Encoding.DER);
+    byte[] signatureValue = basicResponse.getSignature().getOctets();
+    String algorithm = basicResponse.getSignatureAlgorithm().getAlgorithm().getId();
+
+    for (PublicKey signerKey : signerKeys) {
+      try {
+        Signature signature = Signature.getInstance(algorithm);
+        signature.initVerify(signerKey);
+        signature.update(tbsResponseData);
+
+        if (signature.verify(signatureValue)) {
+          return;
+        }
+      } catch (GeneralSecurityException e) {
+        // A key of another type or a malformed signature for this key
+      }
+    }
+
+    throw new CertificateException("Invalid signature of the OCSP response");
+  }
+
+  private static boolean isDelegatedResponder(X509Certificate responder, X509Certificate issuer,
+                                              Instant now) {
+    try {
+      List<String> extendedKeyUsage = responder.getExtendedKeyUsage();
+
+      if (extendedKeyUsage == null
+          || !extendedKeyUsage.contains(KeyPurposeId.id_kp_OCSPSigning.getId())
+          || !responder.getIssuerX500Principal().equals(issuer.getSubjectX500Principal())) {
+        return false;
+      }
+
+      responder.checkValidity(Date.from(now));
+      responder.verify(issuer.getPublicKey());
+      return true;
+    } catch (GeneralSecurityException e) {
+      return false;
+    }
+  }
+
+  /**
+   * The tolerated difference between the clock of the responder and the local one.
+   */
+  private static final Duration CLOCK_SKEW = Duration.ofMinutes(5);
+
+  private static final int GOOD = 0;
+
+  private static final int REVOKED = 1;
+}
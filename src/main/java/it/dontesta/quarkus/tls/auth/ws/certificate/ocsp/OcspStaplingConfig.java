@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.certificate.ocsp;
+
+import io.smallrye.config.ConfigMapping;
+import io.smallrye.config.WithDefault;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Configuration of the OCSP stapling of the server certificate, declared in the
+ * {@code application.properties} file under the {@code server.ocsp.stapling} prefix.
+ *
+ * @author Antonio Musarra
+ * @see OcspStaplingManager
+ */
+@ConfigMapping(prefix = "server.ocsp.stapling")
+public interface OcspStaplingConfig {
+
+  /**
+   * Whether the OCSP response of the server certificate is fetched and stapled to the TLS
+   * handshakes of the {@code https} TLS configuration.
+   *
+   * @return true if the stapling is enabled
+   */
+  @WithDefault("false")
+  boolean enabled();
+
+  /**
+   * The URL of the OCSP responder, overriding the one of the Authority Information Access
+   * extension of the server certificate.
+   *
+   * @return the URL of the OCSP responder, if any
+   */
+  Optional<String> responderUrl();
+
+  /**
+   * The file keeping the last OCSP response, loaded at startup while it is still valid.
+   *
+   * @return the path of the file
+   */
+  @WithDefault("/tmp/ocsp-stapling/server_cert.ocsp")
+  String cacheFile();
+
+  /**
+   * The period of the check of the OCSP response, refreshed when half of its validity has
+   * elapsed.
+   *
+   * @return the check period
+   */
+  @WithDefault("1m")
+  Duration checkPeriod();
+
+  /**
+   * The validity of the OCSP responses without nextUpdate.
+   *
+   * @return the maximum age of a response without nextUpdate
+   */
+  @WithDefault("1h")
+  Duration maxAge();
+
+  /**
+   * The connect and request timeout of the OCSP responder.
+   *
+   * @return the timeout
+   */
+  @WithDefault("10s")
+  Duration httpTimeout();
+}
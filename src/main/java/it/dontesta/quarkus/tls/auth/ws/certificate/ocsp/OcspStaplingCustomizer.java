@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.certificate.ocsp;
+
+import io.netty.handler.ssl.OpenSsl;
+import io.quarkus.vertx.http.HttpServerOptionsCustomizer;
+import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.net.OpenSSLEngineOptions;
+import io.vertx.core.net.SSLEngineOptions;
+import jakarta.annotation.Priority;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.jboss.logging.Logger;
+
+/**
+ * Installs the OCSP stapling on the HTTPS server.
+ *
+ * <p>When {@code server.ocsp.stapling.enabled} is true, the SSL engine options of the server are
+ * replaced with {@link OcspStaplingSSLEngineOptions}: the HTTPS server runs the OpenSSL engine of
+ * Netty (BoringSSL of {@code netty-tcnative-boringssl-static}), the only one able to staple a
+ * response given by the application, while the key store and the trust store of the TLS
+ * configuration keep being configured as usual. If OpenSSL is not available on the platform, the
+ * engine is left as it is and the stapling is disabled.
+ *
+ * <p>The customizer has a priority higher than the default one, so it replaces the engine
+ * options before the other customizers (e.g. the admission control of the handshakes) wrap them.
+ *
+ * @author Antonio Musarra
+ * @see OcspStaplingManager
+ */
+@ApplicationScoped
+@Priority(10)
+public class OcspStaplingCustomizer implements HttpServerOptionsCustomizer {
+
+  /**
+   * Creates the customizer.
+   *
+   * @param config  the configuration of the OCSP stapling
+   * @param manager the manager of the OCSP response of the server certificate
+   * @param log     the logger
+   */
+  @Inject
+  public OcspStaplingCustomizer(OcspStaplingConfig config, OcspStaplingManager manager,
+                                Logger log) {
+    this.enabled = config.enabled();
+    this.manager = manager;
+    this.log = log;
+  }
+
+  @Override
+  public void customizeHttpsServer(HttpServerOptions options) {
+    if (!enabled) {
+      return;
+    }
+
+    if (!OpenSsl.isOcspSupported()) {
+      log.error("OCSP stapling of the server certificate disabled: %s".formatted(
+          OpenSsl.isAvailable() ? "OpenSSL doesn't support it"
+              : "OpenSSL is not available (%s)".formatted(OpenSsl.unavailabilityCause())));
+      return;
+    }
+
+    SSLEngineOptions engineOptions = options.getSslEngineOptions();
+    OcspStaplingSSLEngineOptions staplingOptions =
+        engineOptions instanceof OpenSSLEngineOptions openSslOptions
+            ? new OcspStaplingSSLEngineOptions(openSslOptions, manager)
+            : new OcspStaplingSSLEngineOptions(manager);
+
+    if (engineOptions != null) {
+      staplingOptions.setUseWorkerThread(engineOptions.getUseWorkerThread());
+    }
+
+    options.setSslEngineOptions(staplingOptions);
+  }
+
+  private final boolean enabled;
+
+  private final OcspStaplingManager manager;
+
+  private final Logger log;
+}
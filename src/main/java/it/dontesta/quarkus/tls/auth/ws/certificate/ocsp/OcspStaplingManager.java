@@ -0,0 +1,380 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.certificate.ocsp;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.runtime.StartupEvent;
+import io.quarkus.scheduler.Scheduled;
+import io.quarkus.tls.TlsConfiguration;
+import io.quarkus.tls.TlsConfigurationRegistry;
+import io.smallrye.common.annotation.RunOnVirtualThread;
+import it.dontesta.quarkus.tls.auth.ws.certificate.etsi.gov.TslTrustManager;
+import it.dontesta.quarkus.tls.auth.ws.certificate.etsi.gov.TslTrustStoreProvider;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+import org.bouncycastle.asn1.ocsp.CertID;
+import org.jboss.logging.Logger;
+
+/**
+ * Staples the OCSP response of the server certificate to the TLS handshakes of the
+ * {@value TslTrustStoreProvider#TLS_CONFIGURATION_NAME} TLS configuration, so the clients
+ * checking the revocation of the server certificate don't have to query the OCSP responder.
+ *
+ * <p>The response is fetched from the OCSP responder of the certificate (or the configured one)
+ * by a scheduled refresh, running on a virtual thread when half of the validity of the current
+ * response has elapsed, verified and kept in memory and in the {@code cache-file}, from which it
+ * is loaded at startup while it is still valid. A failed refresh keeps the current response and
+ * it is retried at the next check.
+ *
+ * <p>The response in memory is attached to the handshakes by the SSL engine of the HTTPS server
+ * (see {@link OcspStaplingCustomizer}): every engine created for a new connection gets the current
+ * response, so the handshakes never reach the OCSP responder and the event loop doesn't wait for
+ * any remote I/O. The stapling is scoped to the {@code https} server: no JVM-wide property is
+ * set and the other SSL contexts of the JVM are left untouched.
+ *
+ * <p>The refreshes are counted by the Micrometer counter {@value #REFRESH_METRIC_NAME} with the
+ * tag {@code outcome} ({@code refreshed} or {@code failed}).
+ *
+ * @author Antonio Musarra
+ * @see OcspStaplingConfig
+ * @see <a href="https://www.rfc-editor.org/rfc/rfc6066#section-8">RFC 6066, Certificate Status Request</a>
+ */
+@ApplicationScoped
+public class OcspStaplingManager {
+
+  /**
+   * Creates the manager.
+   *
+   * @param config        the configuration of the OCSP stapling
+   * @param tlsRegistry   the TLS registry holding the key store of the server certificate
+   * @param trustManager  the trust manager looked up for the issuer of the server certificate
+   * @param meterRegistry the registry of the refresh counter
+   * @param log           the logger
+   */
+  @Inject
+  public OcspStaplingManager(OcspStaplingConfig config, TlsConfigurationRegistry tlsRegistry,
+                             TslTrustManager trustManager, MeterRegistry meterRegistry,
+                             Logger log) {
+    this.config = config;
+    this.tlsRegistry = tlsRegistry;
+    this.trustManager = trustManager;
+    this.log = log;
+    this.cacheFile = Path.of(config.cacheFile());
+    this.httpClient = HttpClient.newBuilder()
+        .connectTimeout(config.httpTimeout())
+        .followRedirects(HttpClient.Redirect.NORMAL)
+        .executor(Executors.newVirtualThreadPerTaskExecutor())
+        .build();
+
+    for (RefreshOutcome outcome : RefreshOutcome.values()) {
+      refreshCounters.put(outcome, Counter.builder(REFRESH_METRIC_NAME)
+          .description("The refreshes of the OCSP response of the server certificate by outcome")
+          .tag("outcome", outcome.tag)
+          .register(meterRegistry));
+    }
+  }
+
+  /**
+   * Starts the stapling of the server certificate of the key store, if enabled.
+   *
+   * @param event the startup event
+   */
+  void onStart(@Observes StartupEvent event) {
+    if (!config.enabled()) {
+      return;
+    }
+
+    try {
+      X509Certificate[] chain = serverCertificateChain();
+      start(chain[0], issuerOf(chain));
+    } catch (IOException | GeneralSecurityException e) {
+      log.error("OCSP stapling of the server certificate disabled: %s".formatted(e.getMessage()));
+      return;
+    }
+
+    Thread.ofVirtual().name("ocsp-stapling-refresh").start(this::refreshIfDue);
+  }
+
+  /**
+   * Starts the stapling of a certificate: loads the cached response. The response is fetched by
+   * the next {@link #refreshIfDue()}.
+   *
+   * @param certificate the certificate
+   * @param issuer      the issuer of the certificate
+   * @throws IOException              if the OCSP request cannot be encoded
+   * @throws GeneralSecurityException if the certificate has no OCSP responder
+   */
+  void start(X509Certificate certificate, X509Certificate issuer)
+      throws IOException, GeneralSecurityException {
+    URI responderUri = URI.create(config.responderUrl()
+        .or(() -> OcspResponses.responderUrl(certificate))
+        .orElseThrow(() -> new CertificateException(
+            "No OCSP responder for the certificate %s".formatted(
+                certificate.getSubjectX500Principal()))));
+    CertID certId = OcspResponses.certId(certificate, issuer);
+
+    target = new Target(certId, OcspResponses.newRequest(certId), issuer, responderUri);
+    loadCachedResponse();
+
+    log.info("OCSP stapling of %s from %s".formatted(certificate.getSubjectX500Principal(),
+        responderUri));
+  }
+
+  /**
+   * This scheduled method fetches a new OCSP response when there is no valid response or half of
+   * the validity of the current one has elapsed.
+   */
+  @Scheduled(every = "{server.ocsp.stapling.check-period}",
+      concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+  @RunOnVirtualThread
+  public void refreshIfDue() {
+    Target currentTarget = target;
+
+    if (currentTarget == null || !refreshLock.tryLock()) {
+      return;
+    }
+
+    try {
+      Instant now = Instant.now();
+      StapledResponse currentResponse = response;
+
+      if (currentResponse != null && now.isBefore(currentResponse.refreshAt())) {
+        return;
+      }
+
+      StapledResponse newResponse = OcspResponses.verify(fetch(currentTarget), currentTarget.certId,
+          currentTarget.issuer, now, config.maxAge());
+      response = newResponse;
+      refreshCounters.get(RefreshOutcome.REFRESHED).increment();
+
+      if (log.isDebugEnabled()) {
+        log.debug("Refreshed the OCSP response of the server certificate, valid until %s"
+            .formatted(newResponse.nextUpdate()));
+      }
+
+      store(newResponse);
+    } catch (IOException | CertificateException e) {
+      refreshCounters.get(RefreshOutcome.FAILED).increment();
+      log.warn("Failed to refresh the OCSP response of the server certificate from %s: %s"
+          .formatted(currentTarget.responderUri, e.getMessage()));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      refreshLock.unlock();
+    }
+  }
+
+  /**
+   * Returns the OCSP response stapled to the handshakes. It is called by the SSL engine of the
+   * HTTPS server for every new connection.
+   *
+   * @return the current response, if any and not expired
+   */
+  Optional<StapledResponse> currentResponse() {
+    StapledResponse currentResponse = response;
+
+    return currentResponse != null && currentResponse.isValidAt(Instant.now())
+        ? Optional.of(currentResponse) : Optional.empty();
+  }
+
+  /**
+   * Close the HTTP client, aborting the refresh in progress if any.
+   */
+  @PreDestroy
+  void close() {
+    httpClient.shutdownNow();
+  }
+
+  /**
+   * Returns the chain of the first key entry of the key store of the TLS configuration.
+   *
+   * @return the chain of the server certificate
+   * @throws GeneralSecurityException if there is no key store or no X.509 key entry
+   */
+  private X509Certificate[] serverCertificateChain() throws GeneralSecurityException {
+    KeyStore keyStore = tlsRegistry.get(TslTrustStoreProvider.TLS_CONFIGURATION_NAME)
+        .map(TlsConfiguration::getKeyStore)
+        .orElseThrow(() -> new CertificateException("No key store in the TLS configuration %s"
+            .formatted(TslTrustStoreProvider.TLS_CONFIGURATION_NAME)));
+
+    for (String alias : Collections.list(keyStore.aliases())) {
+      Certificate[] chain = keyStore.isKeyEntry(alias) ? keyStore.getCertificateChain(alias) : null;
+
+      if (chain != null && chain.length > 0 && chain[0] instanceof X509Certificate) {
+        X509Certificate[] x509Chain = new X509Certificate[chain.length];
+        System.arraycopy(chain, 0, x509Chain, 0, chain.length);
+        return x509Chain;
+      }
+    }
+
+    throw new CertificateException("No server certificate in the key store");
+  }
+
+  /**
+   * Returns the issuer of the server certificate: the next certificate of the chain or, if the
+   * chain has only the server certificate, a trusted certificate that signed it.
+   */
+  private X509Certificate issuerOf(X509Certificate[] chain) throws CertificateException {
+    X509Certificate certificate = chain[0];
+
+    if (chain.length > 1) {
+      return chain[1];
+    }
+
+    for (X509Certificate candidate : trustManager.getAcceptedIssuers()) {
+      if (candidate.getSubjectX500Principal().equals(certificate.getIssuerX500Principal())) {
+        try {
+          certificate.verify(candidate.getPublicKey());
+          return candidate;
+        } catch (GeneralSecurityException e) {
+          // Another certificate with the same subject
+        }
+      }
+    }
+
+    throw new CertificateException("No issuer of the server certificate %s".formatted(
+        certificate.getSubjectX500Principal()));
+  }
+
+  private byte[] fetch(Target currentTarget) throws IOException, InterruptedException {
+    HttpResponse<byte[]> httpResponse = httpClient.send(
+        HttpRequest.newBuilder(currentTarget.responderUri)
+            .timeout(config.httpTimeout())
+            .header("Content-Type", OCSP_REQUEST_CONTENT_TYPE)
+            .POST(HttpRequest.BodyPublishers.ofByteArray(currentTarget.request))
+            .build(),
+        HttpResponse.BodyHandlers.ofByteArray());
+
+    if (httpResponse.statusCode() != 200) {
+      throw new IOException("Status code %d".formatted(httpResponse.statusCode()));
+    }
+
+    return httpResponse.body();
+  }
+
+  /**
+   * Loads the response of the cache file, if it is still valid for the certificate.
+   */
+  private void loadCachedResponse() {
+    try {
+      response = OcspResponses.verify(Files.readAllBytes(cacheFile), target.certId,
+          target.issuer, Instant.now(), config.maxAge());
+
+      log.info("Loaded the OCSP response of the server certificate from %s, valid until %s"
+          .formatted(cacheFile, response.nextUpdate()));
+    } catch (NoSuchFileException e) {
+      // No response cached yet
+    } catch (IOException | CertificateException e) {
+      log.info("Ignored the cached OCSP response %s: %s".formatted(cacheFile, e.getMessage()));
+    }
+  }
+
+  /**
+   * Writes the response to the cache file atomically: to a temporary file in the same directory,
+   * flushed to disk and then moved over the cache file.
+   */
+  private void store(StapledResponse stapledResponse) {
+    try {
+      Path directory = cacheFile.toAbsolutePath().getParent();
+      Files.createDirectories(directory);
+      Path temporary = Files.createTempFile(directory, "." + cacheFile.getFileName(), ".tmp");
+
+      try {
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+          channel.write(ByteBuffer.wrap(stapledResponse.encoded()));
+          channel.force(true);
+        }
+
+        try {
+          Files.move(temporary, cacheFile, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+          Files.move(temporary, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+      } finally {
+        Files.deleteIfExists(temporary);
+      }
+    } catch (IOException e) {
+      log.warn("Failed to write the OCSP response to %s: %s".formatted(cacheFile,
+          e.getMessage()));
+    }
+  }
+
+  /**
+   * The certificate whose response is stapled and its OCSP responder.
+   */
+  private record Target(CertID certId, byte[] request, X509Certificate issuer,
+                        URI responderUri) {
+  }
+
+  /**
+   * The outcome of a refresh of the OCSP response.
+   */
+  enum RefreshOutcome {
+    REFRESHED("refreshed"),
+    FAILED("failed");
+
+    RefreshOutcome(String tag) {
+      this.tag = tag;
+    }
+
+    private final String tag;
+  }
+
+  /**
+   * Name of the counter of the refreshes of the OCSP response.
+   */
+  public static final String REFRESH_METRIC_NAME = "server.ocsp.stapling.refresh";
+
+  private static final String OCSP_REQUEST_CONTENT_TYPE = "application/ocsp-request";
+
+  private final Map<RefreshOutcome, Counter> refreshCounters = new EnumMap<>(RefreshOutcome.class);
+
+  private final ReentrantLock refreshLock = new ReentrantLock();
+
+  private volatile Target target;
+
+  private volatile StapledResponse response;
+
+  private final OcspStaplingConfig config;
+
+  private final TlsConfigurationRegistry tlsRegistry;
+
+  private final TslTrustManager trustManager;
+
+  private final Path cacheFile;
+
+  private final HttpClient httpClient;
+
+  private final Logger log;
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.certificate.ocsp;
+
+import io.vertx.core.net.OpenSSLEngineOptions;
+import io.vertx.core.spi.tls.SslContextFactory;
+
+/**
+ * OpenSSL engine options of the HTTPS server creating the SSL contexts through an
+ * {@link OcspStaplingSslContextFactory}, so the OCSP response of the server certificate is
+ * stapled to the handshakes of this server only.
+ *
+ * <p>Vert.x keeps the engine options of a server for its lifetime and creates a new SSL context
+ * with them when the TLS configuration is reloaded, so the stapling survives the reloads.
+ *
+ * @author Antonio Musarra
+ * @see OcspStaplingCustomizer
+ */
+public class OcspStaplingSSLEngineOptions extends OpenSSLEngineOptions {
+
+  /**
+   * Creates the options.
+   *
+   * @param manager the manager of the OCSP response of the server certificate
+   */
+  public OcspStaplingSSLEngineOptions(OcspStaplingManager manager) {
+    this.manager = manager;
+  }
+
+  /**
+   * Creates the options, copying the given OpenSSL engine options.
+   *
+   * @param options the OpenSSL engine options to copy
+   * @param manager the manager of the OCSP response of the server certificate
+   */
+  public OcspStaplingSSLEngineOptions(OpenSSLEngineOptions options, OcspStaplingManager manager) {
+    super(options);
+    this.manager = manager;
+  }
+
+  @Override
+  public OcspStaplingSSLEngineOptions copy() {
+    return new OcspStaplingSSLEngineOptions(this, manager);
+  }
+
+  @Override
+  public SslContextFactory sslContextFactory() {
+    return new OcspStaplingSslContextFactory(isSessionCacheEnabled(), manager);
+  }
+
+  private final OcspStaplingManager manager;
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.certificate.ocsp;
+
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.ClientAuth;
+import io.netty.handler.ssl.DelegatingSslContext;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.OpenSslServerSessionContext;
+import io.netty.handler.ssl.ReferenceCountedOpenSslEngine;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+import io.vertx.core.spi.tls.SslContextFactory;
+import java.util.List;
+import java.util.Set;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.TrustManagerFactory;
+
+/**
+ * Factory of the SSL contexts of the OpenSSL engine stapling the OCSP response of the server
+ * certificate: the server contexts are built with the OCSP stapling enabled and every engine
+ * they create gets the current response of the {@link OcspStaplingManager}, if any.
+ *
+ * <p>The contexts are built as the factory of the OpenSSL engine of Vert.x builds them (cipher
+ * suites, ALPN, client authentication and session cache), which has no option to enable the
+ * OCSP stapling. The response is read when the engine is created, before the handshake, so the
+ * handshakes never wait for the OCSP responder.
+ *
+ * @author Antonio Musarra
+ * @see OcspStaplingSSLEngineOptions
+ */
+class OcspStaplingSslContextFactory implements SslContextFactory {
+
+  /**
+   * Creates the factory.
+   *
+   * @param sessionCacheEnabled whether the session cache of the server contexts is enabled
+   * @param manager             the manager of the OCSP response of the server certificate
+   */
+  OcspStaplingSslContextFactory(boolean sessionCacheEnabled, OcspStaplingManager manager) {
+    this.sessionCacheEnabled = sessionCacheEnabled;
+    this.manager = manager;
+  }
+
+  @Override
+  public SslContextFactory useAlpn(boolean useAlpn) {
+    this.useAlpn = useAlpn;
+    return this;
+  }
+
+  @Override
+  public SslContextFactory clientAuth(ClientAuth clientAuth) {
+    this.clientAuth = clientAuth;
+    return this;
+  }
+
+  @Override
+  public SslContextFactory forClient(boolean forClient) {
+    this.forClient = forClient;
+    return this;
+  }
+
+  @Override
+  public SslContextFactory keyMananagerFactory(KeyManagerFactory keyManagerFactory) {
+    this.keyManagerFactory = keyManagerFactory;
+    return this;
+  }
+
+  @Override
+  public SslContextFactory trustManagerFactory(TrustManagerFactory trustManagerFactory) {
+    this.trustManagerFactory = trustManagerFactory;
+    return this;
+  }
+
+  @Override
+  public SslContextFactory enabledCipherSuites(Set<String> cipherSuites) {
+    this.cipherSuites = cipherSuites;
+    return this;
+  }
+
+  @Override
+  public SslContextFactory applicationProtocols(List<String> applicationProtocols) {
+    this.applicationProtocols = applicationProtocols;
+    return this;
+  }
+
+  @Override
+  public SslContext create() throws SSLException {
+    SslContextBuilder builder = forClient
+        ? SslContextBuilder.forClient().keyManager(keyManagerFactory)
+        : SslContextBuilder.forServer(keyManagerFactory).enableOcsp(true);
+
+    builder.sslProvider(SslProvider.OPENSSL)
+        .ciphers(cipherSuites == null || cipherSuites.isEmpty()
+            ? OpenSsl.availableOpenSslCipherSuites() : cipherSuites);
+
+    if (trustManagerFactory != null) {
+      builder.trustManager(trustManagerFactory);
+    }
+    if (useAlpn && applicationProtocols != null && !applicationProtocols.isEmpty()) {
+      builder.applicationProtocolConfig(new ApplicationProtocolConfig(
+          ApplicationProtocolConfig.Protocol.ALPN,
+          ApplicationProtocolConfig.SelectorFailureBehavior.NO_ADVERTISE,
+          ApplicationProtocolConfig.SelectedListenerFailureBehavior.ACCEPT,
+          applicationProtocols));
+    }
+    if (clientAuth != null) {
+      builder.clientAuth(clientAuth);
+    }
+
+    SslContext context = builder.build();
+
+    if (forClient) {
+      return context;
+    }
+
+    if (context.sessionContext() instanceof OpenSslServerSessionContext sessionContext) {
+      sessionContext.setSessionCacheEnabled(sessionCacheEnabled);
+    }
+
+    return new StaplingSslContext(context, manager);
+  }
+
+  /**
+   * The server context setting the current OCSP response on the engines it creates.
+   */
+  private static final class StaplingSslContext extends DelegatingSslContext {
+
+    StaplingSslContext(SslContext context, OcspStaplingManager manager) {
+      super(context);
+      this.manager = manager;
+    }
+
+    @Override
+    protected void initEngine(SSLEngine engine) {
+      if (engine instanceof ReferenceCountedOpenSslEngine openSslEngine) {
+        manager.currentResponse().ifPresent(response ->
+            openSslEngine.setOcspResponse(response.encoded()));
+      }
+    }
+
+    private final OcspStaplingManager manager;
+  }
+
+  private final boolean sessionCacheEnabled;
+
+  private final OcspStaplingManager manager;
+
+  private boolean useAlpn;
+
+  private ClientAuth clientAuth;
+
+  private boolean forClient;
+
+  private KeyManagerFactory keyManagerFactory;
+
+  private TrustManagerFactory trustManagerFactory;
+
+  private Set<String> cipherSuites;
+
+  private List<String> applicationProtocols;
+}
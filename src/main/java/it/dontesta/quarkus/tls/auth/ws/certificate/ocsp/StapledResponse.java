@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.certificate.ocsp;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * A verified OCSP response of the server certificate, stapled to the TLS handshakes.
+ *
+ * @param encoded    the DER encoding of the response
+ * @param thisUpdate the time at which the status was known to be correct
+ * @param nextUpdate the time at which the response expires: its nextUpdate, or its thisUpdate
+ *                   plus the configured maximum age if the responder didn't set it
+ * @author Antonio Musarra
+ * @see OcspStaplingManager
+ */
+record StapledResponse(byte[] encoded, Instant thisUpdate, Instant nextUpdate) {
+
+  /**
+   * Returns whether the response can be stapled.
+   *
+   * @param now the current time
+   * @return true if the response has not expired
+   */
+  boolean isValidAt(Instant now) {
+    return now.isBefore(nextUpdate);
+  }
+
+  /**
+   * Returns the time at which the response should be replaced: when half of its validity has
+   * elapsed, so a failing responder leaves the other half to retry.
+   *
+   * @return the refresh time
+   */
+  Instant refreshAt() {
+    return thisUpdate.plus(Duration.between(thisUpdate, nextUpdate).dividedBy(2));
+  }
+}
@@ -0,0 +1,572 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.certificate.revocation;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.cert.CRLException;
+import java.security.spec.PSSParameterSpec;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+import javax.security.auth.x500.X500Principal;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.ASN1TaggedObject;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.IssuingDistributionPoint;
+import org.bouncycastle.asn1.x509.Time;
+
+/**
+ * Streaming parser of the CRLs (RFC 5280), in DER or PEM form, into {@link RevokedSerials}.
+ *
+ * <p>The CRL is read once from the stream and never held as a whole: the small fields (the
+ * signature algorithm, the issuer, the dates and the CRL extensions) are decoded with
+ * BouncyCastle, while the list of the revoked certificates, which can be hundreds of MB, is
+ * walked entry by entry keeping only the serial numbers. The bytes of the TBSCertList are fed to
+ * the signature verification while they are read, with the public keys returned for the issuer
+ * of the CRL: a CRL whose signature doesn't verify with any of them is rejected.
+ *
+ * <p>Only complete CRLs of the certificates of their issuer are supported: the delta CRLs, the
+ * indirect CRLs and the CRLs with an unknown critical extension are rejected. The signature
+ * algorithm is resolved by OID by the JCA providers (RSA, RSASSA-PSS, ECDSA, EdDSA, ...).
+ *
+ * @author Antonio Musarra
+ * @see RevokedSerials
+ * @see CrlUpdater
+ */
+public final class CrlParser {
+
+  private CrlParser() {
+  }
+
+  /**
+   * Parses a CRL, verifying its signature.
+   *
+   * @param input      the stream of the CRL in DER or PEM form, not closed by the parser
+   * @param issuerKeys the function returning the trusted public keys of the issuer of the CRL
+   * @return the serial numbers revoked by the CRL
+   * @throws IOException  if the stream can't be read
+   * @throws CRLException if the CRL is malformed, unsupported or its signature doesn't verify
+   */
+  public static RevokedSerials parse(InputStream input,
+                                     Function<X500Principal, ? extends Collection<PublicKey>>
+                                         issuerKeys)
+      throws IOException, CRLException {
+    DerStream der = new DerStream(decodePem(new BufferedInputStream(input, BUFFER_SIZE)));
+
+    // CertificateList ::= SEQUENCE { tbsCertList, signatureAlgorithm, signatureValue }
+    der.expect(SEQUENCE);
+    der.readLength();
+
+    // The TBSCertList is buffered until the issuer, and then its keys, are known
+    ByteArrayOutputStream tbsHeader = new ByteArrayOutputStream();
+    der.tee(tbsHeader::write);
+
+    der.expect(SEQUENCE);
+    long tbsLength = der.readLength();
+    long tbsEnd = der.position() + tbsLength;
+
+    int tag = der.readTag();
+    if (tag == INTEGER) {
+      // The version, v2 if present
+      der.skip(der.readLength());
+      tag = der.readTag();
+    }
+
+    byte[] signatureAlgorithm = der.readElement(tag, SEQUENCE);
+    X500Principal issuer = new X500Principal(der.readElement(der.readTag(), SEQUENCE));
+    Instant thisUpdate = readTime(der.readElement(der.readTag(), -1));
+    Instant nextUpdate = null;
+
+    tag = der.position() < tbsEnd ? der.readTag() : -1;
+    if (tag == UTC_TIME || tag == GENERALIZED_TIME) {
+      nextUpdate = readTime(der.readElement(tag, -1));
+      tag = der.position() < tbsEnd ? der.readTag() : -1;
+    }
+
+    Signature[] verifiers = verifiers(signatureAlgorithm, issuer, issuerKeys.apply(issuer));
+    der.tee((buffer, offset, length) -> update(verifiers, buffer, offset, length));
+    update(verifiers, tbsHeader.toByteArray(), 0, tbsHeader.size());
+
+    RevokedSerials.Builder serials = new RevokedSerials.Builder(issuer, thisUpdate, nextUpdate);
+
+    if (tag == SEQUENCE) {
+      readRevokedCertificates(der, serials);
+      tag = der.position() < tbsEnd ? der.readTag() : -1;
+    }
+
+    if (tag == CRL_EXTENSIONS) {
+      checkExtensions(der.readElement(tag, CRL_EXTENSIONS));
+    } else if (tag != -1) {
+      throw new CRLException("Unexpected tag 0x%02x in the TBSCertList".formatted(tag));
+    }
+
+    if (der.position() != tbsEnd) {
+      throw new CRLException("Malformed TBSCertList");
+    }
+    der.tee(null);
+
+    // The signature algorithm must be the same as the one of the TBSCertList
+    if (!Arrays.equals(signatureAlgorithm, der.readElement(der.readTag(), SEQUENCE))) {
+      throw new CRLException("Mismatched signature algorithms");
+    }
+
+    byte[] signatureValue = der.readContent(der.readTag(), BIT_STRING);
+    if (signatureValue.length < 1 || signatureValue[0] != 0) {
+      throw new CRLException("Malformed signature value");
+    }
+
+    verify(verifiers, Arrays.copyOfRange(signatureValue, 1, signatureValue.length), issuer);
+
+    return serials.build();
+  }
+
+  /**
+   * Reads the revokedCertificates, keeping only the serial numbers of the entries.
+   *
+   * @param der     the stream positioned after the tag of the revokedCertificates
+   * @param serials the collector of the serial numbers
+   */
+  private static void readRevokedCertificates(DerStream der, RevokedSerials.Builder serials)
+      throws IOException, CRLException {
+    long length = der.readLength();
+    long end = der.position() + length;
+    byte[] serial = new byte[MAX_SERIAL_LENGTH];
+
+    while (der.position() < end) {
+      // SEQUENCE { userCertificate CertificateSerialNumber, revocationDate Time,
+      //            crlEntryExtensions Extensions OPTIONAL }
+      der.expect(SEQUENCE);
+      long entryLength = der.readLength();
+      long entryEnd = der.position() + entryLength;
+
+      der.expect(INTEGER);
+      long serialLength = der.readLength();
+      if (serialLength < 1 || serialLength > MAX_SERIAL_LENGTH) {
+        throw new CRLException("Invalid serial number length %d".formatted(serialLength));
+      }
+
+      der.readFully(serial, (int) serialLength);
+      serials.add(serial, (int) serialLength);
+
+      der.skip(entryEnd - der.position());
+    }
+
+    if (der.position() != end) {
+      throw new CRLException("Malformed revokedCertificates");
+    }
+  }
+
+  /**
+   * Rejects the CRLs whose extensions change the meaning of the entries.
+   *
+   * @param encoded the crlExtensions field
+   */
+  private static void checkExtensions(byte[] encoded) throws CRLException {
+    Extensions extensions;
+
+    try {
+      extensions = Extensions.getInstance(
+          ASN1TaggedObject.getInstance(ASN1Primitive.fromByteArray(encoded)), true);
+    } catch (IOException | RuntimeException e) {
+      throw new CRLException("Malformed crlExtensions", e);
+    }
+
+    if (extensions.getExtension(Extension.deltaCRLIndicator) != null) {
+      throw new CRLException("Delta CRLs are not supported");
+    }
+
+    Extension issuingDistributionPoint =
+        extensions.getExtension(Extension.issuingDistributionPoint);
+    if (issuingDistributionPoint != null && IssuingDistributionPoint.getInstance(
+        issuingDistributionPoint.getParsedValue()).isIndirectCRL()) {
+      throw new CRLException("Indirect CRLs are not supported");
+    }
+
+    for (ASN1ObjectIdentifier oid : extensions.getCriticalExtensionOIDs()) {
+      if (!oid.equals(Extension.issuingDistributionPoint)) {
+        throw new CRLException("Unsupported critical extension %s".formatted(oid));
+      }
+    }
+  }
+
+  /**
+   * Initializes the verification of the signature with each public key of the issuer.
+   *
+   * @param algorithm  the AlgorithmIdentifier of the signature
+   * @param issuer     the issuer of the CRL
+   * @param issuerKeys the trusted public keys of the issuer
+   * @return the initialized signatures, one for each key compatible with the algorithm
+   */
+  private static Signature[] verifiers(byte[] algorithm, X500Principal issuer,
+                                       Collection<PublicKey> issuerKeys) throws CRLException {
+    AlgorithmIdentifier algorithmIdentifier = AlgorithmIdentifier.getInstance(algorithm);
+    String oid = algorithmIdentifier.getAlgorithm().getId();
+    List<Signature> verifiers = new ArrayList<>();
+
+    try {
+      PSSParameterSpec pssParameters = null;
+
+      if (oid.equals(RSASSA_PSS_OID)) {
+        AlgorithmParameters parameters = AlgorithmParameters.getInstance(oid);
+        parameters.init(algorithmIdentifier.getParameters().toASN1Primitive().getEncoded());
+        pssParameters = parameters.getParameterSpec(PSSParameterSpec.class);
+      }
+
+      for (PublicKey issuerKey : issuerKeys) {
+        Signature verifier = Signature.getInstance(oid);
+
+        if (pssParameters != null) {
+          verifier.setParameter(pssParameters);
+        }
+
+        try {
+          verifier.initVerify(issuerKey);
+          verifiers.add(verifier);
+        } catch (InvalidKeyException e) {
+          // A key of another type, e.g. an EC key of an issuer with an RSA key too
+        }
+      }
+    } catch (NoSuchAlgorithmException e) {
+      throw new CRLException("Unsupported signature algorithm %s".formatted(oid), e);
+    } catch (IOException | GeneralSecurityException | RuntimeException e) {
+      throw new CRLException("Invalid parameters of the signature algorithm %s".formatted(oid),
+          e);
+    }
+
+    if (verifiers.isEmpty()) {
+      throw new CRLException("No trusted key of the issuer %s".formatted(issuer));
+    }
+
+    return verifiers.toArray(new Signature[0]);
+  }
+
+  private static void update(Signature[] verifiers, byte[] buffer, int offset, int length) {
+    try {
+      for (Signature verifier : verifiers) {
+        verifier.update(buffer, offset, length);
+      }
+    } catch (SignatureException e) {
+      // The verifiers are initialized before they are fed
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static void verify(Signature[] verifiers, byte[] signature, X500Principal issuer)
+      throws CRLException {
+    for (Signature verifier : verifiers) {
+      try {
+        if (verifier.verify(signature)) {
+          return;
+        }
+      } catch (SignatureException e) {
+        // Malformed for this key, try the next one
+      }
+    }
+
+    throw new CRLException("Invalid signature of the CRL of %s".formatted(issuer));
+  }
+
+  private static Instant readTime(byte[] encoded) throws CRLException {
+    try {
+      return Time.getInstance(ASN1Primitive.fromByteArray(encoded)).getDate().toInstant();
+    } catch (IOException | RuntimeException e) {
+      throw new CRLException("Malformed time", e);
+    }
+  }
+
+  /**
+   * Returns the stream of the DER encoding of the CRL, decoding the Base64 content of a PEM CRL
+   * while it is read.
+   *
+   * @param input the stream of the CRL in DER or PEM form
+   * @return the stream of the DER encoding
+   */
+  private static InputStream decodePem(BufferedInputStream input) throws IOException {
+    input.mark(1);
+    int first = input.read();
+    input.reset();
+
+    if (first != '-') {
+      return input;
+    }
+
+    // Skip the line "-----BEGIN X509 CRL-----"
+    for (int c = input.read(); c != '\n'; c = input.read()) {
+      if (c < 0) {
+        throw new EOFException("Truncated PEM CRL");
+      }
+    }
+
+    // The Base64 content ends at the line "-----END X509 CRL-----"
+    InputStream content = new FilterInputStream(input) {
+      @Override
+      public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+      }
+
+      @Override
+      public int read(byte[] b, int offset, int length) throws IOException {
+        if (ended) {
+          return -1;
+        }
+
+        int count = super.read(b, offset, length);
+        for (int i = offset; i < offset + count; i++) {
+          if (b[i] == '-') {
+            ended = true;
+            return i > offset ? i - offset : -1;
+          }
+        }
+        return count;
+      }
+
+      private boolean ended;
+    };
+
+    return Base64.getMimeDecoder().wrap(content);
+  }
+
+  /**
+   * Receives the bytes read from a {@link DerStream}.
+   */
+  @FunctionalInterface
+  private interface Tee {
+
+    void write(byte[] buffer, int offset, int length);
+  }
+
+  /**
+   * Buffered reader of a DER stream, tracking the position and passing the bytes read to a
+   * {@link Tee}.
+   */
+  private static final class DerStream {
+
+    DerStream(InputStream input) {
+      this.input = input;
+    }
+
+    long position() {
+      return position;
+    }
+
+    /**
+     * Sets the receiver of the bytes read from now on, after passing the pending ones to the
+     * previous receiver.
+     *
+     * @param tee the receiver, or null
+     */
+    void tee(Tee tee) {
+      flushTee();
+      this.tee = tee;
+    }
+
+    int readTag() throws IOException, CRLException {
+      int tag = read();
+
+      if ((tag & 0x1f) == 0x1f) {
+        throw new CRLException("Unsupported high tag number");
+      }
+      return tag;
+    }
+
+    void expect(int expectedTag) throws IOException, CRLException {
+      int tag = readTag();
+
+      if (tag != expectedTag) {
+        throw new CRLException("Expected tag 0x%02x, found 0x%02x".formatted(expectedTag, tag));
+      }
+    }
+
+    long readLength() throws IOException, CRLException {
+      int first = read();
+
+      if (first < 0x80) {
+        return first;
+      }
+
+      int octets = first & 0x7f;
+      if (octets == 0 || octets > 4) {
+        throw new CRLException("Unsupported length encoding");
+      }
+
+      long length = 0;
+      for (int i = 0; i < octets; i++) {
+        length = (length << 8) | read();
+      }
+      return length;
+    }
+
+    /**
+     * Reads the content of an element whose tag has been read.
+     *
+     * @param tag         the tag read
+     * @param expectedTag the expected tag
+     * @return the content octets
+     */
+    byte[] readContent(int tag, int expectedTag) throws IOException, CRLException {
+      if (tag != expectedTag) {
+        throw new CRLException("Expected tag 0x%02x, found 0x%02x".formatted(expectedTag, tag));
+      }
+
+      long length = readLength();
+      if (length > MAX_ELEMENT_LENGTH) {
+        throw new CRLException("Element too long (%d bytes)".formatted(length));
+      }
+
+      byte[] content = new byte[(int) length];
+      readFully(content, content.length);
+      return content;
+    }
+
+    /**
+     * Reads the whole encoding (tag, length and content) of an element whose tag has been read.
+     *
+     * @param tag         the tag read
+     * @param expectedTag the expected tag, or -1 for any tag
+     * @return the DER encoding of the element
+     */
+    byte[] readElement(int tag, int expectedTag) throws IOException, CRLException {
+      byte[] content = readContent(tag, expectedTag < 0 ? tag : expectedTag);
+      int lengthOctets = content.length < 0x80 ? 0
+          : (Integer.SIZE - Integer.numberOfLeadingZeros(content.length) + 7) / 8;
+      byte[] element = new byte[2 + lengthOctets + content.length];
+
+      element[0] = (byte) tag;
+      if (lengthOctets == 0) {
+        element[1] = (byte) content.length;
+      } else {
+        element[1] = (byte) (0x80 | lengthOctets);
+        for (int i = 0; i < lengthOctets; i++) {
+          element[2 + i] = (byte) (content.length >>> (8 * (lengthOctets - 1 - i)));
+        }
+      }
+      System.arraycopy(content, 0, element, 2 + lengthOctets, content.length);
+
+      return element;
+    }
+
+    void readFully(byte[] destination, int length) throws IOException {
+      for (int copied = 0; copied < length; ) {
+        if (offset == limit) {
+          fill();
+        }
+
+        int count = Math.min(length - copied, limit - offset);
+        System.arraycopy(buffer, offset, destination, copied, count);
+        offset += count;
+        position += count;
+        copied += count;
+      }
+    }
+
+    void skip(long length) throws IOException, CRLException {
+      if (length < 0) {
+        throw new CRLException("Malformed element");
+      }
+
+      for (long skipped = 0; skipped < length; ) {
+        if (offset == limit) {
+          fill();
+        }
+
+        int count = (int) Math.min(length - skipped, limit - offset);
+        offset += count;
+        position += count;
+        skipped += count;
+      }
+    }
+
+    private int read() throws IOException {
+      if (offset == limit) {
+        fill();
+      }
+
+      position++;
+      return buffer[offset++] & 0xff;
+    }
+
+    private void fill() throws IOException {
+      flushTee();
+
+      int count = input.readNBytes(buffer, 0, buffer.length);
+      if (count == 0) {
+        throw new EOFException("Truncated CRL");
+      }
+
+      offset = 0;
+      limit = count;
+      teeOffset = 0;
+    }
+
+    private void flushTee() {
+      if (tee != null && offset > teeOffset) {
+        tee.write(buffer, teeOffset, offset - teeOffset);
+      }
+      teeOffset = offset;
+    }
+
+    private final InputStream input;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private int offset;
+
+    private int limit;
+
+    private int teeOffset;
+
+    private long position;
+
+    private Tee tee;
+  }
+
+  private static final int BUFFER_SIZE = 8192;
+
+  /**
+   * Maximum length of the elements read as a whole: the algorithm, the issuer, the dates and the
+   * CRL extensions.
+   */
+  private static final int MAX_ELEMENT_LENGTH = 64 * 1024;
+
+  /**
+   * Maximum length of a serial number: RFC 5280 allows 20 octets, some CAs exceed them.
+   */
+  private static final int MAX_SERIAL_LENGTH = 64;
+
+  private static final String RSASSA_PSS_OID = "1.2.840.113549.1.1.10";
+
+  private static final int INTEGER = 0x02;
+
+  private static final int BIT_STRING = 0x03;
+
+  private static final int UTC_TIME = 0x17;
+
+  private static final int GENERALIZED_TIME = 0x18;
+
+  private static final int SEQUENCE = 0x30;
+
+  private static final int CRL_EXTENSIONS = 0xA0;
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.certificate.revocation;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import java.security.cert.X509Certificate;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import javax.security.auth.x500.X500Principal;
+
+/**
+ * In-memory index of the certificates revoked by the CRLs loaded by the {@link CrlUpdater}.
+ *
+ * <p>The index maps each issuer to the serial numbers revoked by its most recent CRL, and it is
+ * swapped as a whole when the CRLs are refreshed: a lookup is a hash lookup of the issuer of the
+ * certificate and a binary search of its serial number (see {@link RevokedSerials}), without
+ * locks and without allocations once the certificate has computed the canonical form of its
+ * issuer name.
+ *
+ * @author Antonio Musarra
+ * @see CrlUpdater
+ * @see RevokedSerials
+ */
+@ApplicationScoped
+public class CrlRevocationIndex {
+
+  /**
+   * Returns whether the certificate is revoked by the CRL of its issuer.
+   *
+   * @param certificate the certificate
+   * @return true if the CRL of the issuer lists the serial number of the certificate, false if
+   *         it doesn't or if no CRL of the issuer is loaded
+   */
+  public boolean isRevoked(X509Certificate certificate) {
+    Map<X500Principal, RevokedSerials> index = revokedSerials;
+
+    if (index.isEmpty()) {
+      return false;
+    }
+
+    RevokedSerials serials = index.get(certificate.getIssuerX500Principal());
+    return serials != null && serials.contains(certificate.getSerialNumber());
+  }
+
+  /**
+   * Replaces the index with the given CRLs, keeping the most recent one of each issuer.
+   *
+   * @param crls the CRLs
+   */
+  public void update(Collection<RevokedSerials> crls) {
+    Map<X500Principal, RevokedSerials> index = new HashMap<>();
+
+    for (RevokedSerials crl : crls) {
+      index.merge(crl.issuer(), crl, (current, other) ->
+          other.thisUpdate().isAfter(current.thisUpdate()) ? other : current);
+    }
+
+    revokedSerials = Map.copyOf(index);
+  }
+
+  /**
+   * Returns the CRLs of the index, one for each issuer.
+   *
+   * @return the CRLs
+   */
+  public Collection<RevokedSerials> crls() {
+    return revokedSerials.values();
+  }
+
+  private volatile Map<X500Principal, RevokedSerials> revokedSerials = Map.of();
+}
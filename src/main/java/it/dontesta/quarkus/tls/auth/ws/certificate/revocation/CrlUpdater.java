@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.certificate.revocation;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.scheduler.Scheduled;
+import io.smallrye.common.annotation.RunOnVirtualThread;
+import it.dontesta.quarkus.tls.auth.ws.certificate.etsi.gov.TslTrustManager;
+import it.dontesta.quarkus.tls.auth.ws.utils.DeadlineInputStream;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.PublicKey;
+import java.security.cert.CRLException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import javax.security.auth.x500.X500Principal;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+/**
+ * Refreshes the {@link CrlRevocationIndex} with the CRLs of a local directory
+ * ({@code client.cert.revocation.crl.path}) and of a list of URLs
+ * ({@code client.cert.revocation.crl.urls}).
+ *
+ * <p>Each CRL is streamed from its file or HTTP response into the {@link CrlParser}, which
+ * verifies its signature with the keys of the trusted certificates of the {@link TslTrustManager}
+ * whose subject is the issuer of the CRL. A CRL that can't be read, parsed or verified keeps the
+ * serial numbers of its last successful load, so a failed refresh doesn't un-revoke the
+ * certificates; the CRLs of the issuers trusted only by the TSL are loaded by the first refresh
+ * following the TSL update.
+ *
+ * <p>Like the {@link it.dontesta.quarkus.tls.auth.ws.certificate.etsi.gov.GovCertificateUpdater},
+ * the refresh runs on a virtual thread and a refresh still running when the next one is due
+ * makes the next one to be skipped; the download of a CRL from a URL, body included, is bounded
+ * by {@code client.cert.revocation.crl.http.timeout}, so a stalled server fails the load of its
+ * CRL instead of blocking the refreshes. The loads of the CRLs are counted by the Micrometer
+ * counter {@value #REFRESH_METRIC_NAME} with the tag {@code outcome} ({@code loaded} or
+ * {@code failed}).
+ *
+ * @author Antonio Musarra
+ * @see CrlParser
+ * @see CrlRevocationIndex
+ */
+@ApplicationScoped
+public class CrlUpdater {
+
+  /**
+   * Creates the updater.
+   *
+   * @param revocationIndex the index of the revoked certificates
+   * @param trustManager    the trust manager whose certificates verify the CRLs
+   * @param crlPath         the directory of the CRL files, if any
+   * @param crlUrls         the URLs of the CRLs, if any
+   * @param httpTimeout     the timeout of the whole download of a CRL, from the connection to
+   *                        the last byte of the body
+   * @param meterRegistry   the registry of the refresh counter
+   * @param log             the logger
+   */
+  @Inject
+  public CrlUpdater(CrlRevocationIndex revocationIndex, TslTrustManager trustManager,
+                    @ConfigProperty(name = "client.cert.revocation.crl.path")
+                    Optional<String> crlPath,
+                    @ConfigProperty(name = "client.cert.revocation.crl.urls")
+                    Optional<List<String>> crlUrls,
+                    @ConfigProperty(name = "client.cert.revocation.crl.http.timeout",
+                        defaultValue = "30s") Duration httpTimeout,
+                    MeterRegistry meterRegistry, Logger log) {
+    this.revocationIndex = revocationIndex;
+    this.trustManager = trustManager;
+    this.crlPath = crlPath.map(Path::of).orElse(null);
+    this.crlUrls = crlUrls.orElse(List.of());
+    this.httpTimeout = httpTimeout;
+    this.log = log;
+    this.httpClient = HttpClient.newBuilder()
+        .connectTimeout(httpTimeout)
+        .followRedirects(HttpClient.Redirect.NORMAL)
+        .executor(Executors.newVirtualThreadPerTaskExecutor())
+        .build();
+
+    for (LoadOutcome outcome : LoadOutcome.values()) {
+      loadCounters.put(outcome, Counter.builder(REFRESH_METRIC_NAME)
+          .description("The loads of the CRLs by outcome")
+          .tag("outcome", outcome.tag)
+          .register(meterRegistry));
+    }
+  }
+
+  /**
+   * This scheduled method loads the CRLs of the directory and of the URLs, and swaps the
+   * {@link CrlRevocationIndex} with them.
+   */
+  @Scheduled(every = "{client.cert.revocation.crl.update.period}",
+      concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+  @RunOnVirtualThread
+  public void updateRevocationLists() {
+    List<String> sources = sources();
+
+    if (sources.isEmpty() && lastLoaded.isEmpty()) {
+      return;
+    }
+
+    Map<X500Principal, List<PublicKey>> issuerKeys = issuerKeys();
+    Map<String, RevokedSerials> loaded = new HashMap<>();
+
+    for (String source : sources) {
+      try (InputStream input = open(source)) {
+        RevokedSerials crl = CrlParser.parse(input,
+            issuer -> issuerKeys.getOrDefault(issuer, List.of()));
+
+        if (crl.nextUpdate() != null && crl.nextUpdate().isBefore(Instant.now())) {
+          log.warn("The CRL %s of %s is past its next update %s".formatted(source, crl.issuer(),
+              crl.nextUpdate()));
+        }
+
+        loaded.put(source, crl);
+        loadCounters.get(LoadOutcome.LOADED).increment();
+      } catch (IOException | CRLException e) {
+        RevokedSerials previous = lastLoaded.get(source);
+
+        if (previous != null) {
+          loaded.put(source, previous);
+        }
+
+        loadCounters.get(LoadOutcome.FAILED).increment();
+        log.warn("Failed to load the CRL %s: %s".formatted(source, e.getMessage()));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+
+    lastLoaded = loaded;
+    revocationIndex.update(loaded.values());
+
+    if (log.isDebugEnabled()) {
+      log.debug("Loaded the CRLs %s".formatted(revocationIndex.crls()));
+    }
+  }
+
+  /**
+   * Close the HTTP client, aborting the download in progress if any.
+   */
+  @PreDestroy
+  void close() {
+    httpClient.shutdownNow();
+  }
+
+  /**
+   * Returns the sources of the CRLs: the regular files of the directory and the URLs.
+   *
+   * @return the paths of the files and the URLs
+   */
+  private List<String> sources() {
+    List<String> sources = new ArrayList<>();
+
+    if (crlPath != null) {
+      try (Stream<Path> files = Files.list(crlPath)) {
+        files.filter(Files::isRegularFile).map(Path::toString).sorted().forEach(sources::add);
+      } catch (IOException e) {
+        log.warn("Failed to list the CRL directory %s: %s".formatted(crlPath, e.getMessage()));
+        // Keep the CRLs of the directory loaded so far
+        lastLoaded.keySet().stream().filter(source -> !crlUrls.contains(source))
+            .forEach(sources::add);
+      }
+    }
+
+    sources.addAll(crlUrls);
+    return sources;
+  }
+
+  /**
+   * Returns the public keys of the trusted certificates allowed to sign CRLs, by subject.
+   *
+   * @return the public keys of the CRL issuers
+   */
+  private Map<X500Principal, List<PublicKey>> issuerKeys() {
+    Map<X500Principal, List<PublicKey>> issuerKeys = new HashMap<>();
+
+    for (X509Certificate certificate : trustManager.getAcceptedIssuers()) {
+      boolean[] keyUsage = certificate.getKeyUsage();
+
+      if (keyUsage == null || (keyUsage.length > CRL_SIGN && keyUsage[CRL_SIGN])) {
+        issuerKeys.computeIfAbsent(certificate.getSubjectX500Principal(),
+            subject -> new ArrayList<>()).add(certificate.getPublicKey());
+      }
+    }
+
+    return issuerKeys;
+  }
+
+  /**
+   * Opens the CRL of the source. The download of a CRL from a URL, body included, must end
+   * within the HTTP timeout, otherwise its reads fail with an
+   * {@link java.net.http.HttpTimeoutException}.
+   *
+   * @param source the path of the file or the URL of the CRL
+   * @return the stream of the CRL
+   * @throws IOException          if the CRL can't be opened
+   * @throws InterruptedException if the thread is interrupted
+   */
+  private InputStream open(String source) throws IOException, InterruptedException {
+    if (!source.startsWith("http://") && !source.startsWith("https://")) {
+      return Files.newInputStream(Path.of(source));
+    }
+
+    Instant deadline = Instant.now().plus(httpTimeout);
+    HttpResponse<InputStream> response = httpClient.send(
+        HttpRequest.newBuilder().uri(URI.create(source)).timeout(httpTimeout).build(),
+        responseInfo -> HttpResponse.BodySubscribers.mapping(
+            HttpResponse.BodySubscribers.ofInputStream(),
+            body -> new DeadlineInputStream(body, deadline)));
+
+    if (response.statusCode() != 200) {
+      response.body().close();
+      throw new IOException("Status code %d".formatted(response.statusCode()));
+    }
+
+    return response.body();
+  }
+
+  /**
+   * The outcome of the load of a CRL.
+   */
+  enum LoadOutcome {
+    LOADED("loaded"),
+    FAILED("failed");
+
+    LoadOutcome(String tag) {
+      this.tag = tag;
+    }
+
+    private final String tag;
+  }
+
+  /**
+   * Name of the counter of the loads of the CRLs.
+   */
+  public static final String REFRESH_METRIC_NAME = "client.cert.revocation.crl.refresh";
+
+  /**
+   * Index of the cRLSign bit of the key usage.
+   */
+  private static final int CRL_SIGN = 6;
+
+  private final Map<LoadOutcome, Counter> loadCounters = new EnumMap<>(LoadOutcome.class);
+
+  private volatile Map<String, RevokedSerials> lastLoaded = Map.of();
+
+  private final CrlRevocationIndex revocationIndex;
+
+  private final TslTrustManager trustManager;
+
+  private final Path crlPath;
+
+  private final List<String> crlUrls;
+
+  private final Duration httpTimeout;
+
+  private final HttpClient httpClient;
+
+  private final Logger log;
+}
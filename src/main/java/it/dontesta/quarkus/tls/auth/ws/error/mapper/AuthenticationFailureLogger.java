@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.error.mapper;
+
+import it.dontesta.quarkus.tls.auth.ws.exception.CertificateAuthenticationException;
+import it.dontesta.quarkus.tls.auth.ws.exception.CertificateAuthenticationException.Reason;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+/**
+ * Rate-limited log of the rejected client certificates.
+ *
+ * <p>For each {@link Reason}, at most {@code client.cert.auth.failure.log.limit} failures are
+ * logged in each {@code client.cert.auth.failure.log.interval}; the other ones are only counted,
+ * and their number is reported by the first failure logged in the next interval. A fleet of
+ * devices presenting bad certificates thus produces a bounded number of log lines.
+ *
+ * @author Antonio Musarra
+ * @see SecurityExceptionMapper
+ * @see CertificateAuthenticationException
+ */
+@ApplicationScoped
+public class AuthenticationFailureLogger {
+
+  /**
+   * Creates the logger.
+   *
+   * @param limit    the maximum number of failures logged for each reason in an interval
+   * @param interval the interval of the limit
+   * @param log      the logger
+   */
+  @Inject
+  public AuthenticationFailureLogger(
+      @ConfigProperty(name = "client.cert.auth.failure.log.limit", defaultValue = "10")
+      int limit,
+      @ConfigProperty(name = "client.cert.auth.failure.log.interval", defaultValue = "1m")
+      Duration interval,
+      Logger log) {
+    this.log = log;
+
+    for (Reason reason : Reason.values()) {
+      windows.put(reason, new Window(limit, interval.toNanos()));
+    }
+  }
+
+  /**
+   * Logs a rejected client certificate, unless the limit of its reason has been reached.
+   *
+   * @param exception the rejection
+   */
+  public void log(CertificateAuthenticationException exception) {
+    long suppressed = windows.get(exception.getReason()).acquire(System.nanoTime());
+
+    if (suppressed < 0) {
+      return;
+    }
+
+    if (suppressed == 0) {
+      log.warn("Rejected client certificate (%s): %s".formatted(exception.getReason(),
+          exception.getMessage()));
+    } else {
+      log.warn("Rejected client certificate (%s): %s (%d similar failures not logged)".formatted(
+          exception.getReason(), exception.getMessage(), suppressed));
+    }
+  }
+
+  /**
+   * The fixed window of the failures of a reason.
+   */
+  private static final class Window {
+
+    Window(int limit, long intervalNanos) {
+      this.limit = limit;
+      this.intervalNanos = intervalNanos;
+      this.start = System.nanoTime();
+    }
+
+    /**
+     * Counts a failure.
+     *
+     * @param now the current time in nanoseconds
+     * @return the number of failures not logged in the previous interval if the failure can be
+     *         logged, otherwise -1
+     */
+    synchronized long acquire(long now) {
+      if (now - start >= intervalNanos) {
+        long previouslySuppressed = suppressed;
+        start = now;
+        count = 1;
+        suppressed = 0;
+        return previouslySuppressed;
+      }
+
+      if (count < limit) {
+        count++;
+        return 0;
+      }
+
+      suppressed++;
+      return -1;
+    }
+
+    private final int limit;
+
+    private final long intervalNanos;
+
+    private long start;
+
+    private int count;
+
+    private long suppressed;
+  }
+
+  private final Map<Reason, Window> windows = new EnumMap<>(Reason.class);
+
+  private final Logger log;
+}
@@ -5,29 +5,83 @@
 
 package it.dontesta.quarkus.tls.auth.ws.error.mapper;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.dontesta.quarkus.tls.auth.ws.exception.CertificateAuthenticationException;
+import it.dontesta.quarkus.tls.auth.ws.exception.CertificateAuthenticationException.Reason;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.ext.ExceptionMapper;
 import jakarta.ws.rs.ext.Provider;
+import java.util.EnumMap;
+import java.util.Map;
 
 /**
- * The ErrorResponse class represents the error response returned by the SecurityExceptionMapper.
+ * Maps a SecurityException to a 401 (Unauthorized) response with a {@link SecurityErrorResponse}
+ * body.
  *
- * <p>This class is used to encapsulate the error response returned by the SecurityExceptionMapper.
+ * <p>The bodies of the rejected client certificates ({@link CertificateAuthenticationException})
+ * are serialized once for each {@link Reason}, so a rejected request only allocates the response
+ * itself; the rejections are logged by the rate-limited {@link AuthenticationFailureLogger}.
  *
  * @author Antonio Musarra
+ * @see SecurityErrorResponse
+ * @see AuthenticationFailureLogger
  */
 @Provider
 public class SecurityExceptionMapper implements ExceptionMapper<SecurityException> {
 
+  /**
+   * Creates the mapper.
+   *
+   * @param failureLogger the rate-limited log of the rejected client certificates
+   */
+  @Inject
+  public SecurityExceptionMapper(AuthenticationFailureLogger failureLogger) {
+    this.failureLogger = failureLogger;
+  }
+
   @Override
   public Response toResponse(SecurityException exception) {
-    SecurityErrorResponse errorResponse = new SecurityErrorResponse(
-        Response.Status.UNAUTHORIZED.getStatusCode(),
-        exception.getMessage()
-    );
+    Object errorResponse;
+
+    if (exception instanceof CertificateAuthenticationException rejection) {
+      failureLogger.log(rejection);
+      errorResponse = ERROR_BODIES.get(rejection.getReason());
+    } else {
+      errorResponse = new SecurityErrorResponse(
+          Response.Status.UNAUTHORIZED.getStatusCode(),
+          exception.getMessage()
+      );
+    }
 
     return Response.status(Response.Status.UNAUTHORIZED)
+        .type(MediaType.APPLICATION_JSON_TYPE)
         .entity(errorResponse)
         .build();
   }
-}
\ No newline at end of file
+
+  private static Map<Reason, byte[]> serializeErrorBodies() {
+    ObjectMapper objectMapper = new ObjectMapper();
+    Map<Reason, byte[]> errorBodies = new EnumMap<>(Reason.class);
+
+    for (Reason reason : Reason.values()) {
+      try {
+        errorBodies.put(reason, objectMapper.writeValueAsBytes(new SecurityErrorResponse(
+            Response.Status.UNAUTHORIZED.getStatusCode(), reason.message())));
+      } catch (JsonProcessingException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    return errorBodies;
+  }
+
+  /**
+   * The serialized bodies of the responses to the rejected client certificates.
+   */
+  private static final Map<Reason, byte[]> ERROR_BODIES = serializeErrorBodies();
+
+  private final AuthenticationFailureLogger failureLogger;
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.exception;
+
+/**
+ * Exception thrown when a client certificate is rejected by the SecurityIdentity augmentation.
+ *
+ * <p>The exception is meant to be thrown on every request of a rejected client, so it is cheap
+ * to create: it doesn't capture the stack trace, and its detail message is formatted only when
+ * it is read (e.g. when the failure is logged). The {@link Reason} tells the cause of the
+ * rejection and the message returned to the client.
+ *
+ * @author Antonio Musarra
+ * @see it.dontesta.quarkus.tls.auth.ws.error.mapper.SecurityExceptionMapper
+ */
+public class CertificateAuthenticationException extends SecurityException {
+
+  /**
+   * The reasons of the rejection of a client certificate.
+   */
+  public enum Reason {
+
+    /**
+     * The request has no client certificate.
+     */
+    CERTIFICATE_MISSING("Client certificate not found.", "Client certificate not found."),
+
+    /**
+     * The certificate is listed by the CRL of its issuer; the arguments are the serial number
+     * and the issuer.
+     */
+    CERTIFICATE_REVOKED("The client certificate has been revoked.",
+        "Certificate serial number %x of %s revoked by the CRL."),
+
+    /**
+     * The certificate or its DeviceId is in the deny list; the arguments are the subject and
+     * the DeviceId.
+     */
+    DEVICE_DENIED("The client certificate or device has been blocked.",
+        "Certificate %s with DeviceId %s is in the deny list."),
+
+    /**
+     * Neither the certificate nor its DeviceId is in the allow list; the arguments are the
+     * subject and the DeviceId.
+     */
+    DEVICE_NOT_ALLOWED("The client certificate or device is not allowed.",
+        "Certificate %s with DeviceId %s is not in the allow list."),
+
+    /**
+     * A required extension is missing; the arguments are the OID and the mapping name.
+     */
+    EXTENSION_MISSING("A required extension of the client certificate is missing.",
+        "Invalid certificate OID { %s } missing for %s."),
+
+    /**
+     * An extension cannot be decoded; the argument is the message of the decoding error.
+     */
+    EXTENSION_NOT_DECODABLE("An extension of the client certificate cannot be decoded.", "%s"),
+
+    /**
+     * An extension value doesn't match its pattern; the arguments are the mapping name and the
+     * value.
+     */
+    PATTERN_MISMATCH("An extension of the client certificate has an invalid format.",
+        "Decoded %s do not match the expected pattern: %s"),
+
+    /**
+     * An extension value is rejected by its validator; the arguments are the value, the OID and
+     * the mapping name.
+     */
+    VALUE_REJECTED("An extension of the client certificate has an invalid value.",
+        "Invalid certificate OID value { %s } for OID { %s } of %s.");
+
+    Reason(String message, String detailFormat) {
+      this.message = message;
+      this.detailFormat = detailFormat;
+    }
+
+    /**
+     * Returns the message returned to the client, which doesn't disclose the certificate
+     * content.
+     *
+     * @return the message of the reason
+     */
+    public String message() {
+      return message;
+    }
+
+    private final String message;
+
+    private final String detailFormat;
+  }
+
+  /**
+   * Creates the exception.
+   *
+   * @param reason    the reason of the rejection
+   * @param arguments the arguments of the detail message of the reason
+   */
+  public CertificateAuthenticationException(Reason reason, Object... arguments) {
+    this(reason, null, arguments);
+  }
+
+  /**
+   * Creates the exception with a cause.
+   *
+   * @param reason    the reason of the rejection
+   * @param cause     the cause of the rejection
+   * @param arguments the arguments of the detail message of the reason
+   */
+  public CertificateAuthenticationException(Reason reason, Throwable cause,
+                                            Object... arguments) {
+    super(null, cause);
+    this.reason = reason;
+    this.arguments = arguments;
+  }
+
+  /**
+   * Creates a copy of the given exception, with its reason, cause and message arguments.
+   *
+   * <p>{@link SecurityException} has no constructor disabling the suppressed exceptions, so a
+   * rejection kept to be thrown again (e.g. by a negative cache) is copied for every throw: an
+   * exception suppressed by a caller of one request never reaches the others.
+   *
+   * @param rejection the exception to copy
+   */
+  public CertificateAuthenticationException(CertificateAuthenticationException rejection) {
+    this(rejection.reason, rejection.getCause(), rejection.arguments);
+  }
+
+  /**
+   * Returns the reason of the rejection.
+   *
+   * @return the reason
+   */
+  public Reason getReason() {
+    return reason;
+  }
+
+  @Override
+  public String getMessage() {
+    return reason.detailFormat.formatted(arguments);
+  }
+
+  @Override
+  public synchronized Throwable fillInStackTrace() {
+    // The rejections are expected failures: the stack trace would be neither logged nor useful
+    return this;
+  }
+
+  private final Reason reason;
+
+  private final transient Object[] arguments;
+}
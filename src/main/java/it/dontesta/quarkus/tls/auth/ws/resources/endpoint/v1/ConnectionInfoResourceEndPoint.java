@@ -9,19 +9,30 @@ import io.quarkus.security.credential.CertificateCredential;
 import io.quarkus.security.identity.SecurityIdentity;
 import io.vertx.core.http.HttpServerRequest;
 import io.vertx.ext.web.RoutingContext;
-import it.dontesta.quarkus.tls.auth.ws.security.identity.AttributesAugmentor;
-import it.dontesta.quarkus.tls.auth.ws.security.identity.RolesAugmentor;
+import it.dontesta.quarkus.tls.auth.ws.certificate.etsi.gov.TslTrustManager;
+import it.dontesta.quarkus.tls.auth.ws.resources.endpoint.v1.response.CertificateInfo;
+import it.dontesta.quarkus.tls.auth.ws.resources.endpoint.v1.response.ConnectionInfo;
+import it.dontesta.quarkus.tls.auth.ws.resources.endpoint.v1.response.EntityTags;
+import it.dontesta.quarkus.tls.auth.ws.resources.endpoint.v1.response.FieldProjection;
+import it.dontesta.quarkus.tls.auth.ws.resources.endpoint.v1.response.JsonResponseWriter;
+import it.dontesta.quarkus.tls.auth.ws.resources.endpoint.v1.response.UserIdentityInfo;
+import it.dontesta.quarkus.tls.auth.ws.security.identity.CertificateExtensionMapper;
+import it.dontesta.quarkus.tls.auth.ws.security.identity.CertificateExtensions;
+import it.dontesta.quarkus.tls.auth.ws.utils.CertificateFingerprint;
 import it.dontesta.quarkus.tls.auth.ws.utils.CertificateUtil;
+import jakarta.inject.Inject;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.EntityTag;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
 import jakarta.ws.rs.core.Response;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateParsingException;
 import java.security.cert.X509Certificate;
-import java.util.HashMap;
 import java.util.Map;
 import javax.net.ssl.SSLPeerUnverifiedException;
 import javax.net.ssl.SSLSession;
@@ -36,170 +47,318 @@ import javax.net.ssl.SSLSession;
 @Path("/v1/connection-info")
 public class ConnectionInfoResourceEndPoint {
 
+  @Inject
+  public ConnectionInfoResourceEndPoint(CertificateExtensionMapper extensionMapper,
+                                        TslTrustManager trustManager) {
+    this.extensionMapper = extensionMapper;
+    this.trustManager = trustManager;
+  }
+
   /**
    * Returns information about the client connection.
    *
-   * @param routingContext The routing context for the request.
+   * <p>The blocks of the server and client certificates don't change for the lifetime of the
+   * TLS session, so they are computed once: the server block once per server certificate, the
+   * client block once per {@link SSLSession} (stored as a session value). Clients polling the
+   * endpoint over keep-alive or HTTP/2 connections only pay for the request-specific fields.
+   *
+   * <p>The response is written by the {@link JsonResponseWriter}, which streams the request
+   * headers without copying them.
+   *
+   * <p>The {@code fields} query parameter selects the fields of the response, e.g.
+   * {@code fields=protocol,cipherSuite,client.certCommonName} (see {@link FieldProjection}).
+   * The certificate blocks are computed only if they are selected, and a client block limited
+   * to some fields is computed without them and is not stored in the session.
+   *
+   * <p>When the selected fields don't include the request headers, which change with every
+   * request, the response has a strong ETag and a request with a matching {@code If-None-Match}
+   * header is answered with 304 (Not Modified) before building the response.
+   *
+   * @param routingContext   The routing context for the request.
+   * @param securityIdentity The security identity.
+   * @param request          The request, to evaluate the preconditions.
+   * @param fields           The comma-separated list of the selected fields, all if missing.
    * @return A JSON object containing information about the client connection.
    */
   @Path("/info")
   @GET
   @Produces(MediaType.APPLICATION_JSON)
-  public Response getConnectionInfo(@Context RoutingContext routingContext) {
-    HttpServerRequest request = routingContext.request();
-    Map<String, Object> connectionInfo = new HashMap<>();
-
-    connectionInfo.put("isSecure", request.isSSL());
-    connectionInfo.put("httpProtocol", request.version().name());
-    connectionInfo.put("userAgent", request.getHeader("User-Agent"));
-    connectionInfo.put("httpRequestHeaders", getRequestHeaders(request));
-
-    if (request.isSSL()) {
-      SSLSession sslSession = request.sslSession();
-      if (sslSession != null) {
-        connectionInfo.put("protocol", sslSession.getProtocol());
-        connectionInfo.put("cipherSuite", sslSession.getCipherSuite());
-        connectionInfo.put("server", getServerInfo(sslSession));
-        connectionInfo.put("client", getClientInfo(sslSession));
+  public Response getConnectionInfo(@Context RoutingContext routingContext,
+                                    @Context SecurityIdentity securityIdentity,
+                                    @Context Request request,
+                                    @QueryParam("fields") String fields) {
+    HttpServerRequest httpRequest = routingContext.request();
+    SSLSession sslSession = httpRequest.isSSL() ? httpRequest.sslSession() : null;
+    FieldProjection projection = FieldProjection.parse(fields);
+
+    EntityTag entityTag = getConnectionInfoTag(httpRequest, sslSession, projection);
+    if (entityTag != null) {
+      Response.ResponseBuilder notModified = request.evaluatePreconditions(entityTag);
+      if (notModified != null) {
+        return notModified.build();
       }
     }
 
-    connectionInfo.put("clientAddress", request.remoteAddress().toString());
-    connectionInfo.put("clientPort", request.remoteAddress().port());
+    ConnectionInfo connectionInfo = new ConnectionInfo(
+        httpRequest.isSSL(),
+        httpRequest.version().name(),
+        httpRequest.getHeader("User-Agent"),
+        httpRequest.headers(),
+        sslSession != null ? sslSession.getProtocol() : null,
+        sslSession != null ? sslSession.getCipherSuite() : null,
+        serverProjection -> getServerInfo(sslSession),
+        clientProjection -> getClientInfo(sslSession, securityIdentity, clientProjection),
+        httpRequest.remoteAddress().toString(),
+        httpRequest.remoteAddress().port(),
+        projection);
 
-    return Response.ok(connectionInfo).build();
+    return Response.ok(connectionInfo).tag(entityTag).build();
   }
 
   /**
    * Returns information about the user identity.
    *
+   * <p>The roles and the attributes are written straight from the SecurityIdentity, without the
+   * decoded view of the certificate extensions that is internal to the application.
+   *
+   * <p>The response depends only on the client certificate and on the mappings of its
+   * extensions, so it has a strong ETag and a request with a matching {@code If-None-Match}
+   * header is answered with 304 (Not Modified) before building the response.
+   *
+   * @param routingContext   The routing context for the request.
    * @param securityIdentity The security identity.
+   * @param request          The request, to evaluate the preconditions.
    * @return A JSON object containing information about the user identity.
    */
   @Path("/user-identity")
   @GET
   @Produces(MediaType.APPLICATION_JSON)
-  public Response getUserIdentity(@Context SecurityIdentity securityIdentity) {
-    Map<String, Object> securityIdentityInfo = new HashMap<>();
-
-    securityIdentityInfo.put("principal", securityIdentity.getPrincipal().getName());
-    securityIdentityInfo.put("roles", securityIdentity.getRoles());
-    securityIdentityInfo.put("attributes", securityIdentity.getAttributes());
-
+  public Response getUserIdentity(@Context RoutingContext routingContext,
+                                  @Context SecurityIdentity securityIdentity,
+                                  @Context Request request) {
     CertificateCredential credential = securityIdentity.getCredential(CertificateCredential.class);
     X509Certificate certificate = credential.getCertificate();
 
-    securityIdentityInfo.put("userCN", CertificateUtil.getCommonName(certificate));
+    HttpServerRequest httpRequest = routingContext.request();
+    SessionFingerprints fingerprints =
+        httpRequest.isSSL() ? getSessionFingerprints(httpRequest.sslSession()) : null;
+    CertificateFingerprint clientFingerprint =
+        fingerprints != null ? fingerprints.client() : CertificateFingerprint.of(certificate);
+
+    EntityTag entityTag = EntityTags.of("user-identity", clientFingerprint,
+        trustManager.version(), extensionMapper.configVersion());
+    Response.ResponseBuilder notModified = request.evaluatePreconditions(entityTag);
+    if (notModified != null) {
+      return notModified.build();
+    }
+
+    UserIdentityInfo userIdentityInfo = new UserIdentityInfo(
+        securityIdentity.getPrincipal().getName(),
+        securityIdentity.getRoles(),
+        securityIdentity.getAttributes(),
+        CertificateUtil.getCommonName(certificate));
 
-    return Response.ok(securityIdentityInfo).build();
+    return Response.ok(userIdentityInfo).tag(entityTag).build();
   }
 
   /**
    * Extracts custom extensions from the X509Certificate.
    * <p>
-   * The custom extensions are identified by the following Object Identifiers (OIDs):
+   * The custom extensions are the ones configured under the
+   * {@code client.cert.extensions.mappings} prefix, by default:
    *  <ul>
-   *    <li>1.3.6.1.4.1.12345.1 = ASN1:UTF8String:Role=${ext_cert_role}</li>
-   *    <li>1.3.6.1.4.1.12345.2 = ASN1:UTF8String:DeviceId=${ext_cert_device_id}</li>
+   *    <li>1.3.6.1.4.1.99999.1 = ASN1:UTF8String:Role=${ext_cert_role}</li>
+   *    <li>1.3.6.1.4.1.99999.2 = ASN1:UTF8String:DeviceId=${ext_cert_device_id}</li>
    *  </ul>
    * </p>
    *
    * <p>
-   *   You can see the custom extensions in the ssl_extensions.cnf file
-   *   located in the src/main/resources directory.
+   *   If the certificate is the one of the security identity, the extensions already decoded
+   *   during the authentication are returned.
    * </p>
    *
-   * @param cert The X509Certificate.
+   * @param cert             The X509Certificate.
+   * @param securityIdentity The security identity, or null for the server certificate.
    * @return A map containing the custom extensions.
    */
-  private Map<String, String> getCustomExtensions(X509Certificate cert) {
-    Map<String, String> customExtensions = new HashMap<>();
-    byte[] roleExtension = cert.getExtensionValue(RolesAugmentor.OID_ROLES);
-    byte[] deviceIdExtension = cert.getExtensionValue(AttributesAugmentor.OID_DEVICE_ID);
+  private Map<String, String> getCustomExtensions(X509Certificate cert,
+                                                  SecurityIdentity securityIdentity) {
+    if (securityIdentity != null
+        && securityIdentity.getAttribute(CertificateExtensions.IDENTITY_ATTRIBUTE)
+        instanceof CertificateExtensions extensions) {
+      CertificateCredential credential =
+          securityIdentity.getCredential(CertificateCredential.class);
 
-    if (roleExtension != null) {
-      customExtensions.put("role", CertificateUtil.decodeExtensionValue(roleExtension));
-    }
-    if (deviceIdExtension != null) {
-      customExtensions.put("deviceId", CertificateUtil.decodeExtensionValue(deviceIdExtension));
+      if (credential != null && cert.equals(credential.getCertificate())) {
+        return extensions.values();
+      }
     }
 
-    return customExtensions;
+    return extensionMapper.decode(cert);
   }
 
   /**
-   * Retrieves the request headers from the HttpServerRequest.
+   * Returns information about the server certificate, computed once per server certificate.
    *
-   * @param request The HttpServerRequest object.
-   * @return A map containing the request headers.
+   * @param sslSession The SSL session.
+   * @return The information about the server certificate.
    */
-  private Map<String, String> getRequestHeaders(HttpServerRequest request) {
-    Map<String, String> requestHeaders = new HashMap<>();
-    request.headers().forEach(header -> requestHeaders.put(header.getKey(), header.getValue()));
-    return requestHeaders;
+  private CertificateInfo getServerInfo(SSLSession sslSession) {
+    Certificate[] serverCerts = sslSession.getLocalCertificates();
+    if (serverCerts == null || serverCerts.length == 0) {
+      return CertificateInfo.EMPTY;
+    }
+
+    X509Certificate serverCert = (X509Certificate) serverCerts[0];
+    CertificateInfo cachedInfo = serverCertificateInfo;
+
+    // The server certificate changes only when the key store is reloaded
+    if (cachedInfo != null && serverCert.equals(cachedInfo.certificate())) {
+      return cachedInfo;
+    }
+
+    try {
+      CertificateInfo serverInfo = CertificateInfo.of(serverCert,
+          () -> getCustomExtensions(serverCert, null), FieldProjection.ALL);
+      serverCertificateInfo = serverInfo;
+      return serverInfo;
+    } catch (CertificateParsingException e) {
+      return CertificateInfo.error(
+          "Unable to retrieve subjectAlternativeNames: %s".formatted(e.getMessage()));
+    }
   }
 
   /**
-   * Returns information about the server certificate.
+   * Returns information about the client certificate, computed once per SSL session. A
+   * projection limited to some fields is computed without the other fields if the session
+   * doesn't hold the whole information yet.
    *
-   * @param sslSession The SSL session.
-   * @return A map containing information about the server certificate.
+   * @param sslSession       The SSL session.
+   * @param securityIdentity The security identity.
+   * @param projection       The selected fields of the client certificate.
+   * @return The information about the client certificate.
    */
-  private Map<String, Object> getServerInfo(SSLSession sslSession) {
-    Map<String, Object> serverInfo = new HashMap<>();
+  private CertificateInfo getClientInfo(SSLSession sslSession,
+                                        SecurityIdentity securityIdentity,
+                                        FieldProjection projection) {
+    if (sslSession.getValue(CLIENT_INFO_SESSION_KEY) instanceof CertificateInfo cachedInfo) {
+      return cachedInfo;
+    }
+
     try {
-      Certificate[] serverCerts = sslSession.getLocalCertificates();
-      if (serverCerts != null && serverCerts.length > 0) {
-        X509Certificate serverCert = (X509Certificate) serverCerts[0];
-        populateCertInfo(serverInfo, serverCert);
+      Certificate[] clientCerts = sslSession.getPeerCertificates();
+      if (clientCerts == null || clientCerts.length == 0) {
+        return CertificateInfo.EMPTY;
       }
-    } catch (CertificateParsingException e) {
-      serverInfo.put("error",
-          "Unable to retrieve subjectAlternativeNames: %s".formatted(e.getMessage()));
+
+      X509Certificate clientCert = (X509Certificate) clientCerts[0];
+      CertificateInfo clientInfo = CertificateInfo.of(clientCert,
+          () -> getCustomExtensions(clientCert, securityIdentity), projection);
+
+      if (projection.isAll()) {
+        sslSession.putValue(CLIENT_INFO_SESSION_KEY, clientInfo);
+      }
+      return clientInfo;
+    } catch (SSLPeerUnverifiedException | CertificateParsingException e) {
+      return CertificateInfo.error(
+          "Unable to retrieve SSL peer certificates: %s".formatted(e.getMessage()));
     }
-    return serverInfo;
   }
 
   /**
-   * Returns information about the client certificate.
+   * Returns the entity tag of the connection information, or null if the selected fields
+   * include the request headers or the certificates of the session aren't available.
    *
-   * @param sslSession The SSL session.
-   * @return A map containing information about the client certificate.
+   * <p>The tag covers the certificates, the protocol and the cipher suite of the session, the
+   * version of the trust and extension mappings configuration, the selected fields and the
+   * selected fields of the request.
+   *
+   * @param request    The HTTP request.
+   * @param sslSession The SSL session, possibly null.
+   * @param projection The selected fields.
+   * @return The entity tag, or null.
+   */
+  private EntityTag getConnectionInfoTag(HttpServerRequest request, SSLSession sslSession,
+                                         FieldProjection projection) {
+    if (sslSession == null || projection.includes("httpRequestHeaders")) {
+      return null;
+    }
+
+    SessionFingerprints fingerprints = getSessionFingerprints(sslSession);
+    if (fingerprints == null) {
+      return null;
+    }
+
+    return EntityTags.of("connection-info", projection, fingerprints.server(),
+        fingerprints.client(), sslSession.getProtocol(), sslSession.getCipherSuite(),
+        trustManager.version(), extensionMapper.configVersion(),
+        projection.includes("isSecure") ? request.isSSL() : null,
+        projection.includes("httpProtocol") ? request.version() : null,
+        projection.includes("userAgent") ? request.getHeader("User-Agent") : null,
+        projection.includes("clientAddress") ? request.remoteAddress() : null,
+        projection.includes("clientPort") ? request.remoteAddress().port() : null);
+  }
+
+  /**
+   * Returns the fingerprints of the server and client certificates, computed once per SSL
+   * session.
+   *
+   * @param sslSession The SSL session, possibly null.
+   * @return The fingerprints, or null if the client certificate is not available.
    */
-  private Map<String, Object> getClientInfo(SSLSession sslSession) {
-    Map<String, Object> clientInfo = new HashMap<>();
+  private SessionFingerprints getSessionFingerprints(SSLSession sslSession) {
+    if (sslSession == null) {
+      return null;
+    }
+
+    if (sslSession.getValue(FINGERPRINTS_SESSION_KEY)
+        instanceof SessionFingerprints fingerprints) {
+      return fingerprints;
+    }
+
     try {
+      Certificate[] serverCerts = sslSession.getLocalCertificates();
       Certificate[] clientCerts = sslSession.getPeerCertificates();
-      if (clientCerts != null && clientCerts.length > 0) {
-        X509Certificate clientCert = (X509Certificate) clientCerts[0];
-        populateCertInfo(clientInfo, clientCert);
+      if (clientCerts == null || clientCerts.length == 0) {
+        return null;
       }
-    } catch (SSLPeerUnverifiedException | CertificateParsingException e) {
-      clientInfo.put("error",
-          "Unable to retrieve SSL peer certificates: %s".formatted(e.getMessage()));
+
+      SessionFingerprints fingerprints = new SessionFingerprints(
+          serverCerts != null && serverCerts.length > 0
+              ? CertificateFingerprint.of((X509Certificate) serverCerts[0]) : null,
+          CertificateFingerprint.of((X509Certificate) clientCerts[0]));
+      sslSession.putValue(FINGERPRINTS_SESSION_KEY, fingerprints);
+      return fingerprints;
+    } catch (SSLPeerUnverifiedException e) {
+      return null;
     }
-    return clientInfo;
   }
 
   /**
-   * Populates the certificate information into the provided map.
+   * The fingerprints of the certificates of an SSL session.
    *
-   * @param certInfo The map to populate with certificate information.
-   * @param cert     The X509Certificate object.
-   * @throws CertificateParsingException If an error occurs while parsing the certificate.
+   * @param server The fingerprint of the server certificate, possibly null.
+   * @param client The fingerprint of the client certificate.
    */
-  private void populateCertInfo(Map<String, Object> certInfo, X509Certificate cert)
-      throws CertificateParsingException {
-    certInfo.put("certSubject", cert.getSubjectX500Principal().getName());
-    certInfo.put("certCommonName", CertificateUtil.getCommonName(cert));
-    certInfo.put("certIssuer", cert.getIssuerX500Principal().getName());
-    certInfo.put("certSerialNumber", cert.getSerialNumber().toString());
-    certInfo.put("notBefore", cert.getNotBefore().toString());
-    certInfo.put("notAfter", cert.getNotAfter().toString());
-    certInfo.put("keyAlgorithm", cert.getPublicKey().getAlgorithm());
-    certInfo.put("keySize", CertificateUtil.getKeySize(cert));
-    certInfo.put("subjectAlternativeNames", cert.getSubjectAlternativeNames());
-    certInfo.put("certPEM", CertificateUtil.convertToBase64(cert));
-    certInfo.put("customExtensions", getCustomExtensions(cert));
+  private record SessionFingerprints(CertificateFingerprint server,
+                                     CertificateFingerprint client) {
   }
+
+  /**
+   * The name of the SSL session value holding the fingerprints of the certificates.
+   */
+  private static final String FINGERPRINTS_SESSION_KEY =
+      ConnectionInfoResourceEndPoint.class.getName() + ".fingerprints";
+
+  /**
+   * The name of the SSL session value holding the information about the client certificate.
+   */
+  private static final String CLIENT_INFO_SESSION_KEY =
+      ConnectionInfoResourceEndPoint.class.getName() + ".clientInfo";
+
+  private final CertificateExtensionMapper extensionMapper;
+
+  private final TslTrustManager trustManager;
+
+  private volatile CertificateInfo serverCertificateInfo;
 }
\ No newline at end of file
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.resources.endpoint.v1.response;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import it.dontesta.quarkus.tls.auth.ws.utils.CertificateUtil;
+import java.io.IOException;
+import java.security.cert.CertificateParsingException;
+import java.security.cert.X509Certificate;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * The information about a server or client certificate returned by the connection-info
+ * endpoint. The information doesn't depend on the request, so an instance is computed once and
+ * shared by the requests of the same TLS session.
+ *
+ * <p>An instance holds either the information about the certificate, or the error occurred
+ * while retrieving it ({@link #error(String)}), or nothing at all ({@link #EMPTY}). The
+ * information can be limited to the fields selected by a {@link FieldProjection}.
+ *
+ * @param certificate             the certificate, not written to the response
+ * @param certSubject             the subject of the certificate
+ * @param certCommonName          the common name of the subject
+ * @param certIssuer              the issuer of the certificate
+ * @param certSerialNumber        the serial number of the certificate
+ * @param notBefore               the start of the validity period
+ * @param notAfter                the end of the validity period
+ * @param keyAlgorithm            the algorithm of the public key
+ * @param keySize                 the size of the public key
+ * @param subjectAlternativeNames the subject alternative names, possibly null
+ * @param certPem                 the certificate encoded in Base64
+ * @param customExtensions        the custom extensions of the certificate
+ * @param error                   the error occurred while retrieving the information
+ * @author Antonio Musarra
+ * @see it.dontesta.quarkus.tls.auth.ws.resources.endpoint.v1.ConnectionInfoResourceEndPoint
+ */
+public record CertificateInfo(X509Certificate certificate, String certSubject,
+                              String certCommonName, String certIssuer, String certSerialNumber,
+                              String notBefore, String notAfter, String keyAlgorithm, int keySize,
+                              Collection<List<?>> subjectAlternativeNames, String certPem,
+                              Map<String, String> customExtensions, String error)
+    implements JsonResponse {
+
+  /**
+   * The information returned when there is no certificate.
+   */
+  public static final CertificateInfo EMPTY =
+      new CertificateInfo(null, null, null, null, null, null, null, null, 0, null, null, null,
+          null);
+
+  /**
+   * Canonical constructor, which makes the collections read-only.
+   */
+  public CertificateInfo {
+    if (subjectAlternativeNames != null) {
+      subjectAlternativeNames = Collections.unmodifiableCollection(subjectAlternativeNames);
+    }
+    if (customExtensions != null) {
+      customExtensions = Collections.unmodifiableMap(customExtensions);
+    }
+  }
+
+  /**
+   * Computes the information about a certificate, limited to the fields selected by the
+   * projection: the fields not selected, e.g. the encoding of the certificate or the subject
+   * alternative names, are not computed and are null.
+   *
+   * @param certificate      the certificate
+   * @param customExtensions the supplier of the custom extensions of the certificate, called
+   *                         only if they are selected
+   * @param projection       the selected fields
+   * @return the information about the certificate
+   * @throws CertificateParsingException if the subject alternative names can't be decoded
+   */
+  public static CertificateInfo of(X509Certificate certificate,
+                                   Supplier<Map<String, String>> customExtensions,
+                                   FieldProjection projection)
+      throws CertificateParsingException {
+    return new CertificateInfo(certificate,
+        projection.includes("certSubject")
+            ? certificate.getSubjectX500Principal().getName() : null,
+        projection.includes("certCommonName")
+            ? CertificateUtil.getCommonName(certificate) : null,
+        projection.includes("certIssuer")
+            ? certificate.getIssuerX500Principal().getName() : null,
+        projection.includes("certSerialNumber")
+            ? certificate.getSerialNumber().toString() : null,
+        projection.includes("notBefore") ? certificate.getNotBefore().toString() : null,
+        projection.includes("notAfter") ? certificate.getNotAfter().toString() : null,
+        projection.includes("keyAlgorithm")
+            ? certificate.getPublicKey().getAlgorithm() : null,
+        projection.includes("keySize") ? CertificateUtil.getKeySize(certificate) : 0,
+        projection.includes("subjectAlternativeNames")
+            ? certificate.getSubjectAlternativeNames() : null,
+        projection.includes("certPEM") ? CertificateUtil.convertToBase64(certificate) : null,
+        projection.includes("customExtensions") ? customExtensions.get() : null,
+        null);
+  }
+
+  /**
+   * Returns the information holding only the error occurred while retrieving it.
+   *
+   * @param message the message of the error
+   * @return the information holding the error
+   */
+  public static CertificateInfo error(String message) {
+    return new CertificateInfo(null, null, null, null, null, null, null, null, 0, null, null,
+        null, message);
+  }
+
+  @Override
+  public void writeTo(JsonGenerator generator) throws IOException {
+    writeTo(generator, FieldProjection.ALL);
+  }
+
+  /**
+   * Writes the fields selected by the projection as a JSON object. The error, if any, is always
+   * written.
+   *
+   * @param generator  the generator to write the JSON object to
+   * @param projection the selected fields, which must have been computed
+   * @throws IOException if an error occurs while writing the JSON object
+   */
+  public void writeTo(JsonGenerator generator, FieldProjection projection) throws IOException {
+    generator.writeStartObject();
+
+    if (error != null) {
+      generator.writeStringField("error", error);
+    } else if (certificate != null) {
+      writeStringField(generator, projection, "certSubject", certSubject);
+      writeStringField(generator, projection, "certCommonName", certCommonName);
+      writeStringField(generator, projection, "certIssuer", certIssuer);
+      writeStringField(generator, projection, "certSerialNumber", certSerialNumber);
+      writeStringField(generator, projection, "notBefore", notBefore);
+      writeStringField(generator, projection, "notAfter", notAfter);
+      writeStringField(generator, projection, "keyAlgorithm", keyAlgorithm);
+
+      if (projection.includes("keySize")) {
+        generator.writeNumberField("keySize", keySize);
+      }
+      if (projection.includes("subjectAlternativeNames")) {
+        generator.writeFieldName("subjectAlternativeNames");
+        JsonResponse.writeValue(generator, subjectAlternativeNames);
+      }
+
+      writeStringField(generator, projection, "certPEM", certPem);
+
+      if (projection.includes("customExtensions")) {
+        generator.writeFieldName("customExtensions");
+        JsonResponse.writeValue(generator, customExtensions);
+      }
+    }
+
+    generator.writeEndObject();
+  }
+
+  private static void writeStringField(JsonGenerator generator, FieldProjection projection,
+                                       String name, String value) throws IOException {
+    if (projection.includes(name)) {
+      generator.writeStringField(name, value);
+    }
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.resources.endpoint.v1.response;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.vertx.core.MultiMap;
+import java.io.IOException;
+import java.util.function.Function;
+
+/**
+ * The information about the client connection returned by the connection-info endpoint.
+ *
+ * <p>The request headers are the ones of the request, not a copy: the response is written
+ * before the request completes. The TLS fields ({@code protocol}, {@code cipherSuite},
+ * {@code server} and {@code client}) are null, and not written, for a connection without an
+ * SSL session.
+ *
+ * <p>Only the fields selected by the projection are written. The blocks of the server and
+ * client certificates are supplied lazily, so they are computed only if they are selected.
+ *
+ * @param isSecure           whether the connection uses TLS
+ * @param httpProtocol       the version of the HTTP protocol
+ * @param userAgent          the User-Agent header, possibly null
+ * @param httpRequestHeaders the headers of the request
+ * @param protocol           the TLS protocol
+ * @param cipherSuite        the TLS cipher suite
+ * @param server             the supplier of the information about the server certificate,
+ *                           called with the projection of the {@code server} block
+ * @param client             the supplier of the information about the client certificate,
+ *                           called with the projection of the {@code client} block
+ * @param clientAddress      the address of the client
+ * @param clientPort         the port of the client
+ * @param projection         the selected fields
+ * @author Antonio Musarra
+ * @see it.dontesta.quarkus.tls.auth.ws.resources.endpoint.v1.ConnectionInfoResourceEndPoint
+ */
+public record ConnectionInfo(boolean isSecure, String httpProtocol, String userAgent,
+                             MultiMap httpRequestHeaders, String protocol, String cipherSuite,
+                             Function<FieldProjection, CertificateInfo> server,
+                             Function<FieldProjection, CertificateInfo> client,
+                             String clientAddress, int clientPort, FieldProjection projection)
+    implements JsonResponse {
+
+  @Override
+  public void writeTo(JsonGenerator generator) throws IOException {
+    generator.writeStartObject();
+
+    if (projection.includes("isSecure")) {
+      generator.writeBooleanField("isSecure", isSecure);
+    }
+    if (projection.includes("httpProtocol")) {
+      generator.writeStringField("httpProtocol", httpProtocol);
+    }
+    if (projection.includes("userAgent")) {
+      generator.writeStringField("userAgent", userAgent);
+    }
+    if (projection.includes("httpRequestHeaders")) {
+      FieldProjection headers = projection.get("httpRequestHeaders");
+
+      generator.writeObjectFieldStart("httpRequestHeaders");
+      for (String name : httpRequestHeaders.names()) {
+        if (headers.includes(name)) {
+          generator.writeStringField(name, httpRequestHeaders.get(name));
+        }
+      }
+      generator.writeEndObject();
+    }
+
+    if (protocol != null) {
+      if (projection.includes("protocol")) {
+        generator.writeStringField("protocol", protocol);
+      }
+      if (projection.includes("cipherSuite")) {
+        generator.writeStringField("cipherSuite", cipherSuite);
+      }
+      writeCertificateInfo(generator, "server", server);
+      writeCertificateInfo(generator, "client", client);
+    }
+
+    if (projection.includes("clientAddress")) {
+      generator.writeStringField("clientAddress", clientAddress);
+    }
+    if (projection.includes("clientPort")) {
+      generator.writeNumberField("clientPort", clientPort);
+    }
+
+    generator.writeEndObject();
+  }
+
+  private void writeCertificateInfo(JsonGenerator generator, String name,
+                                    Function<FieldProjection, CertificateInfo> supplier)
+      throws IOException {
+    if (projection.includes(name)) {
+      FieldProjection blockProjection = projection.get(name);
+
+      generator.writeFieldName(name);
+      supplier.apply(blockProjection).writeTo(generator, blockProjection);
+    }
+  }
+}
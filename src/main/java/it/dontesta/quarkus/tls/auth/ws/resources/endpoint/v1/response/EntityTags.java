@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.resources.endpoint.v1.response;
+
+import jakarta.ws.rs.core.EntityTag;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Builds the strong entity tags of the responses from the values the responses depend on (e.g.
+ * the fingerprint of the client certificate and the version of the configuration), so a
+ * conditional request can be answered with 304 (Not Modified) without building the response.
+ *
+ * <p>The tag is the first 128 bits of the SHA-256 digest of the values, in hexadecimal.
+ *
+ * @author Antonio Musarra
+ */
+public final class EntityTags {
+
+  /**
+   * Builds the strong entity tag of a response.
+   *
+   * @param values the values the response depends on, in a fixed order; null values are allowed
+   * @return the entity tag
+   */
+  public static EntityTag of(Object... values) {
+    MessageDigest digest = SHA_256.get();
+    digest.reset();
+
+    for (Object value : values) {
+      digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+      // The separator keeps ("ab", "c") and ("a", "bc") apart
+      digest.update((byte) 0);
+    }
+
+    return new EntityTag(HexFormat.of().formatHex(digest.digest(), 0, TAG_LENGTH));
+  }
+
+  private EntityTags() {
+    throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+  }
+
+  private static final int TAG_LENGTH = 16;
+
+  private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  });
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.resources.endpoint.v1.response;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The fields of a response selected by the {@code fields} query parameter, e.g.
+ * {@code fields=protocol,cipherSuite,client.certCommonName}: a comma-separated list of field
+ * names, where the fields of a nested object are selected with a dot-separated path. Selecting
+ * an object selects all its fields. Unknown fields are ignored.
+ *
+ * <p>The responses only compute and write the selected fields, so the callers that need a few
+ * fields don't pay for the expensive ones (e.g. the encoding of the certificates).
+ *
+ * @author Antonio Musarra
+ * @see ConnectionInfo
+ * @see CertificateInfo
+ */
+public final class FieldProjection {
+
+  /**
+   * The projection selecting all the fields.
+   */
+  public static final FieldProjection ALL = new FieldProjection(null);
+
+  /**
+   * Parses the value of the {@code fields} query parameter.
+   *
+   * @param fields the comma-separated list of fields, or null or blank for all the fields
+   * @return the projection
+   */
+  public static FieldProjection parse(String fields) {
+    if (fields == null || fields.isBlank()) {
+      return ALL;
+    }
+
+    Map<String, FieldProjection> selected = new LinkedHashMap<>();
+
+    for (String field : fields.split(",")) {
+      String path = field.trim();
+
+      if (!path.isEmpty()) {
+        select(selected, path);
+      }
+    }
+
+    return selected.isEmpty() ? ALL : new FieldProjection(selected);
+  }
+
+  /**
+   * Returns whether all the fields are selected.
+   *
+   * @return true if all the fields are selected
+   */
+  public boolean isAll() {
+    return fields == null;
+  }
+
+  /**
+   * Returns whether a field, or some of its fields if it is an object, is selected.
+   *
+   * @param name the name of the field
+   * @return true if the field has to be written
+   */
+  public boolean includes(String name) {
+    return fields == null || fields.containsKey(name);
+  }
+
+  /**
+   * Returns the projection of the fields of a nested object.
+   *
+   * @param name the name of the field holding the object
+   * @return the projection of the fields of the object
+   */
+  public FieldProjection get(String name) {
+    return fields == null ? ALL : fields.getOrDefault(name, NONE);
+  }
+
+  @Override
+  public String toString() {
+    return fields == null ? "*" : fields.toString();
+  }
+
+  /**
+   * Adds a dot-separated path to the selected fields.
+   *
+   * @param selected the selected fields, modified in place
+   * @param path     the path of the field
+   */
+  private static void select(Map<String, FieldProjection> selected, String path) {
+    int dot = path.indexOf('.');
+
+    if (dot < 0) {
+      selected.put(path, ALL);
+      return;
+    }
+
+    String name = path.substring(0, dot);
+    FieldProjection nested = selected.get(name);
+
+    if (nested == ALL) {
+      // The whole object is already selected
+      return;
+    }
+
+    if (nested == null) {
+      nested = new FieldProjection(new LinkedHashMap<>());
+      selected.put(name, nested);
+    }
+
+    select(nested.fields, path.substring(dot + 1));
+  }
+
+  private FieldProjection(Map<String, FieldProjection> fields) {
+    this.fields = fields;
+  }
+
+  /**
+   * The projection selecting none of the fields.
+   */
+  private static final FieldProjection NONE = new FieldProjection(Collections.emptyMap());
+
+  /**
+   * The selected fields and the projections of their fields, null when all the fields are
+   * selected.
+   */
+  private final Map<String, FieldProjection> fields;
+}
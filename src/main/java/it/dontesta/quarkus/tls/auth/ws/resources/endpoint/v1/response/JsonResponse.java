@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.resources.endpoint.v1.response;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * A response of the REST endpoints that writes itself as JSON through a streaming
+ * {@link JsonGenerator}, without reflection and without building an intermediate object graph.
+ *
+ * <p>The responses are written to the HTTP response by the {@link JsonResponseWriter}.
+ *
+ * @author Antonio Musarra
+ * @see JsonResponseWriter
+ */
+public interface JsonResponse {
+
+  /**
+   * Writes the response as a JSON object.
+   *
+   * @param generator the generator to write the JSON object to
+   * @throws IOException if an error occurs while writing the JSON object
+   */
+  void writeTo(JsonGenerator generator) throws IOException;
+
+  /**
+   * Writes a value of an open-ended type, like the attributes of the SecurityIdentity or the
+   * subject alternative names of a certificate: strings, numbers, booleans, byte arrays (as
+   * Base64), collections and maps are written as such, any other value as its string form.
+   *
+   * @param generator the generator to write the value to
+   * @param value     the value, possibly null
+   * @throws IOException if an error occurs while writing the value
+   */
+  static void writeValue(JsonGenerator generator, Object value) throws IOException {
+    switch (value) {
+      case null -> generator.writeNull();
+      case String string -> generator.writeString(string);
+      case Integer number -> generator.writeNumber(number);
+      case Long number -> generator.writeNumber(number);
+      case Number number -> generator.writeNumber(number.toString());
+      case Boolean bool -> generator.writeBoolean(bool);
+      case byte[] bytes -> generator.writeBinary(bytes);
+      case Collection<?> collection -> {
+        generator.writeStartArray();
+        for (Object element : collection) {
+          writeValue(generator, element);
+        }
+        generator.writeEndArray();
+      }
+      case Map<?, ?> map -> {
+        generator.writeStartObject();
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+          generator.writeFieldName(String.valueOf(entry.getKey()));
+          writeValue(generator, entry.getValue());
+        }
+        generator.writeEndObject();
+      }
+      default -> generator.writeString(value.toString());
+    }
+  }
+}
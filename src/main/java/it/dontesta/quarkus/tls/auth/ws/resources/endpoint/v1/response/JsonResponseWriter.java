@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.resources.endpoint.v1.response;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.ext.Provider;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import org.jboss.resteasy.reactive.server.spi.ResteasyReactiveResourceInfo;
+import org.jboss.resteasy.reactive.server.spi.ServerMessageBodyWriter;
+import org.jboss.resteasy.reactive.server.spi.ServerRequestContext;
+
+/**
+ * Writes the {@link JsonResponse} entities to the HTTP response through a streaming
+ * {@link JsonGenerator}, which writes straight to the output stream of the Vert.x response:
+ * unlike the Jackson ObjectMapper, it doesn't introspect the entity and doesn't serialize it to
+ * an intermediate byte array.
+ *
+ * @author Antonio Musarra
+ * @see JsonResponse
+ */
+@Provider
+@Produces(MediaType.APPLICATION_JSON)
+public class JsonResponseWriter implements ServerMessageBodyWriter<JsonResponse> {
+
+  @Override
+  public boolean isWriteable(Class<?> type, Type genericType,
+                             ResteasyReactiveResourceInfo target, MediaType mediaType) {
+    return JsonResponse.class.isAssignableFrom(type);
+  }
+
+  @Override
+  public void writeResponse(JsonResponse response, Type genericType,
+                            ServerRequestContext context) throws IOException {
+    try (OutputStream outputStream = context.getOrCreateOutputStream()) {
+      write(response, outputStream);
+    }
+  }
+
+  @Override
+  public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations,
+                             MediaType mediaType) {
+    return JsonResponse.class.isAssignableFrom(type);
+  }
+
+  @Override
+  public void writeTo(JsonResponse response, Class<?> type, Type genericType,
+                      Annotation[] annotations, MediaType mediaType,
+                      MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream)
+      throws IOException {
+    write(response, entityStream);
+  }
+
+  /**
+   * Writes the response to the output stream, which is flushed but not closed.
+   *
+   * @param response     the response
+   * @param outputStream the output stream
+   * @throws IOException if an error occurs while writing the response
+   */
+  private static void write(JsonResponse response, OutputStream outputStream)
+      throws IOException {
+    try (JsonGenerator generator = JSON_FACTORY.createGenerator(outputStream)) {
+      response.writeTo(generator);
+    }
+  }
+
+  /**
+   * The factory of the generators, thread-safe and shared by the requests. The generators don't
+   * close the output stream, which is owned by the caller.
+   */
+  private static final JsonFactory JSON_FACTORY = JsonFactory.builder()
+      .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+      .build();
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.resources.endpoint.v1.response;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import it.dontesta.quarkus.tls.auth.ws.security.identity.CertificateExtensions;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The information about the user identity returned by the user-identity endpoint.
+ *
+ * <p>The roles and the attributes are the ones of the SecurityIdentity, not a copy. The decoded
+ * view of the certificate extensions ({@link CertificateExtensions#IDENTITY_ATTRIBUTE}) is
+ * internal to the application and is not written.
+ *
+ * @param principal  the name of the principal
+ * @param roles      the roles of the SecurityIdentity
+ * @param attributes the attributes of the SecurityIdentity
+ * @param userCN     the common name of the client certificate
+ * @author Antonio Musarra
+ * @see it.dontesta.quarkus.tls.auth.ws.resources.endpoint.v1.ConnectionInfoResourceEndPoint
+ */
+public record UserIdentityInfo(String principal, Set<String> roles,
+                               Map<String, Object> attributes, String userCN)
+    implements JsonResponse {
+
+  @Override
+  public void writeTo(JsonGenerator generator) throws IOException {
+    generator.writeStartObject();
+    generator.writeStringField("principal", principal);
+
+    generator.writeArrayFieldStart("roles");
+    for (String role : roles) {
+      generator.writeString(role);
+    }
+    generator.writeEndArray();
+
+    generator.writeObjectFieldStart("attributes");
+    for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+      if (!CertificateExtensions.IDENTITY_ATTRIBUTE.equals(attribute.getKey())) {
+        generator.writeFieldName(attribute.getKey());
+        JsonResponse.writeValue(generator, attribute.getValue());
+      }
+    }
+    generator.writeEndObject();
+
+    generator.writeStringField("userCN", userCN);
+    generator.writeEndObject();
+  }
+}
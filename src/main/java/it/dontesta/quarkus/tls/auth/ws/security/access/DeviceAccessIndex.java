@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.security.access;
+
+import jakarta.enterprise.context.ApplicationScoped;
+
+/**
+ * In-memory deny and allow lists of the client certificates and of the DeviceIds, loaded by the
+ * {@link DeviceAccessListUpdater}.
+ *
+ * <p>A certificate is denied if its fingerprint or its DeviceId is in the deny list. If an allow
+ * list is configured, a certificate is allowed only if its fingerprint or its DeviceId is in the
+ * allow list. The two lists are published together as an immutable snapshot, so a check never
+ * sees a deny list and an allow list of different reloads; a check takes no lock and doesn't
+ * allocate (see {@link DeviceAccessList}).
+ *
+ * @author Antonio Musarra
+ * @see DeviceAccessListUpdater
+ * @see DeviceAccessKeys
+ */
+@ApplicationScoped
+public class DeviceAccessIndex {
+
+  /**
+   * Returns whether the certificate or its DeviceId is denied.
+   *
+   * @param keys the keys of the client certificate
+   * @return true if the fingerprint or the DeviceId is in the deny list
+   */
+  public boolean isDenied(DeviceAccessKeys keys) {
+    return keys.isIn(lists.deny());
+  }
+
+  /**
+   * Returns whether the certificate or its DeviceId is allowed.
+   *
+   * @param keys the keys of the client certificate
+   * @return true if there is no allow list, or if the fingerprint or the DeviceId is in it
+   */
+  public boolean isAllowed(DeviceAccessKeys keys) {
+    DeviceAccessList allow = lists.allow();
+    return allow == null || keys.isIn(allow);
+  }
+
+  /**
+   * Replaces the lists.
+   *
+   * @param deny  the deny list
+   * @param allow the allow list, or null if every certificate not denied is allowed
+   */
+  public void update(DeviceAccessList deny, DeviceAccessList allow) {
+    lists = new Lists(deny, allow);
+  }
+
+  /**
+   * Returns the deny list.
+   *
+   * @return the deny list
+   */
+  public DeviceAccessList deny() {
+    return lists.deny();
+  }
+
+  /**
+   * Returns the allow list.
+   *
+   * @return the allow list, or null if there is no allow list
+   */
+  public DeviceAccessList allow() {
+    return lists.allow();
+  }
+
+  /**
+   * The lists published by a reload.
+   */
+  private record Lists(DeviceAccessList deny, DeviceAccessList allow) {
+  }
+
+  private volatile Lists lists = new Lists(DeviceAccessList.EMPTY, null);
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.security.access;
+
+import it.dontesta.quarkus.tls.auth.ws.utils.CertificateFingerprint;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * The key of a certificate or of a DeviceId in a {@link DeviceAccessList}: the first 128 bits of
+ * a SHA-256 digest, held in two primitive {@code long} fields.
+ *
+ * <p>The key of a certificate is taken from its fingerprint, the key of a DeviceId is the digest
+ * of the DeviceId with a distinct prefix, so a DeviceId and a certificate never share a key.
+ * With 128 bits, a false match between two different entries is negligible even in a list of
+ * hundreds of millions of entries.
+ *
+ * @param high the most significant 64 bits of the digest
+ * @param low  the next 64 bits of the digest
+ * @author Antonio Musarra
+ * @see DeviceAccessList
+ */
+public record DeviceAccessKey(long high, long low) {
+
+  /**
+   * Returns the key of a certificate.
+   *
+   * @param fingerprint the SHA-256 fingerprint of the certificate
+   * @return the key of the certificate
+   */
+  public static DeviceAccessKey ofCertificate(CertificateFingerprint fingerprint) {
+    return of(fingerprint.toBytes());
+  }
+
+  /**
+   * Returns the key of a DeviceId.
+   *
+   * @param deviceId the DeviceId
+   * @return the key of the DeviceId
+   */
+  public static DeviceAccessKey ofDeviceId(String deviceId) {
+    MessageDigest digest = SHA_256.get();
+    digest.reset();
+    digest.update(DEVICE_ID_PREFIX);
+    return of(digest.digest(deviceId.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  private static DeviceAccessKey of(byte[] sha256) {
+    ByteBuffer buffer = ByteBuffer.wrap(sha256);
+    return new DeviceAccessKey(buffer.getLong(), buffer.getLong());
+  }
+
+  private static final byte[] DEVICE_ID_PREFIX = "DeviceId=".getBytes(StandardCharsets.UTF_8);
+
+  private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  });
+}
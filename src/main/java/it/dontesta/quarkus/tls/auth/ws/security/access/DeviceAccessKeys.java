@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.security.access;
+
+import it.dontesta.quarkus.tls.auth.ws.exception.CertificateConversionException;
+import it.dontesta.quarkus.tls.auth.ws.utils.CertificateFingerprint;
+import java.security.cert.X509Certificate;
+
+/**
+ * The keys of a client certificate in the deny and allow lists, computed once per certificate
+ * and kept with its decoded view, so the check of every request is just the lookups of the
+ * {@link DeviceAccessIndex}.
+ *
+ * @param certificate the key of the certificate fingerprint, null if the certificate cannot be
+ *                    encoded
+ * @param deviceId    the key of the DeviceId, null if the certificate has no DeviceId
+ * @author Antonio Musarra
+ * @see DeviceAccessIndex
+ */
+public record DeviceAccessKeys(DeviceAccessKey certificate, DeviceAccessKey deviceId) {
+
+  /**
+   * Computes the keys of a client certificate.
+   *
+   * @param certificate the client certificate
+   * @param deviceId    the DeviceId of the certificate, if any
+   * @return the keys of the certificate
+   */
+  public static DeviceAccessKeys of(X509Certificate certificate, String deviceId) {
+    DeviceAccessKey certificateKey;
+
+    try {
+      certificateKey = DeviceAccessKey.ofCertificate(CertificateFingerprint.of(certificate));
+    } catch (CertificateConversionException e) {
+      certificateKey = null;
+    }
+
+    return new DeviceAccessKeys(certificateKey,
+        deviceId != null ? DeviceAccessKey.ofDeviceId(deviceId) : null);
+  }
+
+  /**
+   * Returns whether the list holds the certificate or the DeviceId.
+   *
+   * @param list the deny or allow list
+   * @return true if one of the keys is in the list
+   */
+  boolean isIn(DeviceAccessList list) {
+    return (certificate != null && list.contains(certificate))
+        || (deviceId != null && list.contains(deviceId));
+  }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.security.access;
+
+import java.util.Arrays;
+
+/**
+ * An immutable set of {@link DeviceAccessKey}, indexed for the lookup of the keys of a client
+ * certificate on every request.
+ *
+ * <p>The keys are kept in two parallel primitive arrays ({@code long[]} of the high and of the
+ * low 64 bits), sorted, and searched with a binary search on the high bits. The arrays are
+ * fronted by a Bloom filter of about {@value #BITS_PER_KEY} bits per key probed
+ * {@value #PROBES} times (a false positive rate under 1%), so the lookup of a key not in the
+ * list, the common case, touches a few words of the filter and skips the binary search. A
+ * lookup doesn't allocate; a list of ten million keys takes 160 MB for the keys and 16 MB for
+ * the filter.
+ *
+ * @author Antonio Musarra
+ * @see DeviceAccessIndex
+ * @see DeviceAccessListParser
+ */
+public final class DeviceAccessList {
+
+  private DeviceAccessList(long[] highs, long[] lows) {
+    this.highs = highs;
+    this.lows = lows;
+
+    int bitsLog2 = Math.max(6, 64 - Long.numberOfLeadingZeros(
+        Math.max(1L, (long) highs.length * BITS_PER_KEY - 1)));
+    bitsLog2 = Math.min(bitsLog2, MAX_BITS_LOG2);
+    this.filterShift = Long.SIZE - bitsLog2;
+    this.filter = new long[1 << (bitsLog2 - 6)];
+
+    for (int i = 0; i < highs.length; i++) {
+      long hash = highs[i];
+      long step = lows[i] | 1;
+
+      for (int probe = 0; probe < PROBES; probe++, hash += step) {
+        int bit = (int) (hash >>> filterShift);
+        filter[bit >>> 6] |= 1L << bit;
+      }
+    }
+  }
+
+  /**
+   * Returns whether the list holds the key.
+   *
+   * @param key the key of a certificate or of a DeviceId
+   * @return true if the key is in the list
+   */
+  public boolean contains(DeviceAccessKey key) {
+    return contains(key.high(), key.low());
+  }
+
+  /**
+   * Returns whether the list holds the key.
+   *
+   * @param high the most significant 64 bits of the key
+   * @param low  the next 64 bits of the key
+   * @return true if the key is in the list
+   */
+  public boolean contains(long high, long low) {
+    if (highs.length == 0 || !mightContain(high, low)) {
+      return false;
+    }
+
+    int index = Arrays.binarySearch(highs, high);
+
+    if (index < 0) {
+      return false;
+    }
+
+    // The keys sharing the high bits, if any, are next to the one found
+    for (int i = index; i >= 0 && highs[i] == high; i--) {
+      if (lows[i] == low) {
+        return true;
+      }
+    }
+    for (int i = index + 1; i < highs.length && highs[i] == high; i++) {
+      if (lows[i] == low) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Returns the number of keys.
+   *
+   * @return the number of distinct keys
+   */
+  public int size() {
+    return highs.length;
+  }
+
+  @Override
+  public String toString() {
+    return "DeviceAccessList[size=%d]".formatted(size());
+  }
+
+  private boolean mightContain(long high, long low) {
+    long hash = high;
+    long step = low | 1;
+
+    for (int probe = 0; probe < PROBES; probe++, hash += step) {
+      int bit = (int) (hash >>> filterShift);
+
+      if ((filter[bit >>> 6] & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * An empty list.
+   */
+  public static final DeviceAccessList EMPTY = new Builder().build();
+
+  /**
+   * Collects the keys of a list while it is parsed.
+   */
+  public static final class Builder {
+
+    /**
+     * Adds a key.
+     *
+     * @param key the key of a certificate or of a DeviceId
+     * @return this builder
+     */
+    public Builder add(DeviceAccessKey key) {
+      if (count == highs.length) {
+        highs = Arrays.copyOf(highs, highs.length * 2);
+        lows = Arrays.copyOf(lows, lows.length * 2);
+      }
+
+      highs[count] = key.high();
+      lows[count] = key.low();
+      count++;
+      return this;
+    }
+
+    /**
+     * Builds the list, sorting the keys and dropping the duplicated ones.
+     *
+     * @return the list
+     */
+    public DeviceAccessList build() {
+      long[] sortedHighs = Arrays.copyOf(highs, count);
+      long[] sortedLows = Arrays.copyOf(lows, count);
+      sort(sortedHighs, sortedLows, 0, count - 1);
+
+      int distinct = 0;
+      for (int i = 0; i < count; i++) {
+        if (distinct == 0 || sortedHighs[i] != sortedHighs[distinct - 1]
+            || sortedLows[i] != sortedLows[distinct - 1]) {
+          sortedHighs[distinct] = sortedHighs[i];
+          sortedLows[distinct] = sortedLows[i];
+          distinct++;
+        }
+      }
+
+      return new DeviceAccessList(Arrays.copyOf(sortedHighs, distinct),
+          Arrays.copyOf(sortedLows, distinct));
+    }
+
+    /**
+     * Sorts the keys by high and low bits, with a quicksort of the two parallel arrays. The
+     * keys are digests, so their order is random and the middle key is a good pivot.
+     */
+    private static void sort(long[] highs, long[] lows, int from, int to) {
+      while (to - from > INSERTION_SORT_THRESHOLD) {
+        int middle = (from + to) >>> 1;
+        long pivotHigh = highs[middle];
+        long pivotLow = lows[middle];
+        int left = from;
+        int right = to;
+
+        while (left <= right) {
+          while (compare(highs[left], lows[left], pivotHigh, pivotLow) < 0) {
+            left++;
+          }
+          while (compare(highs[right], lows[right], pivotHigh, pivotLow) > 0) {
+            right--;
+          }
+          if (left <= right) {
+            swap(highs, lows, left++, right--);
+          }
+        }
+
+        // Recurse into the smaller part, so the stack depth is logarithmic
+        if (right - from < to - left) {
+          sort(highs, lows, from, right);
+          from = left;
+        } else {
+          sort(highs, lows, left, to);
+          to = right;
+        }
+      }
+
+      for (int i = from + 1; i <= to; i++) {
+        for (int j = i; j > from
+            && compare(highs[j - 1], lows[j - 1], highs[j], lows[j]) > 0; j--) {
+          swap(highs, lows, j - 1, j);
+        }
+      }
+    }
+
+    private static int compare(long high, long low, long otherHigh, long otherLow) {
+      int result = Long.compare(high, otherHigh);
+      return result != 0 ? result : Long.compare(low, otherLow);
+    }
+
+    private static void swap(long[] highs, long[] lows, int i, int j) {
+      long high = highs[i];
+      highs[i] = highs[j];
+      highs[j] = high;
+      long low = lows[i];
+      lows[i] = lows[j];
+      lows[j] = low;
+    }
+
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private long[] highs = new long[256];
+
+    private long[] lows = new long[256];
+
+    private int count;
+  }
+
+  /**
+   * The bits of the Bloom filter per key, rounded up to a power of two for the whole filter.
+   */
+  private static final int BITS_PER_KEY = 10;
+
+  /**
+   * The bits of the Bloom filter probed for each key.
+   */
+  private static final int PROBES = 7;
+
+  /**
+   * The log2 of the largest Bloom filter, 2^31 bits (256 MB).
+   */
+  private static final int MAX_BITS_LOG2 = 31;
+
+  private final long[] highs;
+
+  private final long[] lows;
+
+  private final long[] filter;
+
+  private final int filterShift;
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.security.access;
+
+import it.dontesta.quarkus.tls.auth.ws.utils.CertificateFingerprint;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Parses a deny or allow list file into a {@link DeviceAccessList}.
+ *
+ * <p>The file is a UTF-8 text file with one entry per line, either a DeviceId or the SHA-256
+ * fingerprint of a certificate in hexadecimal (with or without colons):
+ * <pre>
+ * # Lost device
+ * deviceId:MTcyNjYxNTQ0MzM5MCMzZjYzZmEx...
+ * fingerprint:3f:2a:...:9c
+ * </pre>
+ * Blank lines and the lines starting with {@code #} are ignored. The file is read line by line
+ * and only the keys of the entries are kept, so a list of millions of entries doesn't hold its
+ * text in memory.
+ *
+ * @author Antonio Musarra
+ * @see DeviceAccessListUpdater
+ */
+public final class DeviceAccessListParser {
+
+  private DeviceAccessListParser() {
+  }
+
+  /**
+   * Parses a list file.
+   *
+   * @param file the list file
+   * @return the list
+   * @throws IOException if the file cannot be read or it has a malformed entry
+   */
+  public static DeviceAccessList parse(Path file) throws IOException {
+    try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      return parse(reader);
+    }
+  }
+
+  /**
+   * Parses the entries of a list.
+   *
+   * @param reader the reader of the entries
+   * @return the list
+   * @throws IOException if the entries cannot be read or one of them is malformed
+   */
+  public static DeviceAccessList parse(BufferedReader reader) throws IOException {
+    DeviceAccessList.Builder builder = new DeviceAccessList.Builder();
+    int lineNumber = 0;
+    String line;
+
+    while ((line = reader.readLine()) != null) {
+      lineNumber++;
+      String entry = line.strip();
+
+      if (entry.isEmpty() || entry.startsWith("#")) {
+        continue;
+      }
+
+      builder.add(parseEntry(entry, lineNumber));
+    }
+
+    return builder.build();
+  }
+
+  private static DeviceAccessKey parseEntry(String entry, int lineNumber) throws IOException {
+    int separator = entry.indexOf(':');
+    String value = separator > 0 ? entry.substring(separator + 1).strip() : "";
+
+    if (!value.isEmpty()) {
+      String type = entry.substring(0, separator).strip();
+
+      if (DEVICE_ID.equals(type)) {
+        return DeviceAccessKey.ofDeviceId(value);
+      }
+
+      if (FINGERPRINT.equals(type)) {
+        try {
+          return DeviceAccessKey.ofCertificate(CertificateFingerprint.fromHex(value));
+        } catch (IllegalArgumentException e) {
+          throw new IOException("Invalid SHA-256 fingerprint at line %d".formatted(lineNumber),
+              e);
+        }
+      }
+    }
+
+    throw new IOException("Invalid entry at line %d: expected %s:<DeviceId> or %s:<SHA-256>"
+        .formatted(lineNumber, DEVICE_ID, FINGERPRINT));
+  }
+
+  /**
+   * The type of the DeviceId entries.
+   */
+  public static final String DEVICE_ID = "deviceId";
+
+  /**
+   * The type of the certificate fingerprint entries.
+   */
+  public static final String FINGERPRINT = "fingerprint";
+}
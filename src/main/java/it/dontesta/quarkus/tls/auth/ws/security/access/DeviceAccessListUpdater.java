@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.security.access;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.runtime.StartupEvent;
+import io.quarkus.scheduler.Scheduled;
+import io.smallrye.common.annotation.RunOnVirtualThread;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+/**
+ * Loads the deny list ({@code client.cert.access-list.deny-file}) and the allow list
+ * ({@code client.cert.access-list.allow-file}) into the {@link DeviceAccessIndex} at startup,
+ * and reloads them when their files change.
+ *
+ * <p>The files are checked every {@code client.cert.access-list.reload-period} and a list is
+ * parsed again only when the last modified time or the size of its file changes; the new lists
+ * are published together. A file that can't be read or parsed keeps the list of its last
+ * successful load, so a broken edit doesn't un-deny the devices. An allow list that was never
+ * loaded is empty, denying every certificate, rather than missing, allowing every one.
+ *
+ * <p>Like the {@link it.dontesta.quarkus.tls.auth.ws.certificate.revocation.CrlUpdater}, the
+ * check runs on a virtual thread and a check still running when the next one is due makes the
+ * next one to be skipped. The loads of the lists are counted by the Micrometer counter
+ * {@value #RELOAD_METRIC_NAME} with the tag {@code outcome} ({@code loaded} or
+ * {@code failed}).
+ *
+ * @author Antonio Musarra
+ * @see DeviceAccessListParser
+ * @see DeviceAccessIndex
+ */
+@ApplicationScoped
+public class DeviceAccessListUpdater {
+
+  /**
+   * Creates the updater.
+   *
+   * @param accessIndex   the index of the deny and allow lists
+   * @param denyFile      the deny list file, if any
+   * @param allowFile     the allow list file, if any
+   * @param meterRegistry the registry of the reload counter
+   * @param log           the logger
+   */
+  @Inject
+  public DeviceAccessListUpdater(DeviceAccessIndex accessIndex,
+                                 @ConfigProperty(name = "client.cert.access-list.deny-file")
+                                 Optional<String> denyFile,
+                                 @ConfigProperty(name = "client.cert.access-list.allow-file")
+                                 Optional<String> allowFile,
+                                 MeterRegistry meterRegistry, Logger log) {
+    this.accessIndex = accessIndex;
+    this.denyFile = denyFile.map(ListFile::new).orElse(null);
+    this.allowFile = allowFile.map(ListFile::new).orElse(null);
+    this.log = log;
+
+    for (LoadOutcome outcome : LoadOutcome.values()) {
+      loadCounters.put(outcome, Counter.builder(RELOAD_METRIC_NAME)
+          .description("The loads of the deny and allow lists by outcome")
+          .tag("outcome", outcome.tag)
+          .register(meterRegistry));
+    }
+  }
+
+  /**
+   * Loads the lists before the first request.
+   *
+   * @param event the startup event
+   */
+  void onStart(@Observes StartupEvent event) {
+    reloadChangedLists();
+  }
+
+  /**
+   * This scheduled method reloads the lists whose files changed, and publishes them to the
+   * {@link DeviceAccessIndex}.
+   */
+  @Scheduled(every = "{client.cert.access-list.reload-period}",
+      concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+  @RunOnVirtualThread
+  public void reloadChangedLists() {
+    reloadLock.lock();
+
+    try {
+      boolean denyChanged = denyFile != null && denyFile.reloadIfChanged();
+      boolean allowChanged = allowFile != null && allowFile.reloadIfChanged();
+
+      if (!denyChanged && !allowChanged && published) {
+        return;
+      }
+
+      DeviceAccessList deny = denyFile != null ? denyFile.list : DeviceAccessList.EMPTY;
+      DeviceAccessList allow = allowFile != null ? allowFile.list : null;
+
+      accessIndex.update(deny, allow);
+      published = true;
+
+      log.info("Published the access lists: %d denied, %s allowed".formatted(deny.size(),
+          allow != null ? Integer.toString(allow.size()) : "all"));
+    } finally {
+      reloadLock.unlock();
+    }
+  }
+
+  /**
+   * A list file and its list of the last successful load.
+   */
+  private final class ListFile {
+
+    ListFile(String path) {
+      this.path = Path.of(path);
+    }
+
+    /**
+     * Parses the file again if it changed since the last load.
+     *
+     * @return true if the list changed
+     */
+    boolean reloadIfChanged() {
+      FileState state;
+
+      try {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        state = new FileState(attributes.lastModifiedTime(), attributes.size());
+      } catch (IOException e) {
+        return failed("Failed to read the access list %s: %s".formatted(path, e.getMessage()));
+      }
+
+      if (state.equals(loadedState)) {
+        return false;
+      }
+
+      try {
+        list = DeviceAccessListParser.parse(path);
+        loadedState = state;
+        lastFailure = null;
+        loadCounters.get(LoadOutcome.LOADED).increment();
+        return true;
+      } catch (IOException e) {
+        // Not retried until the file changes again
+        loadedState = state;
+        return failed("Failed to load the access list %s: %s".formatted(path, e.getMessage()));
+      }
+    }
+
+    private boolean failed(String message) {
+      if (!message.equals(lastFailure)) {
+        log.error(message);
+        loadCounters.get(LoadOutcome.FAILED).increment();
+      }
+      lastFailure = message;
+      return false;
+    }
+
+    private final Path path;
+
+    private DeviceAccessList list = DeviceAccessList.EMPTY;
+
+    private FileState loadedState;
+
+    private String lastFailure;
+  }
+
+  /**
+   * The state of a file telling whether it changed.
+   */
+  private record FileState(FileTime lastModified, long size) {
+  }
+
+  /**
+   * The outcome of the load of a list.
+   */
+  enum LoadOutcome {
+    LOADED("loaded"),
+    FAILED("failed");
+
+    LoadOutcome(String tag) {
+      this.tag = tag;
+    }
+
+    private final String tag;
+  }
+
+  /**
+   * Name of the counter of the loads of the lists.
+   */
+  public static final String RELOAD_METRIC_NAME = "client.cert.access-list.reload";
+
+  private final Map<LoadOutcome, Counter> loadCounters = new EnumMap<>(LoadOutcome.class);
+
+  private final ReentrantLock reloadLock = new ReentrantLock();
+
+  private final DeviceAccessIndex accessIndex;
+
+  private final ListFile denyFile;
+
+  private final ListFile allowFile;
+
+  private final Logger log;
+
+  private boolean published;
+}
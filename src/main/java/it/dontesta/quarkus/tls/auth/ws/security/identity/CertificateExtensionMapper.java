@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.security.identity;
+
+import io.quarkus.arc.All;
+import it.dontesta.quarkus.tls.auth.ws.exception.CertificateAuthenticationException;
+import it.dontesta.quarkus.tls.auth.ws.exception.CertificateAuthenticationException.Reason;
+import it.dontesta.quarkus.tls.auth.ws.exception.CertificateConversionException;
+import it.dontesta.quarkus.tls.auth.ws.security.identity.CertificateExtensionsConfig.ExtensionMapping;
+import it.dontesta.quarkus.tls.auth.ws.security.identity.CertificateExtensionsConfig.MappingType;
+import it.dontesta.quarkus.tls.auth.ws.utils.CertificateUtil;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import org.jboss.logging.Logger;
+
+/**
+ * Maps the custom extensions of a client certificate to the roles and attributes of the
+ * SecurityIdentity, following the table configured by {@link CertificateExtensionsConfig}.
+ *
+ * <p>The table is compiled once at startup: the patterns are compiled, the validators are
+ * resolved by name and the mappings are grouped by OID. Mapping a certificate then reads and
+ * decodes every configured extension exactly once, even when several mappings refer to the same
+ * OID, and produces the whole {@link CertificateExtensions} view in a single pass.
+ *
+ * <p>The mappings are applied in the alphabetical order of their names, so the reason of a
+ * failure is deterministic when a certificate breaks more than one mapping.
+ *
+ * <p>The roles are returned as the {@link RoleSet} of the {@link RoleRegistry}, so the
+ * certificates with the same declared roles share the same immutable set; the roles not declared
+ * by the configuration are kept by name and never registered.
+ *
+ * @author Antonio Musarra
+ * @see CertificateExtensionsConfig
+ * @see CertificateExtensionValidator
+ * @see CertificateExtensionsAugmentor
+ * @see RoleRegistry
+ */
+@ApplicationScoped
+public class CertificateExtensionMapper {
+
+  /**
+   * Creates the mapper compiling the configured table.
+   *
+   * @param config       the configuration of the extension mappings
+   * @param validators   the available extension validators
+   * @param roleRegistry the registry of the roles
+   * @param log          the logger
+   * @throws IllegalStateException if a mapping refers to an unknown validator
+   */
+  @Inject
+  public CertificateExtensionMapper(CertificateExtensionsConfig config,
+                                    @All List<CertificateExtensionValidator> validators,
+                                    RoleRegistry roleRegistry, Logger log) {
+    this.log = log;
+    this.roleRegistry = roleRegistry;
+
+    Map<String, CertificateExtensionValidator> validatorsByName = new HashMap<>();
+    validators.forEach(validator -> validatorsByName.put(validator.name(), validator));
+
+    Map<String, List<CompiledMapping>> mappings = new LinkedHashMap<>();
+    StringBuilder description = new StringBuilder();
+    new TreeMap<>(config.mappings()).forEach((name, mapping) -> {
+      CompiledMapping compiledMapping = compile(name, mapping, validatorsByName);
+      mappings.computeIfAbsent(mapping.oid(), oid -> new ArrayList<>()).add(compiledMapping);
+      description.append(describe(name, mapping)).append('\n');
+    });
+
+    this.mappingsByOid = mappings;
+    this.configVersion = HexFormat.of().formatHex(
+        sha256(description.toString().getBytes(StandardCharsets.UTF_8)));
+
+    if (log.isDebugEnabled()) {
+      log.debug("Configured certificate extension mappings for the OIDs: %s".formatted(
+          mappingsByOid.keySet()));
+    }
+  }
+
+  /**
+   * Returns the version of the configured mappings: the hexadecimal SHA-256 digest of their
+   * description, which changes only when the mappings change. It is used to build the entity
+   * tags of the responses that depend on the roles and attributes of the identity.
+   *
+   * @return the version of the configured mappings
+   */
+  public String configVersion() {
+    return configVersion;
+  }
+
+  /**
+   * Decodes the configured extensions of the certificate without validating them.
+   *
+   * <p>This is used to describe a certificate (e.g. the server certificate) that is not the
+   * subject of an authentication.
+   *
+   * @param certificate the certificate
+   * @return the decoded extension values keyed by mapping name
+   */
+  public Map<String, String> decode(X509Certificate certificate) {
+    Map<String, String> values = new LinkedHashMap<>();
+
+    mappingsByOid.forEach((oid, mappings) -> {
+      String value = decodeExtension(certificate, oid);
+
+      if (value != null) {
+        mappings.forEach(mapping -> values.put(mapping.name(), value));
+      }
+    });
+
+    return values;
+  }
+
+  /**
+   * Maps the configured extensions of the client certificate to roles and attributes.
+   *
+   * @param certificate the client certificate
+   * @return the decoded view of the certificate extensions
+   * @throws CertificateAuthenticationException if a required extension is missing, or a value
+   *                                            does not match its pattern or is rejected by its
+   *                                            validator
+   */
+  public CertificateExtensions map(X509Certificate certificate) {
+    Map<String, String> values = new LinkedHashMap<>();
+    Set<String> roles = new LinkedHashSet<>();
+    Map<String, String> attributes = new LinkedHashMap<>();
+
+    mappingsByOid.forEach((oid, mappings) -> {
+      String value = decodeExtension(certificate, oid);
+
+      for (CompiledMapping mapping : mappings) {
+        if (value == null) {
+          if (mapping.required()) {
+            throw new CertificateAuthenticationException(Reason.EXTENSION_MISSING, oid,
+                mapping.name());
+          }
+          continue;
+        }
+
+        values.put(mapping.name(), value);
+        apply(mapping, value, roles, attributes);
+      }
+    });
+
+    return new CertificateExtensions(Collections.unmodifiableMap(values),
+        roleRegistry.of(roles), Collections.unmodifiableMap(attributes));
+  }
+
+  /**
+   * Validates a decoded value and adds it to the roles or to the attributes.
+   *
+   * @param mapping    the mapping of the extension
+   * @param value      the decoded value of the extension
+   * @param roles      the roles being collected
+   * @param attributes the attributes being collected
+   */
+  private void apply(CompiledMapping mapping, String value, Set<String> roles,
+                     Map<String, String> attributes) {
+    if (mapping.pattern() != null && !mapping.pattern().matcher(value).matches()) {
+      throw new CertificateAuthenticationException(Reason.PATTERN_MISMATCH, mapping.name(),
+          value);
+    }
+
+    String unprefixedValue = mapping.prefix() != null && value.startsWith(mapping.prefix())
+        ? value.substring(mapping.prefix().length()).trim()
+        : value.trim();
+
+    if (mapping.validator() != null && !mapping.validator().isValid(unprefixedValue)) {
+      throw new CertificateAuthenticationException(Reason.VALUE_REJECTED, unprefixedValue,
+          mapping.oid(), mapping.name());
+    }
+
+    if (mapping.type() == MappingType.ROLES) {
+      for (String role : mapping.separator().split(unprefixedValue)) {
+        String trimmedRole = role.trim();
+        if (!trimmedRole.isEmpty()) {
+          roles.add(trimmedRole);
+        }
+      }
+    } else {
+      attributes.put(mapping.attributeName(), unprefixedValue);
+    }
+  }
+
+  /**
+   * Reads and decodes the value of an extension of the certificate.
+   *
+   * @param certificate the certificate
+   * @param oid         the OID of the extension
+   * @return the decoded value, or null if the extension is missing or is not an ASN.1 string
+   * @throws CertificateAuthenticationException if the extension value cannot be decoded
+   */
+  private String decodeExtension(X509Certificate certificate, String oid) {
+    byte[] extensionValue = certificate.getExtensionValue(oid);
+
+    if (extensionValue == null) {
+      return null;
+    }
+
+    try {
+      String value = CertificateUtil.decodeExtensionValue(extensionValue);
+
+      if (log.isDebugEnabled()) {
+        log.debug("Decoded extension with OID %s from certificate: %s".formatted(oid, value));
+      }
+
+      return value;
+    } catch (CertificateConversionException e) {
+      throw new CertificateAuthenticationException(Reason.EXTENSION_NOT_DECODABLE, e,
+          e.getMessage());
+    }
+  }
+
+  private static CompiledMapping compile(String name, ExtensionMapping mapping,
+                                         Map<String, CertificateExtensionValidator> validators) {
+    CertificateExtensionValidator validator = null;
+
+    if (mapping.validator().isPresent()) {
+      validator = validators.get(mapping.validator().get());
+
+      if (validator == null) {
+        throw new IllegalStateException(
+            "Unknown validator %s for the certificate extension mapping %s".formatted(
+                mapping.validator().get(), name));
+      }
+    }
+
+    return new CompiledMapping(name, mapping.oid(), mapping.type(),
+        mapping.prefix().orElse(null),
+        mapping.pattern().map(Pattern::compile).orElse(null),
+        Pattern.compile(Pattern.quote(mapping.separator())),
+        mapping.attributeName().orElse(name),
+        validator, mapping.required());
+  }
+
+  private static String describe(String name, ExtensionMapping mapping) {
+    return String.join("|", name, mapping.oid(), mapping.type().name(),
+        mapping.prefix().orElse(""), mapping.pattern().orElse(""), mapping.separator(),
+        mapping.attributeName().orElse(name), mapping.validator().orElse(""),
+        String.valueOf(mapping.required()));
+  }
+
+  private static byte[] sha256(byte[] bytes) {
+    try {
+      return MessageDigest.getInstance("SHA-256").digest(bytes);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+
+  private record CompiledMapping(String name, String oid, MappingType type, String prefix,
+                                 Pattern pattern, Pattern separator, String attributeName,
+                                 CertificateExtensionValidator validator, boolean required) {
+  }
+
+  private final Map<String, List<CompiledMapping>> mappingsByOid;
+
+  private final String configVersion;
+
+  private final RoleRegistry roleRegistry;
+
+  private final Logger log;
+}
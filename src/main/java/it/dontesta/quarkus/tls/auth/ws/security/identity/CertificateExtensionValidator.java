@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.security.identity;
+
+/**
+ * Validator of a value decoded from a certificate extension.
+ *
+ * <p>The implementations are CDI beans referenced by name from the
+ * {@code client.cert.extensions.mappings.<name>.validator} configuration property.
+ *
+ * @author Antonio Musarra
+ * @see CertificateExtensionsConfig.ExtensionMapping#validator()
+ * @see CertificateExtensionMapper
+ */
+public interface CertificateExtensionValidator {
+
+  /**
+   * The name used to reference the validator from the configuration.
+   *
+   * @return the name of the validator
+   */
+  String name();
+
+  /**
+   * Validates the value decoded from the certificate extension.
+   *
+   * @param value the decoded value, without the prefix of the mapping
+   * @return true if the value is valid, false otherwise
+   */
+  boolean isValid(String value);
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.security.identity;
+
+import it.dontesta.quarkus.tls.auth.ws.security.access.DeviceAccessKeys;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The decoded view of the custom extensions of a client certificate.
+ *
+ * <p>The view is built once per certificate by the {@link CertificateExtensionMapper}, shared
+ * through the {@link CertificateIdentityCache} and stored in the SecurityIdentity as the
+ * attribute {@value #IDENTITY_ATTRIBUTE}, so the REST endpoints can reuse it instead of decoding
+ * the extensions again.
+ *
+ * @param values     the decoded extension values keyed by mapping name, e.g. {@code role} to
+ *                   {@code Role=User,Administrator}
+ * @param roles      the roles mapped from the extensions
+ * @param attributes the identity attributes mapped from the extensions
+ * @param accessKeys the keys of the certificate and of its DeviceId in the deny and allow lists,
+ *                   null until they are computed by the {@link CertificateExtensionsAugmentor}
+ * @author Antonio Musarra
+ * @see CertificateExtensionMapper
+ * @see CertificateExtensionsAugmentor
+ */
+public record CertificateExtensions(Map<String, String> values, Set<String> roles,
+                                    Map<String, String> attributes,
+                                    DeviceAccessKeys accessKeys) {
+
+  /**
+   * Creates the view without the access keys.
+   *
+   * @param values     the decoded extension values keyed by mapping name
+   * @param roles      the roles mapped from the extensions
+   * @param attributes the identity attributes mapped from the extensions
+   */
+  public CertificateExtensions(Map<String, String> values, Set<String> roles,
+                               Map<String, String> attributes) {
+    this(values, roles, attributes, null);
+  }
+
+  /**
+   * Returns a copy of the view with the access keys.
+   *
+   * @param accessKeys the keys of the certificate and of its DeviceId
+   * @return the view with the access keys
+   */
+  public CertificateExtensions withAccessKeys(DeviceAccessKeys accessKeys) {
+    return new CertificateExtensions(values, roles, attributes, accessKeys);
+  }
+
+  /**
+   * Name of the SecurityIdentity attribute holding the decoded view of the certificate
+   * extensions.
+   */
+  public static final String IDENTITY_ATTRIBUTE = "client.cert.extensions";
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.security.identity;
+
+import io.quarkus.security.credential.CertificateCredential;
+import io.quarkus.security.identity.AuthenticationRequestContext;
+import io.quarkus.security.identity.SecurityIdentity;
+import io.quarkus.security.identity.SecurityIdentityAugmentor;
+import io.quarkus.vertx.http.runtime.security.HttpSecurityUtils;
+import io.smallrye.mutiny.Uni;
+import io.vertx.ext.web.RoutingContext;
+import it.dontesta.quarkus.tls.auth.ws.certificate.etsi.gov.TslTrustManager;
+import it.dontesta.quarkus.tls.auth.ws.certificate.revocation.CrlRevocationIndex;
+import it.dontesta.quarkus.tls.auth.ws.exception.CertificateAuthenticationException;
+import it.dontesta.quarkus.tls.auth.ws.exception.CertificateAuthenticationException.Reason;
+import it.dontesta.quarkus.tls.auth.ws.security.access.DeviceAccessIndex;
+import it.dontesta.quarkus.tls.auth.ws.security.access.DeviceAccessKeys;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.security.cert.X509Certificate;
+import java.util.Map;
+import javax.net.ssl.SSLSession;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+/**
+ * Augments a SecurityIdentity with the roles and attributes mapped from the custom extensions
+ * of the client certificate.
+ *
+ * <p>The extensions are mapped by the {@link CertificateExtensionMapper} following the table
+ * configured under the {@code client.cert.extensions.mappings} prefix (see
+ * {@link CertificateExtensionsConfig}). With the default configuration:
+ * <ul>
+ *   <li>the extension {@code 1.3.6.1.4.1.99999.1} with the format
+ *   {@code Role=role1,role2,role3} is mapped to the roles of the identity;</li>
+ *   <li>the extension {@code 1.3.6.1.4.1.99999.2} with the format {@code DeviceId=deviceId} is
+ *   verified and mapped to the {@code deviceId} attribute of the identity.</li>
+ * </ul>
+ *
+ * <p>The view of a certificate is mapped once for each version of the trusted certificates and
+ * of the extension mappings, and then taken from the {@link CertificateIdentityCache}; the new
+ * identity ({@link CertificateSecurityIdentity}) wraps the original one with the view, without
+ * copying the roles, the attributes or the credentials. The view is also exposed by the
+ * identity as the attribute {@value CertificateExtensions#IDENTITY_ATTRIBUTE}, so the REST
+ * endpoints don't need to decode the extensions again.
+ *
+ * <p>With {@code client.cert.identity.session-reuse.enabled} (the default), the view is also
+ * kept in the TLS session of the request, which is shared by all the requests of a keep-alive
+ * or HTTP/2 connection and by the connections resuming the session: the next requests of the
+ * session take it after checking that the peer certificate is the same, skipping the
+ * fingerprint of the certificate and the cache lookup. The view kept in a session is discarded
+ * when the version of the trusted certificates ({@link TslTrustManager#version()}) or of the
+ * extension mappings ({@link CertificateExtensionMapper#configVersion()}) changes. The identity
+ * itself is not kept: it is built around the identity of each request, which carries
+ * per-request state.
+ *
+ * <p>If the certificate is missing, or one of its extensions is rejected by the mapper, the
+ * request is failed with a {@link CertificateAuthenticationException}. The rejection is kept in the
+ * negative cache of the {@link CertificateIdentityCache}, so the retries of the same certificate
+ * fail with it without being mapped again.
+ *
+ * <p>Every request, including the ones reusing the view of their TLS session, is also checked
+ * against the CRLs of the {@link CrlRevocationIndex}, so a certificate revoked while its
+ * connection is open is rejected as soon as the CRL listing it is loaded. In the same way, the
+ * certificate and its DeviceId (the attribute {@code client.cert.access-list.device-id-attribute})
+ * are checked against the deny and allow lists of the {@link DeviceAccessIndex}: their keys are
+ * computed once with the view of the certificate, so the check of a request is just two
+ * lookups, and a device added to the deny list is rejected on its next request.
+ *
+ * <p>You can see the custom extensions in the ssl_extensions.cnf file located in the
+ * src/main/shell/certs-manager directory.
+ *
+ * @author Antonio Musarra
+ * @see SecurityIdentityAugmentor
+ * @see CertificateExtensionMapper
+ * @see CertificateIdentityCache
+ * @see CertificateCredential
+ * @see CertificateSecurityIdentity
+ * @see TslTrustManager
+ * @see CrlRevocationIndex
+ * @see DeviceAccessIndex
+ */
+@ApplicationScoped
+public class CertificateExtensionsAugmentor implements SecurityIdentityAugmentor {
+
+  /**
+   * Creates the augmentor.
+   *
+   * @param log             the logger
+   * @param mapper          the mapper of the certificate extensions
+   * @param identityCache   the cache of the decoded views of the certificates
+   * @param trustManager    the trust manager of the TSL, whose version invalidates the views
+   *                        kept in the TLS sessions
+   * @param revocationIndex the index of the certificates revoked by the CRLs
+   * @param accessIndex     the deny and allow lists of the certificates and of the DeviceIds
+   * @param deviceIdName    the name of the attribute holding the DeviceId of the certificate
+   * @param sessionReuse    whether the decoded view is kept in the TLS session and reused by the
+   *                        next requests of the session
+   */
+  @Inject
+  public CertificateExtensionsAugmentor(Logger log, CertificateExtensionMapper mapper,
+                                        CertificateIdentityCache identityCache,
+                                        TslTrustManager trustManager,
+                                        CrlRevocationIndex revocationIndex,
+                                        DeviceAccessIndex accessIndex,
+                                        @ConfigProperty(
+                                            name = "client.cert.access-list.device-id-attribute",
+                                            defaultValue = "deviceId") String deviceIdName,
+                                        @ConfigProperty(
+                                            name = "client.cert.identity.session-reuse.enabled",
+                                            defaultValue = "true") boolean sessionReuse) {
+    this.log = log;
+    this.mapper = mapper;
+    this.identityCache = identityCache;
+    this.trustManager = trustManager;
+    this.revocationIndex = revocationIndex;
+    this.accessIndex = accessIndex;
+    this.deviceIdName = deviceIdName;
+    this.sessionReuse = sessionReuse;
+  }
+
+  @Override
+  public Uni<SecurityIdentity> augment(SecurityIdentity identity,
+                                       AuthenticationRequestContext context) {
+    return augmentInSession(identity, null);
+  }
+
+  @Override
+  public Uni<SecurityIdentity> augment(SecurityIdentity identity,
+                                       AuthenticationRequestContext context,
+                                       Map<String, Object> attributes) {
+    return augmentInSession(identity, sessionReuse ? sslSession(attributes) : null);
+  }
+
+  /**
+   * Augments the identity with the decoded view of the client certificate, taken from the TLS
+   * session if a previous request of the session stored it for the same certificate, trust
+   * version and mapping version.
+   *
+   * @param identity   the identity of the mTLS authentication
+   * @param sslSession the TLS session of the request, or null if the view is not kept in the
+   *                   session
+   * @return the augmented identity
+   */
+  Uni<SecurityIdentity> augmentInSession(SecurityIdentity identity, SSLSession sslSession) {
+    CertificateCredential clientCert = identity.getCredential(CertificateCredential.class);
+
+    if (clientCert == null) {
+      throw new CertificateAuthenticationException(Reason.CERTIFICATE_MISSING);
+    }
+
+    X509Certificate certificate = clientCert.getCertificate();
+
+    if (revocationIndex.isRevoked(certificate)) {
+      throw new CertificateAuthenticationException(Reason.CERTIFICATE_REVOKED,
+          certificate.getSerialNumber(), certificate.getIssuerX500Principal().getName());
+    }
+
+    String trustVersion = trustManager.version();
+    String configVersion = mapper.configVersion();
+    CertificateExtensions extensions = null;
+
+    if (sslSession != null
+        && sslSession.getValue(SESSION_KEY) instanceof SessionExtensions sessionExtensions
+        && sessionExtensions.isFor(certificate, trustVersion, configVersion)) {
+      extensions = sessionExtensions.extensions();
+    }
+
+    if (extensions == null) {
+      extensions = identityCache.get(certificate, trustVersion, configVersion,
+          this::mapWithAccessKeys);
+
+      if (sslSession != null) {
+        sslSession.putValue(SESSION_KEY, new SessionExtensions(certificate, trustVersion,
+            configVersion, extensions));
+      }
+
+      if (log.isDebugEnabled()) {
+        log.debug("Augmenting SecurityIdentity with roles %s and attributes %s".formatted(
+            extensions.roles(), extensions.attributes()));
+      }
+    }
+
+    checkAccess(certificate, extensions);
+
+    return Uni.createFrom().item(new CertificateSecurityIdentity(identity, extensions));
+  }
+
+  /**
+   * Maps the extensions of a certificate and computes its keys in the deny and allow lists.
+   *
+   * @param certificate the client certificate
+   * @return the view of the certificate with its access keys
+   */
+  private CertificateExtensions mapWithAccessKeys(X509Certificate certificate) {
+    CertificateExtensions extensions = mapper.map(certificate);
+    return extensions.withAccessKeys(
+        DeviceAccessKeys.of(certificate, extensions.attributes().get(deviceIdName)));
+  }
+
+  /**
+   * Rejects the certificate if it or its DeviceId is denied, or if it is not allowed.
+   *
+   * <p>The check is not cached with the view, so a change of the lists applies to the next
+   * request.
+   *
+   * @param certificate the client certificate
+   * @param extensions  the view of the certificate
+   */
+  private void checkAccess(X509Certificate certificate, CertificateExtensions extensions) {
+    DeviceAccessKeys keys = extensions.accessKeys();
+
+    if (accessIndex.isDenied(keys)) {
+      throw new CertificateAuthenticationException(Reason.DEVICE_DENIED,
+          certificate.getSubjectX500Principal().getName(),
+          extensions.attributes().get(deviceIdName));
+    }
+
+    if (!accessIndex.isAllowed(keys)) {
+      throw new CertificateAuthenticationException(Reason.DEVICE_NOT_ALLOWED,
+          certificate.getSubjectX500Principal().getName(),
+          extensions.attributes().get(deviceIdName));
+    }
+  }
+
+  /**
+   * Returns the TLS session of the request whose authentication is being augmented.
+   *
+   * @param attributes the attributes of the authentication request
+   * @return the TLS session, or null if the request is unknown or not over TLS
+   */
+  private static SSLSession sslSession(Map<String, Object> attributes) {
+    RoutingContext routingContext = HttpSecurityUtils.getRoutingContextAttribute(attributes);
+
+    if (routingContext == null || !routingContext.request().isSSL()) {
+      return null;
+    }
+    return routingContext.request().sslSession();
+  }
+
+  /**
+   * The decoded view of the client certificate kept in a TLS session, valid while the
+   * certificate, the trusted certificates and the extension mappings don't change.
+   *
+   * @param certificate   the client certificate of the session
+   * @param trustVersion  the version of the trusted certificates when the view was decoded
+   * @param configVersion the version of the extension mappings when the view was decoded
+   * @param extensions    the decoded view of the certificate
+   */
+  private record SessionExtensions(X509Certificate certificate, String trustVersion,
+                                   String configVersion, CertificateExtensions extensions) {
+
+    boolean isFor(X509Certificate certificate, String trustVersion, String configVersion) {
+      // The peer certificate of a session is usually the same instance on every request
+      return this.trustVersion.equals(trustVersion)
+          && this.configVersion.equals(configVersion)
+          && (this.certificate == certificate || this.certificate.equals(certificate));
+    }
+  }
+
+  /**
+   * Name of the TLS session value holding the decoded view of the client certificate.
+   */
+  static final String SESSION_KEY = CertificateExtensionsAugmentor.class.getName() + ".extensions";
+
+  private final Logger log;
+
+  private final CertificateExtensionMapper mapper;
+
+  private final CertificateIdentityCache identityCache;
+
+  private final TslTrustManager trustManager;
+
+  private final CrlRevocationIndex revocationIndex;
+
+  private final DeviceAccessIndex accessIndex;
+
+  private final String deviceIdName;
+
+  private final boolean sessionReuse;
+}
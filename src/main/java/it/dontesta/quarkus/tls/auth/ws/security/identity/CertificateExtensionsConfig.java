@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.security.identity;
+
+import io.smallrye.config.ConfigMapping;
+import io.smallrye.config.WithDefault;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Configuration of the mapping between the custom extensions of the client certificate and the
+ * roles and attributes of the SecurityIdentity.
+ *
+ * <p>Each entry of the table is declared in the {@code application.properties} file under the
+ * {@code client.cert.extensions.mappings.<name>} prefix, for example:
+ * <pre>
+ *   client.cert.extensions.mappings.role.oid=1.3.6.1.4.1.99999.1
+ *   client.cert.extensions.mappings.role.type=roles
+ *   client.cert.extensions.mappings.role.prefix=Role=
+ *   client.cert.extensions.mappings.role.pattern=^Role=([A-Za-z]+(?:,[A-Za-z]+)*+)$
+ * </pre>
+ * A new OID is therefore mapped adding properties, without writing a new augmentor.
+ *
+ * @author Antonio Musarra
+ * @see CertificateExtensionMapper
+ * @see CertificateExtensionsAugmentor
+ */
+@ConfigMapping(prefix = "client.cert.extensions")
+public interface CertificateExtensionsConfig {
+
+  /**
+   * The table of the extension mappings, keyed by the mapping name. The name is also the key of
+   * the decoded value in the {@link CertificateExtensions} view.
+   *
+   * @return the extension mappings
+   */
+  Map<String, ExtensionMapping> mappings();
+
+  /**
+   * The mapping of a single certificate extension.
+   */
+  interface ExtensionMapping {
+
+    /**
+     * The OID of the certificate extension. The extension value is expected to be an ASN.1
+     * string (e.g. UTF8String) wrapped in an OCTET STRING.
+     *
+     * @return the OID of the extension
+     */
+    String oid();
+
+    /**
+     * How the decoded value is added to the SecurityIdentity.
+     *
+     * @return the type of the mapping
+     */
+    MappingType type();
+
+    /**
+     * The prefix removed from the decoded value before it is mapped, e.g. {@code Role=}.
+     *
+     * @return the prefix of the value
+     */
+    Optional<String> prefix();
+
+    /**
+     * The regular expression the whole decoded value must match. A value not matching the
+     * pattern fails the authentication.
+     *
+     * @return the pattern of the value
+     */
+    Optional<String> pattern();
+
+    /**
+     * The separator of the values of a {@link MappingType#ROLES} mapping.
+     *
+     * @return the separator of the roles
+     */
+    @WithDefault(",")
+    String separator();
+
+    /**
+     * The name of the identity attribute of a {@link MappingType#ATTRIBUTE} mapping. When it is
+     * not set the mapping name is used.
+     *
+     * @return the name of the attribute
+     */
+    Optional<String> attributeName();
+
+    /**
+     * The name of the {@link CertificateExtensionValidator} the value (without prefix) must
+     * satisfy. A value rejected by the validator fails the authentication.
+     *
+     * @return the name of the validator
+     */
+    Optional<String> validator();
+
+    /**
+     * Whether a certificate without the extension fails the authentication.
+     *
+     * @return true if the extension is mandatory
+     */
+    @WithDefault("false")
+    boolean required();
+  }
+
+  /**
+   * How a decoded extension value is added to the SecurityIdentity.
+   */
+  enum MappingType {
+    /**
+     * The value is a list of roles separated by {@link ExtensionMapping#separator()}.
+     */
+    ROLES,
+
+    /**
+     * The value is added as a single identity attribute.
+     */
+    ATTRIBUTE
+  }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.security.identity;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import it.dontesta.quarkus.tls.auth.ws.exception.CertificateAuthenticationException;
+import it.dontesta.quarkus.tls.auth.ws.exception.CertificateConversionException;
+import it.dontesta.quarkus.tls.auth.ws.utils.CertificateFingerprint;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.function.Function;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+/**
+ * Bounded cache of the extensions decoded from client certificates by the SecurityIdentity
+ * augmentor.
+ *
+ * <p>The cache is keyed by the SHA-256 fingerprint of the DER encoded certificate
+ * ({@link CertificateFingerprint}), so every request presenting the same certificate, on any
+ * connection, shares the same {@link CertificateExtensions}. The entries expire after the
+ * configured time to live and the least recently used ones are evicted when the configured
+ * maximum size is reached.
+ *
+ * <p>As the views kept in the TLS sessions, the entries are valid for the version of the
+ * trusted certificates and the version of the extension mappings under which they were
+ * computed: both versions are part of the key, so a TSL refresh or a change of the mappings
+ * makes the next request map the certificate again, and the entries of the previous versions
+ * are no longer reachable and get evicted.
+ *
+ * <p>The certificates rejected by the mapper ({@link CertificateAuthenticationException}) are
+ * kept in a second, negative, cache with a short time to live: the retries of a rejected device
+ * are answered with a copy of the cached rejection, without decoding the extensions and
+ * verifying the DeviceId again.
+ *
+ * <p>The hit, miss and eviction counters and the size of the caches are published to Micrometer
+ * with the cache names {@value #CACHE_NAME} and {@value #REJECTIONS_CACHE_NAME} (e.g.
+ * {@code cache_gets_total{cache="client-cert-identity"}}); the hit rate of the negative cache is
+ * the share of the lookups answered with a cached rejection.
+ *
+ * @author Antonio Musarra
+ * @see CertificateExtensions
+ * @see CertificateExtensionsAugmentor
+ */
+@ApplicationScoped
+public class CertificateIdentityCache {
+
+  /**
+   * Creates the cache.
+   *
+   * @param maxSize           the maximum number of certificates kept in the cache
+   * @param ttl               the time to live of an entry since it was created
+   * @param rejectionsMaxSize the maximum number of rejected certificates kept in the negative
+   *                          cache
+   * @param rejectionsTtl     the time to live of a rejection since it was created
+   * @param meterRegistry     the registry where the cache statistics are published
+   * @param log               the logger
+   */
+  @Inject
+  public CertificateIdentityCache(
+      @ConfigProperty(name = "client.cert.identity.cache.max-size", defaultValue = "10000")
+      long maxSize,
+      @ConfigProperty(name = "client.cert.identity.cache.ttl", defaultValue = "10m")
+      Duration ttl,
+      @ConfigProperty(name = "client.cert.identity.negative-cache.max-size",
+          defaultValue = "10000")
+      long rejectionsMaxSize,
+      @ConfigProperty(name = "client.cert.identity.negative-cache.ttl", defaultValue = "30s")
+      Duration rejectionsTtl,
+      MeterRegistry meterRegistry, Logger log) {
+    this.log = log;
+    this.cache = Caffeine.newBuilder()
+        .maximumSize(maxSize)
+        .expireAfterWrite(ttl)
+        .recordStats()
+        .build();
+    this.rejections = Caffeine.newBuilder()
+        .maximumSize(rejectionsMaxSize)
+        .expireAfterWrite(rejectionsTtl)
+        .recordStats()
+        .build();
+
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    CaffeineCacheMetrics.monitor(meterRegistry, rejections, REJECTIONS_CACHE_NAME);
+  }
+
+  /**
+   * Returns the decoded view of the extensions of the given certificate, mapping them on the
+   * first request presenting the certificate.
+   *
+   * <p>A certificate rejected by the mapper with a {@link CertificateAuthenticationException}
+   * is kept in the negative cache, and a copy of the rejection is thrown to the requests
+   * presenting the certificate until it expires. Any other exception of the mapper is propagated without
+   * caching, and the certificate is mapped again on the next request. If the certificate cannot
+   * be fingerprinted, it is mapped without caching the result.
+   *
+   * @param certificate   the client certificate
+   * @param trustVersion  the current version of the trusted certificates
+   * @param configVersion the current version of the extension mappings
+   * @param mapper        the function mapping the extensions of the certificate
+   * @return the decoded view of the certificate extensions
+   * @throws CertificateAuthenticationException if the certificate is rejected, now or by a
+   *                                            previous request
+   */
+  public CertificateExtensions get(X509Certificate certificate, String trustVersion,
+                                   String configVersion,
+                                   Function<X509Certificate, CertificateExtensions> mapper) {
+    Key key;
+
+    try {
+      key = new Key(CertificateFingerprint.of(certificate), trustVersion, configVersion);
+    } catch (CertificateConversionException e) {
+      log.warn("Unable to fingerprint the client certificate, the identity will not be cached",
+          e);
+      return mapper.apply(certificate);
+    }
+
+    CertificateAuthenticationException rejection = rejections.getIfPresent(key);
+    if (rejection != null) {
+      // A stackless copy, so the suppressed exceptions of a request are not shared
+      throw new CertificateAuthenticationException(rejection);
+    }
+
+    try {
+      return cache.get(key, ignored -> mapper.apply(certificate));
+    } catch (CertificateAuthenticationException e) {
+      // The cached rejection is never thrown, only its copies
+      rejections.put(key, new CertificateAuthenticationException(e));
+      throw e;
+    }
+  }
+
+  /**
+   * Returns a snapshot of the cache statistics.
+   *
+   * @return the hit, miss and eviction counters of the cache
+   */
+  public CacheStats stats() {
+    return cache.stats();
+  }
+
+  /**
+   * Returns a snapshot of the statistics of the negative cache.
+   *
+   * @return the hit, miss and eviction counters of the negative cache
+   */
+  public CacheStats rejectionStats() {
+    return rejections.stats();
+  }
+
+  /**
+   * Returns the approximate number of rejected certificates kept in the negative cache.
+   *
+   * @return the size of the negative cache
+   */
+  public long rejectionsSize() {
+    return rejections.estimatedSize();
+  }
+
+  /**
+   * Discards all the entries of the cache and of the negative cache.
+   */
+  public void invalidateAll() {
+    cache.invalidateAll();
+    rejections.invalidateAll();
+  }
+
+  /**
+   * Name of the cache used as tag of the published metrics.
+   */
+  public static final String CACHE_NAME = "client-cert-identity";
+
+  /**
+   * Name of the negative cache used as tag of the published metrics.
+   */
+  public static final String REJECTIONS_CACHE_NAME = "client-cert-rejections";
+
+  /**
+   * The key of a certificate in the caches: its fingerprint and the versions of the trusted
+   * certificates and of the extension mappings.
+   */
+  private record Key(CertificateFingerprint fingerprint, String trustVersion,
+                     String configVersion) {
+  }
+
+  private final Cache<Key, CertificateExtensions> cache;
+
+  private final Cache<Key, CertificateAuthenticationException> rejections;
+
+  private final Logger log;
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.security.identity;
+
+import io.quarkus.security.credential.Credential;
+import io.quarkus.security.identity.SecurityIdentity;
+import io.smallrye.mutiny.Uni;
+import java.security.Permission;
+import java.security.Principal;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * SecurityIdentity augmented with the decoded view of the extensions of the client certificate.
+ *
+ * <p>The identity wraps the one of the mTLS authentication instead of copying it: the principal,
+ * the credentials and the permission checks are the ones of the wrapped identity, the roles are
+ * the shared {@link RoleSet} of the certificate (merged with the roles of the wrapped identity
+ * only if it has any) and the attributes of the certificate are looked up before the ones of the
+ * wrapped identity. Augmenting an identity therefore allocates only this object.
+ *
+ * @author Antonio Musarra
+ * @see CertificateExtensionsAugmentor
+ * @see CertificateExtensions
+ */
+final class CertificateSecurityIdentity implements SecurityIdentity {
+
+  /**
+   * Creates the identity.
+   *
+   * @param identity   the identity of the mTLS authentication
+   * @param extensions the decoded view of the extensions of the client certificate
+   */
+  CertificateSecurityIdentity(SecurityIdentity identity, CertificateExtensions extensions) {
+    this.identity = identity;
+    this.extensions = extensions;
+
+    Set<String> identityRoles = identity.getRoles();
+    if (identityRoles.isEmpty()) {
+      this.roles = extensions.roles();
+    } else {
+      Set<String> mergedRoles = new LinkedHashSet<>(identityRoles);
+      mergedRoles.addAll(extensions.roles());
+      this.roles = Collections.unmodifiableSet(mergedRoles);
+    }
+  }
+
+  @Override
+  public Principal getPrincipal() {
+    return identity.getPrincipal();
+  }
+
+  @Override
+  public boolean isAnonymous() {
+    return false;
+  }
+
+  @Override
+  public Set<String> getRoles() {
+    return roles;
+  }
+
+  @Override
+  public boolean hasRole(String role) {
+    return roles.contains(role);
+  }
+
+  @Override
+  public <T extends Credential> T getCredential(Class<T> credentialType) {
+    return identity.getCredential(credentialType);
+  }
+
+  @Override
+  public Set<Credential> getCredentials() {
+    return identity.getCredentials();
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> T getAttribute(String name) {
+    if (CertificateExtensions.IDENTITY_ATTRIBUTE.equals(name)) {
+      return (T) extensions;
+    }
+
+    Object value = extensions.attributes().get(name);
+    return value != null ? (T) value : identity.getAttribute(name);
+  }
+
+  @Override
+  public Map<String, Object> getAttributes() {
+    Map<String, Object> attributes = new LinkedHashMap<>(identity.getAttributes());
+    attributes.put(CertificateExtensions.IDENTITY_ATTRIBUTE, extensions);
+    attributes.putAll(extensions.attributes());
+    return Collections.unmodifiableMap(attributes);
+  }
+
+  @Override
+  public Uni<Boolean> checkPermission(Permission permission) {
+    return identity.checkPermission(permission);
+  }
+
+  private final SecurityIdentity identity;
+
+  private final CertificateExtensions extensions;
+
+  private final Set<String> roles;
+}
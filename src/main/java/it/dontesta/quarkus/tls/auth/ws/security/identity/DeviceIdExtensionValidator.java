@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.security.identity;
+
+import it.dontesta.quarkus.tls.auth.ws.utils.DeviceIdUtil;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Validates the DeviceId extracted from the client certificate.
+ *
+ * <p>The DeviceId is verified by decoding the Base64 encoded string, splitting it into its
+ * components, regenerating the HMAC from the combined string, and comparing the provided HMAC
+ * with the calculated HMAC.
+ *
+ * @author Antonio Musarra
+ * @see DeviceIdUtil#verifyDeviceId(String)
+ */
+@ApplicationScoped
+public class DeviceIdExtensionValidator implements CertificateExtensionValidator {
+
+  @Inject
+  public DeviceIdExtensionValidator(DeviceIdUtil deviceIdUtil) {
+    this.deviceIdUtil = deviceIdUtil;
+  }
+
+  @Override
+  public String name() {
+    return NAME;
+  }
+
+  @Override
+  public boolean isValid(String value) {
+    return deviceIdUtil.verifyDeviceId(value);
+  }
+
+  /**
+   * Name of the validator used in the {@code client.cert.extensions.mappings.<name>.validator}
+   * configuration property.
+   */
+  public static final String NAME = "device-id";
+
+  private final DeviceIdUtil deviceIdUtil;
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.security.identity;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the role names known to the application, each one assigned to a bit position, and
+ * factory of the {@link RoleSet} built over those positions.
+ *
+ * <p>Only the roles declared by the configuration are registered ({@link #declare(Collection)}),
+ * i.e. the roles allowed by a policy and the roles with a rate limit, and they keep their
+ * position for the life of the application. The roles mapped from a client certificate are
+ * never registered, since their names come from the certificates: the names not declared are
+ * kept by name in the {@link RoleSet}, which is then not interned, so the registry can't grow
+ * with the values presented by the clients. The role sets of the declared roles are interned:
+ * the certificates with the same roles share the same immutable {@link RoleSet} instance, up to
+ * {@value #MAX_INTERNED_SETS} distinct sets.
+ *
+ * @author Antonio Musarra
+ * @see RoleSet
+ * @see CertificateExtensionMapper
+ */
+@ApplicationScoped
+public class RoleRegistry {
+
+  /**
+   * Declares the given role names, registering the unknown ones, and returns their interned role
+   * set. Only the roles of the configuration must be declared.
+   *
+   * @param roles the role names
+   * @return the role set
+   */
+  public RoleSet declare(Collection<String> roles) {
+    roles.forEach(this::register);
+    return of(roles);
+  }
+
+  /**
+   * Returns the role set of the given role names, without registering them: the set is interned
+   * if all the roles are declared, otherwise it keeps the names not declared.
+   *
+   * @param roles the role names
+   * @return the role set
+   */
+  public RoleSet of(Collection<String> roles) {
+    long[] bits = new long[0];
+    Set<String> undeclared = null;
+
+    for (String role : roles) {
+      int index = indexOf(role);
+      if (index < 0) {
+        if (undeclared == null) {
+          undeclared = new HashSet<>();
+        }
+        undeclared.add(role);
+        continue;
+      }
+
+      int word = index >>> 6;
+      if (word >= bits.length) {
+        bits = Arrays.copyOf(bits, word + 1);
+      }
+      bits[word] |= 1L << index;
+    }
+
+    if (undeclared != null) {
+      return new RoleSet(this, bits, Set.copyOf(undeclared));
+    }
+
+    RoleSet roleSet = new RoleSet(this, bits, Set.of());
+    if (interned.size() >= MAX_INTERNED_SETS) {
+      return interned.getOrDefault(roleSet, roleSet);
+    }
+
+    RoleSet internedSet = interned.putIfAbsent(roleSet, roleSet);
+    return internedSet != null ? internedSet : roleSet;
+  }
+
+  /**
+   * Returns the bit position of a role.
+   *
+   * @param role the role name
+   * @return the bit position, or -1 if the role is not registered
+   */
+  int indexOf(String role) {
+    Integer index = indexes.get(role);
+    return index != null ? index : -1;
+  }
+
+  /**
+   * Returns the name of the role at a bit position.
+   *
+   * @param index the bit position of a registered role
+   * @return the role name
+   */
+  String name(int index) {
+    return names[index];
+  }
+
+  private int register(String role) {
+    Integer index = indexes.get(role);
+    if (index != null) {
+      return index;
+    }
+
+    synchronized (this) {
+      index = indexes.get(role);
+      if (index == null) {
+        index = names.length;
+        // The array is published before the index, so a reader finding the index finds the name
+        String[] newNames = Arrays.copyOf(names, index + 1);
+        newNames[index] = role;
+        names = newNames;
+        indexes.put(role, index);
+      }
+      return index;
+    }
+  }
+
+  /**
+   * The maximum number of distinct role sets kept interned.
+   */
+  static final int MAX_INTERNED_SETS = 4096;
+
+  private final Map<String, Integer> indexes = new ConcurrentHashMap<>();
+
+  private final Map<RoleSet, RoleSet> interned = new ConcurrentHashMap<>();
+
+  private volatile String[] names = new String[0];
+}
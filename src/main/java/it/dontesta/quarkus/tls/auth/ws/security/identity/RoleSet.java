@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.security.identity;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Immutable set of roles backed by a bitset over the positions of a {@link RoleRegistry}.
+ *
+ * <p>The set is built by {@link RoleRegistry#of(java.util.Collection)} and shared by all the
+ * identities with the same roles. Its size and hash code are computed once, the membership test
+ * of a role is a lookup of its position and a bit test, and the test of two sets of the same
+ * registry ({@link #intersects(RoleSet)}) is a mask check. The roles are iterated in the order
+ * of registration.
+ *
+ * <p>The roles not declared to the registry have no position: they are kept by name and
+ * iterated after the others, and the sets having them are compared by name.
+ *
+ * @author Antonio Musarra
+ * @see RoleRegistry
+ */
+public final class RoleSet extends AbstractSet<String> {
+
+  /**
+   * Creates the set.
+   *
+   * @param registry   the registry of the bit positions
+   * @param bits       the bitset of the declared roles, owned by the set
+   * @param undeclared the immutable set of the roles not declared to the registry
+   */
+  RoleSet(RoleRegistry registry, long[] bits, Set<String> undeclared) {
+    int length = bits.length;
+    while (length > 0 && bits[length - 1] == 0) {
+      length--;
+    }
+
+    this.registry = registry;
+    this.bits = length == bits.length ? bits : Arrays.copyOf(bits, length);
+    this.undeclared = undeclared;
+
+    int count = undeclared.size();
+    int hash = undeclared.hashCode();
+    for (int index = nextIndex(0); index >= 0; index = nextIndex(index + 1)) {
+      count++;
+      hash += registry.name(index).hashCode();
+    }
+    this.size = count;
+    this.hash = hash;
+  }
+
+  /**
+   * Tells whether this set and the given one have at least one role in common.
+   *
+   * @param other the other set
+   * @return true if the sets have a role in common
+   */
+  public boolean intersects(RoleSet other) {
+    if (other.registry != registry) {
+      for (String role : other) {
+        if (contains(role)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    int length = Math.min(bits.length, other.bits.length);
+    for (int i = 0; i < length; i++) {
+      if ((bits[i] & other.bits[i]) != 0) {
+        return true;
+      }
+    }
+    // A role declared after a set was built is a name of that set and a position of the other
+    for (String role : undeclared) {
+      if (other.contains(role)) {
+        return true;
+      }
+    }
+    for (String role : other.undeclared) {
+      if (contains(role)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public boolean contains(Object role) {
+    if (!(role instanceof String name)) {
+      return false;
+    }
+
+    int index = registry.indexOf(name);
+    return index >= 0 && (index >>> 6) < bits.length && (bits[index >>> 6] & (1L << index)) != 0
+        || undeclared.contains(name);
+  }
+
+  @Override
+  public Iterator<String> iterator() {
+    return new Iterator<>() {
+
+      @Override
+      public boolean hasNext() {
+        return next >= 0 || names.hasNext();
+      }
+
+      @Override
+      public String next() {
+        if (next < 0) {
+          return names.next();
+        }
+
+        String role = registry.name(next);
+        next = nextIndex(next + 1);
+        return role;
+      }
+
+      private int next = nextIndex(0);
+
+      private final Iterator<String> names = undeclared.iterator();
+    };
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (other instanceof RoleSet roleSet && roleSet.registry == registry
+        && undeclared.isEmpty() && roleSet.undeclared.isEmpty()) {
+      return Arrays.equals(bits, roleSet.bits);
+    }
+    return super.equals(other);
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+
+  /**
+   * Returns the position of the first role at or after the given position.
+   *
+   * @param from the position where the search starts
+   * @return the position of the role, or -1 if there is none
+   */
+  private int nextIndex(int from) {
+    int word = from >>> 6;
+    if (word >= bits.length) {
+      return -1;
+    }
+
+    long remaining = bits[word] & (-1L << from);
+    while (remaining == 0) {
+      if (++word == bits.length) {
+        return -1;
+      }
+      remaining = bits[word];
+    }
+    return (word << 6) + Long.numberOfTrailingZeros(remaining);
+  }
+
+  private final RoleRegistry registry;
+
+  private final long[] bits;
+
+  private final Set<String> undeclared;
+
+  private final int size;
+
+  private final int hash;
+}
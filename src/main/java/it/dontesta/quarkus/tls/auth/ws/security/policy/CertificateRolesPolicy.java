@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.security.policy;
+
+import io.quarkus.runtime.Startup;
+import io.quarkus.security.identity.SecurityIdentity;
+import io.quarkus.vertx.http.runtime.security.HttpSecurityPolicy;
+import io.smallrye.mutiny.Uni;
+import io.vertx.ext.web.RoutingContext;
+import it.dontesta.quarkus.tls.auth.ws.security.identity.RoleRegistry;
+import it.dontesta.quarkus.tls.auth.ws.security.identity.RoleSet;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.util.List;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+/**
+ * HTTP security policy {@value #NAME} permitting the identities with at least one of the
+ * configured roles ({@code client.cert.role-policy.roles-allowed}).
+ *
+ * <p>The allowed roles are compiled at startup into a {@link RoleSet} of the
+ * {@link RoleRegistry}, so for the identities augmented from a client certificate the check is a
+ * mask test between two bitsets. The roles allowed are registered first, so they keep the first
+ * positions of the registry. For any other identity the roles allowed are checked by name.
+ *
+ * <p>The policy is referenced by the permissions as
+ * {@code quarkus.http.auth.permission.<name>.policy=role-policy-cert}.
+ *
+ * @author Antonio Musarra
+ * @see HttpSecurityPolicy
+ * @see RoleRegistry
+ */
+@Startup
+@ApplicationScoped
+public class CertificateRolesPolicy implements HttpSecurityPolicy {
+
+  /**
+   * Creates the policy compiling the allowed roles.
+   *
+   * @param rolesAllowed the roles allowed to access the resources
+   * @param roleRegistry the registry of the roles
+   */
+  @Inject
+  public CertificateRolesPolicy(
+      @ConfigProperty(name = "client.cert.role-policy.roles-allowed") List<String> rolesAllowed,
+      RoleRegistry roleRegistry) {
+    this.rolesAllowed = roleRegistry.declare(rolesAllowed);
+  }
+
+  @Override
+  public Uni<CheckResult> checkPermission(RoutingContext request, Uni<SecurityIdentity> identity,
+                                          AuthorizationRequestContext requestContext) {
+    return identity.onItem().transform(
+        securityIdentity -> isPermitted(securityIdentity) ? CheckResult.PERMIT
+            : CheckResult.DENY);
+  }
+
+  @Override
+  public String name() {
+    return NAME;
+  }
+
+  /**
+   * Tells whether the identity has at least one of the allowed roles.
+   *
+   * @param identity the identity of the request
+   * @return true if the identity is permitted
+   */
+  public boolean isPermitted(SecurityIdentity identity) {
+    if (identity.isAnonymous()) {
+      return false;
+    }
+
+    if (identity.getRoles() instanceof RoleSet roles) {
+      return roles.intersects(rolesAllowed);
+    }
+
+    for (String role : rolesAllowed) {
+      if (identity.hasRole(role)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Name of the policy.
+   */
+  public static final String NAME = "role-policy-cert";
+
+  private final RoleSet rolesAllowed;
+}
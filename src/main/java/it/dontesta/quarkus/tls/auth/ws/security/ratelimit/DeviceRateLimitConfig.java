@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.security.ratelimit;
+
+import io.smallrye.config.ConfigMapping;
+import io.smallrye.config.WithDefault;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Configuration of the rate limits of the requests of each device.
+ *
+ * <p>The default limit applies to every device; a device with one of the roles of the
+ * {@code client.cert.rate-limit.roles.<role>} table gets the limit of its role, the most
+ * generous one if it has more roles of the table, for example:
+ * <pre>
+ *   client.cert.rate-limit.enabled=true
+ *   client.cert.rate-limit.requests-per-second=10
+ *   client.cert.rate-limit.burst=20
+ *   client.cert.rate-limit.roles.Administrator.requests-per-second=50
+ *   client.cert.rate-limit.roles.Administrator.burst=100
+ * </pre>
+ *
+ * @author Antonio Musarra
+ * @see DeviceRateLimiter
+ */
+@ConfigMapping(prefix = "client.cert.rate-limit")
+public interface DeviceRateLimitConfig {
+
+  /**
+   * Whether the requests of the devices are rate limited. Disabled by default, so an existing
+   * deployment keeps serving every request until it opts in.
+   *
+   * @return true if the rate limiting is enabled
+   */
+  @WithDefault("false")
+  boolean enabled();
+
+  /**
+   * The sustained rate of the requests of a device without a role of the table.
+   *
+   * @return the requests per second
+   */
+  @WithDefault("10")
+  double requestsPerSecond();
+
+  /**
+   * The requests a device without a role of the table can send at once after being idle.
+   *
+   * @return the size of the burst
+   */
+  @WithDefault("20")
+  int burst();
+
+  /**
+   * The limits of the roles, keyed by role name.
+   *
+   * @return the limits of the roles
+   */
+  Map<String, RoleLimit> roles();
+
+  /**
+   * The maximum number of devices whose rate is tracked; the least recently seen ones are
+   * evicted beyond it.
+   *
+   * @return the maximum number of devices
+   */
+  @WithDefault("100000")
+  long maxDevices();
+
+  /**
+   * The time after which the rate of an idle device is no longer tracked. It should be longer
+   * than the time a device takes to earn a full burst, as an evicted device starts with a full
+   * burst again.
+   *
+   * @return the idle timeout
+   */
+  @WithDefault("10m")
+  Duration idleTimeout();
+
+  /**
+   * The rate limit of a role.
+   */
+  interface RoleLimit {
+
+    /**
+     * The sustained rate of the requests of a device with the role.
+     *
+     * @return the requests per second
+     */
+    double requestsPerSecond();
+
+    /**
+     * The requests a device with the role can send at once after being idle.
+     *
+     * @return the size of the burst
+     */
+    int burst();
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.security.ratelimit;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.quarkus.security.identity.CurrentIdentityAssociation;
+import io.smallrye.mutiny.Uni;
+import it.dontesta.quarkus.tls.auth.ws.error.mapper.SecurityErrorResponse;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import java.util.concurrent.TimeUnit;
+import org.jboss.resteasy.reactive.server.ServerRequestFilter;
+
+/**
+ * Request filter answering 429 (Too Many Requests) to the requests of a device beyond its rate
+ * limit (see {@link DeviceRateLimiter}), with a {@code Retry-After} header telling the seconds
+ * to wait for the next permitted request.
+ *
+ * <p>The filter applies to the REST resources, i.e. to {@code /api/v1/connection-info/*}. It
+ * reads the identity without blocking, as the identity of a request to the resources has
+ * already been authenticated by the permission check, and the body of the response is
+ * serialized once.
+ *
+ * @author Antonio Musarra
+ * @see DeviceRateLimiter
+ */
+public class DeviceRateLimitFilter {
+
+  /**
+   * Creates the filter.
+   *
+   * @param rateLimiter         the rate limiter of the devices
+   * @param identityAssociation the identity of the current request
+   */
+  @Inject
+  public DeviceRateLimitFilter(DeviceRateLimiter rateLimiter,
+                               CurrentIdentityAssociation identityAssociation) {
+    this.rateLimiter = rateLimiter;
+    this.identityAssociation = identityAssociation;
+  }
+
+  /**
+   * Rejects the request if its device is beyond its rate limit.
+   *
+   * @return the 429 response, or null if the request is permitted
+   */
+  @ServerRequestFilter
+  public Uni<Response> limitDeviceRate() {
+    return identityAssociation.getDeferredIdentity().map(identity -> {
+      long waitNanos = rateLimiter.acquire(identity);
+      return waitNanos > 0 ? tooManyRequests(waitNanos) : null;
+    });
+  }
+
+  /**
+   * Returns the 429 response.
+   *
+   * @param waitNanos the nanoseconds to wait for the next permitted request
+   * @return the response
+   */
+  static Response tooManyRequests(long waitNanos) {
+    // Retry-After is in whole seconds, rounded up so the retry is permitted
+    long retryAfter = Math.max(1L, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1)
+        / TimeUnit.SECONDS.toNanos(1));
+
+    return Response.status(Response.Status.TOO_MANY_REQUESTS)
+        .header(HttpHeaders.RETRY_AFTER, retryAfter)
+        .type(MediaType.APPLICATION_JSON_TYPE)
+        .entity(ERROR_BODY)
+        .build();
+  }
+
+  private static byte[] serializeErrorBody() {
+    try {
+      return new ObjectMapper().writeValueAsBytes(new SecurityErrorResponse(
+          Response.Status.TOO_MANY_REQUESTS.getStatusCode(),
+          "Too many requests from the device, retry later."));
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * The serialized body of the 429 responses.
+   */
+  private static final byte[] ERROR_BODY = serializeErrorBody();
+
+  private final DeviceRateLimiter rateLimiter;
+
+  private final CurrentIdentityAssociation identityAssociation;
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.security.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.quarkus.security.credential.CertificateCredential;
+import io.quarkus.security.identity.SecurityIdentity;
+import it.dontesta.quarkus.tls.auth.ws.exception.CertificateConversionException;
+import it.dontesta.quarkus.tls.auth.ws.security.access.DeviceAccessKey;
+import it.dontesta.quarkus.tls.auth.ws.security.access.DeviceAccessKeys;
+import it.dontesta.quarkus.tls.auth.ws.security.identity.CertificateExtensions;
+import it.dontesta.quarkus.tls.auth.ws.security.identity.RoleRegistry;
+import it.dontesta.quarkus.tls.auth.ws.security.identity.RoleSet;
+import it.dontesta.quarkus.tls.auth.ws.utils.CertificateFingerprint;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rate limiter of the requests of each device, keyed by its DeviceId or, for a certificate
+ * without DeviceId, by the fingerprint of its certificate.
+ *
+ * <p>The key of a device is the {@link DeviceAccessKey} already computed with the decoded view
+ * of its certificate ({@link CertificateExtensions#accessKeys()}), so a decision neither hashes
+ * nor allocates. Each device has a token bucket ({@link RateLimit}) whose state is a single
+ * {@link AtomicLong} updated by compare-and-set: the requests of different devices never
+ * contend, whatever event loop they are served by, and the requests of the same device contend
+ * only on their own state.
+ *
+ * <p>The states are kept in a bounded Caffeine cache, evicting the least recently seen devices
+ * beyond {@code client.cert.rate-limit.max-devices} and the devices idle for
+ * {@code client.cert.rate-limit.idle-timeout}; its lookups are lock-free and its bookkeeping is
+ * striped across the threads. The size and the hit rate are published as the Micrometer cache
+ * {@value #CACHE_NAME} and the rejected requests are counted by {@value #REJECTED_METRIC_NAME}.
+ *
+ * @author Antonio Musarra
+ * @see DeviceRateLimitConfig
+ * @see DeviceRateLimitFilter
+ */
+@ApplicationScoped
+public class DeviceRateLimiter {
+
+  /**
+   * Creates the rate limiter.
+   *
+   * @param config        the configuration of the limits
+   * @param roleRegistry  the registry of the roles
+   * @param meterRegistry the registry of the metrics
+   */
+  @Inject
+  public DeviceRateLimiter(DeviceRateLimitConfig config, RoleRegistry roleRegistry,
+                           MeterRegistry meterRegistry) {
+    this.enabled = config.enabled();
+    this.defaultLimit = RateLimit.of(config.requestsPerSecond(), config.burst());
+
+    List<RoleLimit> limits = new ArrayList<>();
+    config.roles().forEach((role, limit) -> limits.add(new RoleLimit(role,
+        roleRegistry.declare(Set.of(role)), RateLimit.of(limit.requestsPerSecond(), limit.burst()))));
+    // The most generous limit first, so the first role of a device found is the one applied
+    limits.sort((first, second) -> first.limit().isMoreGenerousThan(second.limit()) ? -1
+        : second.limit().isMoreGenerousThan(first.limit()) ? 1 : 0);
+    this.roleLimits = limits.toArray(RoleLimit[]::new);
+
+    this.states = Caffeine.newBuilder()
+        .maximumSize(config.maxDevices())
+        .expireAfterAccess(config.idleTimeout())
+        .recordStats()
+        .build();
+    CaffeineCacheMetrics.monitor(meterRegistry, states, CACHE_NAME);
+    this.rejected = Counter.builder(REJECTED_METRIC_NAME)
+        .description("The requests rejected by the rate limit of their device")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Takes a token for a request of the identity.
+   *
+   * @param identity the identity of the request
+   * @return 0 if the request is permitted, otherwise the nanoseconds to wait for a token
+   */
+  public long acquire(SecurityIdentity identity) {
+    if (!enabled) {
+      return 0;
+    }
+
+    DeviceAccessKey key = keyOf(identity);
+    if (key == null) {
+      // Not a device: the requests without a client certificate are denied by the policies
+      return 0;
+    }
+
+    return acquire(key, limitOf(identity), System.nanoTime());
+  }
+
+  /**
+   * Takes a token for a request of a device.
+   *
+   * @param key   the key of the device
+   * @param limit the limit of the device
+   * @param now   the current {@link System#nanoTime()}
+   * @return 0 if the request is permitted, otherwise the nanoseconds to wait for a token
+   */
+  long acquire(DeviceAccessKey key, RateLimit limit, long now) {
+    AtomicLong state = states.getIfPresent(key);
+
+    if (state == null) {
+      // A new device starts with a full burst
+      AtomicLong newState = new AtomicLong(now);
+      state = states.asMap().putIfAbsent(key, newState);
+      state = state != null ? state : newState;
+    }
+
+    long waitNanos = limit.acquire(state, now);
+
+    if (waitNanos > 0) {
+      rejected.increment();
+    }
+    return waitNanos;
+  }
+
+  /**
+   * Returns the limit of an identity: the most generous limit of its roles, or the default one.
+   *
+   * @param identity the identity of the request
+   * @return the limit of the identity
+   */
+  RateLimit limitOf(SecurityIdentity identity) {
+    Set<String> roles = identity.getRoles();
+
+    for (RoleLimit roleLimit : roleLimits) {
+      if (roles instanceof RoleSet roleSet ? roleSet.intersects(roleLimit.roles())
+          : roles.contains(roleLimit.role())) {
+        return roleLimit.limit();
+      }
+    }
+    return defaultLimit;
+  }
+
+  /**
+   * Returns the key of the device of an identity: the key of its DeviceId, or of its
+   * certificate if it has no DeviceId.
+   *
+   * @param identity the identity of the request
+   * @return the key of the device, or null if the identity has no client certificate
+   */
+  static DeviceAccessKey keyOf(SecurityIdentity identity) {
+    if (identity.getAttribute(CertificateExtensions.IDENTITY_ATTRIBUTE)
+        instanceof CertificateExtensions extensions && extensions.accessKeys() != null) {
+      DeviceAccessKeys keys = extensions.accessKeys();
+
+      if (keys.deviceId() != null) {
+        return keys.deviceId();
+      }
+      if (keys.certificate() != null) {
+        return keys.certificate();
+      }
+    }
+
+    CertificateCredential credential = identity.getCredential(CertificateCredential.class);
+    if (credential == null || credential.getCertificate() == null) {
+      return null;
+    }
+
+    try {
+      return DeviceAccessKey.ofCertificate(CertificateFingerprint.of(credential.getCertificate()));
+    } catch (CertificateConversionException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns the approximate number of devices whose rate is tracked.
+   *
+   * @return the number of devices
+   */
+  public long trackedDevices() {
+    return states.estimatedSize();
+  }
+
+  /**
+   * The limit of a role.
+   *
+   * @param role  the role name
+   * @param roles the role set of the role, for the mask test of the role sets
+   * @param limit the limit of the role
+   */
+  private record RoleLimit(String role, RoleSet roles, RateLimit limit) {
+  }
+
+  /**
+   * Name of the cache of the states of the devices used as tag of the published metrics.
+   */
+  public static final String CACHE_NAME = "client-cert-rate-limit";
+
+  /**
+   * Name of the counter of the rejected requests.
+   */
+  public static final String REJECTED_METRIC_NAME = "client.cert.rate-limit.rejected";
+
+  private final boolean enabled;
+
+  private final RateLimit defaultLimit;
+
+  private final RoleLimit[] roleLimits;
+
+  private final Cache<DeviceAccessKey, AtomicLong> states;
+
+  private final Counter rejected;
+}
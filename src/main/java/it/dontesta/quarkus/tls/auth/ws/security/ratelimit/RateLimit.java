@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.security.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket rate limit, applied to the state of a device with the generic cell rate
+ * algorithm (GCRA).
+ *
+ * <p>The state of a device is a single {@code long}, the theoretical arrival time of its next
+ * request in {@link System#nanoTime()} units: each permitted request moves it forward by the
+ * emission interval ({@code 1 / requests-per-second}), and a request is permitted while it is
+ * less than {@code burst} intervals ahead of the current time. This is equivalent to a bucket
+ * of {@code burst} tokens refilled at {@code requests-per-second}, without a separate token
+ * count and refill time to keep consistent, so a decision is a read and a compare-and-set of
+ * the state, without locks.
+ *
+ * @param intervalNanos  the emission interval, the time to earn a token
+ * @param toleranceNanos how far ahead of the current time the state can be, the time to earn
+ *                       {@code burst - 1} tokens
+ * @author Antonio Musarra
+ * @see DeviceRateLimiter
+ */
+public record RateLimit(long intervalNanos, long toleranceNanos) {
+
+  /**
+   * Creates the limit of a rate and of a burst.
+   *
+   * @param requestsPerSecond the sustained rate of the requests
+   * @param burst             the requests that can be sent at once after being idle
+   * @return the limit
+   * @throws IllegalArgumentException if the rate or the burst is not positive
+   */
+  public static RateLimit of(double requestsPerSecond, int burst) {
+    if (!(requestsPerSecond > 0) || burst < 1) {
+      throw new IllegalArgumentException(
+          "Invalid rate limit: %s requests per second, burst %d".formatted(requestsPerSecond,
+              burst));
+    }
+
+    // Capped, so the state of a device never overflows the difference with the current time
+    long intervalNanos = (long) Math.clamp(TimeUnit.SECONDS.toNanos(1) / requestsPerSecond, 1.0,
+        MAX_WINDOW_NANOS);
+    return new RateLimit(intervalNanos,
+        (long) Math.min((double) intervalNanos * (burst - 1), MAX_WINDOW_NANOS));
+  }
+
+  /**
+   * Takes a token for a request of a device.
+   *
+   * @param state the theoretical arrival time of the next request of the device
+   * @param now   the current {@link System#nanoTime()}
+   * @return 0 if the request is permitted, otherwise the nanoseconds to wait for a token
+   */
+  public long acquire(AtomicLong state, long now) {
+    while (true) {
+      long arrival = state.get();
+      // The times are compared by difference, as System.nanoTime() can be negative
+      long ahead = arrival - now;
+      long base = ahead > 0 ? arrival : now;
+
+      if (ahead > toleranceNanos) {
+        return ahead - toleranceNanos;
+      }
+      if (state.compareAndSet(arrival, base + intervalNanos)) {
+        return 0;
+      }
+    }
+  }
+
+  /**
+   * Returns whether this limit lets more requests through than another one.
+   *
+   * @param other the other limit
+   * @return true if this limit has a higher rate, or the same rate and a larger burst
+   */
+  boolean isMoreGenerousThan(RateLimit other) {
+    return intervalNanos != other.intervalNanos ? intervalNanos < other.intervalNanos
+        : toleranceNanos > other.toleranceNanos;
+  }
+
+  /**
+   * The longest interval and tolerance, a day.
+   */
+  private static final double MAX_WINDOW_NANOS = TimeUnit.DAYS.toNanos(1);
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.utils;
+
+import it.dontesta.quarkus.tls.auth.ws.exception.CertificateConversionException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.HexFormat;
+
+/**
+ * SHA-256 fingerprint of the DER encoding of an X509Certificate.
+ *
+ * <p>The 256 bits of the digest are held in four primitive {@code long} fields, so the
+ * fingerprint can be used as a cache key without keeping a reference to the digest array and
+ * with {@link #equals(Object)} and {@link #hashCode()} that do not allocate.
+ *
+ * @author Antonio Musarra
+ */
+public final class CertificateFingerprint {
+
+  /**
+   * Computes the SHA-256 fingerprint of the given certificate.
+   *
+   * @param certificate the certificate to fingerprint
+   * @return the fingerprint of the DER encoded certificate
+   * @throws CertificateConversionException if the certificate cannot be encoded
+   */
+  public static CertificateFingerprint of(X509Certificate certificate) {
+    try {
+      byte[] encoded = certificate.getEncoded();
+
+      if (encoded == null) {
+        throw new CertificateConversionException("Certificate has no DER encoding");
+      }
+
+      return of(encoded);
+    } catch (CertificateEncodingException e) {
+      throw new CertificateConversionException("Failed to encode certificate for fingerprint", e);
+    }
+  }
+
+  /**
+   * Computes the SHA-256 fingerprint of the given DER encoded certificate.
+   *
+   * @param encodedCertificate the DER encoded certificate
+   * @return the fingerprint of the DER encoded certificate
+   */
+  public static CertificateFingerprint of(byte[] encodedCertificate) {
+    MessageDigest digest = SHA_256.get();
+    digest.reset();
+    return fromDigest(digest.digest(encodedCertificate));
+  }
+
+  /**
+   * Creates a fingerprint from an already computed SHA-256 digest.
+   *
+   * @param sha256 the 32 bytes of the SHA-256 digest
+   * @return the fingerprint
+   * @throws IllegalArgumentException if the digest is not 32 bytes long
+   */
+  public static CertificateFingerprint fromDigest(byte[] sha256) {
+    if (sha256 == null || sha256.length != DIGEST_LENGTH) {
+      throw new IllegalArgumentException("SHA-256 digest must be %d bytes".formatted(
+          DIGEST_LENGTH));
+    }
+
+    ByteBuffer buffer = ByteBuffer.wrap(sha256);
+    return new CertificateFingerprint(buffer.getLong(), buffer.getLong(), buffer.getLong(),
+        buffer.getLong());
+  }
+
+  /**
+   * Creates a fingerprint from its hexadecimal representation. Colons are ignored, so both
+   * {@code ab01...} and {@code AB:01:...} forms are accepted.
+   *
+   * @param hex the hexadecimal representation of the SHA-256 digest
+   * @return the fingerprint
+   * @throws IllegalArgumentException if the value is not a valid SHA-256 hexadecimal string
+   */
+  public static CertificateFingerprint fromHex(String hex) {
+    return fromDigest(HexFormat.of().parseHex(hex.replace(":", "").trim()));
+  }
+
+  /**
+   * Returns the most significant 64 bits of the digest.
+   *
+   * @return the first eight bytes of the digest as a long
+   */
+  public long high() {
+    return w0;
+  }
+
+  /**
+   * Returns the digest bytes.
+   *
+   * @return a new array with the 32 bytes of the digest
+   */
+  public byte[] toBytes() {
+    return ByteBuffer.allocate(DIGEST_LENGTH).putLong(w0).putLong(w1).putLong(w2).putLong(w3)
+        .array();
+  }
+
+  /**
+   * Returns the lower case hexadecimal representation of the digest.
+   *
+   * @return the hexadecimal string
+   */
+  public String toHex() {
+    return HexFormat.of().formatHex(toBytes());
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (this == other) {
+      return true;
+    }
+    return other instanceof CertificateFingerprint that
+        && w0 == that.w0 && w1 == that.w1 && w2 == that.w2 && w3 == that.w3;
+  }
+
+  @Override
+  public int hashCode() {
+    // The digest is uniformly distributed, any 32 bits of it are a good hash
+    return (int) (w0 ^ (w0 >>> 32));
+  }
+
+  @Override
+  public String toString() {
+    return toHex();
+  }
+
+  private CertificateFingerprint(long w0, long w1, long w2, long w3) {
+    this.w0 = w0;
+    this.w1 = w1;
+    this.w2 = w2;
+    this.w3 = w3;
+  }
+
+  private static final int DIGEST_LENGTH = 32;
+
+  private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  });
+
+  private final long w0;
+  private final long w1;
+  private final long w2;
+  private final long w3;
+}
@@ -4,6 +4,8 @@
  */
 package it.dontesta.quarkus.tls.auth.ws.utils;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import it.dontesta.quarkus.tls.auth.ws.exception.CertificateConversionException;
 import java.io.FileWriter;
 import java.io.IOException;
@@ -12,8 +14,13 @@ import java.security.cert.X509Certificate;
 import java.security.interfaces.DSAPublicKey;
 import java.security.interfaces.ECPublicKey;
 import java.security.interfaces.RSAPublicKey;
-import java.util.Arrays;
 import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.ldap.LdapName;
+import javax.naming.ldap.Rdn;
 import javax.security.auth.x500.X500Principal;
 import org.bouncycastle.asn1.ASN1InputStream;
 import org.bouncycastle.asn1.ASN1OctetString;
@@ -87,11 +94,27 @@ public class CertificateUtil {
    * This method assumes the extension value is an ASN.1 Octet String containing an ASN.1 String
    * (e.g., UTF8String, PrintableString, etc.).
    *
+   * <p>The common case, an ASCII UTF8String, PrintableString or IA5String, is decoded in place
+   * by the {@link DerReader}; any other value is decoded by BouncyCastle.
+   *
    * @param extensionValue The byte array containing the extension value.
    * @return The decoded extension value as a String, or null if decoding fails.
    * @throws CertificateConversionException If an error occurs during decoding.
    */
   public static String decodeExtensionValue(byte[] extensionValue) {
+    String value = DerReader.readExtensionString(extensionValue, 0, extensionValue.length);
+    return value != null ? value : decodeExtensionValueWithBouncyCastle(extensionValue);
+  }
+
+  /**
+   * Decodes an extension value with BouncyCastle, the reference decoding of
+   * {@link #decodeExtensionValue(byte[])} for the values not handled by the {@link DerReader}.
+   *
+   * @param extensionValue The byte array containing the extension value.
+   * @return The decoded extension value as a String, or null if decoding fails.
+   * @throws CertificateConversionException If an error occurs during decoding.
+   */
+  static String decodeExtensionValueWithBouncyCastle(byte[] extensionValue) {
     try (ASN1InputStream asn1InputStream = new ASN1InputStream(extensionValue)) {
       ASN1Primitive asn1Primitive = asn1InputStream.readObject();
       if (asn1Primitive instanceof ASN1OctetString octetString) {
@@ -111,6 +134,12 @@ public class CertificateUtil {
   /**
    * Extracts the Common Name (CN) from the subject of the given X509Certificate.
    *
+   * <p>The CN is read from the DER encoding of the subject, so escaped characters and
+   * multi-valued RDNs are handled as defined by RFC 4514; when the subject has more than one
+   * CN, the first one of the string form of the subject is returned. Names that can't be read
+   * from the encoding are parsed from their RFC 4514 string form. The result is cached per
+   * certificate instance.
+   *
    * @param cert The X509Certificate from which to extract the Common Name.
    * @return The Common Name (CN) as a String, or null if the CN is not found.
    */
@@ -120,19 +149,51 @@ public class CertificateUtil {
       throw new NullPointerException("Certificate is null");
     }
 
+    return COMMON_NAMES.get(cert, CertificateUtil::readCommonName).orElse(null);
+  }
+
+  /**
+   * Reads the Common Name (CN) from the subject of the given X509Certificate, without caching.
+   *
+   * @param cert The X509Certificate from which to read the Common Name.
+   * @return The Common Name (CN), if any.
+   */
+  static Optional<String> readCommonName(X509Certificate cert) {
     X500Principal principal = cert.getSubjectX500Principal();
 
     if (principal == null) {
-      return null;
+      return Optional.empty();
     }
 
-    String dn = principal.getName();
-    return Arrays.stream(dn.split(","))
-        .map(String::trim)
-        .filter(part -> part.startsWith("CN=") || part.startsWith("cn="))
-        .map(part -> part.substring(3))
-        .findFirst()
-        .orElse(null);
+    try {
+      return Optional.ofNullable(DerReader.readCommonName(principal.getEncoded()));
+    } catch (IllegalArgumentException e) {
+      return Optional.ofNullable(parseCommonName(principal.getName()));
+    }
+  }
+
+  /**
+   * Parses the Common Name (CN) from the RFC 4514 string form of a distinguished name.
+   *
+   * @param dn The distinguished name.
+   * @return The first Common Name of the string form, or null if not found.
+   */
+  static String parseCommonName(String dn) {
+    try {
+      List<Rdn> rdns = new LdapName(dn).getRdns();
+
+      // The RDNs are listed from the rightmost one
+      for (int i = rdns.size() - 1; i >= 0; i--) {
+        Attribute commonName = rdns.get(i).toAttributes().get("CN");
+
+        if (commonName != null && commonName.get() instanceof String value) {
+          return value;
+        }
+      }
+    } catch (NamingException e) {
+      return null;
+    }
+    return null;
   }
 
   /**
@@ -185,4 +246,20 @@ public class CertificateUtil {
   private CertificateUtil() {
     throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
   }
+
+  /**
+   * The maximum number of certificates whose Common Name is cached.
+   */
+  private static final int COMMON_NAMES_CACHE_SIZE = 10_000;
+
+  /**
+   * The Common Names of the certificates, keyed by certificate instance: the certificates of a
+   * TLS session are the same instances for all its requests, and the entries of the
+   * certificates no longer in use are collected with them.
+   */
+  private static final Cache<X509Certificate, Optional<String>> COMMON_NAMES =
+      Caffeine.newBuilder()
+          .weakKeys()
+          .maximumSize(COMMON_NAMES_CACHE_SIZE)
+          .build();
 }
\ No newline at end of file
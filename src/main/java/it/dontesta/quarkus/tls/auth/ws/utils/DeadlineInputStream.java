@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Input stream reading a download (e.g. the body of an HTTP response) that must end within a
+ * deadline.
+ *
+ * <p>The timeouts of the {@link java.net.http.HttpClient} bound only the connection and the
+ * response headers: a server that stalls while it sends the body blocks the reader forever. When
+ * the deadline is reached, a watchdog closes the wrapped stream, which wakes up a blocked read,
+ * and every following read fails with an {@link HttpTimeoutException}. Closing this stream
+ * before the deadline cancels the watchdog.
+ *
+ * @author Antonio Musarra
+ */
+public final class DeadlineInputStream extends FilterInputStream {
+
+  /**
+   * Creates the stream.
+   *
+   * @param in       the stream to read
+   * @param deadline the instant by which the stream must be read and closed
+   */
+  public DeadlineInputStream(InputStream in, Instant deadline) {
+    super(in);
+    this.deadline = deadline;
+    this.watchdog = WATCHDOG.schedule(this::expire,
+        Math.max(Duration.between(Instant.now(), deadline).toNanos(), 0), TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public int read() throws IOException {
+    try {
+      int result = super.read();
+      checkDeadline();
+      return result;
+    } catch (IOException e) {
+      throw expiredOr(e);
+    }
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int length) throws IOException {
+    try {
+      int result = super.read(buffer, offset, length);
+      checkDeadline();
+      return result;
+    } catch (IOException e) {
+      throw expiredOr(e);
+    }
+  }
+
+  @Override
+  public long skip(long count) throws IOException {
+    try {
+      long result = super.skip(count);
+      checkDeadline();
+      return result;
+    } catch (IOException e) {
+      throw expiredOr(e);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    watchdog.cancel(false);
+    super.close();
+  }
+
+  /**
+   * Closes the wrapped stream, called by the watchdog when the deadline is reached.
+   */
+  private void expire() {
+    expired = true;
+
+    try {
+      in.close();
+    } catch (IOException e) {
+      // The reader gets the timeout anyway
+    }
+  }
+
+  private void checkDeadline() throws HttpTimeoutException {
+    if (expired) {
+      throw timeout();
+    }
+  }
+
+  private IOException expiredOr(IOException e) {
+    if (!expired || e instanceof HttpTimeoutException) {
+      return e;
+    }
+
+    HttpTimeoutException timeout = timeout();
+    timeout.initCause(e);
+    return timeout;
+  }
+
+  private HttpTimeoutException timeout() {
+    return new HttpTimeoutException("Download not completed by its deadline %s".formatted(
+        deadline));
+  }
+
+  /**
+   * The single daemon thread closing the expired streams; the cancelled watchdogs are removed.
+   */
+  private static final ScheduledThreadPoolExecutor WATCHDOG;
+
+  static {
+    WATCHDOG = new ScheduledThreadPoolExecutor(1,
+        Thread.ofPlatform().name("download-deadline").daemon().factory());
+    WATCHDOG.setRemoveOnCancelPolicy(true);
+  }
+
+  private final Instant deadline;
+
+  private final ScheduledFuture<?> watchdog;
+
+  private volatile boolean expired;
+}
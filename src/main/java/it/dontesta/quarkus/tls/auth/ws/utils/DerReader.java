@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.utils;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.X509Certificate;
+
+/**
+ * Minimal DER reader of the certificate fields holding a string, used as the fast path of
+ * {@link CertificateUtil#decodeExtensionValue(byte[])} and
+ * {@link CertificateUtil#getCommonName(X509Certificate)}.
+ *
+ * <p>The reader works in place over a byte array, without intermediate objects: the only
+ * allocation is the decoded string.
+ *
+ * <p>For the extension values it only handles the common and unambiguous case, an OCTET STRING
+ * wrapping exactly one UTF8String, PrintableString or IA5String with definite lengths and ASCII
+ * content. Anything else (other string types, non-ASCII characters, constructed or
+ * indefinite-length encodings, trailing bytes, truncated input) is reported as not decoded, and
+ * the caller falls back to BouncyCastle, which gives the reference result.
+ *
+ * @author Antonio Musarra
+ * @see CertificateUtil#decodeExtensionValue(byte[])
+ * @see CertificateUtil#getCommonName(X509Certificate)
+ */
+final class DerReader {
+
+  /**
+   * Decodes the string wrapped in the OCTET STRING of an extension value.
+   *
+   * @param der    the bytes holding the extension value
+   * @param offset the offset of the extension value
+   * @param length the length of the extension value
+   * @return the decoded string, or null if the value is not in the form handled by the reader
+   */
+  static String readExtensionString(byte[] der, int offset, int length) {
+    int end = offset + length;
+
+    // OCTET STRING, which must span the whole value
+    if (length < 2 || der[offset] != OCTET_STRING) {
+      return null;
+    }
+
+    long octets = readLength(der, offset + 1, end);
+    if (octets < 0) {
+      return null;
+    }
+
+    int contentOffset = offset + 1 + lengthOfLength(der[offset + 1]);
+    if (contentOffset + octets != end) {
+      return null;
+    }
+
+    // The string, which must span the whole content of the OCTET STRING
+    if (end - contentOffset < 2 || !isStringTag(der[contentOffset])) {
+      return null;
+    }
+
+    long stringLength = readLength(der, contentOffset + 1, end);
+    if (stringLength < 0) {
+      return null;
+    }
+
+    int stringOffset = contentOffset + 1 + lengthOfLength(der[contentOffset + 1]);
+    if (stringOffset + stringLength != end) {
+      return null;
+    }
+
+    for (int i = stringOffset; i < end; i++) {
+      if (der[i] < 0) {
+        // Not ASCII, the decoding of the string type matters
+        return null;
+      }
+    }
+
+    return new String(der, stringOffset, end - stringOffset, StandardCharsets.ISO_8859_1);
+  }
+
+  /**
+   * Reads the Common Name of an encoded X.500 name, walking its sequence of RDNs (including the
+   * multi-valued ones). When the name has more than one Common Name, the one returned is the
+   * first one of the RFC 4514 string form, which lists the RDNs in reverse encoding order and the
+   * attributes of a multi-valued RDN in encoding order.
+   *
+   * @param name the DER encoding of the name
+   * @return the value of the Common Name, or null if the name has no Common Name
+   * @throws IllegalArgumentException if the encoding is malformed or the Common Name has an
+   *                                  unsupported type
+   */
+  static String readCommonName(byte[] name) {
+    int end = name.length;
+    int rdn = contentOffset(name, 0, end, SEQUENCE);
+    if (nextOffset(name, 0, end) != end) {
+      throw new IllegalArgumentException("Trailing bytes after the name");
+    }
+
+    String commonName = null;
+
+    while (rdn < end) {
+      int rdnEnd = nextOffset(name, rdn, end);
+      int attribute = contentOffset(name, rdn, rdnEnd, SET);
+      String rdnCommonName = null;
+
+      while (attribute < rdnEnd) {
+        int attributeEnd = nextOffset(name, attribute, rdnEnd);
+        int typeOffset = contentOffset(name, attribute, attributeEnd, SEQUENCE);
+        int type = contentOffset(name, typeOffset, attributeEnd, OBJECT_IDENTIFIER);
+        int value = nextOffset(name, typeOffset, attributeEnd);
+
+        if (rdnCommonName == null && isCommonName(name, type, value)) {
+          rdnCommonName = readString(name, value, attributeEnd);
+        }
+
+        attribute = attributeEnd;
+      }
+
+      if (rdnCommonName != null) {
+        commonName = rdnCommonName;
+      }
+      rdn = rdnEnd;
+    }
+
+    return commonName;
+  }
+
+  private static boolean isCommonName(byte[] der, int type, int typeEnd) {
+    return typeEnd - type == COMMON_NAME_OID.length
+        && der[type] == COMMON_NAME_OID[0]
+        && der[type + 1] == COMMON_NAME_OID[1]
+        && der[type + 2] == COMMON_NAME_OID[2];
+  }
+
+  private static String readString(byte[] der, int offset, int end) {
+    byte tag = der[offset];
+    int content = contentOffset(der, offset, end, tag);
+    int length = nextOffset(der, offset, end) - content;
+
+    Charset charset = switch (tag) {
+      case UTF8_STRING -> StandardCharsets.UTF_8;
+      case PRINTABLE_STRING, IA5_STRING, VISIBLE_STRING, TELETEX_STRING ->
+          StandardCharsets.ISO_8859_1;
+      case BMP_STRING -> StandardCharsets.UTF_16BE;
+      case UNIVERSAL_STRING -> UTF_32BE;
+      default -> throw new IllegalArgumentException(
+          "Unsupported string type 0x%02x".formatted(tag));
+    };
+
+    return new String(der, content, length, charset);
+  }
+
+  /**
+   * Returns the offset of the content of the element at the given offset.
+   *
+   * @throws IllegalArgumentException if the element has a different tag or is malformed
+   */
+  private static int contentOffset(byte[] der, int offset, int end, byte tag) {
+    if (offset + 1 >= end || der[offset] != tag) {
+      throw new IllegalArgumentException("Expected tag 0x%02x at %d".formatted(tag, offset));
+    }
+    return offset + 1 + lengthOfLength(der[offset + 1]);
+  }
+
+  /**
+   * Returns the offset following the element at the given offset.
+   *
+   * @throws IllegalArgumentException if the element is malformed or exceeds the end
+   */
+  private static int nextOffset(byte[] der, int offset, int end) {
+    long length = readLength(der, offset + 1, end);
+    long next = length < 0 ? Long.MAX_VALUE
+        : offset + 1L + lengthOfLength(der[offset + 1]) + length;
+
+    if (next > end) {
+      throw new IllegalArgumentException("Malformed length at %d".formatted(offset));
+    }
+    return (int) next;
+  }
+
+  /**
+   * Reads a definite length in short or long form (up to four bytes).
+   *
+   * @param der    the bytes
+   * @param offset the offset of the first byte of the length
+   * @param end    the end of the readable region
+   * @return the length, or -1 if it is indefinite, too long or truncated
+   */
+  private static long readLength(byte[] der, int offset, int end) {
+    if (offset >= end) {
+      return -1;
+    }
+
+    int first = der[offset] & 0xFF;
+    if (first < 0x80) {
+      return first;
+    }
+
+    int count = first & 0x7F;
+    if (count == 0 || count > 4 || offset + count >= end) {
+      return -1;
+    }
+
+    long length = 0;
+    for (int i = 1; i <= count; i++) {
+      length = (length << 8) | (der[offset + i] & 0xFF);
+    }
+    return length;
+  }
+
+  private static int lengthOfLength(byte first) {
+    return (first & 0x80) == 0 ? 1 : 1 + (first & 0x7F);
+  }
+
+  private static boolean isStringTag(byte tag) {
+    return tag == UTF8_STRING || tag == PRINTABLE_STRING || tag == IA5_STRING;
+  }
+
+  private DerReader() {
+    throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+  }
+
+  private static final byte OCTET_STRING = 0x04;
+
+  private static final byte OBJECT_IDENTIFIER = 0x06;
+
+  private static final byte SEQUENCE = 0x30;
+
+  private static final byte SET = 0x31;
+
+  private static final byte TELETEX_STRING = 0x14;
+
+  private static final byte VISIBLE_STRING = 0x1A;
+
+  private static final byte UNIVERSAL_STRING = 0x1C;
+
+  private static final byte BMP_STRING = 0x1E;
+
+  /**
+   * The content of the OID 2.5.4.3 (commonName).
+   */
+  private static final byte[] COMMON_NAME_OID = {0x55, 0x04, 0x03};
+
+  private static final Charset UTF_32BE = Charset.forName("UTF-32BE");
+
+  private static final byte UTF8_STRING = 0x0C;
+
+  private static final byte PRINTABLE_STRING = 0x13;
+
+  private static final byte IA5_STRING = 0x16;
+}
@@ -5,39 +5,62 @@
 
 package it.dontesta.quarkus.tls.auth.ws.utils;
 
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
 import java.nio.charset.StandardCharsets;
-import java.security.Key;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
 import java.util.Base64;
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
-import org.eclipse.microprofile.config.ConfigProvider;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 
 /**
- * Utility class for generating and verifying Device IDs.
+ * Utility bean for generating and verifying Device IDs.
  *
  * <p>A Device ID is a unique identifier that can be used to identify a device.
  * It is generated by combining a timestamp, UUID, and hostname, and then generating an HMAC SHA-256
  * hash based on the combined string and a secret key. The Device ID is then encoded in Base64.
  *
- * <p>The Device ID can be verified by decoding the Base64 encoded string, splitting it into its
- * components, regenerating the HMAC from the combined string, and comparing the provided HMAC with
- * the calculated HMAC.
+ * <p>The Device ID can be verified by decoding the Base64 encoded string, regenerating the HMAC
+ * from the combined string, and comparing the provided HMAC with the calculated HMAC.
  *
- * <p>The secret key used for generating the HMAC is read from the configuration.
+ * <p>The verification runs on every authenticated request, so it works directly over the decoded
+ * bytes: the key is built once, every thread reuses its own {@link Mac} and scratch buffers, and
+ * the raw HMAC bytes are compared in constant time with {@link MessageDigest#isEqual}. Verifying
+ * a Device ID doesn't allocate once the buffers of the thread are warm.
+ *
+ * <p>The secret key used for generating the HMAC is read from the configuration property
+ * {@code client.cert.device.id.secret-key}.
  *
  * @author Antonio Musarra
  * @see Base64
  * @see Mac
  * @see SecretKeySpec
  */
+@ApplicationScoped
 public class DeviceIdUtil {
 
+  /**
+   * Creates the bean with the secret key used for the HMAC.
+   *
+   * @param secretKey the secret key used for generating the HMAC
+   */
+  @Inject
+  public DeviceIdUtil(
+      @ConfigProperty(name = "client.cert.device.id.secret-key") String secretKey) {
+    this.secretKey =
+        new SecretKeySpec(secretKey.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM);
+    this.scratch = ThreadLocal.withInitial(this::newScratch);
+  }
+
   /**
    * Generates a Device ID and returns it encoded in Base64.
    *
    * @return Base64 encoded Device ID
    */
-  public static String generateDeviceId() {
+  public String generateDeviceId() {
     // Generate a unique string based on timestamp, UUID, and hostname
     String timestamp = String.valueOf(System.currentTimeMillis());
     String uuid = java.util.UUID.randomUUID().toString().toLowerCase();
@@ -48,10 +71,15 @@ public class DeviceIdUtil {
     String combinedString = String.join("#", timestamp, uuid, hostname);
 
     // Generate an HMAC SHA-256 based on the combined string and the secret key
-    String hmac = generateHmacSha256(combinedString, staticSecretKey);
+    byte[] hmacBytes = scratch.get().mac.doFinal(combinedString.getBytes(StandardCharsets.UTF_8));
+
+    StringBuilder hexString = new StringBuilder(HMAC_HEX_LENGTH);
+    for (byte b : hmacBytes) {
+      hexString.append(HEX_DIGITS[(b >> 4) & 0x0F]).append(HEX_DIGITS[b & 0x0F]);
+    }
 
     // Combine the device ID with the HMAC
-    String deviceId = String.join("#", combinedString, hmac);
+    String deviceId = String.join("#", combinedString, hexString);
 
     // Encode the result using Base64
     return Base64.getUrlEncoder().encodeToString(deviceId.getBytes(StandardCharsets.UTF_8));
@@ -60,67 +88,185 @@ public class DeviceIdUtil {
   /**
    * Verifies the provided Base64 encoded Device ID.
    *
+   * <p>The decoded Device ID must be made of four parts separated by {@code #}: the timestamp,
+   * the UUID, the hostname and the hex encoded HMAC (case-insensitive) of the first three parts.
+   *
    * @param encodedDeviceId Base64 encoded Device ID to verify
    * @return true if the Device ID is valid, false otherwise
    */
-  public static boolean verifyDeviceId(String encodedDeviceId) {
+  public boolean verifyDeviceId(String encodedDeviceId) {
     if (encodedDeviceId == null) {
       return false;
     }
 
-    String deviceIdToVerify;
+    Scratch buffers = scratch.get();
 
-    try {
-      // Decode the Base64 encoded Device ID
-      deviceIdToVerify = new String(Base64.getUrlDecoder().decode(encodedDeviceId), StandardCharsets.UTF_8);
-    } catch (IllegalArgumentException e) {
+    // Decode the Base64 encoded Device ID
+    int length = decodeBase64Url(encodedDeviceId, buffers);
+    if (length < 0) {
       return false; // Invalid Base64 encoding
     }
 
-    // Split the decoded Device ID into its components
-    String[] parts = deviceIdToVerify.split("#");
-    if (parts.length != 4) {
+    // Locate the separator of the HMAC, the Device ID must have exactly four parts
+    byte[] deviceId = buffers.decoded;
+    int separators = 0;
+    int hmacSeparator = -1;
+
+    for (int i = 0; i < length; i++) {
+      if (deviceId[i] == SEPARATOR) {
+        separators++;
+        hmacSeparator = i;
+      }
+    }
+
+    if (separators != 3 || length - hmacSeparator - 1 != HMAC_HEX_LENGTH
+        || !decodeHex(deviceId, hmacSeparator + 1, buffers.provided)) {
       return false; // Invalid format
     }
 
-    String combinedString = String.join("#", parts[0], parts[1], parts[2]);
-    String hmacProvided = parts[3];
+    // Regenerate the HMAC from the combined string and compare it in constant time
+    try {
+      buffers.mac.update(deviceId, 0, hmacSeparator);
+      buffers.mac.doFinal(buffers.calculated, 0);
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Failed to generate HMAC", e);
+    }
+
+    return MessageDigest.isEqual(buffers.provided, buffers.calculated);
+  }
+
+  /**
+   * Decodes a Base64 URL-safe string, with or without padding, into the scratch buffer of the
+   * thread.
+   *
+   * <p>Only the canonical encoding is accepted, so a Device ID has exactly one encoding with and
+   * one without padding: like {@link Base64#getUrlDecoder()}, the padding, if any, must complete
+   * the last unit of four characters; unlike it, the unused bits of the last character must be
+   * zero (RFC 4648, section 3.5).
+   *
+   * @param encoded the encoded string
+   * @param buffers the scratch buffers of the thread
+   * @return the number of decoded bytes, or -1 if the string is not canonical Base64
+   */
+  private static int decodeBase64Url(String encoded, Scratch buffers) {
+    int end = encoded.length();
 
-    // Regenerate the HMAC from the combined string
-    String hmacCalculated = generateHmacSha256(combinedString, staticSecretKey);
+    for (int padding = 0; padding < 2 && end > 0 && encoded.charAt(end - 1) == '='; padding++) {
+      end--;
+    }
+
+    // The padding completes the last unit, or there is no padding at all
+    if (end % 4 == 1 || (end != encoded.length() && encoded.length() % 4 != 0)) {
+      return -1;
+    }
+
+    int length = end / 4 * 3 + Math.max(end % 4 - 1, 0);
+    byte[] decoded = buffers.decoded(length);
+    int bits = 0;
+    int bitCount = 0;
+    int position = 0;
+
+    for (int i = 0; i < end; i++) {
+      char c = encoded.charAt(i);
+      int value = c < BASE64_URL_VALUES.length ? BASE64_URL_VALUES[c] : -1;
+
+      if (value < 0) {
+        return -1;
+      }
 
-    // Compare the provided HMAC with the calculated HMAC
-    return hmacProvided.equalsIgnoreCase(hmacCalculated);
+      bits = (bits << 6) | value;
+      bitCount += 6;
+
+      if (bitCount >= 8) {
+        bitCount -= 8;
+        decoded[position++] = (byte) (bits >> bitCount);
+      }
+    }
+
+    // The bits left over by the last character are not part of any byte
+    if ((bits & ((1 << bitCount) - 1)) != 0) {
+      return -1;
+    }
+
+    return position;
   }
 
   /**
-   * Generates an HMAC SHA-256 hash.
+   * Decodes the hex encoded HMAC at the given offset.
    *
-   * @param data Data to be hashed
-   * @param key  Secret key used for hashing
-   * @return Hex encoded HMAC
+   * @param source the bytes containing the hex digits
+   * @param offset the offset of the first hex digit
+   * @param target the array receiving the decoded HMAC
+   * @return true if all the digits are valid hex digits, false otherwise
    */
-  private static String generateHmacSha256(String data, String key) {
+  private static boolean decodeHex(byte[] source, int offset, byte[] target) {
+    for (int i = 0; i < target.length; i++) {
+      int high = Character.digit(source[offset + 2 * i], 16);
+      int low = Character.digit(source[offset + 2 * i + 1], 16);
+
+      if (high < 0 || low < 0) {
+        return false;
+      }
+
+      target[i] = (byte) ((high << 4) | low);
+    }
+
+    return true;
+  }
+
+  private Scratch newScratch() {
     try {
-      Mac mac = Mac.getInstance("HmacSHA256");
-      Key secretKey = new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+      Mac mac = Mac.getInstance(HMAC_ALGORITHM);
       mac.init(secretKey);
-      byte[] hmacBytes = mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+      return new Scratch(mac);
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Failed to initialize HMAC", e);
+    }
+  }
 
-      StringBuilder hexString = new StringBuilder();
-      for (byte b : hmacBytes) {
-        hexString.append(String.format("%02x", b));
+  /**
+   * The {@link Mac} and the buffers used by a thread to verify the Device IDs.
+   */
+  private static final class Scratch {
+
+    Scratch(Mac mac) {
+      this.mac = mac;
+    }
+
+    byte[] decoded(int length) {
+      if (decoded.length < length) {
+        decoded = new byte[length];
       }
-      return hexString.toString();
-    } catch (Exception e) {
-      throw new RuntimeException("Failed to generate HMAC", e);
+      return decoded;
     }
+
+    private final Mac mac;
+    private final byte[] calculated = new byte[HMAC_LENGTH];
+    private final byte[] provided = new byte[HMAC_LENGTH];
+    private byte[] decoded = new byte[256];
   }
 
-  private DeviceIdUtil() {
-    throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+  private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+  private static final int HMAC_LENGTH = 32;
+
+  private static final int HMAC_HEX_LENGTH = HMAC_LENGTH * 2;
+
+  private static final byte SEPARATOR = '#';
+
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  private static final int[] BASE64_URL_VALUES = new int[128];
+
+  static {
+    Arrays.fill(BASE64_URL_VALUES, -1);
+    String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+    for (int i = 0; i < alphabet.length(); i++) {
+      BASE64_URL_VALUES[alphabet.charAt(i)] = i;
+    }
   }
 
-  private static String staticSecretKey =
-      ConfigProvider.getConfig().getValue("client.cert.device.id.secret-key", String.class);
+  private final SecretKeySpec secretKey;
+
+  private final ThreadLocal<Scratch> scratch;
 }
@@ -218,15 +218,22 @@ generate_fake_ca_cert() {
 # @param ca_certificate_file: The CA certificate file path
 # @param output_p12_file: The output p12 file path
 # @param private_key_password: The private key password
+# @param chain_certificate_file: The optional file of the issuer certificates added to the chain
 generate_p12_file() {
   local private_key_file=$1
   local ca_certificate_file=$2
   local output_p12_file=$3
   local private_key_password=$4
+  local chain_certificate_file=$5
+  local chain_options=()
+
+  if [ -n "$chain_certificate_file" ]; then
+    chain_options=(-certfile "$chain_certificate_file")
+  fi
 
   p12_password=$(openssl rand -base64 12)
   echo -e "${BLUE}🔒 Generating the p12 file...${NC}"
-  if ! openssl pkcs12 -export -out "$output_p12_file" -inkey "$private_key_file" -passin pass:"$private_key_password" -in "$ca_certificate_file" -password pass:"$p12_password"; then
+  if ! openssl pkcs12 -export -out "$output_p12_file" -inkey "$private_key_file" -passin pass:"$private_key_password" -in "$ca_certificate_file" "${chain_options[@]}" -password pass:"$p12_password"; then
     echo -e "${RED}❌ Error generating the p12 file.${NC}"
     exit 1
   fi
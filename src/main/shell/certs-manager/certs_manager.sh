@@ -298,7 +298,8 @@ generate-server)
   verify_certificate_subject "${SERVER_CERT_FILE}"
 
   if [ -n "$OUTPUT_P12_FILE" ]; then
-    generate_p12_file "$PRIVATE_KEY_FILE" "$SERVER_CERT_FILE" "$OUTPUT_P12_FILE" "$PRIVATE_KEY_PASSWORD"
+    # The issuer is added to the chain of the key store, so the server sends the whole chain
+    generate_p12_file "$PRIVATE_KEY_FILE" "$SERVER_CERT_FILE" "$OUTPUT_P12_FILE" "$PRIVATE_KEY_PASSWORD" "$CA_CERT_FILE"
   fi
   ;;
 generate-client)
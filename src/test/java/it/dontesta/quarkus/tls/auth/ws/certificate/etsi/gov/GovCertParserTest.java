@@ -5,11 +5,51 @@
 
 package it.dontesta.quarkus.tls.auth.ws.certificate.etsi.gov;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 import io.quarkus.test.junit.QuarkusTest;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.xml.stream.XMLStreamException;
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.DERBitString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.asn1.x509.TBSCertificate;
+import org.bouncycastle.asn1.x509.Time;
+import org.bouncycastle.asn1.x509.V3TBSCertificateGenerator;
+import org.bouncycastle.asn1.x9.X9ObjectIdentifiers;
 import org.jboss.logging.Logger;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
@@ -19,12 +59,12 @@ class GovCertParserTest {
   @Mock
   Logger log;
 
-  @InjectMocks
   GovCertificateParser govCertificateParser;
 
   @BeforeEach
   void setUp() {
     MockitoAnnotations.openMocks(this);
+    govCertificateParser = new GovCertificateParser(Optional.empty(), log);
   }
 
   @Test
@@ -61,4 +101,242 @@ class GovCertParserTest {
     govCertificateParser.parseAndSaveCerts(expiredDateXml);
     // Add assertions to verify the handling of expired certificate
   }
-}
\ No newline at end of file
+
+  @Test
+  void parseStreamingEmitsOnlyMatchingCertificates() throws Exception {
+    String certBase64 = loadCertificateBase64();
+    List<String> certificates = new ArrayList<>();
+
+    govCertificateParser.parseCertificates(toStream(tsl(certBase64)), certificates::add);
+
+    assertEquals(List.of(certBase64), certificates);
+  }
+
+  @Test
+  void parseStreamingSavesTheSameCertificatesAsDom() throws Exception {
+    String xml = tsl(loadCertificateBase64());
+    Path outputPath = Path.of(govCertificateParser.getOutputPath());
+
+    govCertificateParser.parseAndSaveCerts(xml);
+    Set<Path> domFiles = listFiles(outputPath);
+
+    govCertificateParser.parseAndSaveCerts(toStream(xml));
+    Set<Path> streamingFiles = listFiles(outputPath);
+
+    assertEquals(1, streamingFiles.size());
+    assertEquals(domFiles, streamingFiles);
+  }
+
+  @Test
+  void parseStreamingWithMalformedXml() {
+    assertThrows(XMLStreamException.class, () -> govCertificateParser.parseCertificates(
+        toStream("<TrustServiceStatusList><ServiceInformation>"), certBase64 -> {
+        }));
+  }
+
+  @Test
+  void publishSnapshotCarriesOverUnchangedCertificates() throws Exception {
+    String xml = tsl(loadCertificateBase64());
+    Path current = Path.of(govCertificateParser.getOutputPath());
+    govCertificateParser.snapshotsToKeep = 2;
+
+    assertTrue(govCertificateParser.parseAndSaveCerts(toStream(xml)));
+    Path firstSnapshot = current.toRealPath();
+    Path firstCertificate = current.resolve(listFiles(current).iterator().next()).toRealPath();
+
+    assertTrue(govCertificateParser.parseAndSaveCerts(toStream(xml)));
+    Path secondSnapshot = current.toRealPath();
+    Path secondCertificate = current.resolve(listFiles(current).iterator().next()).toRealPath();
+
+    assertTrue(Files.isSymbolicLink(current));
+    assertNotEquals(firstSnapshot, secondSnapshot);
+    assertTrue(Files.isSameFile(firstCertificate, secondCertificate));
+
+    // Only the last two snapshots are kept
+    assertTrue(govCertificateParser.parseAndSaveCerts(toStream(xml)));
+    assertFalse(Files.exists(firstSnapshot));
+    assertTrue(Files.exists(secondSnapshot));
+  }
+
+  @Test
+  void parseKeepsCertificatesInMemoryWithoutExport() throws Exception {
+    govCertificateParser.inMemoryTrustManagerEnabled = true;
+    govCertificateParser.pemExportEnabled = false;
+
+    assertTrue(govCertificateParser.parseAndSaveCerts(toStream(tsl(loadCertificateBase64()))));
+
+    assertEquals(1, govCertificateParser.getTrustedCertificates().size());
+    assertFalse(Files.exists(Path.of(govCertificateParser.getOutputPath())));
+  }
+
+  @Test
+  void parseIngestsDistinctCertificatesInParallel() throws Exception {
+    String caCertificate = loadCertificateBase64("certs/ca_cert.pem");
+    // Valid relative to now, so that the fixture never expires
+    String serverCertificate = selfSignedCertificateBase64("CN=rd.quarkus.dontesta.it",
+        Instant.now().minus(1, ChronoUnit.DAYS), Instant.now().plus(1, ChronoUnit.DAYS));
+    govCertificateParser.ingestParallelism = 2;
+
+    String xml = """
+        <TrustServiceStatusList xmlns="http://uri.etsi.org/02231/v2#">%s</TrustServiceStatusList>
+        """.formatted(Stream.of(caCertificate, serverCertificate, caCertificate)
+        .map(GovCertParserTest::idvService).collect(Collectors.joining()));
+
+    assertTrue(govCertificateParser.parseAndSaveCerts(toStream(xml)));
+
+    assertEquals(2, govCertificateParser.getTrustedCertificates().size());
+    assertEquals(2, listFiles(Path.of(govCertificateParser.getOutputPath())).size());
+  }
+
+  @Test
+  void parseFailsWhenTheIngestionPoolIsShutDown() throws Exception {
+    String certificate = loadCertificateBase64();
+    byte[] xml = """
+        <TrustServiceStatusList xmlns="http://uri.etsi.org/02231/v2#">%s</TrustServiceStatusList>
+        """.formatted(idvService(certificate).repeat(2)).getBytes(StandardCharsets.UTF_8);
+    int secondService = new String(xml, StandardCharsets.UTF_8).lastIndexOf("<TSPService>");
+
+    // The pool is shut down while the parser reads the second service
+    InputStream xmlStream = new FilterInputStream(new ByteArrayInputStream(xml)) {
+      private int read;
+
+      @Override
+      public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (read >= secondService) {
+          govCertificateParser.close();
+        }
+        int count = super.read(buffer, offset, Math.min(length, 64));
+        read += Math.max(count, 0);
+        return count;
+      }
+    };
+
+    assertFalse(assertTimeoutPreemptively(Duration.ofSeconds(10),
+        () -> govCertificateParser.parseAndSaveCerts(xmlStream)));
+  }
+
+  @Test
+  void failedParsingKeepsThePublishedSnapshot() throws Exception {
+    Path current = Path.of(govCertificateParser.getOutputPath());
+
+    assertTrue(govCertificateParser.parseAndSaveCerts(toStream(tsl(loadCertificateBase64()))));
+    Path publishedSnapshot = current.toRealPath();
+
+    assertFalse(govCertificateParser.parseAndSaveCerts(
+        toStream("<TrustServiceStatusList><ServiceInformation>")));
+
+    assertEquals(publishedSnapshot, current.toRealPath());
+    assertEquals(1, listFiles(current).size());
+  }
+
+  private static String tsl(String certBase64) {
+    return """
+        <TrustServiceStatusList xmlns="http://uri.etsi.org/02231/v2#">
+          <TSPService>
+            <ServiceInformation>
+              <ServiceTypeIdentifier>%1$s</ServiceTypeIdentifier>
+              <ServiceDigitalIdentity><DigitalId>
+                <X509Certificate>%3$s</X509Certificate>
+              </DigitalId></ServiceDigitalIdentity>
+              <ServiceStatus>%2$s</ServiceStatus>
+            </ServiceInformation>
+          </TSPService>
+          <TSPService>
+            <ServiceInformation>
+              <ServiceTypeIdentifier>%1$s</ServiceTypeIdentifier>
+              <ServiceDigitalIdentity><DigitalId>
+                <X509Certificate>%3$s</X509Certificate>
+              </DigitalId></ServiceDigitalIdentity>
+              <ServiceStatus>http://uri.etsi.org/TrstSvc/TrustedList/Svcstatus/withdrawn</ServiceStatus>
+            </ServiceInformation>
+          </TSPService>
+          <TSPService>
+            <ServiceInformation>
+              <ServiceTypeIdentifier>http://uri.etsi.org/TrstSvc/Svctype/CA/QC</ServiceTypeIdentifier>
+              <ServiceDigitalIdentity><DigitalId>
+                <X509Certificate>%3$s</X509Certificate>
+              </DigitalId></ServiceDigitalIdentity>
+              <ServiceStatus>%2$s</ServiceStatus>
+            </ServiceInformation>
+          </TSPService>
+        </TrustServiceStatusList>
+        """.formatted(GovCertificateParser.SERVICE_TYPE_IDV,
+        GovCertificateParser.SERVICE_STATUS_RECOGNISED_AT_NATIONAL_LEVEL, certBase64);
+  }
+
+  private static String idvService(String certBase64) {
+    return """
+        <TSPService>
+          <ServiceInformation>
+            <ServiceTypeIdentifier>%1$s</ServiceTypeIdentifier>
+            <ServiceDigitalIdentity><DigitalId>
+              <X509Certificate>%3$s</X509Certificate>
+            </DigitalId></ServiceDigitalIdentity>
+            <ServiceStatus>%2$s</ServiceStatus>
+          </ServiceInformation>
+        </TSPService>
+        """.formatted(GovCertificateParser.SERVICE_TYPE_IDV,
+        GovCertificateParser.SERVICE_STATUS_RECOGNISED_AT_NATIONAL_LEVEL, certBase64);
+  }
+
+  private static String loadCertificateBase64() throws Exception {
+    return loadCertificateBase64("certs/ca_cert.pem");
+  }
+
+  private static String loadCertificateBase64(String resource) throws Exception {
+    try (InputStream inputStream = GovCertParserTest.class.getClassLoader()
+        .getResourceAsStream(resource)) {
+      return new String(inputStream.readAllBytes(), StandardCharsets.US_ASCII)
+          .replace("-----BEGIN CERTIFICATE-----", "")
+          .replace("-----END CERTIFICATE-----", "")
+          .replaceAll("\\s", "");
+    }
+  }
+
+  /**
+   * Builds a self-signed certificate with BouncyCastle, signed with the JCA.
+   */
+  private static String selfSignedCertificateBase64(String subject, Instant notBefore,
+                                                    Instant notAfter) throws Exception {
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+    generator.initialize(256);
+    KeyPair keyPair = generator.generateKeyPair();
+
+    AlgorithmIdentifier algorithmIdentifier =
+        new AlgorithmIdentifier(X9ObjectIdentifiers.ecdsa_with_SHA256);
+    X500Name name = new X500Name(subject);
+    V3TBSCertificateGenerator tbsGenerator = new V3TBSCertificateGenerator();
+
+    tbsGenerator.setSerialNumber(new ASN1Integer(System.nanoTime()));
+    tbsGenerator.setSignature(algorithmIdentifier);
+    tbsGenerator.setIssuer(name);
+    tbsGenerator.setSubject(name);
+    tbsGenerator.setStartDate(new Time(Date.from(notBefore)));
+    tbsGenerator.setEndDate(new Time(Date.from(notAfter)));
+    tbsGenerator.setSubjectPublicKeyInfo(
+        SubjectPublicKeyInfo.getInstance(keyPair.getPublic().getEncoded()));
+
+    TBSCertificate tbsCertificate = tbsGenerator.generateTBSCertificate();
+    Signature signature = Signature.getInstance("SHA256withECDSA");
+    signature.initSign(keyPair.getPrivate());
+    signature.update(tbsCertificate.getEncoded(ASN1Encoding.DER));
+
+    ASN1EncodableVector certificate = new ASN1EncodableVector();
+    certificate.add(tbsCertificate);
+    certificate.add(algorithmIdentifier);
+    certificate.add(new DERBitString(signature.sign()));
+
+    return Base64.getEncoder().encodeToString(
+        new DERSequence(certificate).getEncoded(ASN1Encoding.DER));
+  }
+
+  private static InputStream toStream(String xml) {
+    return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static Set<Path> listFiles(Path directory) throws Exception {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.map(Path::getFileName).collect(Collectors.toSet());
+    }
+  }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.certificate.etsi.gov;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.quarkus.test.junit.QuarkusTest;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
+import org.jboss.logging.Logger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+class GovCertificateUpdaterTest {
+
+  private HttpServer server;
+
+  private AtomicReference<String> tslBody;
+
+  private AtomicBoolean honourValidators;
+
+  private AtomicBoolean gzip;
+
+  private AtomicInteger failuresBeforeSuccess;
+
+  private AtomicBoolean stallBody;
+
+  private CountDownLatch stalledBodyReleased;
+
+  private GovCertificateParser certParser;
+
+  private TslTrustManager trustManager;
+
+  private MeterRegistry meterRegistry;
+
+  private GovCertificateUpdater updater;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    tslBody = new AtomicReference<>("<TrustServiceStatusList/>");
+    honourValidators = new AtomicBoolean(true);
+    gzip = new AtomicBoolean(false);
+    failuresBeforeSuccess = new AtomicInteger(0);
+    stallBody = new AtomicBoolean(false);
+    stalledBodyReleased = new CountDownLatch(1);
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/TSL-IT.xml", exchange -> {
+      if (failuresBeforeSuccess.getAndUpdate(failures -> Math.max(failures - 1, 0)) > 0) {
+        exchange.sendResponseHeaders(503, -1);
+        exchange.close();
+        return;
+      }
+
+      String body = tslBody.get();
+      String etag = "\"%08x\"".formatted(body.hashCode());
+
+      if (honourValidators.get()
+          && etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+        exchange.sendResponseHeaders(304, -1);
+        exchange.close();
+        return;
+      }
+
+      byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+      String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+
+      if (gzip.get() && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream output = new GZIPOutputStream(compressed)) {
+          output.write(bytes);
+        }
+        bytes = compressed.toByteArray();
+        exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+      }
+
+      exchange.getResponseHeaders().add("ETag", etag);
+      exchange.sendResponseHeaders(200, bytes.length);
+      try (OutputStream output = exchange.getResponseBody()) {
+        if (stallBody.get()) {
+          // Send half of the body, then stall until the end of the test
+          output.write(bytes, 0, bytes.length / 2);
+          output.flush();
+          stalledBodyReleased.await();
+          return;
+        }
+        output.write(bytes);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    server.start();
+
+    Path outputPath = Files.createTempDirectory("gov-trust-certs-test");
+    certParser = mock(GovCertificateParser.class);
+    when(certParser.getOutputPath()).thenReturn(outputPath.toString());
+    when(certParser.getOutputPathPemBundle()).thenReturn(outputPath.toString());
+    when(certParser.parseAndSaveCerts(any(InputStream.class))).thenReturn(true);
+    when(certParser.isPemExportEnabled()).thenReturn(true);
+    trustManager = mock(TslTrustManager.class);
+
+    meterRegistry = new SimpleMeterRegistry();
+    updater = newUpdater(Duration.ofSeconds(5));
+  }
+
+  @AfterEach
+  void tearDown() {
+    stalledBodyReleased.countDown();
+    updater.close();
+    server.stop(0);
+  }
+
+  @Test
+  void notModifiedTslIsNotParsedAgain() {
+    updater.updateCertificates();
+    updater.updateCertificates();
+
+    verify(certParser, times(1)).parseAndSaveCerts(any(InputStream.class));
+    verify(certParser, times(1)).saveCertificatesAsPem(any(), any());
+    verify(trustManager, times(1)).update(any());
+    assertEquals(1, refreshCount("applied"));
+    assertEquals(1, refreshCount("not-modified"));
+  }
+
+  @Test
+  void unchangedTslIsNotParsedAgain() {
+    updater.updateCertificates();
+
+    // Same content, but the server doesn't honour the ETag sent by the client
+    honourValidators.set(false);
+    updater.updateCertificates();
+
+    verify(certParser, times(1)).parseAndSaveCerts(any(InputStream.class));
+    assertEquals(1, refreshCount("applied"));
+    assertEquals(1, refreshCount("unchanged"));
+  }
+
+  @Test
+  void changedTslIsApplied() {
+    updater.updateCertificates();
+    tslBody.set("<TrustServiceStatusList><TSPService/></TrustServiceStatusList>");
+    updater.updateCertificates();
+
+    verify(certParser, times(2)).parseAndSaveCerts(any(InputStream.class));
+    assertEquals(2, refreshCount("applied"));
+  }
+
+  @Test
+  void pemBundleIsNotSavedWhenExportIsDisabled() {
+    when(certParser.isPemExportEnabled()).thenReturn(false);
+    updater.updateCertificates();
+
+    verify(trustManager, times(1)).update(any());
+    verify(certParser, never()).saveCertificatesAsPem(any(), any());
+    assertEquals(1, refreshCount("applied"));
+  }
+
+  @Test
+  void failedParsingIsCountedAndRetried() {
+    when(certParser.parseAndSaveCerts(any(InputStream.class))).thenReturn(false);
+    updater.updateCertificates();
+
+    when(certParser.parseAndSaveCerts(any(InputStream.class))).thenReturn(true);
+    updater.updateCertificates();
+
+    verify(certParser, times(2)).parseAndSaveCerts(any(InputStream.class));
+    verify(certParser, times(1)).saveCertificatesAsPem(any(), any());
+    assertEquals(1, refreshCount("failed"));
+    assertEquals(1, refreshCount("applied"));
+  }
+
+  @Test
+  void compressedTslIsDecompressed() throws IOException {
+    String xml = "<TrustServiceStatusList><TSPService/></TrustServiceStatusList>";
+    List<String> parsed = new ArrayList<>();
+    tslBody.set(xml);
+    gzip.set(true);
+    when(certParser.parseAndSaveCerts(any(InputStream.class))).thenAnswer(invocation -> {
+      parsed.add(new String(invocation.<InputStream>getArgument(0).readAllBytes(),
+          StandardCharsets.UTF_8));
+      return true;
+    });
+
+    updater.updateCertificates();
+
+    assertEquals(List.of(xml), parsed);
+    assertEquals(1, refreshCount("applied"));
+  }
+
+  @Test
+  void unavailableServerIsRetried() {
+    failuresBeforeSuccess.set(2);
+    updater.updateCertificates();
+
+    verify(certParser, times(1)).parseAndSaveCerts(any(InputStream.class));
+    assertEquals(1, refreshCount("applied"));
+  }
+
+  @Test
+  void unavailableServerFailsAfterTheRetries() {
+    failuresBeforeSuccess.set(3);
+    updater.updateCertificates();
+
+    verify(certParser, never()).parseAndSaveCerts(any(InputStream.class));
+    assertEquals(1, refreshCount("failed"));
+  }
+
+  @Test
+  void stalledDownloadFailsAtTheDeadline() {
+    updater.close();
+    updater = newUpdater(Duration.ofMillis(500));
+    tslBody.set("<TrustServiceStatusList>%s</TrustServiceStatusList>".formatted(
+        "<TSPService/>".repeat(10_000)));
+    stallBody.set(true);
+
+    assertTimeoutPreemptively(Duration.ofSeconds(10), () -> updater.updateCertificates());
+
+    verify(certParser, never()).parseAndSaveCerts(any(InputStream.class));
+    assertEquals(1, refreshCount("failed"));
+  }
+
+  @Test
+  void failedDownloadIsCounted() {
+    server.removeContext("/TSL-IT.xml");
+    updater.updateCertificates();
+
+    verify(certParser, never()).parseAndSaveCerts(any(InputStream.class));
+    assertEquals(1, refreshCount("failed"));
+  }
+
+  private GovCertificateUpdater newUpdater(Duration downloadTimeout) {
+    GovCertificateUpdater newUpdater = new GovCertificateUpdater(certParser, trustManager,
+        new TestHttpClientConfig(Duration.ofSeconds(5), Duration.ofSeconds(5), downloadTimeout, 2,
+            Duration.ofMillis(10)), meterRegistry, mock(Logger.class));
+    newUpdater.certsUrl = "http://localhost:%d/TSL-IT.xml".formatted(
+        server.getAddress().getPort());
+    newUpdater.streamingParserEnabled = true;
+    return newUpdater;
+  }
+
+  private record TestHttpClientConfig(Duration connectTimeout, Duration requestTimeout,
+                                      Duration downloadTimeout, int maxRetries,
+                                      Duration retryBackoff)
+      implements TslHttpClientConfig {
+  }
+
+  private double refreshCount(String outcome) {
+    return meterRegistry.get(GovCertificateUpdater.REFRESH_METRIC_NAME)
+        .tag("outcome", outcome).counter().count();
+  }
+}
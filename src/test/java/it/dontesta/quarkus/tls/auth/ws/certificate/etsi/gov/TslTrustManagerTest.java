@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.certificate.etsi.gov;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+
+import io.quarkus.test.junit.QuarkusTest;
+import it.dontesta.quarkus.tls.auth.ws.utils.CertificateFingerprint;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+import org.jboss.logging.Logger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@QuarkusTest
+class TslTrustManagerTest {
+
+  private X509Certificate caCertificate;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    try (InputStream inputStream = TslTrustManagerTest.class.getClassLoader()
+        .getResourceAsStream("certs/ca_cert.pem")) {
+      caCertificate = (X509Certificate) CertificateFactory.getInstance("X.509")
+          .generateCertificate(inputStream);
+    }
+  }
+
+  @Test
+  void baseCertificatesAreTrusted() {
+    TslTrustManager trustManager =
+        new TslTrustManager(List.of("certs/ca_cert.pem"), Optional.empty(),
+            mock(Logger.class));
+
+    assertDoesNotThrow(() -> trustManager.checkClientTrusted(
+        new X509Certificate[] {caCertificate}, "RSA"));
+    assertArrayEquals(new X509Certificate[] {caCertificate}, trustManager.getAcceptedIssuers());
+  }
+
+  @Test
+  void updateSwapsTheTslCertificates() throws Exception {
+    TslTrustManager trustManager =
+        new TslTrustManager(List.of(), Optional.empty(), mock(Logger.class));
+    X509Certificate[] chain = {caCertificate};
+
+    assertThrows(CertificateException.class,
+        () -> trustManager.checkClientTrusted(chain, "RSA"));
+
+    trustManager.update(List.of(caCertificate));
+    assertDoesNotThrow(() -> trustManager.checkClientTrusted(chain, "RSA"));
+    assertEquals(1, trustManager.getTrustStore().size());
+
+    trustManager.update(List.of());
+    assertThrows(CertificateException.class,
+        () -> trustManager.checkClientTrusted(chain, "RSA"));
+    assertEquals(0, trustManager.getTrustStore().size());
+  }
+
+  @Test
+  void versionChangesOnlyWithTheCertificates() {
+    TslTrustManager trustManager =
+        new TslTrustManager(List.of(), Optional.empty(), mock(Logger.class));
+    String emptyVersion = trustManager.version();
+
+    trustManager.update(List.of(caCertificate));
+    String version = trustManager.version();
+    assertNotEquals(emptyVersion, version);
+
+    trustManager.update(List.of(caCertificate));
+    assertEquals(version, trustManager.version());
+
+    trustManager.update(List.of());
+    assertEquals(emptyVersion, trustManager.version());
+  }
+
+  @Test
+  void versionIsTheDigestOfTheSortedFingerprints() throws Exception {
+    X509Certificate serverCertificate;
+    try (InputStream inputStream = TslTrustManagerTest.class.getClassLoader()
+        .getResourceAsStream("certs/server_cert.pem")) {
+      serverCertificate = (X509Certificate) CertificateFactory.getInstance("X.509")
+          .generateCertificate(inputStream);
+    }
+    TslTrustManager trustManager =
+        new TslTrustManager(List.of(), Optional.empty(), mock(Logger.class));
+
+    List<String> fingerprints = Stream.of(caCertificate, serverCertificate)
+        .map(certificate -> CertificateFingerprint.of(certificate).toHex()).sorted().toList();
+    MessageDigest digest = MessageDigest.getInstance("SHA-256");
+    fingerprints.forEach(fingerprint -> digest.update(HexFormat.of().parseHex(fingerprint)));
+    String expected = HexFormat.of().formatHex(digest.digest());
+
+    trustManager.update(List.of(caCertificate, serverCertificate));
+    assertEquals(expected, trustManager.version());
+
+    trustManager.update(List.of(serverCertificate, caCertificate));
+    assertEquals(expected, trustManager.version());
+  }
+
+  @Test
+  void startsWithTheCertificatesOfThePublishedSnapshot(@TempDir Path snapshotsPath)
+      throws Exception {
+    Path snapshot = Files.createDirectory(snapshotsPath.resolve("snapshot-1"));
+    try (InputStream inputStream = TslTrustManagerTest.class.getClassLoader()
+        .getResourceAsStream("certs/ca_cert.pem")) {
+      Files.copy(inputStream, snapshot.resolve("ca" + TrustSnapshotStore.PEM_EXTENSION));
+    }
+    Files.writeString(snapshot.resolve("broken" + TrustSnapshotStore.PEM_EXTENSION), "broken");
+    Files.createSymbolicLink(snapshotsPath.resolve(TrustSnapshotStore.CURRENT),
+        snapshot.getFileName());
+
+    TslTrustManager trustManager = new TslTrustManager(List.of(),
+        Optional.of(snapshotsPath.toString()), mock(Logger.class));
+
+    assertDoesNotThrow(() -> trustManager.checkClientTrusted(
+        new X509Certificate[] {caCertificate}, "RSA"));
+    assertEquals(1, trustManager.getTrustStore().size());
+  }
+
+  @Test
+  void startsWithoutTheTslWhenNoSnapshotIsPublished(@TempDir Path snapshotsPath)
+      throws Exception {
+    TslTrustManager trustManager = new TslTrustManager(List.of(),
+        Optional.of(snapshotsPath.toString()), mock(Logger.class));
+
+    assertThrows(CertificateException.class, () -> trustManager.checkClientTrusted(
+        new X509Certificate[] {caCertificate}, "RSA"));
+    assertEquals(0, trustManager.getTrustStore().size());
+  }
+}
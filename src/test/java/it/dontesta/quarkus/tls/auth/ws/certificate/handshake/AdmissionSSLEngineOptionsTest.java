@@ -0,0 +1,293 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.certificate.handshake;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.ssl.ClientAuth;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.util.SimpleTrustManagerFactory;
+import io.quarkus.test.junit.QuarkusTest;
+import io.vertx.core.net.JdkSSLEngineOptions;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Set;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.ManagerFactoryParameters;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLHandshakeException;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509ExtendedTrustManager;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs real TLSv1.3 handshakes, with client authentication, between a JDK client engine and a
+ * server engine of the SSL context created by the {@link AdmissionSSLEngineOptions}, as Vert.x
+ * does for the HTTPS server.
+ */
+@QuarkusTest
+class AdmissionSSLEngineOptionsTest {
+
+  @ConfigProperty(name = "quarkus.tls.https.key-store.p12.path")
+  String serverKeyStorePath;
+
+  @ConfigProperty(name = "quarkus.tls.https.key-store.p12.password")
+  String serverKeyStorePassword;
+
+  @ConfigProperty(name = "client.tls.https.key-store-client-1.p12.path")
+  String clientKeyStorePath;
+
+  @ConfigProperty(name = "client.tls.https.key-store-client-1.p12.password")
+  String clientKeyStorePassword;
+
+  private SimpleMeterRegistry meterRegistry;
+
+  private HandshakeAdmissionController controller;
+
+  private SslContext serverContext;
+
+  private SSLContext clientContext;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    meterRegistry = new SimpleMeterRegistry();
+    controller = new HandshakeAdmissionController(new TestConfig(true, 1, 1, true, 8,
+        Duration.ZERO, Duration.ofSeconds(10), Duration.ofSeconds(1)), 20, meterRegistry,
+        mock(Logger.class));
+
+    // The same calls as the SSL helper of Vert.x for a server
+    serverContext = new AdmissionSSLEngineOptions(new JdkSSLEngineOptions(), controller)
+        .sslContextFactory()
+        .useAlpn(false)
+        .forClient(false)
+        .enabledCipherSuites(Set.of())
+        .clientAuth(ClientAuth.REQUIRE)
+        .keyMananagerFactory(keyManagerFactory(serverKeyStorePath, serverKeyStorePassword))
+        .trustManagerFactory(new TrustingTrustManagerFactory())
+        .create();
+
+    clientContext = SSLContext.getInstance("TLSv1.3");
+    clientContext.init(
+        keyManagerFactory(clientKeyStorePath, clientKeyStorePassword).getKeyManagers(),
+        new TrustManager[] {new TrustingTrustManager()}, null);
+  }
+
+  @Test
+  void releasesTheAdmissionOfACompletedHandshake() throws Exception {
+    handshake(clientEngine(), serverEngine());
+    handshake(clientEngine("other.localhost"), serverEngine());
+
+    assertEquals(0, controller.inFlight());
+    assertEquals(2.0, count("admitted"));
+    assertEquals(0.0, count("global-limit"));
+  }
+
+  @Test
+  void shedsTheFullHandshakesBeyondTheLimit() throws Exception {
+    SSLEngine pendingServer = serverEngine();
+    startHandshake(clientEngine(), pendingServer);
+    assertEquals(1, controller.inFlight());
+
+    assertThrows(SSLHandshakeException.class,
+        () -> handshake(clientEngine("other.localhost"), serverEngine()));
+    assertEquals(1.0, count("global-limit"));
+    assertEquals(1, controller.inFlight());
+
+    // The handshake left pending is reclaimed once its connection is closed, as Netty does
+    pendingServer.closeOutbound();
+    assertThrows(SSLException.class, pendingServer::closeInbound);
+    controller.reclaimAdmissions();
+    assertEquals(0, controller.inFlight());
+  }
+
+  @Test
+  void admitsTheResumedHandshakesBeyondTheLimit() throws Exception {
+    handshake(clientEngine(), serverEngine());
+
+    startHandshake(clientEngine("other.localhost"), serverEngine());
+    assertEquals(1, controller.inFlight());
+
+    // A full handshake would be shed, the resumed one doesn't select the certificate
+    handshake(clientEngine(), serverEngine());
+
+    assertEquals(2.0, count("admitted"));
+    assertEquals(0.0, count("global-limit"));
+    assertEquals(1, controller.inFlight());
+  }
+
+  private SSLEngine serverEngine() {
+    SSLEngine engine = serverContext.newEngine(ByteBufAllocator.DEFAULT);
+    engine.setEnabledProtocols(new String[] {"TLSv1.3"});
+    return engine;
+  }
+
+  private SSLEngine clientEngine() {
+    return clientEngine("localhost");
+  }
+
+  private SSLEngine clientEngine(String host) {
+    SSLEngine engine = clientContext.createSSLEngine(host, 8443);
+    engine.setUseClientMode(true);
+    return engine;
+  }
+
+  private double count(String outcome) {
+    return meterRegistry.get(HandshakeAdmissionController.ADMISSION_METRIC_NAME)
+        .tag("outcome", outcome).counter().count();
+  }
+
+  private static KeyManagerFactory keyManagerFactory(String path, String password)
+      throws Exception {
+    KeyStore keyStore = KeyStore.getInstance("PKCS12");
+
+    try (InputStream inputStream =
+             Thread.currentThread().getContextClassLoader().getResourceAsStream(path)) {
+      keyStore.load(inputStream, password.toCharArray());
+    }
+
+    KeyManagerFactory factory =
+        KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+    factory.init(keyStore, password.toCharArray());
+    return factory;
+  }
+
+  /**
+   * Sends the ClientHello to the server, which selects its certificate and stops there.
+   */
+  private static void startHandshake(SSLEngine client, SSLEngine server) throws Exception {
+    ByteBuffer clientToServer = ByteBuffer.allocate(BUFFER_SIZE);
+    client.beginHandshake();
+    server.beginHandshake();
+
+    step(client, ByteBuffer.allocate(0), clientToServer);
+    step(server, clientToServer, ByteBuffer.allocate(BUFFER_SIZE));
+  }
+
+  /**
+   * Exchanges the records of the two engines until neither has anything left to send, including
+   * the session tickets sent by the server after the handshake.
+   */
+  private static void handshake(SSLEngine client, SSLEngine server) throws Exception {
+    ByteBuffer clientToServer = ByteBuffer.allocate(BUFFER_SIZE);
+    ByteBuffer serverToClient = ByteBuffer.allocate(BUFFER_SIZE);
+    client.beginHandshake();
+    server.beginHandshake();
+
+    boolean progress = true;
+    while (progress) {
+      progress = step(client, serverToClient, clientToServer);
+      progress |= step(server, clientToServer, serverToClient);
+    }
+
+    assertEquals(HandshakeStatus.NOT_HANDSHAKING, client.getHandshakeStatus());
+    assertEquals(HandshakeStatus.NOT_HANDSHAKING, server.getHandshakeStatus());
+  }
+
+  private static boolean step(SSLEngine engine, ByteBuffer in, ByteBuffer out) throws Exception {
+    boolean progress = false;
+    ByteBuffer application = ByteBuffer.allocate(BUFFER_SIZE);
+
+    in.flip();
+    while (in.hasRemaining()) {
+      int consumed = engine.unwrap(in, application).bytesConsumed();
+      runDelegatedTasks(engine);
+      if (consumed == 0) {
+        break;
+      }
+      progress = true;
+    }
+    in.compact();
+
+    while (engine.wrap(ByteBuffer.allocate(0), out).bytesProduced() > 0) {
+      runDelegatedTasks(engine);
+      progress = true;
+    }
+    runDelegatedTasks(engine);
+
+    return progress;
+  }
+
+  private static void runDelegatedTasks(SSLEngine engine) {
+    Runnable task;
+    while ((task = engine.getDelegatedTask()) != null) {
+      task.run();
+    }
+  }
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  /**
+   * Trusts any certificate, as the certificates of the tests may be expired; the verification
+   * itself is not under test, only its release of the admission.
+   */
+  private static final class TrustingTrustManager extends X509ExtendedTrustManager {
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket) {
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket) {
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType) {
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType) {
+    }
+
+    @Override
+    public X509Certificate[] getAcceptedIssuers() {
+      return new X509Certificate[0];
+    }
+  }
+
+  private static final class TrustingTrustManagerFactory extends SimpleTrustManagerFactory {
+
+    @Override
+    protected void engineInit(KeyStore keyStore) {
+    }
+
+    @Override
+    protected void engineInit(ManagerFactoryParameters parameters) {
+    }
+
+    @Override
+    protected TrustManager[] engineGetTrustManagers() {
+      return new TrustManager[] {new TrustingTrustManager()};
+    }
+  }
+
+  private record TestConfig(boolean enabled, int maxInFlight, int maxInFlightPerEventLoop,
+                            boolean workerOffload, int maxQueued, Duration queueTimeout,
+                            Duration handshakeTimeout, Duration reclaimPeriod)
+      implements HandshakeAdmissionConfig {
+  }
+}
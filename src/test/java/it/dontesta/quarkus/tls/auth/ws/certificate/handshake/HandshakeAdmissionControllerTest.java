@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.certificate.handshake;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.quarkus.test.junit.QuarkusTest;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.X509ExtendedKeyManager;
+import javax.net.ssl.X509ExtendedTrustManager;
+import org.jboss.logging.Logger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+class HandshakeAdmissionControllerTest {
+
+  private SimpleMeterRegistry meterRegistry;
+
+  private Logger log;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    log = mock(Logger.class);
+  }
+
+  @Test
+  void shedsTheHandshakesBeyondTheGlobalLimit() {
+    HandshakeAdmissionController controller = controller(true, 2, Duration.ZERO);
+    SSLEngine first = handshaking();
+    SSLEngine second = handshaking();
+    SSLEngine third = handshaking();
+
+    assertTrue(controller.admit(first));
+    assertTrue(controller.admit(second));
+    assertFalse(controller.admit(third));
+    assertEquals(2, controller.inFlight());
+
+    controller.release(first);
+    assertTrue(controller.admit(handshaking()));
+
+    assertEquals(3.0, count("admitted"));
+    assertEquals(1.0, count("global-limit"));
+    assertEquals(2.0, meterRegistry.get(HandshakeAdmissionController.IN_FLIGHT_METRIC_NAME)
+        .gauge().value());
+  }
+
+  @Test
+  void repeatsTheDecisionForTheSameEngine() {
+    HandshakeAdmissionController controller = controller(true, 1, Duration.ZERO);
+    SSLEngine admitted = handshaking();
+    SSLEngine shed = handshaking();
+
+    assertTrue(controller.admit(admitted));
+    assertTrue(controller.admit(admitted));
+    assertFalse(controller.admit(shed));
+    assertFalse(controller.admit(shed));
+    assertEquals(1, controller.inFlight());
+
+    controller.release(admitted);
+    controller.release(admitted);
+    controller.release(shed);
+    assertEquals(0, controller.inFlight());
+    assertEquals(1.0, count("admitted"));
+    assertEquals(1.0, count("global-limit"));
+  }
+
+  @Test
+  void queuesTheHandshakesUntilAnAdmissionIsReleased() throws Exception {
+    HandshakeAdmissionController controller = controller(true, 1, Duration.ofSeconds(10));
+    SSLEngine first = handshaking();
+    SSLEngine second = handshaking();
+    assertTrue(controller.admit(first));
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<Boolean> queued = executor.submit(() -> controller.admit(second));
+
+      Thread.sleep(100);
+      assertFalse(queued.isDone());
+
+      controller.release(first);
+      assertTrue(queued.get(5, TimeUnit.SECONDS));
+      assertEquals(1, controller.inFlight());
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(2L, meterRegistry.get(HandshakeAdmissionController.QUEUE_TIME_METRIC_NAME)
+        .timer().count());
+  }
+
+  @Test
+  void shedsTheHandshakesQueuedBeyondTheQueueTimeout() {
+    HandshakeAdmissionController controller = controller(true, 1, Duration.ofMillis(50));
+
+    assertTrue(controller.admit(handshaking()));
+    assertFalse(controller.admit(handshaking()));
+    assertEquals(1.0, count("queue-timeout"));
+  }
+
+  @Test
+  void capsTheQueueToHalfOfTheWorkerPool() throws Exception {
+    HandshakeAdmissionController controller = controller(true, 1, Duration.ofSeconds(10), 2);
+    SSLEngine first = handshaking();
+    assertTrue(controller.admit(first));
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<Boolean> queued = executor.submit(() -> controller.admit(handshaking()));
+
+      Thread.sleep(100);
+      assertFalse(queued.isDone());
+
+      // The only place of the queue is taken, this handshake is shed without waiting
+      assertFalse(controller.admit(handshaking()));
+      assertEquals(1.0, count("queue-full"));
+
+      controller.release(first);
+      assertTrue(queued.get(5, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdownNow();
+    }
+
+    // The configured max-queued (8) was reduced by the cap
+    verify(log).warn(contains("capped to 1 instead of max-queued 8"));
+  }
+
+  @Test
+  void doesNotWarnWhenTheQueueIsNotCapped() {
+    controller(true, 1, Duration.ofSeconds(10), 20);
+
+    verify(log, never()).warn(any());
+  }
+
+  @Test
+  void reclaimsTheAdmissionsOfTheHandshakesNotReleased() {
+    HandshakeAdmissionController controller = controller(true, 2, Duration.ZERO);
+    SSLEngine closed = handshaking();
+    SSLEngine finished = handshaking();
+    SSLEngine running = handshaking();
+
+    assertTrue(controller.admit(closed));
+    assertTrue(controller.admit(finished));
+    assertFalse(controller.admit(running));
+
+    when(closed.isOutboundDone()).thenReturn(true);
+    when(finished.getHandshakeStatus()).thenReturn(HandshakeStatus.NOT_HANDSHAKING);
+    controller.reclaimAdmissions();
+    assertEquals(0, controller.inFlight());
+
+    // The handshake still running keeps its decision, the released admissions are taken again
+    assertFalse(controller.admit(running));
+    assertTrue(controller.admit(handshaking()));
+    controller.release(closed);
+    assertEquals(1, controller.inFlight());
+  }
+
+  @Test
+  void admitsEveryHandshakeWhenDisabled() {
+    HandshakeAdmissionController controller = controller(false, 1, Duration.ZERO);
+
+    for (int i = 0; i < 10; i++) {
+      assertTrue(controller.admit(handshaking()));
+    }
+    assertEquals(0, controller.inFlight());
+    assertEquals(0.0, count("admitted"));
+  }
+
+  @Test
+  void runsTheKeyManagerOfTheHandshakesAdmittedOnly() {
+    HandshakeAdmissionController controller = controller(true, 1, Duration.ZERO);
+    X509ExtendedKeyManager delegate = mock(X509ExtendedKeyManager.class);
+    when(delegate.chooseEngineServerAlias(eq("RSA"), any(), any())).thenReturn("server");
+    AdmissionKeyManager keyManager = new AdmissionKeyManager(delegate, controller);
+
+    assertEquals("server", keyManager.chooseEngineServerAlias("RSA", null, handshaking()));
+    assertNull(keyManager.chooseEngineServerAlias("RSA", null, handshaking()));
+
+    // No certificate matching the handshake, no admission taken
+    assertNull(keyManager.chooseEngineServerAlias("EC", null, handshaking()));
+    assertEquals(1.0, count("global-limit"));
+  }
+
+  @Test
+  void releasesTheAdmissionOnceTheClientCertificateIsVerified() throws Exception {
+    HandshakeAdmissionController controller = controller(true, 1, Duration.ZERO);
+    SSLEngine engine = handshaking();
+    HandshakeReleasingTrustManager trustManager = new HandshakeReleasingTrustManager(
+        mock(X509ExtendedTrustManager.class), controller);
+
+    assertTrue(controller.admit(engine));
+    trustManager.checkClientTrusted(null, "RSA", engine);
+    assertEquals(0, controller.inFlight());
+    assertTrue(controller.admit(handshaking()));
+  }
+
+  private HandshakeAdmissionController controller(boolean enabled, int maxInFlight,
+                                                  Duration queueTimeout) {
+    return controller(enabled, maxInFlight, queueTimeout, 20);
+  }
+
+  private HandshakeAdmissionController controller(boolean enabled, int maxInFlight,
+                                                  Duration queueTimeout, int workerPoolSize) {
+    return new HandshakeAdmissionController(new TestConfig(enabled, maxInFlight, 1, true, 8,
+        queueTimeout, Duration.ofSeconds(10), Duration.ofSeconds(1)), workerPoolSize,
+        meterRegistry, log);
+  }
+
+  private double count(String outcome) {
+    return meterRegistry.get(HandshakeAdmissionController.ADMISSION_METRIC_NAME)
+        .tag("outcome", outcome).counter().count();
+  }
+
+  private static SSLEngine handshaking() {
+    SSLEngine engine = mock(SSLEngine.class);
+    when(engine.getHandshakeStatus()).thenReturn(HandshakeStatus.NEED_TASK);
+    return engine;
+  }
+
+  private record TestConfig(boolean enabled, int maxInFlight, int maxInFlightPerEventLoop,
+                            boolean workerOffload, int maxQueued, Duration queueTimeout,
+                            Duration handshakeTimeout, Duration reclaimPeriod)
+      implements HandshakeAdmissionConfig {
+  }
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.certificate.ocsp;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.tls.TlsConfigurationRegistry;
+import it.dontesta.quarkus.tls.auth.ws.certificate.etsi.gov.TslTrustManager;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.security.auth.x500.X500Principal;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1GeneralizedTime;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.DERBitString;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.ocsp.BasicOCSPResponse;
+import org.bouncycastle.asn1.ocsp.CertID;
+import org.bouncycastle.asn1.ocsp.CertStatus;
+import org.bouncycastle.asn1.ocsp.OCSPObjectIdentifiers;
+import org.bouncycastle.asn1.ocsp.OCSPResponse;
+import org.bouncycastle.asn1.ocsp.OCSPResponseStatus;
+import org.bouncycastle.asn1.ocsp.ResponderID;
+import org.bouncycastle.asn1.ocsp.ResponseBytes;
+import org.bouncycastle.asn1.ocsp.ResponseData;
+import org.bouncycastle.asn1.ocsp.RevokedInfo;
+import org.bouncycastle.asn1.ocsp.SingleResponse;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.jboss.logging.Logger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+class OcspStaplingManagerTest {
+
+  static final X500Principal ISSUER = new X500Principal("CN=Test CA,O=Dontesta,C=IT");
+
+  private static KeyPair issuerKeys;
+
+  private static KeyPair otherKeys;
+
+  private HttpServer responder;
+
+  private AtomicReference<byte[]> responseBody;
+
+  private AtomicInteger requests;
+
+  private Path cacheFile;
+
+  private X509Certificate issuer;
+
+  private X509Certificate certificate;
+
+  private CertID certId;
+
+  private MeterRegistry meterRegistry;
+
+  private final List<OcspStaplingManager> managers = new ArrayList<>();
+
+  @BeforeAll
+  static void generateKeys() throws GeneralSecurityException {
+    issuerKeys = keyPair();
+    otherKeys = keyPair();
+  }
+
+  @BeforeEach
+  void setUp() throws Exception {
+    requests = new AtomicInteger();
+    responseBody = new AtomicReference<>();
+    responder = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    responder.createContext("/ocsp", exchange -> {
+      requests.incrementAndGet();
+      exchange.getRequestBody().readAllBytes();
+
+      byte[] body = responseBody.get();
+      if (body == null) {
+        exchange.sendResponseHeaders(503, -1);
+        exchange.close();
+        return;
+      }
+
+      exchange.getResponseHeaders().add("Content-Type", "application/ocsp-response");
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream output = exchange.getResponseBody()) {
+        output.write(body);
+      }
+    });
+    responder.start();
+
+    cacheFile = Files.createTempDirectory("ocsp-stapling-test").resolve("server_cert.ocsp");
+    issuer = mock(X509Certificate.class);
+    when(issuer.getSubjectX500Principal()).thenReturn(ISSUER);
+    when(issuer.getPublicKey()).thenReturn(issuerKeys.getPublic());
+    certificate = mock(X509Certificate.class);
+    when(certificate.getSubjectX500Principal())
+        .thenReturn(new X500Principal("CN=rd.quarkus.dontesta.it"));
+    when(certificate.getIssuerX500Principal()).thenReturn(ISSUER);
+    when(certificate.getSerialNumber()).thenReturn(BigInteger.valueOf(4242));
+    certId = OcspResponses.certId(certificate, issuer);
+    meterRegistry = new SimpleMeterRegistry();
+  }
+
+  @AfterEach
+  void tearDown() {
+    managers.forEach(OcspStaplingManager::close);
+    responder.stop(0);
+  }
+
+  @Test
+  void fetchedResponseIsStapledAndCached() throws Exception {
+    byte[] response = signedResponse(issuerKeys.getPrivate(), certId, good(), Duration.ofHours(1));
+    responseBody.set(response);
+    OcspStaplingManager manager = startedManager();
+
+    manager.refreshIfDue();
+
+    assertArrayEquals(response, manager.currentResponse().orElseThrow().encoded());
+    assertArrayEquals(response, Files.readAllBytes(cacheFile));
+    assertEquals(1, refreshCount("refreshed"));
+  }
+
+  @Test
+  void responseIsNotFetchedAgainBeforeHalfOfItsValidity() throws Exception {
+    responseBody.set(signedResponse(issuerKeys.getPrivate(), certId, good(),
+        Duration.ofHours(1)));
+    OcspStaplingManager manager = startedManager();
+
+    manager.refreshIfDue();
+    manager.refreshIfDue();
+
+    assertEquals(1, requests.get());
+  }
+
+  @Test
+  void cachedResponseIsLoadedAtStartup() throws Exception {
+    byte[] response = signedResponse(issuerKeys.getPrivate(), certId, good(), Duration.ofHours(1));
+    responseBody.set(response);
+    startedManager().refreshIfDue();
+    responseBody.set(null);
+
+    OcspStaplingManager restarted = startedManager();
+    restarted.refreshIfDue();
+
+    assertArrayEquals(response, restarted.currentResponse().orElseThrow().encoded());
+    assertEquals(1, requests.get());
+  }
+
+  @Test
+  void failedRefreshKeepsTheCurrentResponse() throws Exception {
+    // A response past half of its validity is refreshed at every check
+    Instant now = Instant.now();
+    byte[] aged = signedResponse(issuerKeys.getPrivate(), certId, good(),
+        now.minus(50, ChronoUnit.MINUTES), now.plus(10, ChronoUnit.MINUTES));
+    Files.write(cacheFile, aged);
+    OcspStaplingManager manager = startedManager();
+
+    manager.refreshIfDue();
+
+    assertEquals(1, requests.get());
+    assertEquals(1, refreshCount("failed"));
+    assertArrayEquals(aged, manager.currentResponse().orElseThrow().encoded());
+  }
+
+  @Test
+  void revokedResponseIsNotStapled() throws Exception {
+    responseBody.set(signedResponse(issuerKeys.getPrivate(), certId,
+        new CertStatus(new RevokedInfo(new ASN1GeneralizedTime(new Date()),
+            CRLReason.lookup(CRLReason.keyCompromise))), Duration.ofHours(1)));
+    OcspStaplingManager manager = startedManager();
+
+    manager.refreshIfDue();
+
+    assertFalse(manager.currentResponse().isPresent());
+    assertFalse(Files.exists(cacheFile));
+    assertEquals(1, refreshCount("failed"));
+  }
+
+  @Test
+  void responseSignedByAnotherKeyIsNotStapled() throws Exception {
+    responseBody.set(signedResponse(otherKeys.getPrivate(), certId, good(),
+        Duration.ofHours(1)));
+    OcspStaplingManager manager = startedManager();
+
+    manager.refreshIfDue();
+
+    assertFalse(manager.currentResponse().isPresent());
+    assertEquals(1, refreshCount("failed"));
+  }
+
+  @Test
+  void responseOfAnotherCertificateIsNotStapled() throws Exception {
+    X509Certificate otherCertificate = mock(X509Certificate.class);
+    when(otherCertificate.getSerialNumber()).thenReturn(BigInteger.valueOf(4343));
+    responseBody.set(signedResponse(issuerKeys.getPrivate(),
+        OcspResponses.certId(otherCertificate, issuer), good(), Duration.ofHours(1)));
+    OcspStaplingManager manager = startedManager();
+
+    manager.refreshIfDue();
+
+    assertFalse(manager.currentResponse().isPresent());
+    assertEquals(1, refreshCount("failed"));
+  }
+
+  private OcspStaplingManager startedManager() throws Exception {
+    OcspStaplingManager manager = new OcspStaplingManager(
+        new TestStaplingConfig(Optional.of("http://localhost:%d/ocsp".formatted(
+            responder.getAddress().getPort())), cacheFile.toString()),
+        mock(TlsConfigurationRegistry.class), mock(TslTrustManager.class),
+        meterRegistry, mock(Logger.class));
+    managers.add(manager);
+    manager.start(certificate, issuer);
+    return manager;
+  }
+
+  private double refreshCount(String outcome) {
+    return meterRegistry.get(OcspStaplingManager.REFRESH_METRIC_NAME)
+        .tag("outcome", outcome).counter().count();
+  }
+
+  private static CertStatus good() {
+    return new CertStatus();
+  }
+
+  static KeyPair keyPair() throws GeneralSecurityException {
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(2048);
+    return generator.generateKeyPair();
+  }
+
+  static byte[] signedResponse(PrivateKey signerKey, CertID certId, CertStatus certStatus,
+                               Duration validity) throws Exception {
+    Instant now = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+    return signedResponse(signerKey, certId, certStatus, now, now.plus(validity));
+  }
+
+  /**
+   * Builds a basic OCSP response of the {@link #ISSUER} with BouncyCastle, signed with the JCA.
+   */
+  static byte[] signedResponse(PrivateKey signerKey, CertID certId, CertStatus certStatus,
+                               Instant thisUpdate, Instant nextUpdate) throws Exception {
+    SingleResponse singleResponse = new SingleResponse(certId, certStatus,
+        new ASN1GeneralizedTime(Date.from(thisUpdate)),
+        new ASN1GeneralizedTime(Date.from(nextUpdate)), (Extensions) null);
+    ResponseData responseData = new ResponseData(
+        new ResponderID(X500Name.getInstance(ASN1Primitive.fromByteArray(ISSUER.getEncoded()))),
+        new ASN1GeneralizedTime(Date.from(thisUpdate)), new DERSequence(singleResponse),
+        (Extensions) null);
+
+    Signature signature = Signature.getInstance("SHA256withRSA");
+    signature.initSign(signerKey);
+    signature.update(responseData.getEncoded(ASN1Encoding.DER));
+
+    BasicOCSPResponse basicResponse = new BasicOCSPResponse(responseData,
+        new AlgorithmIdentifier(PKCSObjectIdentifiers.sha256WithRSAEncryption),
+        new DERBitString(signature.sign()), null);
+
+    return new OCSPResponse(new OCSPResponseStatus(OCSPResponseStatus.SUCCESSFUL),
+        new ResponseBytes(OCSPObjectIdentifiers.id_pkix_ocsp_basic,
+            new DEROctetString(basicResponse.getEncoded(ASN1Encoding.DER))))
+        .getEncoded(ASN1Encoding.DER);
+  }
+
+  private record TestStaplingConfig(Optional<String> responderUrl, String cacheFile)
+      implements OcspStaplingConfig {
+
+    @Override
+    public boolean enabled() {
+      return true;
+    }
+
+    @Override
+    public Duration checkPeriod() {
+      return Duration.ofMinutes(1);
+    }
+
+    @Override
+    public Duration maxAge() {
+      return Duration.ofHours(1);
+    }
+
+    @Override
+    public Duration httpTimeout() {
+      return Duration.ofSeconds(5);
+    }
+  }
+}
@@ -0,0 +1,390 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.certificate.ocsp;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.ssl.ClientAuth;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.util.SimpleTrustManagerFactory;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.tls.TlsConfigurationRegistry;
+import io.vertx.core.net.SSLEngineOptions;
+import it.dontesta.quarkus.tls.auth.ws.certificate.etsi.gov.TslTrustManager;
+import it.dontesta.quarkus.tls.auth.ws.certificate.handshake.AdmissionOpenSSLEngineOptions;
+import it.dontesta.quarkus.tls.auth.ws.certificate.handshake.HandshakeAdmissionConfig;
+import it.dontesta.quarkus.tls.auth.ws.certificate.handshake.HandshakeAdmissionController;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import javax.net.ssl.ExtendedSSLSession;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.ManagerFactoryParameters;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509ExtendedTrustManager;
+import javax.security.auth.x500.X500Principal;
+import org.bouncycastle.asn1.ocsp.CertStatus;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs real TLSv1.3 handshakes between a JDK client engine, sending the status_request
+ * extension, and a server engine of the SSL context created by the
+ * {@link OcspStaplingSSLEngineOptions}, as Vert.x does for the HTTPS server.
+ */
+@QuarkusTest
+class OcspStaplingSSLEngineOptionsTest {
+
+  @ConfigProperty(name = "quarkus.tls.https.key-store.p12.path")
+  String serverKeyStorePath;
+
+  @ConfigProperty(name = "quarkus.tls.https.key-store.p12.password")
+  String serverKeyStorePassword;
+
+  @ConfigProperty(name = "client.tls.https.key-store-client-1.p12.path")
+  String clientKeyStorePath;
+
+  @ConfigProperty(name = "client.tls.https.key-store-client-1.p12.password")
+  String clientKeyStorePassword;
+
+  private Path cacheFile;
+
+  private OcspStaplingManager manager;
+
+  private SSLContext clientContext;
+
+  private List<byte[]> clientStatusResponses;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    assumeTrue(OpenSsl.isOcspSupported(), "OpenSSL with OCSP stapling is not available");
+
+    cacheFile = Files.createTempDirectory("ocsp-stapling-test").resolve("server_cert.ocsp");
+    manager = new OcspStaplingManager(new TestStaplingConfig(cacheFile.toString()),
+        mock(TlsConfigurationRegistry.class), mock(TslTrustManager.class),
+        new SimpleMeterRegistry(), mock(Logger.class));
+
+    clientStatusResponses = new ArrayList<>();
+    clientContext = SSLContext.getInstance("TLSv1.3");
+    clientContext.init(
+        keyManagerFactory(clientKeyStorePath, clientKeyStorePassword).getKeyManagers(),
+        new TrustManager[] {new StatusRecordingTrustManager()}, null);
+  }
+
+  @AfterEach
+  void tearDown() {
+    if (manager != null) {
+      manager.close();
+    }
+  }
+
+  @Test
+  void currentResponseIsStapledToTheHandshake() throws Exception {
+    byte[] response = startWithCachedResponse();
+    SslContext serverContext = serverContext(new OcspStaplingSSLEngineOptions(manager),
+        ClientAuth.NONE);
+
+    handshake(clientEngine(), serverEngine(serverContext));
+
+    assertEquals(1, clientStatusResponses.size());
+    assertArrayEquals(response, clientStatusResponses.getFirst());
+  }
+
+  @Test
+  void nothingIsStapledWithoutAValidResponse() throws Exception {
+    SslContext serverContext = serverContext(new OcspStaplingSSLEngineOptions(manager),
+        ClientAuth.NONE);
+
+    handshake(clientEngine(), serverEngine(serverContext));
+
+    assertTrue(clientStatusResponses.isEmpty());
+  }
+
+  @Test
+  void responseIsStapledThroughTheAdmissionOfTheHandshakes() throws Exception {
+    byte[] response = startWithCachedResponse();
+    HandshakeAdmissionController controller = new HandshakeAdmissionController(
+        new TestAdmissionConfig(), 20, new SimpleMeterRegistry(), mock(Logger.class));
+    SslContext serverContext = serverContext(new AdmissionOpenSSLEngineOptions(
+        new OcspStaplingSSLEngineOptions(manager), controller), ClientAuth.REQUIRE);
+
+    handshake(clientEngine(), serverEngine(serverContext));
+
+    assertArrayEquals(response, clientStatusResponses.getFirst());
+    // Released by the verification of the client certificate
+    assertEquals(0, controller.inFlight());
+  }
+
+  /**
+   * Starts the manager with a valid response in its cache file.
+   */
+  private byte[] startWithCachedResponse() throws Exception {
+    KeyPair issuerKeys = OcspStaplingManagerTest.keyPair();
+    X509Certificate issuer = mock(X509Certificate.class);
+    when(issuer.getSubjectX500Principal()).thenReturn(OcspStaplingManagerTest.ISSUER);
+    when(issuer.getPublicKey()).thenReturn(issuerKeys.getPublic());
+    X509Certificate certificate = mock(X509Certificate.class);
+    when(certificate.getSubjectX500Principal())
+        .thenReturn(new X500Principal("CN=rd.quarkus.dontesta.it"));
+    when(certificate.getIssuerX500Principal()).thenReturn(OcspStaplingManagerTest.ISSUER);
+    when(certificate.getSerialNumber()).thenReturn(BigInteger.valueOf(4242));
+
+    byte[] response = OcspStaplingManagerTest.signedResponse(issuerKeys.getPrivate(),
+        OcspResponses.certId(certificate, issuer), new CertStatus(), Duration.ofHours(1));
+    Files.write(cacheFile, response);
+    manager.start(certificate, issuer);
+    return response;
+  }
+
+  /**
+   * Creates the server context with the same calls as the SSL helper of Vert.x for a server.
+   */
+  private SslContext serverContext(SSLEngineOptions engineOptions, ClientAuth clientAuth)
+      throws Exception {
+    return engineOptions.sslContextFactory()
+        .useAlpn(false)
+        .forClient(false)
+        .enabledCipherSuites(Set.of())
+        .clientAuth(clientAuth)
+        .keyMananagerFactory(keyManagerFactory(serverKeyStorePath, serverKeyStorePassword))
+        .trustManagerFactory(new TrustingTrustManagerFactory())
+        .create();
+  }
+
+  private static SSLEngine serverEngine(SslContext serverContext) {
+    SSLEngine engine = serverContext.newEngine(ByteBufAllocator.DEFAULT);
+    engine.setEnabledProtocols(new String[] {"TLSv1.3"});
+    return engine;
+  }
+
+  private SSLEngine clientEngine() {
+    SSLEngine engine = clientContext.createSSLEngine("localhost", 8443);
+    engine.setUseClientMode(true);
+    return engine;
+  }
+
+  private static KeyManagerFactory keyManagerFactory(String path, String password)
+      throws Exception {
+    KeyStore keyStore = KeyStore.getInstance("PKCS12");
+
+    try (InputStream inputStream =
+             Thread.currentThread().getContextClassLoader().getResourceAsStream(path)) {
+      keyStore.load(inputStream, password.toCharArray());
+    }
+
+    KeyManagerFactory factory =
+        KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+    factory.init(keyStore, password.toCharArray());
+    return factory;
+  }
+
+  /**
+   * Exchanges the records of the two engines until neither has anything left to send.
+   */
+  private static void handshake(SSLEngine client, SSLEngine server) throws Exception {
+    ByteBuffer clientToServer = ByteBuffer.allocate(BUFFER_SIZE);
+    ByteBuffer serverToClient = ByteBuffer.allocate(BUFFER_SIZE);
+    client.beginHandshake();
+    server.beginHandshake();
+
+    boolean progress = true;
+    while (progress) {
+      progress = step(client, serverToClient, clientToServer);
+      progress |= step(server, clientToServer, serverToClient);
+    }
+
+    assertEquals(HandshakeStatus.NOT_HANDSHAKING, client.getHandshakeStatus());
+    assertEquals(HandshakeStatus.NOT_HANDSHAKING, server.getHandshakeStatus());
+  }
+
+  private static boolean step(SSLEngine engine, ByteBuffer in, ByteBuffer out) throws Exception {
+    boolean progress = false;
+    ByteBuffer application = ByteBuffer.allocate(BUFFER_SIZE);
+
+    in.flip();
+    while (in.hasRemaining()) {
+      int consumed = engine.unwrap(in, application).bytesConsumed();
+      runDelegatedTasks(engine);
+      if (consumed == 0) {
+        break;
+      }
+      progress = true;
+    }
+    in.compact();
+
+    while (engine.wrap(ByteBuffer.allocate(0), out).bytesProduced() > 0) {
+      runDelegatedTasks(engine);
+      progress = true;
+    }
+    runDelegatedTasks(engine);
+
+    return progress;
+  }
+
+  private static void runDelegatedTasks(SSLEngine engine) {
+    Runnable task;
+    while ((task = engine.getDelegatedTask()) != null) {
+      task.run();
+    }
+  }
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  /**
+   * Trusts any certificate, as the certificates of the tests may be expired, and records the
+   * OCSP responses stapled to the handshake.
+   */
+  private final class StatusRecordingTrustManager extends X509ExtendedTrustManager {
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {
+      if (engine.getHandshakeSession() instanceof ExtendedSSLSession session) {
+        clientStatusResponses.addAll(session.getStatusResponses());
+      }
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket) {
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket) {
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType) {
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType) {
+    }
+
+    @Override
+    public X509Certificate[] getAcceptedIssuers() {
+      return new X509Certificate[0];
+    }
+  }
+
+  /**
+   * The factory of the server trust managers, trusting any client certificate as the
+   * certificates of the tests may be expired.
+   */
+  private final class TrustingTrustManagerFactory extends SimpleTrustManagerFactory {
+
+    @Override
+    protected void engineInit(KeyStore keyStore) {
+    }
+
+    @Override
+    protected void engineInit(ManagerFactoryParameters parameters) {
+    }
+
+    @Override
+    protected TrustManager[] engineGetTrustManagers() {
+      return new TrustManager[] {new StatusRecordingTrustManager()};
+    }
+  }
+
+  private record TestStaplingConfig(String cacheFile) implements OcspStaplingConfig {
+
+    @Override
+    public boolean enabled() {
+      return true;
+    }
+
+    @Override
+    public Optional<String> responderUrl() {
+      return Optional.of("http://localhost/ocsp");
+    }
+
+    @Override
+    public Duration checkPeriod() {
+      return Duration.ofMinutes(1);
+    }
+
+    @Override
+    public Duration maxAge() {
+      return Duration.ofHours(1);
+    }
+
+    @Override
+    public Duration httpTimeout() {
+      return Duration.ofSeconds(5);
+    }
+  }
+
+  private record TestAdmissionConfig() implements HandshakeAdmissionConfig {
+
+    @Override
+    public boolean enabled() {
+      return true;
+    }
+
+    @Override
+    public int maxInFlight() {
+      return 1;
+    }
+
+    @Override
+    public int maxInFlightPerEventLoop() {
+      return 1;
+    }
+
+    @Override
+    public boolean workerOffload() {
+      return false;
+    }
+
+    @Override
+    public int maxQueued() {
+      return 0;
+    }
+
+    @Override
+    public Duration queueTimeout() {
+      return Duration.ZERO;
+    }
+
+    @Override
+    public Duration handshakeTimeout() {
+      return Duration.ofSeconds(10);
+    }
+
+    @Override
+    public Duration reclaimPeriod() {
+      return Duration.ofSeconds(1);
+    }
+  }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.certificate.revocation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.quarkus.test.junit.QuarkusTest;
+import java.io.ByteArrayInputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.cert.CRLException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import javax.security.auth.x500.X500Principal;
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.DERBitString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.TBSCertList;
+import org.bouncycastle.asn1.x509.Time;
+import org.bouncycastle.asn1.x509.V2TBSCertListGenerator;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+class CrlParserTest {
+
+  static final X500Principal ISSUER = new X500Principal("CN=Test CA,O=Dontesta,C=IT");
+
+  private static KeyPair rsaKeys;
+
+  private static KeyPair ecKeys;
+
+  @BeforeAll
+  static void generateKeys() throws GeneralSecurityException {
+    rsaKeys = keyPair("RSA");
+    ecKeys = keyPair("EC");
+  }
+
+  @Test
+  void indexesTheSerialNumbersAsTheJdkCrl() throws Exception {
+    Random random = new Random(42);
+    Set<BigInteger> distinctSerials = new LinkedHashSet<>();
+    for (int i = 0; i < 2000; i++) {
+      // Serial numbers of 1 to 20 octets, most of them above 63 bits like the random ones
+      distinctSerials.add(new BigInteger(1 + random.nextInt(160), random));
+    }
+    distinctSerials.add(BigInteger.ZERO);
+    distinctSerials.add(BigInteger.valueOf(Long.MAX_VALUE));
+    distinctSerials.add(BigInteger.ONE.shiftLeft(63));
+    List<BigInteger> serials = List.copyOf(distinctSerials);
+
+    byte[] crl = signedCrl(rsaKeys.getPrivate(), "SHA256withRSA", "1.2.840.113549.1.1.11",
+        serials, null);
+    X509CRL jdkCrl = (X509CRL) CertificateFactory.getInstance("X.509")
+        .generateCRL(new ByteArrayInputStream(crl));
+
+    RevokedSerials revoked = parse(crl, rsaKeys.getPublic());
+
+    assertEquals(ISSUER, revoked.issuer());
+    assertEquals(jdkCrl.getThisUpdate().toInstant(), revoked.thisUpdate());
+    assertEquals(jdkCrl.getNextUpdate().toInstant(), revoked.nextUpdate());
+    assertEquals(jdkCrl.getRevokedCertificates().size(), revoked.size());
+
+    for (int i = 0; i < 5000; i++) {
+      BigInteger serial = i % 2 == 0 ? serials.get(random.nextInt(serials.size()))
+          : new BigInteger(1 + random.nextInt(160), random);
+      assertEquals(jdkCrl.getRevokedCertificate(serial) != null, revoked.contains(serial),
+          serial.toString(16));
+    }
+  }
+
+  @Test
+  void parsesPemAndEcdsaCrls() throws Exception {
+    byte[] crl = signedCrl(ecKeys.getPrivate(), "SHA384withECDSA", "1.2.840.10045.4.3.3",
+        List.of(BigInteger.TEN, BigInteger.TWO), null);
+    String pem = "-----BEGIN X509 CRL-----\n"
+        + Base64.getMimeEncoder(64, "\n".getBytes(StandardCharsets.US_ASCII)).encodeToString(crl)
+        + "\n-----END X509 CRL-----\n";
+
+    RevokedSerials revoked = parse(pem.getBytes(StandardCharsets.US_ASCII),
+        rsaKeys.getPublic(), ecKeys.getPublic());
+
+    assertTrue(revoked.contains(BigInteger.TEN));
+    assertTrue(revoked.contains(BigInteger.TWO));
+    assertFalse(revoked.contains(BigInteger.ONE));
+  }
+
+  @Test
+  void parsesAnEmptyCrl() throws Exception {
+    RevokedSerials revoked = parse(signedCrl(rsaKeys.getPrivate(), "SHA256withRSA",
+        "1.2.840.113549.1.1.11", List.of(), null), rsaKeys.getPublic());
+
+    assertEquals(0, revoked.size());
+    assertFalse(revoked.contains(BigInteger.ONE));
+  }
+
+  @Test
+  void rejectsTheCrlsNotSignedByTheIssuer() throws Exception {
+    byte[] crl = signedCrl(rsaKeys.getPrivate(), "SHA256withRSA", "1.2.840.113549.1.1.11",
+        List.of(BigInteger.TEN), null);
+
+    assertThrows(CRLException.class, () -> parse(crl, keyPair("RSA").getPublic()));
+    assertThrows(CRLException.class, () -> parse(crl));
+
+    // An entry tampered with
+    byte[] tampered = crl.clone();
+    for (int i = 0; i < tampered.length - 2; i++) {
+      if (tampered[i] == 0x02 && tampered[i + 1] == 0x01 && tampered[i + 2] == 0x0A) {
+        tampered[i + 2] = 0x0B;
+      }
+    }
+    assertThrows(CRLException.class, () -> parse(tampered, rsaKeys.getPublic()));
+  }
+
+  @Test
+  void rejectsTheDeltaCrlsAndTheMalformedCrls() throws Exception {
+    Extensions deltaCrl = new Extensions(new Extension(Extension.deltaCRLIndicator, true,
+        new ASN1Integer(1).getEncoded()));
+    byte[] crl = signedCrl(rsaKeys.getPrivate(), "SHA256withRSA", "1.2.840.113549.1.1.11",
+        List.of(BigInteger.TEN), deltaCrl);
+
+    assertThrows(CRLException.class, () -> parse(crl, rsaKeys.getPublic()));
+    assertThrows(Exception.class,
+        () -> parse(new byte[] {0x30, 0x03, 0x02, 0x01}, rsaKeys.getPublic()));
+  }
+
+  @Test
+  void keepsTheSerialNumbersOfTheBuilder() {
+    RevokedSerials.Builder builder = new RevokedSerials.Builder(ISSUER, Instant.EPOCH, null);
+    for (int i = 0; i < 1000; i++) {
+      byte[] serial = BigInteger.valueOf(i * 7L).toByteArray();
+      builder.add(serial, serial.length);
+    }
+    // Not minimally encoded
+    builder.add(new byte[] {0x00, 0x00, 0x05}, 3);
+    byte[] negative = BigInteger.valueOf(-3).toByteArray();
+    builder.add(negative, negative.length);
+
+    RevokedSerials revoked = builder.build();
+
+    assertNull(revoked.nextUpdate());
+    assertEquals(1002, revoked.size());
+    assertTrue(revoked.contains(BigInteger.valueOf(6993)));
+    assertFalse(revoked.contains(BigInteger.valueOf(6994)));
+    assertTrue(revoked.contains(BigInteger.valueOf(5)));
+    assertTrue(revoked.contains(BigInteger.valueOf(-3)));
+  }
+
+  static RevokedSerials parse(byte[] crl, PublicKey... issuerKeys) throws Exception {
+    return CrlParser.parse(new ByteArrayInputStream(crl),
+        issuer -> issuer.equals(ISSUER) ? List.of(issuerKeys) : List.of());
+  }
+
+  static X509Certificate issuerCertificate(PublicKey publicKey) {
+    X509Certificate certificate = mock(X509Certificate.class);
+    when(certificate.getSubjectX500Principal()).thenReturn(ISSUER);
+    when(certificate.getPublicKey()).thenReturn(publicKey);
+    return certificate;
+  }
+
+  static KeyPair keyPair(String algorithm) throws GeneralSecurityException {
+    KeyPairGenerator generator = KeyPairGenerator.getInstance(algorithm);
+    generator.initialize("RSA".equals(algorithm) ? 2048 : 256);
+    return generator.generateKeyPair();
+  }
+
+  /**
+   * Builds a CRL of the {@link #ISSUER} with BouncyCastle, signed with the JCA.
+   */
+  static byte[] signedCrl(PrivateKey issuerKey, String algorithm, String algorithmOid,
+                          List<BigInteger> serials, Extensions extensions) throws Exception {
+    AlgorithmIdentifier algorithmIdentifier =
+        new AlgorithmIdentifier(new ASN1ObjectIdentifier(algorithmOid));
+    Instant now = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+    V2TBSCertListGenerator generator = new V2TBSCertListGenerator();
+
+    generator.setSignature(algorithmIdentifier);
+    generator.setIssuer(X500Name.getInstance(ASN1Primitive.fromByteArray(ISSUER.getEncoded())));
+    generator.setThisUpdate(new Time(Date.from(now)));
+    generator.setNextUpdate(new Time(Date.from(now.plus(7, ChronoUnit.DAYS))));
+    for (BigInteger serial : serials) {
+      generator.addCRLEntry(new ASN1Integer(serial), new Time(Date.from(now)),
+          CRLReason.keyCompromise);
+    }
+    if (extensions != null) {
+      generator.setExtensions(extensions);
+    }
+
+    TBSCertList tbsCertList = generator.generateTBSCertList();
+    Signature signature = Signature.getInstance(algorithm);
+    signature.initSign(issuerKey);
+    signature.update(tbsCertList.getEncoded(ASN1Encoding.DER));
+
+    ASN1EncodableVector certificateList = new ASN1EncodableVector();
+    certificateList.add(tbsCertList);
+    certificateList.add(algorithmIdentifier);
+    certificateList.add(new DERBitString(signature.sign()));
+
+    return new DERSequence(certificateList).getEncoded(ASN1Encoding.DER);
+  }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.certificate.revocation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.quarkus.test.junit.QuarkusTest;
+import it.dontesta.quarkus.tls.auth.ws.certificate.etsi.gov.TslTrustManager;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
+import javax.security.auth.x500.X500Principal;
+import org.jboss.logging.Logger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+class CrlUpdaterTest {
+
+  private Path crlPath;
+
+  private KeyPair issuerKeys;
+
+  private TslTrustManager trustManager;
+
+  private CrlRevocationIndex revocationIndex;
+
+  private SimpleMeterRegistry meterRegistry;
+
+  private CrlUpdater updater;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    crlPath = Files.createTempDirectory("client-cert-crl-test");
+    issuerKeys = CrlParserTest.keyPair("RSA");
+    trustManager = mock(TslTrustManager.class);
+    X509Certificate issuerCertificate = CrlParserTest.issuerCertificate(issuerKeys.getPublic());
+    when(trustManager.getAcceptedIssuers()).thenReturn(new X509Certificate[] {issuerCertificate});
+
+    revocationIndex = new CrlRevocationIndex();
+    meterRegistry = new SimpleMeterRegistry();
+    updater = new CrlUpdater(revocationIndex, trustManager, Optional.of(crlPath.toString()),
+        Optional.empty(), Duration.ofSeconds(5), meterRegistry, mock(Logger.class));
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    updater.close();
+
+    try (Stream<Path> files = Files.list(crlPath)) {
+      for (Path file : files.toList()) {
+        Files.delete(file);
+      }
+    }
+    Files.delete(crlPath);
+  }
+
+  @Test
+  void revokesTheSerialNumbersOfTheCrlsOfTheDirectory() throws Exception {
+    writeCrl("ca.crl", BigInteger.valueOf(1001), BigInteger.valueOf(1003));
+
+    updater.updateRevocationLists();
+
+    assertTrue(revocationIndex.isRevoked(certificate(CrlParserTest.ISSUER, 1001)));
+    assertTrue(revocationIndex.isRevoked(certificate(CrlParserTest.ISSUER, 1003)));
+    assertFalse(revocationIndex.isRevoked(certificate(CrlParserTest.ISSUER, 1002)));
+    assertFalse(revocationIndex.isRevoked(certificate(new X500Principal("CN=Other CA"), 1001)));
+    assertEquals(1.0, loads("loaded"));
+  }
+
+  @Test
+  void keepsTheLastCrlLoadedWhenTheRefreshFails() throws Exception {
+    writeCrl("ca.crl", BigInteger.valueOf(1001));
+    updater.updateRevocationLists();
+
+    Files.write(crlPath.resolve("ca.crl"), new byte[] {0x30, 0x03, 0x02, 0x01, 0x01});
+    updater.updateRevocationLists();
+
+    assertTrue(revocationIndex.isRevoked(certificate(CrlParserTest.ISSUER, 1001)));
+    assertEquals(1.0, loads("failed"));
+
+    // A CRL signed by another key is not trusted
+    Files.write(crlPath.resolve("forged.crl"), CrlParserTest.signedCrl(
+        CrlParserTest.keyPair("RSA").getPrivate(), "SHA256withRSA", "1.2.840.113549.1.1.11",
+        List.of(BigInteger.valueOf(1002)), null));
+    updater.updateRevocationLists();
+
+    assertFalse(revocationIndex.isRevoked(certificate(CrlParserTest.ISSUER, 1002)));
+    assertEquals(3.0, loads("failed"));
+  }
+
+  @Test
+  void forgetsTheCrlsRemovedFromTheDirectory() throws Exception {
+    writeCrl("ca.crl", BigInteger.valueOf(1001));
+    updater.updateRevocationLists();
+
+    Files.delete(crlPath.resolve("ca.crl"));
+    updater.updateRevocationLists();
+
+    assertFalse(revocationIndex.isRevoked(certificate(CrlParserTest.ISSUER, 1001)));
+    assertTrue(revocationIndex.crls().isEmpty());
+  }
+
+  @Test
+  void stalledDownloadFailsAtTheTimeout() throws Exception {
+    CountDownLatch released = new CountDownLatch(1);
+    HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/ca.crl", exchange -> {
+      // Send the headers and a part of the body, then stall
+      exchange.sendResponseHeaders(200, 1024);
+      try (OutputStream output = exchange.getResponseBody()) {
+        output.write(new byte[] {0x30, (byte) 0x82, 0x03, (byte) 0xfc});
+        output.flush();
+        released.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    server.start();
+    writeCrl("ca.crl", BigInteger.valueOf(1001));
+
+    CrlUpdater urlUpdater = new CrlUpdater(revocationIndex, trustManager,
+        Optional.of(crlPath.toString()),
+        Optional.of(List.of("http://localhost:%d/ca.crl".formatted(server.getAddress().getPort()))),
+        Duration.ofMillis(500), meterRegistry, mock(Logger.class));
+
+    try {
+      assertTimeoutPreemptively(Duration.ofSeconds(10), urlUpdater::updateRevocationLists);
+    } finally {
+      released.countDown();
+      urlUpdater.close();
+      server.stop(0);
+    }
+
+    assertTrue(revocationIndex.isRevoked(certificate(CrlParserTest.ISSUER, 1001)));
+    assertEquals(1.0, loads("loaded"));
+    assertEquals(1.0, loads("failed"));
+  }
+
+  private void writeCrl(String fileName, BigInteger... serials) throws Exception {
+    Files.write(crlPath.resolve(fileName), CrlParserTest.signedCrl(issuerKeys.getPrivate(),
+        "SHA256withRSA", "1.2.840.113549.1.1.11", List.of(serials), null));
+  }
+
+  private double loads(String outcome) {
+    return meterRegistry.get(CrlUpdater.REFRESH_METRIC_NAME).tag("outcome", outcome).counter()
+        .count();
+  }
+
+  private static X509Certificate certificate(X500Principal issuer, long serialNumber) {
+    X509Certificate certificate = mock(X509Certificate.class);
+    when(certificate.getIssuerX500Principal()).thenReturn(issuer);
+    when(certificate.getSerialNumber()).thenReturn(BigInteger.valueOf(serialNumber));
+    return certificate;
+  }
+}
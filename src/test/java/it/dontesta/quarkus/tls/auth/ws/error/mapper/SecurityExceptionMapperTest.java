@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.error.mapper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import io.quarkus.test.junit.QuarkusTest;
+import it.dontesta.quarkus.tls.auth.ws.exception.CertificateAuthenticationException;
+import it.dontesta.quarkus.tls.auth.ws.exception.CertificateAuthenticationException.Reason;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import org.jboss.logging.Logger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+class SecurityExceptionMapperTest {
+
+  private Logger log;
+
+  private SecurityExceptionMapper exceptionMapper;
+
+  @BeforeEach
+  void setUp() {
+    log = mock(Logger.class);
+    exceptionMapper = new SecurityExceptionMapper(
+        new AuthenticationFailureLogger(2, Duration.ofHours(1), log));
+  }
+
+  @Test
+  void rejectedCertificatesHavePreSerializedBodies() {
+    Response response = exceptionMapper.toResponse(
+        new CertificateAuthenticationException(Reason.PATTERN_MISMATCH, "role", "Role=r0le"));
+    Response otherResponse = exceptionMapper.toResponse(
+        new CertificateAuthenticationException(Reason.PATTERN_MISMATCH, "role", "Role=0"));
+
+    assertEquals(401, response.getStatus());
+    assertEquals(MediaType.APPLICATION_JSON_TYPE, response.getMediaType());
+    assertEquals("{\"statusCode\":401,\"message\":\"%s\"}".formatted(
+            Reason.PATTERN_MISMATCH.message()),
+        new String((byte[]) response.getEntity(), StandardCharsets.UTF_8));
+    assertSame(response.getEntity(), otherResponse.getEntity());
+  }
+
+  @Test
+  void otherSecurityExceptionsKeepTheirMessage() {
+    Response response = exceptionMapper.toResponse(new SecurityException("Denied"));
+
+    assertEquals(401, response.getStatus());
+    assertEquals(new SecurityErrorResponse(401, "Denied"), response.getEntity());
+  }
+
+  @Test
+  void rejectionsAreLoggedUpToTheLimitOfTheirReason() {
+    for (int i = 0; i < 5; i++) {
+      exceptionMapper.toResponse(
+          new CertificateAuthenticationException(Reason.CERTIFICATE_MISSING));
+      exceptionMapper.toResponse(
+          new CertificateAuthenticationException(Reason.EXTENSION_MISSING, "oid", "name"));
+    }
+
+    verify(log, times(4)).warn(anyString());
+  }
+
+  @Test
+  void suppressedRejectionsAreReportedInTheNextInterval() throws InterruptedException {
+    AuthenticationFailureLogger failureLogger =
+        new AuthenticationFailureLogger(1, Duration.ofMillis(100), log);
+
+    for (int i = 0; i < 3; i++) {
+      failureLogger.log(new CertificateAuthenticationException(Reason.CERTIFICATE_MISSING));
+    }
+    Thread.sleep(150);
+    failureLogger.log(new CertificateAuthenticationException(Reason.CERTIFICATE_MISSING));
+
+    verify(log).warn(
+        "Rejected client certificate (CERTIFICATE_MISSING): Client certificate not found.");
+    verify(log).warn("Rejected client certificate (CERTIFICATE_MISSING): Client certificate "
+        + "not found. (2 similar failures not logged)");
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.exception;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import io.quarkus.test.junit.QuarkusTest;
+import it.dontesta.quarkus.tls.auth.ws.exception.CertificateAuthenticationException.Reason;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+class CertificateAuthenticationExceptionTest {
+
+  @Test
+  void testExceptionWithReason() {
+    CertificateAuthenticationException exception = new CertificateAuthenticationException(
+        Reason.EXTENSION_MISSING, "1.3.6.1.4.1.99999.2", "deviceId");
+
+    assertInstanceOf(SecurityException.class, exception);
+    assertEquals(Reason.EXTENSION_MISSING, exception.getReason());
+    assertEquals("Invalid certificate OID { 1.3.6.1.4.1.99999.2 } missing for deviceId.",
+        exception.getMessage());
+    assertEquals(0, exception.getStackTrace().length);
+  }
+
+  @Test
+  void testExceptionWithReasonAndCause() {
+    Throwable cause = new CertificateConversionException("Bad encoding");
+    CertificateAuthenticationException exception = new CertificateAuthenticationException(
+        Reason.EXTENSION_NOT_DECODABLE, cause, cause.getMessage());
+
+    assertEquals("Bad encoding", exception.getMessage());
+    assertSame(cause, exception.getCause());
+    assertEquals(0, exception.getStackTrace().length);
+  }
+
+  @Test
+  void testCopyDoesNotShareTheSuppressedExceptions() {
+    Throwable cause = new CertificateConversionException("Bad encoding");
+    CertificateAuthenticationException rejection = new CertificateAuthenticationException(
+        Reason.EXTENSION_NOT_DECODABLE, cause, cause.getMessage());
+    rejection.addSuppressed(new IllegalStateException("request"));
+
+    CertificateAuthenticationException copy = new CertificateAuthenticationException(rejection);
+
+    assertEquals(Reason.EXTENSION_NOT_DECODABLE, copy.getReason());
+    assertEquals("Bad encoding", copy.getMessage());
+    assertSame(cause, copy.getCause());
+    assertEquals(0, copy.getStackTrace().length);
+    assertEquals(0, copy.getSuppressed().length);
+  }
+}
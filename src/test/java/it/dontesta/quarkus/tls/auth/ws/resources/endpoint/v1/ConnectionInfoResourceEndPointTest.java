@@ -9,17 +9,25 @@ import static io.restassured.RestAssured.given;
 import static io.restassured.config.SSLConfig.sslConfig;
 import static org.hamcrest.CoreMatchers.anything;
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import io.quarkus.test.junit.QuarkusTest;
 import io.restassured.RestAssured;
 import io.restassured.config.SSLConfig;
 import io.restassured.http.ContentType;
+import it.dontesta.quarkus.tls.auth.ws.security.identity.CertificateExtensions;
 import it.dontesta.quarkus.tls.auth.ws.utils.CertificateUtil;
 import java.security.KeyStore;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import org.eclipse.microprofile.config.ConfigProvider;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.junit.jupiter.api.BeforeAll;
@@ -90,10 +98,103 @@ class ConnectionInfoResourceEndPointTest {
         .body("isSecure", equalTo(true))
         .body("httpProtocol", equalTo("HTTP_1_1"))
         .body("userAgent", anything())
+        .body("httpRequestHeaders.Accept", equalTo("*/*"))
         .body("protocol", equalTo("TLSv1.3"))
+        .body("server.certPEM", notNullValue())
         .body("client.certCommonName", equalTo("D54FF113-A0C4-4A67-A6DE-B8DEE24A5095"));
   }
 
+  @Test
+  void testGetConnectionInfoCertificatesAreStableAcrossRequests() {
+    SSLConfig testSSLConfig = globalSSLConfig.with().keyStore(keyStorePath2, keyStorePassword2);
+
+    Map<String, Object> first = getConnectionInfo(testSSLConfig);
+    Map<String, Object> second = getConnectionInfo(testSSLConfig);
+
+    assertEquals(first.get("server"), second.get("server"));
+    assertEquals(first.get("client"), second.get("client"));
+    assertEquals("C708ECA6-C8F9-464C-A745-3A37FF670DFC",
+        ((Map<?, ?>) second.get("client")).get("certCommonName"));
+  }
+
+  @Test
+  void testGetConnectionInfoWithFields() {
+    SSLConfig testSSLConfig = globalSSLConfig.with().keyStore(keyStorePath2, keyStorePassword2);
+
+    Map<String, Object> connectionInfo = given()
+        .config(RestAssured.config().sslConfig(testSSLConfig))
+        .queryParam("fields", "protocol,cipherSuite,client.certCommonName")
+        .get("/api/v1/connection-info/info")
+        .then()
+        .statusCode(200)
+        .contentType(ContentType.JSON)
+        .extract().jsonPath().getMap("$");
+
+    assertEquals(Set.of("protocol", "cipherSuite", "client"), connectionInfo.keySet());
+    assertEquals("TLSv1.3", connectionInfo.get("protocol"));
+    assertEquals(Map.of("certCommonName", "C708ECA6-C8F9-464C-A745-3A37FF670DFC"),
+        connectionInfo.get("client"));
+  }
+
+  @Test
+  void testGetConnectionInfoWithFieldsIsConditional() {
+    SSLConfig testSSLConfig = globalSSLConfig.with().keyStore(keyStorePath2, keyStorePassword2);
+
+    String entityTag = given()
+        .config(RestAssured.config().sslConfig(testSSLConfig))
+        .queryParam("fields", "protocol,client.certCommonName")
+        .get("/api/v1/connection-info/info")
+        .then()
+        .statusCode(200)
+        .header("ETag", notNullValue())
+        .extract().header("ETag");
+
+    given()
+        .config(RestAssured.config().sslConfig(testSSLConfig))
+        .queryParam("fields", "protocol,client.certCommonName")
+        .header("If-None-Match", entityTag)
+        .get("/api/v1/connection-info/info")
+        .then()
+        .statusCode(304);
+
+    // The request headers change with every request, so the whole response has no tag
+    given()
+        .config(RestAssured.config().sslConfig(testSSLConfig))
+        .get("/api/v1/connection-info/info")
+        .then()
+        .statusCode(200)
+        .header("ETag", nullValue());
+  }
+
+  @Test
+  void testGetUserIdentityIsConditional() {
+    SSLConfig testSSLConfig = globalSSLConfig.with().keyStore(keyStorePath2, keyStorePassword2);
+
+    String entityTag = given()
+        .config(RestAssured.config().sslConfig(testSSLConfig))
+        .when().get("/api/v1/connection-info/user-identity")
+        .then()
+        .statusCode(200)
+        .header("ETag", notNullValue())
+        .extract().header("ETag");
+
+    given()
+        .config(RestAssured.config().sslConfig(testSSLConfig))
+        .header("If-None-Match", entityTag)
+        .when().get("/api/v1/connection-info/user-identity")
+        .then()
+        .statusCode(304)
+        .header("ETag", equalTo(entityTag));
+
+    given()
+        .config(RestAssured.config().sslConfig(testSSLConfig))
+        .header("If-None-Match", "\"0123456789abcdef\"")
+        .when().get("/api/v1/connection-info/user-identity")
+        .then()
+        .statusCode(200)
+        .header("ETag", equalTo(entityTag));
+  }
+
   @Test
   void testGetUserIdentity() {
     SSLConfig testSSLConfig = globalSSLConfig.with().keyStore(keyStorePath2, keyStorePassword2);
@@ -113,6 +214,21 @@ class ConnectionInfoResourceEndPointTest {
         .body("userCN", equalTo("C708ECA6-C8F9-464C-A745-3A37FF670DFC"));
   }
 
+  @Test
+  void testGetUserIdentityHidesCertificateExtensions() {
+    SSLConfig testSSLConfig = globalSSLConfig.with().keyStore(keyStorePath2, keyStorePassword2);
+
+    Map<String, Object> attributes = given()
+        .config(RestAssured.config().sslConfig(testSSLConfig))
+        .when().get("/api/v1/connection-info/user-identity")
+        .then()
+        .statusCode(200)
+        .extract().jsonPath().getMap("attributes");
+
+    assertTrue(attributes.containsKey("deviceId"));
+    assertFalse(attributes.containsKey(CertificateExtensions.IDENTITY_ATTRIBUTE));
+  }
+
   @Test
   void testGetUserIdentityHttpStatus403() {
     SSLConfig testSSLConfig = globalSSLConfig.with().keyStore(keyStorePath3, keyStorePassword3);
@@ -123,4 +239,13 @@ class ConnectionInfoResourceEndPointTest {
         .then()
         .statusCode(403);
   }
-}
\ No newline at end of file
+
+  private static Map<String, Object> getConnectionInfo(SSLConfig sslConfig) {
+    return given()
+        .config(RestAssured.config().sslConfig(sslConfig))
+        .get("/api/v1/connection-info/info")
+        .then()
+        .statusCode(200)
+        .extract().jsonPath().getMap("$");
+  }
+}
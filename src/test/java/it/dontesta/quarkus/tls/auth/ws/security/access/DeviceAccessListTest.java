@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.security.access;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.quarkus.test.junit.QuarkusTest;
+import it.dontesta.quarkus.tls.auth.ws.utils.CertificateFingerprint;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+class DeviceAccessListTest {
+
+  @Test
+  void containsOnlyTheKeysOfTheList() {
+    Random random = new Random(42);
+    List<DeviceAccessKey> keys = new ArrayList<>();
+    DeviceAccessList.Builder builder = new DeviceAccessList.Builder();
+
+    for (int i = 0; i < 10_000; i++) {
+      DeviceAccessKey key = new DeviceAccessKey(random.nextLong(), random.nextLong());
+      keys.add(key);
+      builder.add(key);
+    }
+    DeviceAccessList list = builder.build();
+
+    assertEquals(keys.size(), list.size());
+    for (DeviceAccessKey key : keys) {
+      assertTrue(list.contains(key));
+    }
+    for (int i = 0; i < 10_000; i++) {
+      assertFalse(list.contains(random.nextLong(), random.nextLong()));
+    }
+  }
+
+  @Test
+  void distinguishesTheKeysSharingTheHighBits() {
+    DeviceAccessList list = new DeviceAccessList.Builder()
+        .add(new DeviceAccessKey(7, 3))
+        .add(new DeviceAccessKey(7, 1))
+        .add(new DeviceAccessKey(7, 5))
+        .build();
+
+    assertTrue(list.contains(7, 1));
+    assertTrue(list.contains(7, 3));
+    assertTrue(list.contains(7, 5));
+    assertFalse(list.contains(7, 2));
+    assertFalse(list.contains(8, 1));
+  }
+
+  @Test
+  void dropsTheDuplicatedKeys() {
+    DeviceAccessKey key = DeviceAccessKey.ofDeviceId("device");
+
+    DeviceAccessList list = new DeviceAccessList.Builder().add(key).add(key).add(key).build();
+
+    assertEquals(1, list.size());
+    assertTrue(list.contains(key));
+  }
+
+  @Test
+  void emptyListContainsNothing() {
+    assertEquals(0, DeviceAccessList.EMPTY.size());
+    assertFalse(DeviceAccessList.EMPTY.contains(DeviceAccessKey.ofDeviceId("device")));
+  }
+
+  @Test
+  void keysOfADeviceIdAndOfAFingerprintDiffer() {
+    CertificateFingerprint fingerprint = CertificateFingerprint.of("device".getBytes());
+
+    assertNotEquals(DeviceAccessKey.ofDeviceId("device"),
+        DeviceAccessKey.ofCertificate(fingerprint));
+    assertEquals(DeviceAccessKey.ofDeviceId("device"), DeviceAccessKey.ofDeviceId("device"));
+  }
+
+  @Test
+  void parsesTheEntriesOfAListFile() throws IOException {
+    CertificateFingerprint fingerprint = CertificateFingerprint.of(new byte[] {1, 2, 3});
+    String colonHex = fingerprint.toHex().replaceAll("(..)(?!$)", "$1:");
+
+    DeviceAccessList list = parse("""
+        # Lost devices
+
+        deviceId:MTcyNjYxNTQ0MzM5MCMzZjYzZmEx
+          fingerprint: %s
+        fingerprint:%s
+        """.formatted(colonHex, fingerprint.toHex()));
+
+    assertEquals(2, list.size());
+    assertTrue(list.contains(DeviceAccessKey.ofDeviceId("MTcyNjYxNTQ0MzM5MCMzZjYzZmEx")));
+    assertTrue(list.contains(DeviceAccessKey.ofCertificate(fingerprint)));
+  }
+
+  @Test
+  void rejectsTheMalformedEntries() {
+    IOException exception = assertThrows(IOException.class,
+        () -> parse("deviceId:device\nserial:1234\n"));
+    assertTrue(exception.getMessage().contains("line 2"));
+
+    assertThrows(IOException.class, () -> parse("deviceId:\n"));
+    assertThrows(IOException.class, () -> parse("fingerprint:0a0b\n"));
+  }
+
+  private static DeviceAccessList parse(String entries) throws IOException {
+    return DeviceAccessListParser.parse(new BufferedReader(new StringReader(entries)));
+  }
+}
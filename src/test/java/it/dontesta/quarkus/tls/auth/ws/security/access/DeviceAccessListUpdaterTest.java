@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.security.access;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.quarkus.test.junit.QuarkusTest;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Optional;
+import org.jboss.logging.Logger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+class DeviceAccessListUpdaterTest {
+
+  private Path listPath;
+
+  private Path denyFile;
+
+  private Path allowFile;
+
+  private DeviceAccessIndex accessIndex;
+
+  private SimpleMeterRegistry meterRegistry;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    listPath = Files.createTempDirectory("client-cert-access-list-test");
+    denyFile = listPath.resolve("deny.txt");
+    allowFile = listPath.resolve("allow.txt");
+    accessIndex = new DeviceAccessIndex();
+    meterRegistry = new SimpleMeterRegistry();
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    Files.deleteIfExists(denyFile);
+    Files.deleteIfExists(allowFile);
+    Files.delete(listPath);
+  }
+
+  @Test
+  void reloadsTheDenyListWhenItsFileChanges() throws IOException {
+    DeviceAccessListUpdater updater = updater(Optional.of(denyFile), Optional.empty());
+    write(denyFile, "deviceId:device-1\n", 1);
+
+    updater.reloadChangedLists();
+    assertTrue(accessIndex.isDenied(keys("device-1")));
+    assertFalse(accessIndex.isDenied(keys("device-2")));
+    assertNull(accessIndex.allow());
+
+    write(denyFile, "deviceId:device-2\n", 2);
+    updater.reloadChangedLists();
+    assertFalse(accessIndex.isDenied(keys("device-1")));
+    assertTrue(accessIndex.isDenied(keys("device-2")));
+    assertEquals(2.0, reloads("loaded"));
+  }
+
+  @Test
+  void keepsTheLastListWhenItsFileIsBroken() throws IOException {
+    DeviceAccessListUpdater updater = updater(Optional.of(denyFile), Optional.empty());
+    write(denyFile, "deviceId:device-1\n", 1);
+    updater.reloadChangedLists();
+
+    write(denyFile, "deviceId:device-2\nnot an entry\n", 2);
+    updater.reloadChangedLists();
+    updater.reloadChangedLists();
+
+    assertTrue(accessIndex.isDenied(keys("device-1")));
+    assertFalse(accessIndex.isDenied(keys("device-2")));
+    assertEquals(1.0, reloads("failed"));
+  }
+
+  @Test
+  void allowListNeverLoadedAllowsNothing() throws IOException {
+    DeviceAccessListUpdater updater = updater(Optional.empty(), Optional.of(allowFile));
+
+    updater.reloadChangedLists();
+    assertFalse(accessIndex.isAllowed(keys("device-1")));
+
+    write(allowFile, "deviceId:device-1\n", 1);
+    updater.reloadChangedLists();
+    assertTrue(accessIndex.isAllowed(keys("device-1")));
+    assertFalse(accessIndex.isAllowed(keys("device-2")));
+  }
+
+  private DeviceAccessListUpdater updater(Optional<Path> deny, Optional<Path> allow) {
+    return new DeviceAccessListUpdater(accessIndex, deny.map(Path::toString),
+        allow.map(Path::toString), meterRegistry, mock(Logger.class));
+  }
+
+  private static DeviceAccessKeys keys(String deviceId) {
+    return new DeviceAccessKeys(null, DeviceAccessKey.ofDeviceId(deviceId));
+  }
+
+  private static void write(Path file, String entries, long version) throws IOException {
+    Files.writeString(file, entries);
+    // The files of a test are written within the resolution of their modification time
+    Files.setLastModifiedTime(file, FileTime.from(Instant.ofEpochSecond(1_700_000_000L + version)));
+  }
+
+  private double reloads(String outcome) {
+    return meterRegistry.counter(DeviceAccessListUpdater.RELOAD_METRIC_NAME, "outcome", outcome)
+        .count();
+  }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.security.identity;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.quarkus.test.junit.QuarkusTest;
+import it.dontesta.quarkus.tls.auth.ws.security.identity.CertificateExtensionsConfig.ExtensionMapping;
+import it.dontesta.quarkus.tls.auth.ws.security.identity.CertificateExtensionsConfig.MappingType;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import org.jboss.logging.Logger;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+class CertificateExtensionMapperTest {
+
+  private static final String OID_ROLES = "1.3.6.1.4.1.99999.1";
+
+  private static final String OID_DEVICE_ID = "1.3.6.1.4.1.99999.2";
+
+  @Test
+  void testMapRoles() {
+    CertificateExtensionMapper mapper = newMapper(Map.of("role", rolesMapping()));
+    X509Certificate mockCertificate = mock(X509Certificate.class);
+    when(mockCertificate.getExtensionValue(OID_ROLES))
+        .thenReturn(new byte[]{0x04, 0x0B, 0x0C, 0x09, 'R', 'o', 'l', 'e', '=', 'r', 'o', 'l', 'e', '1', ',', 'r', 'o', 'l', 'e', '2'});
+
+    CertificateExtensions extensions = mapper.map(mockCertificate);
+
+    assertEquals(Set.of("role"), extensions.roles());
+    assertEquals(Map.of("role", "Role=role"), extensions.values());
+  }
+
+  @Test
+  void testMapRolesNotMatchingPattern() {
+    CertificateExtensionMapper mapper = newMapper(Map.of("role", rolesMapping()));
+    X509Certificate mockCertificate = mock(X509Certificate.class);
+    when(mockCertificate.getExtensionValue(OID_ROLES))
+        .thenReturn(new byte[]{0x04, 0x0B, 0x0C, 0x09, 'R', 'o', 'l', 'e', '=', 'r', '0', 'l', 'e'});
+
+    assertThrows(SecurityException.class, () -> mapper.map(mockCertificate));
+  }
+
+  @Test
+  void testMapAttribute() {
+    CertificateExtensionMapper mapper = newMapper(Map.of("deviceId",
+        new TestMapping(OID_DEVICE_ID, MappingType.ATTRIBUTE, "DeviceId=", null, null, null,
+            false)));
+    X509Certificate mockCertificate = mock(X509Certificate.class);
+    when(mockCertificate.getExtensionValue(OID_DEVICE_ID))
+        .thenReturn(new byte[]{0x04, 0x0B, 0x0C, 0x09, 'D', 'e', 'v', 'i', 'c', 'e', 'I', 'd', '=', '1', '2', '3'});
+
+    CertificateExtensions extensions = mapper.map(mockCertificate);
+
+    assertEquals(Map.of("deviceId", ""), extensions.attributes());
+    assertTrue(extensions.roles().isEmpty());
+  }
+
+  @Test
+  void testMissingRequiredExtension() {
+    CertificateExtensionMapper mapper = newMapper(Map.of("deviceId",
+        new TestMapping(OID_DEVICE_ID, MappingType.ATTRIBUTE, "DeviceId=", null, null, null,
+            true)));
+
+    assertThrows(SecurityException.class, () -> mapper.map(mock(X509Certificate.class)));
+  }
+
+  @Test
+  void testValidatorRejectsValue() {
+    CertificateExtensionMapper mapper = newMapper(Map.of("deviceId",
+        new TestMapping(OID_DEVICE_ID, MappingType.ATTRIBUTE, "DeviceId=", null, null,
+            "reject-all", true)));
+    X509Certificate mockCertificate = mock(X509Certificate.class);
+    when(mockCertificate.getExtensionValue(OID_DEVICE_ID))
+        .thenReturn(new byte[]{0x04, 0x0B, 0x0C, 0x09, 'D', 'e', 'v', 'i', 'c', 'e', 'I', 'd', '='});
+
+    assertThrows(SecurityException.class, () -> mapper.map(mockCertificate));
+  }
+
+  @Test
+  void testUnknownValidator() {
+    Map<String, ExtensionMapping> mappings = Map.of("deviceId",
+        new TestMapping(OID_DEVICE_ID, MappingType.ATTRIBUTE, "DeviceId=", null, null,
+            "unknown", true));
+
+    assertThrows(IllegalStateException.class, () -> newMapper(mappings));
+  }
+
+  @Test
+  void testExtensionSharedByMappingsIsDecodedOnce() {
+    CertificateExtensionMapper mapper = newMapper(Map.of(
+        "role", rolesMapping(),
+        "roleAttribute", new TestMapping(OID_ROLES, MappingType.ATTRIBUTE, "Role=", null,
+            "roles", null, false)));
+    X509Certificate mockCertificate = mock(X509Certificate.class);
+    when(mockCertificate.getExtensionValue(OID_ROLES))
+        .thenReturn(new byte[]{0x04, 0x0B, 0x0C, 0x09, 'R', 'o', 'l', 'e', '=', 'r', 'o', 'l', 'e'});
+
+    CertificateExtensions extensions = mapper.map(mockCertificate);
+
+    assertEquals(Set.of("role"), extensions.roles());
+    assertEquals(Map.of("roles", "role"), extensions.attributes());
+    verify(mockCertificate, times(1)).getExtensionValue(OID_ROLES);
+  }
+
+  @Test
+  void testDecodeDoesNotValidate() {
+    CertificateExtensionMapper mapper = newMapper(Map.of(
+        "role", rolesMapping(),
+        "deviceId", new TestMapping(OID_DEVICE_ID, MappingType.ATTRIBUTE, "DeviceId=", null,
+            null, "reject-all", true)));
+    X509Certificate mockCertificate = mock(X509Certificate.class);
+    when(mockCertificate.getExtensionValue(OID_ROLES))
+        .thenReturn(new byte[]{0x04, 0x0B, 0x0C, 0x09, 'R', 'o', 'l', 'e', '=', 'r', '0', 'l', 'e'});
+
+    assertEquals(Map.of("role", "Role=r0le"), mapper.decode(mockCertificate));
+  }
+
+  private static CertificateExtensionMapper newMapper(Map<String, ExtensionMapping> mappings) {
+    CertificateExtensionValidator rejectAll = new CertificateExtensionValidator() {
+      @Override
+      public String name() {
+        return "reject-all";
+      }
+
+      @Override
+      public boolean isValid(String value) {
+        return false;
+      }
+    };
+
+    return new CertificateExtensionMapper(() -> mappings, List.of(rejectAll), new RoleRegistry(),
+        mock(Logger.class));
+  }
+
+  private static TestMapping rolesMapping() {
+    return new TestMapping(OID_ROLES, MappingType.ROLES, "Role=",
+        "^Role=([A-Za-z]+(?:,[A-Za-z]+)*+)$", null, null, false);
+  }
+
+  private record TestMapping(String oid, MappingType type, String prefixValue,
+                             String patternValue, String attributeNameValue,
+                             String validatorValue, boolean required)
+      implements ExtensionMapping {
+
+    @Override
+    public Optional<String> prefix() {
+      return Optional.ofNullable(prefixValue);
+    }
+
+    @Override
+    public Optional<String> pattern() {
+      return Optional.ofNullable(patternValue);
+    }
+
+    @Override
+    public String separator() {
+      return ",";
+    }
+
+    @Override
+    public Optional<String> attributeName() {
+      return Optional.ofNullable(attributeNameValue);
+    }
+
+    @Override
+    public Optional<String> validator() {
+      return Optional.ofNullable(validatorValue);
+    }
+  }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.security.identity;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.quarkus.security.credential.CertificateCredential;
+import io.quarkus.security.identity.SecurityIdentity;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.vertx.http.runtime.security.HttpSecurityUtils;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.ext.web.RoutingContext;
+import it.dontesta.quarkus.tls.auth.ws.certificate.etsi.gov.TslTrustManager;
+import it.dontesta.quarkus.tls.auth.ws.certificate.revocation.CrlRevocationIndex;
+import it.dontesta.quarkus.tls.auth.ws.exception.CertificateAuthenticationException;
+import it.dontesta.quarkus.tls.auth.ws.exception.CertificateAuthenticationException.Reason;
+import it.dontesta.quarkus.tls.auth.ws.security.access.DeviceAccessIndex;
+import it.dontesta.quarkus.tls.auth.ws.security.access.DeviceAccessKey;
+import it.dontesta.quarkus.tls.auth.ws.security.access.DeviceAccessList;
+import it.dontesta.quarkus.tls.auth.ws.utils.CertificateFingerprint;
+import it.dontesta.quarkus.tls.auth.ws.utils.DeviceIdUtil;
+import jakarta.inject.Inject;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.security.Principal;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import javax.net.ssl.SSLSession;
+import javax.security.auth.x500.X500Principal;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERUTF8String;
+import org.jboss.logging.Logger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+class CertificateExtensionsAugmentorTest {
+
+  private static final String OID_ROLES = "1.3.6.1.4.1.99999.1";
+
+  private static final String OID_DEVICE_ID = "1.3.6.1.4.1.99999.2";
+
+  @Inject
+  CertificateExtensionMapper mapper;
+
+  @Inject
+  DeviceIdUtil deviceIdUtil;
+
+  private CertificateExtensionsAugmentor augmentor;
+
+  private CertificateIdentityCache identityCache;
+
+  private TslTrustManager trustManager;
+
+  private CrlRevocationIndex revocationIndex;
+
+  private DeviceAccessIndex accessIndex;
+
+  @BeforeEach
+  void setUp() {
+    Logger mockLogger = mock(Logger.class);
+    identityCache = new CertificateIdentityCache(100, Duration.ofMinutes(1), 100,
+        Duration.ofMinutes(1), new SimpleMeterRegistry(), mockLogger);
+    trustManager = mock(TslTrustManager.class);
+    when(trustManager.version()).thenReturn("trust-version-1");
+    revocationIndex = mock(CrlRevocationIndex.class);
+    accessIndex = new DeviceAccessIndex();
+    augmentor = new CertificateExtensionsAugmentor(mockLogger, mapper, identityCache,
+        trustManager, revocationIndex, accessIndex, "deviceId", true);
+  }
+
+  @Test
+  void testAugmentWithInvalidDeviceId() {
+    X509Certificate mockCertificate = mock(X509Certificate.class);
+    SecurityIdentity mockIdentity = mockIdentity(mockCertificate);
+
+    when(mockCertificate.getExtensionValue(OID_ROLES))
+        .thenReturn(new byte[]{0x04, 0x0B, 0x0C, 0x09, 'R', 'o', 'l', 'e', '=', 'U', 's', 'e', 'r'});
+    when(mockCertificate.getExtensionValue(OID_DEVICE_ID))
+        .thenReturn(encodeUtf8StringExtension("DeviceId=MTcyNjYxNTQ0MzM5MCMzZjYzZmEx"));
+
+    assertThrows(SecurityException.class, () -> augmentor.augment(mockIdentity, null));
+  }
+
+  @Test
+  void testAugmentWithValidDeviceId() {
+    X509Certificate mockCertificate = mock(X509Certificate.class);
+    SecurityIdentity mockIdentity = mockIdentity(mockCertificate);
+    String deviceId = deviceIdUtil.generateDeviceId();
+
+    when(mockCertificate.getExtensionValue(OID_ROLES))
+        .thenReturn(new byte[]{0x04, 0x0B, 0x0C, 0x09, 'R', 'o', 'l', 'e', '=', 'U', 's', 'e', 'r'});
+    when(mockCertificate.getExtensionValue(OID_DEVICE_ID))
+        .thenReturn(encodeUtf8StringExtension("DeviceId=" + deviceId));
+
+    SecurityIdentity augmentedIdentity =
+        augmentor.augment(mockIdentity, null).await().indefinitely();
+
+    assertEquals(Set.of("User"), augmentedIdentity.getRoles());
+    assertEquals(deviceId, augmentedIdentity.getAttribute("deviceId"));
+    assertInstanceOf(CertificateExtensions.class,
+        augmentedIdentity.getAttribute(CertificateExtensions.IDENTITY_ATTRIBUTE));
+  }
+
+  @Test
+  void testAugmentWithoutDeviceId() {
+    SecurityIdentity mockIdentity = mockIdentity(mock(X509Certificate.class));
+
+    assertThrows(SecurityException.class, () -> augmentor.augment(mockIdentity, null));
+  }
+
+  @Test
+  void testAugmentWithoutCertificate() {
+    SecurityIdentity mockIdentity = mock(SecurityIdentity.class);
+
+    assertThrows(SecurityException.class, () -> augmentor.augment(mockIdentity, null));
+  }
+
+  @Test
+  void testAugmentReusesTheExtensionsOfTheSession() throws CertificateEncodingException {
+    X509Certificate certificate = mockCertificateWithValidDeviceId();
+    Map<String, Object> attributes = requestAttributes(mockSslSession());
+
+    CertificateExtensions extensions = augment(certificate, attributes);
+    for (int i = 0; i < 3; i++) {
+      assertSame(extensions, augment(certificate, attributes));
+    }
+
+    // Only the first request of the session looks up the cache
+    assertEquals(1, identityCache.stats().requestCount());
+  }
+
+  @Test
+  void testAugmentDiscardsTheExtensionsOfTheSessionOnChanges()
+      throws CertificateEncodingException {
+    X509Certificate certificate = mockCertificateWithValidDeviceId();
+    Map<String, Object> attributes = requestAttributes(mockSslSession());
+
+    augment(certificate, attributes);
+    augment(mockCertificateWithValidDeviceId(), attributes);
+    assertEquals(2, identityCache.stats().requestCount());
+
+    when(trustManager.version()).thenReturn("trust-version-2");
+    augment(certificate, attributes);
+    augment(certificate, attributes);
+    assertEquals(3, identityCache.stats().requestCount());
+  }
+
+  @Test
+  void testAugmentWithoutSessionReuse() throws CertificateEncodingException {
+    X509Certificate certificate = mockCertificateWithValidDeviceId();
+    SSLSession sslSession = mockSslSession();
+    augmentor = new CertificateExtensionsAugmentor(mock(Logger.class), mapper, identityCache,
+        trustManager, revocationIndex, accessIndex, "deviceId", false);
+
+    augment(certificate, requestAttributes(sslSession));
+    augment(certificate, requestAttributes(sslSession));
+
+    assertEquals(2, identityCache.stats().requestCount());
+    assertNull(sslSession.getValue(CertificateExtensionsAugmentor.SESSION_KEY));
+  }
+
+  @Test
+  void testAugmentRejectsACertificateRevokedDuringTheSession()
+      throws CertificateEncodingException {
+    X509Certificate certificate = mockCertificateWithValidDeviceId();
+    Map<String, Object> attributes = requestAttributes(mockSslSession());
+
+    when(certificate.getSerialNumber()).thenReturn(BigInteger.valueOf(0xCAFE));
+    when(certificate.getIssuerX500Principal()).thenReturn(new X500Principal("CN=Test CA"));
+    augment(certificate, attributes);
+
+    when(revocationIndex.isRevoked(certificate)).thenReturn(true);
+    CertificateAuthenticationException exception = assertThrows(
+        CertificateAuthenticationException.class, () -> augment(certificate, attributes));
+
+    assertSame(Reason.CERTIFICATE_REVOKED, exception.getReason());
+    assertEquals("Certificate serial number cafe of CN=Test CA revoked by the CRL.",
+        exception.getMessage());
+  }
+
+  @Test
+  void testAugmentRejectsADeviceDeniedDuringTheSession() throws CertificateEncodingException {
+    X509Certificate certificate = mockCertificateWithValidDeviceId();
+    Map<String, Object> attributes = requestAttributes(mockSslSession());
+
+    when(certificate.getSubjectX500Principal()).thenReturn(new X500Principal("CN=Device"));
+    CertificateExtensions extensions = augment(certificate, attributes);
+    String deviceId = extensions.attributes().get("deviceId");
+
+    accessIndex.update(new DeviceAccessList.Builder()
+        .add(DeviceAccessKey.ofDeviceId(deviceId))
+        .build(), null);
+    CertificateAuthenticationException exception = assertThrows(
+        CertificateAuthenticationException.class, () -> augment(certificate, attributes));
+
+    assertSame(Reason.DEVICE_DENIED, exception.getReason());
+    assertEquals("Certificate CN=Device with DeviceId %s is in the deny list.".formatted(deviceId),
+        exception.getMessage());
+
+    accessIndex.update(DeviceAccessList.EMPTY, null);
+    assertSame(extensions, augment(certificate, attributes));
+  }
+
+  @Test
+  void testAugmentAllowsOnlyTheCertificatesOfTheAllowList()
+      throws CertificateEncodingException {
+    X509Certificate allowed = mockCertificateWithValidDeviceId();
+    X509Certificate notAllowed = mockCertificateWithValidDeviceId();
+
+    when(notAllowed.getSubjectX500Principal()).thenReturn(new X500Principal("CN=Device"));
+    accessIndex.update(DeviceAccessList.EMPTY, new DeviceAccessList.Builder()
+        .add(DeviceAccessKey.ofCertificate(CertificateFingerprint.of(allowed)))
+        .build());
+
+    augment(allowed, Map.of());
+    CertificateAuthenticationException exception = assertThrows(
+        CertificateAuthenticationException.class, () -> augment(notAllowed, Map.of()));
+
+    assertSame(Reason.DEVICE_NOT_ALLOWED, exception.getReason());
+  }
+
+  private CertificateExtensions augment(X509Certificate certificate,
+                                        Map<String, Object> attributes) {
+    return augmentor.augment(mockIdentity(certificate), null, attributes).await().indefinitely()
+        .getAttribute(CertificateExtensions.IDENTITY_ATTRIBUTE);
+  }
+
+  private X509Certificate mockCertificateWithValidDeviceId() throws CertificateEncodingException {
+    X509Certificate mockCertificate = mock(X509Certificate.class);
+
+    when(mockCertificate.getEncoded()).thenReturn(new byte[]{(byte) mockCertificate.hashCode()});
+    when(mockCertificate.getExtensionValue(OID_ROLES))
+        .thenReturn(new byte[]{0x04, 0x0B, 0x0C, 0x09, 'R', 'o', 'l', 'e', '=', 'U', 's', 'e', 'r'});
+    when(mockCertificate.getExtensionValue(OID_DEVICE_ID))
+        .thenReturn(encodeUtf8StringExtension("DeviceId=" + deviceIdUtil.generateDeviceId()));
+
+    return mockCertificate;
+  }
+
+  private static Map<String, Object> requestAttributes(SSLSession sslSession) {
+    RoutingContext routingContext = mock(RoutingContext.class);
+    HttpServerRequest request = mock(HttpServerRequest.class);
+
+    when(routingContext.request()).thenReturn(request);
+    when(request.isSSL()).thenReturn(true);
+    when(request.sslSession()).thenReturn(sslSession);
+
+    return Map.of(HttpSecurityUtils.ROUTING_CONTEXT_ATTRIBUTE, routingContext);
+  }
+
+  private static SSLSession mockSslSession() {
+    SSLSession sslSession = mock(SSLSession.class);
+    Map<String, Object> values = new HashMap<>();
+
+    doAnswer(invocation -> values.put(invocation.getArgument(0), invocation.getArgument(1)))
+        .when(sslSession).putValue(anyString(), any());
+    when(sslSession.getValue(anyString()))
+        .thenAnswer(invocation -> values.get(invocation.<String>getArgument(0)));
+
+    return sslSession;
+  }
+
+  private static SecurityIdentity mockIdentity(X509Certificate certificate) {
+    SecurityIdentity mockIdentity = mock(SecurityIdentity.class);
+    CertificateCredential mockCredential = mock(CertificateCredential.class);
+    Principal mockPrincipal = mock(Principal.class);
+
+    when(mockIdentity.getCredential(CertificateCredential.class)).thenReturn(mockCredential);
+    when(mockCredential.getCertificate()).thenReturn(certificate);
+    when(mockIdentity.getPrincipal()).thenReturn(mockPrincipal);
+
+    return mockIdentity;
+  }
+
+  private static byte[] encodeUtf8StringExtension(String value) {
+    try {
+      return new DEROctetString(new DERUTF8String(value)).getEncoded();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
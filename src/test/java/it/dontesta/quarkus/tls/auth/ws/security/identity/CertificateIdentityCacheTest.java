@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.security.identity;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.quarkus.test.junit.QuarkusTest;
+import it.dontesta.quarkus.tls.auth.ws.exception.CertificateAuthenticationException;
+import it.dontesta.quarkus.tls.auth.ws.exception.CertificateAuthenticationException.Reason;
+import java.io.InputStream;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jboss.logging.Logger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+class CertificateIdentityCacheTest {
+
+  private static final String TRUST_VERSION = "trust-version-1";
+
+  private static final String CONFIG_VERSION = "config-version-1";
+
+  private CertificateIdentityCache identityCache;
+
+  @BeforeEach
+  void setUp() {
+    identityCache = new CertificateIdentityCache(100, Duration.ofMinutes(1), 100,
+        Duration.ofMinutes(1), new SimpleMeterRegistry(), mock(Logger.class));
+  }
+
+  @Test
+  void sameCertificateSharesTheEntry() throws Exception {
+    X509Certificate certificate = loadCertificate();
+    X509Certificate sameCertificate = loadCertificate();
+
+    assertSame(
+        identityCache.get(certificate, TRUST_VERSION, CONFIG_VERSION, cert -> newExtensions()),
+        identityCache.get(sameCertificate, TRUST_VERSION, CONFIG_VERSION,
+            cert -> newExtensions()));
+    assertEquals(1, identityCache.stats().hitCount());
+    assertEquals(1, identityCache.stats().missCount());
+  }
+
+  @Test
+  void extensionsAreMappedOnlyOnce() throws Exception {
+    X509Certificate certificate = loadCertificate();
+    AtomicInteger loads = new AtomicInteger();
+
+    for (int i = 0; i < 3; i++) {
+      CertificateExtensions extensions = identityCache.get(certificate, TRUST_VERSION,
+          CONFIG_VERSION, cert -> {
+            loads.incrementAndGet();
+            return newExtensions();
+          });
+      assertEquals(Set.of("User"), extensions.roles());
+    }
+
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  void rejectedCertificateIsNotCached() throws Exception {
+    X509Certificate certificate = loadCertificate();
+    AtomicInteger loads = new AtomicInteger();
+
+    for (int i = 0; i < 2; i++) {
+      assertThrows(SecurityException.class,
+          () -> identityCache.get(certificate, TRUST_VERSION, CONFIG_VERSION, cert -> {
+            loads.incrementAndGet();
+            throw new SecurityException("Rejected");
+          }));
+    }
+
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  void rejectedCertificateIsAnsweredFromTheNegativeCache() throws Exception {
+    X509Certificate certificate = loadCertificate();
+    AtomicInteger loads = new AtomicInteger();
+    CertificateAuthenticationException rejection = new CertificateAuthenticationException(
+        Reason.VALUE_REJECTED, "MTcyNjYxNTQ0MzM5MCMzZjYzZmEx", "1.3.6.1.4.1.99999.2", "deviceId");
+
+    List<CertificateAuthenticationException> thrown = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      CertificateAuthenticationException e = assertThrows(
+          CertificateAuthenticationException.class,
+          () -> identityCache.get(certificate, TRUST_VERSION, CONFIG_VERSION, cert -> {
+            loads.incrementAndGet();
+            throw rejection;
+          }));
+      // A caller suppressing an exception into the rejection must not affect the next requests
+      e.addSuppressed(new IllegalStateException("request " + i));
+      thrown.add(e);
+    }
+
+    assertSame(rejection, thrown.getFirst());
+    for (CertificateAuthenticationException e : thrown.subList(1, thrown.size())) {
+      assertNotSame(rejection, e);
+      assertEquals(rejection.getReason(), e.getReason());
+      assertEquals(rejection.getMessage(), e.getMessage());
+      assertEquals(0, e.getStackTrace().length);
+      assertEquals(1, e.getSuppressed().length);
+    }
+
+    assertEquals(1, loads.get());
+    assertEquals(1, identityCache.rejectionsSize());
+    assertEquals(2, identityCache.rejectionStats().hitCount());
+    assertEquals(0, identityCache.stats().hitCount());
+
+    identityCache.invalidateAll();
+    identityCache.get(loadCertificate(), TRUST_VERSION, CONFIG_VERSION, cert -> newExtensions());
+    assertEquals(0, identityCache.rejectionsSize());
+  }
+
+  @Test
+  void newVersionsMapTheCertificateAgain() throws Exception {
+    X509Certificate certificate = loadCertificate();
+    AtomicInteger loads = new AtomicInteger();
+    CertificateAuthenticationException rejection = new CertificateAuthenticationException(
+        Reason.VALUE_REJECTED, "MTcyNjYxNTQ0MzM5MCMzZjYzZmEx", "1.3.6.1.4.1.99999.2", "deviceId");
+
+    identityCache.get(certificate, TRUST_VERSION, CONFIG_VERSION, cert -> {
+      loads.incrementAndGet();
+      return newExtensions();
+    });
+
+    // The TSL was refreshed: the certificate is mapped again, and now rejected
+    assertThrows(CertificateAuthenticationException.class,
+        () -> identityCache.get(certificate, "trust-version-2", CONFIG_VERSION, cert -> {
+          loads.incrementAndGet();
+          throw rejection;
+        }));
+
+    // The mappings changed: the rejection of the previous mappings is not reused
+    CertificateExtensions extensions = identityCache.get(certificate, "trust-version-2",
+        "config-version-2", cert -> {
+          loads.incrementAndGet();
+          return newExtensions();
+        });
+
+    assertEquals(Set.of("User"), extensions.roles());
+    assertEquals(3, loads.get());
+    assertEquals(0, identityCache.stats().hitCount());
+    assertEquals(0, identityCache.rejectionStats().hitCount());
+  }
+
+  @Test
+  void certificateWithoutEncodingIsNotCached() {
+    X509Certificate certificate = mock(X509Certificate.class);
+    AtomicInteger loads = new AtomicInteger();
+
+    identityCache.get(certificate, TRUST_VERSION, CONFIG_VERSION, cert -> {
+      loads.incrementAndGet();
+      return newExtensions();
+    });
+    identityCache.get(certificate, TRUST_VERSION, CONFIG_VERSION, cert -> {
+      loads.incrementAndGet();
+      return newExtensions();
+    });
+
+    assertEquals(2, loads.get());
+  }
+
+  private static CertificateExtensions newExtensions() {
+    return new CertificateExtensions(Map.of("role", "Role=User"), Set.of("User"), Map.of());
+  }
+
+  private static X509Certificate loadCertificate() throws Exception {
+    try (InputStream inputStream = CertificateIdentityCacheTest.class.getClassLoader()
+        .getResourceAsStream("certs/server_cert.pem")) {
+      return (X509Certificate) CertificateFactory.getInstance("X.509")
+          .generateCertificate(inputStream);
+    }
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.security.identity;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.quarkus.test.junit.QuarkusTest;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+class RoleRegistryTest {
+
+  @Test
+  void sameRolesShareTheSet() {
+    RoleRegistry registry = new RoleRegistry();
+
+    RoleSet roles = registry.declare(List.of("User", "Administrator"));
+
+    assertSame(roles, registry.of(List.of("Administrator", "User", "User")));
+    assertSame(registry.of(List.of()), registry.of(Set.of()));
+  }
+
+  @Test
+  void behavesAsASetOfTheRoleNames() {
+    RoleRegistry registry = new RoleRegistry();
+    registry.declare(List.of("Guest", "User", "Administrator", "HorseManager"));
+
+    RoleSet roles = registry.of(List.of("User", "Administrator", "HorseManager"));
+
+    assertEquals(Set.of("User", "Administrator", "HorseManager"), roles);
+    assertEquals(roles, Set.of("User", "Administrator", "HorseManager"));
+    assertEquals(Set.of("User", "Administrator", "HorseManager").hashCode(), roles.hashCode());
+    assertEquals(List.of("User", "Administrator", "HorseManager"), new ArrayList<>(roles));
+    assertEquals(3, roles.size());
+    assertTrue(roles.contains("HorseManager"));
+    assertFalse(roles.contains("Guest"));
+    assertFalse(roles.contains("Unknown"));
+    assertTrue(registry.of(List.of()).isEmpty());
+    assertThrows(UnsupportedOperationException.class, () -> roles.add("Guest"));
+  }
+
+  @Test
+  void intersectsByMask() {
+    RoleRegistry registry = new RoleRegistry();
+    RoleSet rolesAllowed = registry.declare(List.of("User", "Administrator"));
+    registry.declare(List.of("HorseManager", "ProjectManager"));
+
+    assertTrue(registry.of(List.of("HorseManager", "Administrator")).intersects(rolesAllowed));
+    assertFalse(registry.of(List.of("HorseManager", "ProjectManager")).intersects(rolesAllowed));
+    assertFalse(registry.of(List.of()).intersects(rolesAllowed));
+    assertTrue(new RoleRegistry().of(List.of("User")).intersects(rolesAllowed));
+  }
+
+  @Test
+  void supportsMoreRolesThanAWord() {
+    RoleRegistry registry = new RoleRegistry();
+    List<String> names = IntStream.range(0, 200).mapToObj("Role%d"::formatted).toList();
+    registry.declare(names);
+
+    RoleSet roles = registry.of(List.of("Role3", "Role64", "Role199"));
+
+    assertEquals(new HashSet<>(List.of("Role3", "Role64", "Role199")), roles);
+    assertEquals(List.of("Role3", "Role64", "Role199"), new ArrayList<>(roles));
+    assertTrue(roles.intersects(registry.of(List.of("Role199"))));
+    assertFalse(roles.intersects(registry.of(List.of("Role65", "Role128"))));
+  }
+
+  @Test
+  void undeclaredRolesAreNotRegistered() {
+    RoleRegistry registry = new RoleRegistry();
+    RoleSet rolesAllowed = registry.declare(List.of("User"));
+
+    RoleSet roles = registry.of(List.of("User", "Forged1", "Forged2"));
+
+    assertEquals(-1, registry.indexOf("Forged1"));
+    assertNotSame(roles, registry.of(List.of("User", "Forged1", "Forged2")));
+    assertEquals(Set.of("User", "Forged1", "Forged2"), roles);
+    assertEquals(Set.of("User", "Forged1", "Forged2").hashCode(), roles.hashCode());
+    assertEquals("User", roles.iterator().next());
+    assertEquals(3, roles.size());
+    assertTrue(roles.contains("Forged2"));
+    assertTrue(roles.intersects(rolesAllowed));
+    assertFalse(registry.of(List.of("Forged1")).intersects(rolesAllowed));
+  }
+
+  @Test
+  void rolesDeclaredLaterMatchTheSetsBuiltBefore() {
+    RoleRegistry registry = new RoleRegistry();
+    RoleSet roles = registry.of(List.of("User", "Administrator"));
+
+    RoleSet rolesAllowed = registry.declare(List.of("Administrator"));
+
+    assertTrue(roles.intersects(rolesAllowed));
+    assertTrue(rolesAllowed.intersects(roles));
+    assertEquals(registry.of(List.of("User", "Administrator")), roles);
+    assertFalse(registry.of(List.of("User")).intersects(rolesAllowed));
+  }
+}
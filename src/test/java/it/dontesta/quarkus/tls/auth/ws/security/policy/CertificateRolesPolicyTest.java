@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.security.policy;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.quarkus.security.identity.SecurityIdentity;
+import io.quarkus.security.runtime.QuarkusSecurityIdentity;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.vertx.http.runtime.security.HttpSecurityPolicy.CheckResult;
+import io.smallrye.mutiny.Uni;
+import it.dontesta.quarkus.tls.auth.ws.security.identity.RoleRegistry;
+import java.security.Principal;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+class CertificateRolesPolicyTest {
+
+  private RoleRegistry roleRegistry;
+
+  private CertificateRolesPolicy policy;
+
+  @BeforeEach
+  void setUp() {
+    roleRegistry = new RoleRegistry();
+    policy = new CertificateRolesPolicy(List.of("User", "Administrator"), roleRegistry);
+  }
+
+  @Test
+  void checksTheRoleSetsByMask() {
+    assertTrue(policy.isPermitted(identity(List.of("HorseManager", "Administrator"))));
+    assertFalse(policy.isPermitted(identity(List.of("ProjectManager"))));
+  }
+
+  @Test
+  void checksTheOtherIdentitiesByName() {
+    assertTrue(policy.isPermitted(QuarkusSecurityIdentity.builder()
+        .setPrincipal(mock(Principal.class)).addRole("User").build()));
+    assertFalse(policy.isPermitted(QuarkusSecurityIdentity.builder()
+        .setPrincipal(mock(Principal.class)).addRole("ProjectManager").build()));
+    assertFalse(policy.isPermitted(QuarkusSecurityIdentity.builder().setAnonymous(true).build()));
+  }
+
+  @Test
+  void checkPermissionTransformsTheIdentity() {
+    assertSame(CheckResult.PERMIT, policy.checkPermission(null,
+        Uni.createFrom().item(identity(List.of("User"))), null).await().indefinitely());
+    assertSame(CheckResult.DENY, policy.checkPermission(null,
+        Uni.createFrom().item(identity(List.of())), null).await().indefinitely());
+  }
+
+  private SecurityIdentity identity(List<String> roles) {
+    SecurityIdentity identity = mock(SecurityIdentity.class);
+    when(identity.getRoles()).thenReturn(roleRegistry.of(roles));
+    return identity;
+  }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.security.ratelimit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.quarkus.security.credential.CertificateCredential;
+import io.quarkus.security.identity.SecurityIdentity;
+import io.quarkus.test.junit.QuarkusTest;
+import it.dontesta.quarkus.tls.auth.ws.security.access.DeviceAccessKey;
+import it.dontesta.quarkus.tls.auth.ws.security.access.DeviceAccessKeys;
+import it.dontesta.quarkus.tls.auth.ws.security.identity.CertificateExtensions;
+import it.dontesta.quarkus.tls.auth.ws.security.identity.RoleRegistry;
+import it.dontesta.quarkus.tls.auth.ws.utils.CertificateFingerprint;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Response;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+class DeviceRateLimiterTest {
+
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private RoleRegistry roleRegistry;
+
+  private SimpleMeterRegistry meterRegistry;
+
+  private DeviceRateLimiter rateLimiter;
+
+  @BeforeEach
+  void setUp() {
+    roleRegistry = new RoleRegistry();
+    meterRegistry = new SimpleMeterRegistry();
+    rateLimiter = new DeviceRateLimiter(new TestConfig(true, 10, 5,
+        Map.of("User", new TestRoleLimit(20, 10), "Administrator", new TestRoleLimit(100, 50))),
+        roleRegistry, meterRegistry);
+  }
+
+  @Test
+  void permitsABurstAndThenTheSustainedRate() {
+    DeviceAccessKey device = DeviceAccessKey.ofDeviceId("device-1");
+    RateLimit limit = RateLimit.of(10, 5);
+    long now = 1_000 * SECOND;
+
+    for (int i = 0; i < 5; i++) {
+      assertEquals(0, rateLimiter.acquire(device, limit, now));
+    }
+    assertEquals(SECOND / 10, rateLimiter.acquire(device, limit, now));
+
+    // A token every 100 ms
+    assertEquals(0, rateLimiter.acquire(device, limit, now + SECOND / 10));
+    assertTrue(rateLimiter.acquire(device, limit, now + SECOND / 10) > 0);
+    assertEquals(2.0, meterRegistry.counter(DeviceRateLimiter.REJECTED_METRIC_NAME).count());
+  }
+
+  @Test
+  void limitsEachDeviceOnItsOwn() {
+    RateLimit limit = RateLimit.of(1, 1);
+    long now = -5 * SECOND;
+
+    assertEquals(0, rateLimiter.acquire(DeviceAccessKey.ofDeviceId("device-1"), limit, now));
+    assertEquals(0, rateLimiter.acquire(DeviceAccessKey.ofDeviceId("device-2"), limit, now));
+    assertEquals(SECOND,
+        rateLimiter.acquire(DeviceAccessKey.ofDeviceId("device-1"), limit, now));
+    assertEquals(0,
+        rateLimiter.acquire(DeviceAccessKey.ofDeviceId("device-1"), limit, now + SECOND));
+  }
+
+  @Test
+  void permitsExactlyTheBurstToConcurrentRequests() throws Exception {
+    DeviceAccessKey device = DeviceAccessKey.ofDeviceId("device-1");
+    RateLimit limit = RateLimit.of(1, 100);
+    long now = System.nanoTime();
+    AtomicInteger permitted = new AtomicInteger();
+    List<Future<?>> futures = new ArrayList<>();
+
+    try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+      for (int i = 0; i < 8; i++) {
+        futures.add(executor.submit(() -> {
+          for (int j = 0; j < 50; j++) {
+            if (rateLimiter.acquire(device, limit, now) == 0) {
+              permitted.incrementAndGet();
+            }
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    }
+
+    assertEquals(100, permitted.get());
+  }
+
+  @Test
+  void appliesTheMostGenerousLimitOfTheRoles() {
+    assertEquals(RateLimit.of(10, 5), rateLimiter.limitOf(identity(Set.of("Guest"))));
+    assertEquals(RateLimit.of(20, 10), rateLimiter.limitOf(identity(Set.of("User"))));
+    assertEquals(RateLimit.of(100, 50),
+        rateLimiter.limitOf(identity(roleRegistry.of(Set.of("User", "Administrator")))));
+  }
+
+  @Test
+  void keysTheDevicesByDeviceIdAndThenByCertificate() throws CertificateEncodingException {
+    DeviceAccessKey deviceId = DeviceAccessKey.ofDeviceId("device-1");
+    DeviceAccessKey certificateKey = DeviceAccessKey.ofDeviceId("certificate-1");
+    X509Certificate certificate = mock(X509Certificate.class);
+    when(certificate.getEncoded()).thenReturn(new byte[] {1, 2, 3});
+
+    assertSame(deviceId, DeviceRateLimiter.keyOf(identity(certificate,
+        new DeviceAccessKeys(certificateKey, deviceId))));
+    assertSame(certificateKey, DeviceRateLimiter.keyOf(identity(certificate,
+        new DeviceAccessKeys(certificateKey, null))));
+    assertEquals(DeviceAccessKey.ofCertificate(CertificateFingerprint.of(certificate)),
+        DeviceRateLimiter.keyOf(identity(certificate, null)));
+    assertNull(DeviceRateLimiter.keyOf(identity(Set.of())));
+  }
+
+  @Test
+  void doesNotLimitWhenDisabled() {
+    rateLimiter = new DeviceRateLimiter(new TestConfig(false, 1, 1, Map.of()), roleRegistry,
+        meterRegistry);
+    X509Certificate certificate = mock(X509Certificate.class);
+    SecurityIdentity identity = identity(certificate,
+        new DeviceAccessKeys(null, DeviceAccessKey.ofDeviceId("device-1")));
+
+    for (int i = 0; i < 10; i++) {
+      assertEquals(0, rateLimiter.acquire(identity));
+    }
+  }
+
+  @Test
+  void answersTooManyRequestsWithRetryAfter() {
+    Response response = DeviceRateLimitFilter.tooManyRequests(SECOND + 1);
+
+    assertEquals(429, response.getStatus());
+    assertEquals("2", response.getHeaderString(HttpHeaders.RETRY_AFTER));
+    assertEquals("1",
+        DeviceRateLimitFilter.tooManyRequests(1).getHeaderString(HttpHeaders.RETRY_AFTER));
+  }
+
+  private static SecurityIdentity identity(Set<String> roles) {
+    SecurityIdentity identity = mock(SecurityIdentity.class);
+    when(identity.getRoles()).thenReturn(roles);
+    return identity;
+  }
+
+  private static SecurityIdentity identity(X509Certificate certificate, DeviceAccessKeys keys) {
+    SecurityIdentity identity = identity(Set.of());
+    CertificateCredential credential = new CertificateCredential(certificate);
+
+    when(identity.getCredential(CertificateCredential.class)).thenReturn(credential);
+    if (keys != null) {
+      when(identity.getAttribute(CertificateExtensions.IDENTITY_ATTRIBUTE)).thenReturn(
+          new CertificateExtensions(Map.of(), Set.of(), Map.of(), keys));
+    }
+    return identity;
+  }
+
+  private record TestConfig(boolean enabled, double requestsPerSecond, int burst,
+                            Map<String, RoleLimit> roles) implements DeviceRateLimitConfig {
+
+    @Override
+    public long maxDevices() {
+      return 1000;
+    }
+
+    @Override
+    public Duration idleTimeout() {
+      return Duration.ofMinutes(10);
+    }
+  }
+
+  private record TestRoleLimit(double requestsPerSecond, int burst)
+      implements DeviceRateLimitConfig.RoleLimit {
+  }
+}
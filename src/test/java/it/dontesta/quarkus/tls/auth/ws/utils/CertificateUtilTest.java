@@ -12,6 +12,8 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import io.quarkus.test.junit.QuarkusTest;
@@ -57,6 +59,23 @@ class CertificateUtilTest {
     assertEquals(expectedKeySize, keySize);
   }
 
+  @Test
+  void getCommonName_sameCertificate_isCached() {
+    X509Certificate certificate = mockCertificate("CN=Cached, O=Example, C=US");
+
+    assertEquals("Cached", CertificateUtil.getCommonName(certificate));
+    assertEquals("Cached", CertificateUtil.getCommonName(certificate));
+    verify(certificate, times(1)).getSubjectX500Principal();
+  }
+
+  @Test
+  void parseCommonName_rfc4514String_returnsFirstCommonName() {
+    assertEquals("Doe, John", CertificateUtil.parseCommonName("CN=Doe\\, John,O=Example"));
+    assertEquals("Multi", CertificateUtil.parseCommonName("UID=42+CN=Multi,CN=Other"));
+    assertNull(CertificateUtil.parseCommonName("O=Example,C=US"));
+    assertNull(CertificateUtil.parseCommonName("not a distinguished name"));
+  }
+
   @Test
   void getCommonName_nullCertificate_throwsNullPointerException() {
     assertThrows(NullPointerException.class, () -> CertificateUtil.getCommonName(null));
@@ -206,10 +225,20 @@ class CertificateUtilTest {
         Arguments.of(certWithCommonName, "John Doe"),
         Arguments.of(certWithoutCommonName, null),
         Arguments.of(certWithLowerCaseCn, "Jane Doe"),
-        Arguments.of(certWithMultipleCommonNames, "First")
+        Arguments.of(certWithMultipleCommonNames, "First"),
+        Arguments.of(mockCertificate("CN=Doe\\, John, OU=Test, O=Example, C=US"), "Doe, John"),
+        Arguments.of(mockCertificate("CN=Multi+UID=42, O=Example, C=US"), "Multi"),
+        Arguments.of(mockCertificate("UID=42+CN=Multi, O=Example, C=US"), "Multi"),
+        Arguments.of(mockCertificate("OU=Test, O=Example, C=US"), null)
     );
   }
 
+  private static X509Certificate mockCertificate(String subject) {
+    X509Certificate certificate = mock(X509Certificate.class);
+    when(certificate.getSubjectX500Principal()).thenReturn(new X500Principal(subject));
+    return certificate;
+  }
+
   private static Stream<Arguments> provideCertificatesForKeySize() {
     RSAPublicKey rsaKey = mock(RSAPublicKey.class);
     when(rsaKey.getModulus()).thenReturn(new BigInteger("123456789"));
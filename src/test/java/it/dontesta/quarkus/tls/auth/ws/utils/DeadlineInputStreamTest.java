@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import io.quarkus.test.junit.QuarkusTest;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CountDownLatch;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+class DeadlineInputStreamTest {
+
+  @Test
+  void streamReadBeforeTheDeadlineIsUntouched() throws Exception {
+    byte[] content = {1, 2, 3, 4};
+
+    try (InputStream input = new DeadlineInputStream(new ByteArrayInputStream(content),
+        Instant.now().plusSeconds(60))) {
+      assertArrayEquals(content, input.readAllBytes());
+      assertEquals(-1, input.read());
+    }
+  }
+
+  @Test
+  void blockedReadFailsAtTheDeadline() throws Exception {
+    try (InputStream input = new DeadlineInputStream(new StalledInputStream(),
+        Instant.now().plusMillis(200))) {
+      // The read blocks until the watchdog closes the stream
+      assertTimeoutPreemptively(Duration.ofSeconds(10),
+          () -> assertThrows(HttpTimeoutException.class, input::read));
+    }
+  }
+
+  @Test
+  void readAfterAPastDeadlineFails() throws Exception {
+    try (InputStream input = new DeadlineInputStream(new ByteArrayInputStream(new byte[16]),
+        Instant.now().minusSeconds(1))) {
+      Thread.sleep(100);
+
+      assertThrows(HttpTimeoutException.class, input::read);
+    }
+  }
+
+  /**
+   * A stream whose reads block until it is closed, like the body of a stalled HTTP response.
+   */
+  private static final class StalledInputStream extends InputStream {
+
+    @Override
+    public int read() throws IOException {
+      try {
+        closed.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      throw new IOException("closed");
+    }
+
+    @Override
+    public void close() {
+      closed.countDown();
+    }
+
+    private final CountDownLatch closed = new CountDownLatch(1);
+  }
+}
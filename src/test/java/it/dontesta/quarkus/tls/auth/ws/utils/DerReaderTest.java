@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2024 Antonio Musarra's Blog.
+ * SPDX-License-Identifier: MIT
+ */
+
+package it.dontesta.quarkus.tls.auth.ws.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.quarkus.test.junit.QuarkusTest;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+import javax.security.auth.x500.X500Principal;
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.DERBMPString;
+import org.bouncycastle.asn1.DERIA5String;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERPrintableString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.DERSet;
+import org.bouncycastle.asn1.DERT61String;
+import org.bouncycastle.asn1.DERUTF8String;
+import org.bouncycastle.asn1.DERUniversalString;
+import org.bouncycastle.asn1.DERVisibleString;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+class DerReaderTest {
+
+  @Test
+  void readsTheCommonStringTypes() throws IOException {
+    assertEquals("Role=User", read(wrap(new DERUTF8String("Role=User"))));
+    assertEquals("Role=User", read(wrap(new DERPrintableString("Role=User"))));
+    assertEquals("Role=User", read(wrap(new DERIA5String("Role=User"))));
+
+    // Long form lengths
+    String longValue = "R".repeat(300);
+    assertEquals(longValue, read(wrap(new DERUTF8String(longValue))));
+  }
+
+  @Test
+  void readsARegionOfTheArray() throws IOException {
+    byte[] value = wrap(new DERUTF8String("DeviceId=abc"));
+    byte[] padded = new byte[value.length + 10];
+    System.arraycopy(value, 0, padded, 5, value.length);
+
+    assertEquals("DeviceId=abc", DerReader.readExtensionString(padded, 5, value.length));
+  }
+
+  @Test
+  void leavesTheUnusualValuesToBouncyCastle() throws IOException {
+    // Non-ASCII content, other string types, not a string, trailing bytes, indefinite length
+    assertNull(read(wrap(new DERUTF8String("Rôle=Ütente"))));
+    assertNull(read(wrap(new DERBMPString("Role=User"))));
+    assertNull(read(new byte[] {0x04, 0x03, 0x02, 0x01, 0x01}));
+    assertNull(read(new byte[] {0x04, 0x04, 0x0C, 0x01, 'a', 0x00}));
+    assertNull(read(new byte[] {0x04, (byte) 0x80, 0x0C, 0x01, 'a', 0x00, 0x00}));
+    assertNull(read(new byte[] {0x04}));
+  }
+
+  @Test
+  void decodesAsBouncyCastleRandomValues() throws IOException {
+    Random random = new Random(SEED);
+
+    for (int i = 0; i < ITERATIONS; i++) {
+      byte[] value = wrap(randomString(random));
+      assertSameOutcome(value);
+    }
+  }
+
+  @Test
+  void decodesAsBouncyCastleCorruptedValues() throws IOException {
+    Random random = new Random(SEED);
+
+    for (int i = 0; i < ITERATIONS; i++) {
+      byte[] value = wrap(randomString(random));
+
+      switch (random.nextInt(4)) {
+        case 0 -> value[random.nextInt(value.length)] = (byte) random.nextInt(256);
+        case 1 -> value = Arrays.copyOf(value, random.nextInt(value.length));
+        case 2 -> value = Arrays.copyOf(value, value.length + 1 + random.nextInt(4));
+        default -> {
+          // Re-encode the outer length in a non-minimal long form
+          byte[] content = Arrays.copyOfRange(value, value[1] < 0 ? 2 + (value[1] & 0x7F) : 2,
+              value.length);
+          value = new byte[content.length + 6];
+          value[0] = 0x04;
+          value[1] = (byte) 0x84;
+          value[5] = (byte) content.length;
+          value[4] = (byte) (content.length >>> 8);
+          System.arraycopy(content, 0, value, 6, content.length);
+        }
+      }
+
+      assertSameOutcome(value);
+    }
+  }
+
+  @Test
+  void readsTheCommonNameAsTheRfc4514Form() throws IOException {
+    Random random = new Random(SEED);
+
+    for (int i = 0; i < ITERATIONS; i++) {
+      ASN1EncodableVector rdns = new ASN1EncodableVector();
+      int count = 1 + random.nextInt(5);
+
+      for (int j = 0; j < count; j++) {
+        // A multi-valued RDN has a Common Name and an Organization
+        ASN1EncodableVector attributes = new ASN1EncodableVector();
+        boolean multiValued = random.nextInt(4) == 0;
+
+        if (multiValued || random.nextBoolean()) {
+          attributes.add(new DERSequence(new ASN1Encodable[] {COMMON_NAME, randomName(random)}));
+        }
+        if (multiValued || attributes.size() == 0) {
+          attributes.add(new DERSequence(new ASN1Encodable[] {ORGANIZATION, randomName(random)}));
+        }
+        rdns.add(new DERSet(attributes));
+      }
+
+      byte[] name = new DERSequence(rdns).getEncoded();
+      String rfc4514 = new X500Principal(name).getName();
+
+      assertEquals(CertificateUtil.parseCommonName(rfc4514), DerReader.readCommonName(name),
+          () -> "Different Common Name for %s".formatted(rfc4514));
+    }
+  }
+
+  @Test
+  void readsTheCommonNameOfTheOtherStringTypes() throws IOException {
+    for (ASN1Primitive value : List.of(new DERBMPString("Jöhn, Doe"),
+        new DERUniversalString(new String("Jöhn, Doe").codePoints()
+            .mapToObj(codePoint -> new byte[] {0, 0, 0, (byte) codePoint})
+            .reduce(new byte[0], DerReaderTest::concat)),
+        new DERT61String("Jöhn, Doe"))) {
+      byte[] name = new DERSequence(new DERSet(
+          new DERSequence(new ASN1Encodable[] {COMMON_NAME, value}))).getEncoded();
+
+      assertEquals("Jöhn, Doe", DerReader.readCommonName(name));
+    }
+  }
+
+  @Test
+  void rejectsMalformedNames() {
+    assertThrows(IllegalArgumentException.class,
+        () -> DerReader.readCommonName(new byte[] {0x31, 0x00}));
+    assertThrows(IllegalArgumentException.class,
+        () -> DerReader.readCommonName(new byte[] {0x30, 0x05, 0x31, 0x03}));
+    assertThrows(IllegalArgumentException.class,
+        () -> DerReader.readCommonName(new byte[] {0x30, 0x00, 0x00}));
+    assertThrows(IllegalArgumentException.class,
+        () -> DerReader.readCommonName(new byte[] {0x30, (byte) 0x84}));
+  }
+
+  private static byte[] concat(byte[] first, byte[] second) {
+    byte[] result = Arrays.copyOf(first, first.length + second.length);
+    System.arraycopy(second, 0, result, first.length, second.length);
+    return result;
+  }
+
+  private static void assertSameOutcome(byte[] value) {
+    assertEquals(outcome(CertificateUtil::decodeExtensionValueWithBouncyCastle, value),
+        outcome(CertificateUtil::decodeExtensionValue, value),
+        () -> "Different outcome for %s".formatted(Arrays.toString(value)));
+  }
+
+  private static Object outcome(Function<byte[], String> decoder, byte[] value) {
+    try {
+      return decoder.apply(value);
+    } catch (RuntimeException e) {
+      return e.getClass();
+    }
+  }
+
+  private static String read(byte[] value) {
+    return DerReader.readExtensionString(value, 0, value.length);
+  }
+
+  private static byte[] wrap(ASN1Primitive string) throws IOException {
+    return new DEROctetString(string.getEncoded()).getEncoded();
+  }
+
+  private static ASN1Primitive randomString(Random random) {
+    int length = random.nextInt(random.nextBoolean() ? 20 : 400);
+    StringBuilder ascii = new StringBuilder(length);
+    StringBuilder unicode = new StringBuilder(length);
+
+    for (int i = 0; i < length; i++) {
+      ascii.append((char) (0x20 + random.nextInt(0x5F)));
+      unicode.append((char) (random.nextInt(10) == 0 ? 0xA0 + random.nextInt(0x500)
+          : 0x20 + random.nextInt(0x5F)));
+    }
+
+    return STRING_TYPES.get(random.nextInt(STRING_TYPES.size()))
+        .apply(random.nextBoolean() ? ascii.toString() : unicode.toString());
+  }
+
+  private static ASN1Primitive randomName(Random random) {
+    int length = 1 + random.nextInt(12);
+    StringBuilder value = new StringBuilder(length);
+
+    for (int i = 0; i < length; i++) {
+      value.append(random.nextInt(4) == 0
+          ? SPECIAL_CHARACTERS.charAt(random.nextInt(SPECIAL_CHARACTERS.length()))
+          : (char) ('a' + random.nextInt(26)));
+    }
+
+    // The RFC 2253 form of the JDK renders the BMPString values byte by byte, so they are
+    // checked separately
+    return random.nextBoolean()
+        ? new DERUTF8String(value.append('\u00e8').toString())
+        : new DERIA5String(value.toString());
+  }
+
+  private static final ASN1ObjectIdentifier COMMON_NAME = new ASN1ObjectIdentifier("2.5.4.3");
+
+  private static final ASN1ObjectIdentifier ORGANIZATION = new ASN1ObjectIdentifier("2.5.4.10");
+
+  private static final String SPECIAL_CHARACTERS = ",+\"\\<>;=# ";
+
+  private static final long SEED = 20241018L;
+
+  private static final int ITERATIONS = 5_000;
+
+  private static final List<Function<String, ASN1Primitive>> STRING_TYPES = List.of(
+      DERUTF8String::new,
+      DERPrintableString::new,
+      DERIA5String::new,
+      DERBMPString::new,
+      DERT61String::new,
+      DERVisibleString::new);
+}
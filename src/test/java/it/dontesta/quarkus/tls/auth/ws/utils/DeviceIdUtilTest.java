@@ -8,50 +8,157 @@ package it.dontesta.quarkus.tls.auth.ws.utils;
 import static org.junit.jupiter.api.Assertions.*;
 
 import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import org.junit.jupiter.api.Test;
 
 @QuarkusTest
 class DeviceIdUtilTest {
 
+  private static final String BASE64_URL_ALPHABET =
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+
+  @Inject
+  DeviceIdUtil deviceIdUtil;
+
   @Test
   void generateDeviceIdReturnsValidId() {
-    String deviceId = DeviceIdUtil.generateDeviceId();
+    String deviceId = deviceIdUtil.generateDeviceId();
     assertNotNull(deviceId);
     assertFalse(deviceId.isEmpty());
   }
 
   @Test
   void generateDeviceIdIsUnique() {
-    String deviceId1 = DeviceIdUtil.generateDeviceId();
-    String deviceId2 = DeviceIdUtil.generateDeviceId();
+    String deviceId1 = deviceIdUtil.generateDeviceId();
+    String deviceId2 = deviceIdUtil.generateDeviceId();
     assertNotEquals(deviceId1, deviceId2);
   }
 
   @Test
   void validateDeviceIdReturnsTrueForValidId() {
-    String validDeviceId = DeviceIdUtil.generateDeviceId();
-    assertTrue(DeviceIdUtil.verifyDeviceId(validDeviceId));
+    String validDeviceId = deviceIdUtil.generateDeviceId();
+    assertTrue(deviceIdUtil.verifyDeviceId(validDeviceId));
   }
 
   @Test
   void validateDeviceIdReturnsFalseForInvalidId() {
     String invalidDeviceId = "invalid-id";
-    assertFalse(DeviceIdUtil.verifyDeviceId(invalidDeviceId));
+    assertFalse(deviceIdUtil.verifyDeviceId(invalidDeviceId));
   }
 
   @Test
   void validateDeviceIdReturnsFalseForNullId() {
-    assertFalse(DeviceIdUtil.verifyDeviceId(null));
+    assertFalse(deviceIdUtil.verifyDeviceId(null));
   }
 
   @Test
   void validateDeviceIdReturnsFalseForEmptyId() {
-    assertFalse(DeviceIdUtil.verifyDeviceId(""));
+    assertFalse(deviceIdUtil.verifyDeviceId(""));
   }
 
   @Test
   void validateDeviceIdOk() {
     String deviceIdToValidate = "MTcyNTcxMjkwNzU4MDIzMjAwMCMyZjU1ZjZiYS05OTZmLTRjZTctYWQzNC0zNWRkYTNmOTU3YTkjYW11c2FycmEtbWFjYm9vay1wcm8ubG9jYWwjMjMwODA2Y2QwMGEzNTBkODZhMjUzNGViYTcyMmUyY2JmOGJlMmM5NTdmNmU5NTRmMjg1Yjc5MTFjNDY0ZDdiMw==";
-    assertTrue(DeviceIdUtil.verifyDeviceId(deviceIdToValidate));
+    assertTrue(deviceIdUtil.verifyDeviceId(deviceIdToValidate));
+  }
+
+  @Test
+  void validateDeviceIdWithUpperCaseHmacReturnsTrue() {
+    String deviceId = decode(deviceIdUtil.generateDeviceId());
+    int hmacSeparator = deviceId.lastIndexOf('#');
+    String upperCaseHmac = deviceId.substring(0, hmacSeparator + 1)
+        + deviceId.substring(hmacSeparator + 1).toUpperCase();
+
+    assertTrue(deviceIdUtil.verifyDeviceId(encode(upperCaseHmac)));
+  }
+
+  @Test
+  void validateDeviceIdReturnsFalseForTamperedId() {
+    String deviceId = decode(deviceIdUtil.generateDeviceId());
+    String tamperedDeviceId = "9" + deviceId.substring(1);
+
+    assertFalse(deviceIdUtil.verifyDeviceId(encode(tamperedDeviceId)));
+  }
+
+  @Test
+  void validateDeviceIdReturnsFalseForTamperedHmac() {
+    String deviceId = decode(deviceIdUtil.generateDeviceId());
+    char last = deviceId.charAt(deviceId.length() - 1);
+    String tamperedDeviceId =
+        deviceId.substring(0, deviceId.length() - 1) + (last == '0' ? '1' : '0');
+
+    assertFalse(deviceIdUtil.verifyDeviceId(encode(tamperedDeviceId)));
+  }
+
+  @Test
+  void validateDeviceIdReturnsFalseForWrongNumberOfParts() {
+    String deviceId = decode(deviceIdUtil.generateDeviceId());
+
+    assertFalse(deviceIdUtil.verifyDeviceId(encode("extra#" + deviceId)));
+    assertFalse(deviceIdUtil.verifyDeviceId(encode(deviceId.substring(deviceId.indexOf('#') + 1))));
+  }
+
+  @Test
+  void validateDeviceIdReturnsFalseForNonHexHmac() {
+    String deviceId = decode(deviceIdUtil.generateDeviceId());
+    String nonHexDeviceId = deviceId.substring(0, deviceId.length() - 1) + "z";
+
+    assertFalse(deviceIdUtil.verifyDeviceId(encode(nonHexDeviceId)));
+  }
+
+  @Test
+  void validateDeviceIdWithoutPaddingReturnsTrue() {
+    String deviceId = decode(deviceIdUtil.generateDeviceId());
+    String unpadded = Base64.getUrlEncoder().withoutPadding()
+        .encodeToString(deviceId.getBytes(StandardCharsets.UTF_8));
+
+    assertTrue(deviceIdUtil.verifyDeviceId(unpadded));
+  }
+
+  @Test
+  void validateDeviceIdReturnsFalseForMalformedPadding() {
+    String unpadded = encodeWithoutPadding(decode(deviceIdUtil.generateDeviceId()));
+    int padding = (4 - unpadded.length() % 4) % 4;
+
+    assertTrue(deviceIdUtil.verifyDeviceId(unpadded + "=".repeat(padding)));
+    assertFalse(deviceIdUtil.verifyDeviceId(unpadded + "=".repeat(padding + 1)));
+    assertFalse(deviceIdUtil.verifyDeviceId(unpadded + "=".repeat(padding + 2)));
+    assertFalse(deviceIdUtil.verifyDeviceId(unpadded + "=".repeat(padding) + "A"));
+    if (padding == 2) {
+      assertFalse(deviceIdUtil.verifyDeviceId(unpadded + "="));
+    }
+  }
+
+  @Test
+  void validateDeviceIdReturnsFalseForNonZeroTrailingBits() {
+    // The last character of an encoding not ending on a 3-byte boundary has unused bits
+    String encoded = encodeWithoutPadding(decode(deviceIdUtil.generateDeviceId()));
+    assertNotEquals(0, encoded.length() % 4);
+    assertTrue(deviceIdUtil.verifyDeviceId(encoded));
+
+    char last = encoded.charAt(encoded.length() - 1);
+    String nonCanonical = encoded.substring(0, encoded.length() - 1)
+        + BASE64_URL_ALPHABET.charAt(BASE64_URL_ALPHABET.indexOf(last) | 1);
+
+    // The JDK decoder ignores the unused bits, so both encodings decode to the same Device ID
+    assertArrayEquals(Base64.getUrlDecoder().decode(encoded),
+        Base64.getUrlDecoder().decode(nonCanonical));
+    assertFalse(deviceIdUtil.verifyDeviceId(nonCanonical));
+    assertFalse(deviceIdUtil.verifyDeviceId(nonCanonical + "=".repeat(4 - encoded.length() % 4)));
+  }
+
+  private static String decode(String encodedDeviceId) {
+    return new String(Base64.getUrlDecoder().decode(encodedDeviceId), StandardCharsets.UTF_8);
+  }
+
+  private static String encodeWithoutPadding(String deviceId) {
+    return Base64.getUrlEncoder().withoutPadding()
+        .encodeToString(deviceId.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String encode(String deviceId) {
+    return Base64.getUrlEncoder().encodeToString(deviceId.getBytes(StandardCharsets.UTF_8));
   }
-}
\ No newline at end of file
+}